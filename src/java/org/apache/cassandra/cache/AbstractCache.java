@@ -24,16 +24,20 @@ package org.apache.cassandra.cache;
 import java.lang.management.ManagementFactory;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 public class AbstractCache
 {
-    static void registerMBean(Object cache, String table, String name)
+    /**
+     * registers cache as JMXInstrumentedCacheMBean, even if its class name is not JMXInstrumentedCache
+     */
+    static void registerMBean(JMXInstrumentedCacheMBean cache, String table, String name)
     {
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
         {
             String mbeanName = "org.apache.cassandra.db:type=Caches,keyspace=" + table + ",cache=" + name;
-            mbs.registerMBean(cache, new ObjectName(mbeanName));
+            mbs.registerMBean(new StandardMBean(cache, JMXInstrumentedCacheMBean.class), new ObjectName(mbeanName));
         }
         catch (Exception e)
         {
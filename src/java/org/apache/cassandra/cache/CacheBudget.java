@@ -0,0 +1,208 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Memory budget in bytes, shared by caches of all column families, which do not have their own size set.
+ *
+ * Budget is split between caches in proportion to requests they got recently (smoothed over rebalance periods),
+ * so busy caches get more memory than idle ones. Caches of column families without objects count as idle.
+ * Caches resized manually keep their capacity, which is taken out of the budget. Rebalancing and the mbean
+ * start with the first cache registered.
+ */
+public class CacheBudget implements CacheBudgetMBean
+{
+    private static final Logger logger = Logger.getLogger(CacheBudget.class);
+
+    static final long REBALANCE_INTERVAL = 60 * 1000;
+
+    private final String name;
+    private volatile long budget;
+    private boolean started;
+    private final List<IBudgetedCacheProvider> providers = new CopyOnWriteArrayList<IBudgetedCacheProvider>();
+    // requests to cache seen by the last rebalance and its smoothed share of budget
+    private final Map<IBudgetedCacheProvider, Long> lastRequests = new IdentityHashMap<IBudgetedCacheProvider, Long>();
+    private final Map<IBudgetedCacheProvider, Double> shares = new IdentityHashMap<IBudgetedCacheProvider, Double>();
+
+    public CacheBudget(String name, long budget)
+    {
+        this.name = name;
+        this.budget = budget;
+    }
+
+    CacheBudget(long budget)
+    {
+        this(null, budget);
+    }
+
+    /**
+     * registers the mbean and starts rebalancing, once the first cache shares the budget, so unused budgets
+     * (those of 0 bytes, which no cache is registered with) cost neither a thread nor an mbean
+     */
+    private synchronized void start()
+    {
+        if (started || name == null)
+            return;
+        started = true;
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            mbs.registerMBean(this, new ObjectName(getMBeanName(name)));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        TimerTask rebalance = new TimerTask()
+        {
+            public void run()
+            {
+                try
+                {
+                    rebalance();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Cannot rebalance " + name + " budget", e);
+                }
+            }
+        };
+        new Timer(name + "Budget", true).schedule(rebalance, REBALANCE_INTERVAL, REBALANCE_INTERVAL);
+    }
+
+    static String getMBeanName(String name)
+    {
+        return "org.apache.cassandra.db:type=CacheBudgets,name=" + name;
+    }
+
+    /**
+     * adds cache to this budget and gives it a share
+     */
+    public void register(final IAggregatableCacheProvider<?, ?> provider)
+    {
+        register(new IBudgetedCacheProvider()
+        {
+            public IBudgetedCache getBudgetedCache()
+            {
+                return provider.getCache();
+            }
+
+            public long getObjectCount()
+            {
+                return provider.getObjectCount();
+            }
+        });
+    }
+
+    public void register(IBudgetedCacheProvider provider)
+    {
+        assert provider.getBudgetedCache().isWeighted();
+        start();
+        providers.add(provider);
+        rebalance();
+    }
+
+    /**
+     * splits budget between caches according to requests they got since the last rebalance
+     */
+    public synchronized void rebalance()
+    {
+        long available = budget;
+        double totalShare = 0;
+        int sharing = 0;
+        for (IBudgetedCacheProvider provider : providers)
+        {
+            IBudgetedCache cache = provider.getBudgetedCache();
+            if (cache.isCapacitySetManually())
+            {
+                available -= cache.getCapacityInBytes();
+                shares.remove(provider);
+                continue;
+            }
+
+            long requests = cache.getRequests();
+            Long last = lastRequests.put(provider, requests);
+            // new caches start as idle ones
+            long recent = last == null ? 0 : Math.max(0, requests - last);
+            Double share = shares.get(provider);
+            share = provider.getObjectCount() == 0 ? 0 : (share == null ? recent : (share + recent) / 2);
+            shares.put(provider, share);
+            totalShare += share;
+            sharing++;
+        }
+
+        available = Math.max(0, available);
+        for (IBudgetedCacheProvider provider : providers)
+        {
+            Double share = shares.get(provider);
+            if (share == null)
+                continue;
+
+            // idle caches are not starved out completely, so they could get requests to claim their share
+            provider.getBudgetedCache().updateCapacity((long) (available * (share + 1) / (totalShare + sharing)));
+        }
+
+        if (logger.isDebugEnabled())
+            logger.debug("Rebalanced " + available + " bytes between " + sharing + " caches");
+    }
+
+    public long getBudgetInBytes()
+    {
+        return budget;
+    }
+
+    public void setBudgetInBytes(long budget)
+    {
+        this.budget = budget;
+        rebalance();
+    }
+
+    public long getSizeInBytes()
+    {
+        long size = 0;
+        for (IBudgetedCacheProvider provider : providers)
+        {
+            size += provider.getBudgetedCache().getSizeInBytes();
+        }
+        return size;
+    }
+
+    public int getCacheCount()
+    {
+        return providers.size();
+    }
+}
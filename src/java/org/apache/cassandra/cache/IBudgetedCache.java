@@ -0,0 +1,42 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+/**
+ * Cache, which capacity in bytes can be set by CacheBudget
+ */
+public interface IBudgetedCache
+{
+    /** @return true, if capacity is in bytes, false if in entries */
+    public boolean isWeighted();
+
+    public boolean isCapacitySetManually();
+
+    public long getCapacityInBytes();
+
+    public long getSizeInBytes();
+
+    /** sets capacity without marking it as set manually */
+    public void updateCapacity(long capacity);
+
+    /** total request count since cache creation */
+    public long getRequests();
+}
@@ -0,0 +1,55 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+
+import java.util.Set;
+
+/**
+ * Cache operations column family stores use, regardless of how cached values are kept.
+ */
+public interface ICache<K, V>
+{
+    public void put(K key, V value);
+
+    /** counted in hit rate statistics */
+    public V get(K key);
+
+    /** not counted in hit rate statistics */
+    public V getInternal(K key);
+
+    public void remove(K key);
+
+    public int getCapacity();
+
+    public int getSize();
+
+    public void clear();
+
+    public Set<K> getKeySet();
+
+    /**
+     * @return true, if cache keeps its own copies of values. Changes made to a value after it was put or got
+     * are not seen by cache then, so it must be updated by another put.
+     */
+    public boolean isPutCopying();
+}
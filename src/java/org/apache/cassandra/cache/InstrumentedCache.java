@@ -21,15 +21,22 @@ package org.apache.cassandra.cache;
  */
 
 
+
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap;
 
-public class InstrumentedCache<K, V>
+/**
+ * Cache with hit rate statistics. It is sized either in entries, or, when created with weigher, in bytes
+ * estimated by weigher for every entry.
+ */
+public class InstrumentedCache<K, V> implements ICache<K, V>, IBudgetedCache
 {
-    private int capacity;
-    private final ConcurrentLinkedHashMap<K, V> map;
+    private volatile long capacity;
+    private final IWeigher<K, V> weigher; // null, if capacity is in entries
+    private final ConcurrentLinkedHashMap<K, Weighted<V>> map;
+    private final AtomicLong weight = new AtomicLong(0);
     private final AtomicLong requests = new AtomicLong(0);
     private final AtomicLong hits = new AtomicLong(0);
     private final AtomicLong lastRequests = new AtomicLong(0);
@@ -37,38 +44,126 @@ public class InstrumentedCache<K, V>
     private volatile boolean capacitySetManually;
 
     public InstrumentedCache(int capacity)
+    {
+        this(capacity, null);
+    }
+
+    public InstrumentedCache(long capacity, IWeigher<K, V> weigher)
     {
         this.capacity = capacity;
-        map = ConcurrentLinkedHashMap.create(ConcurrentLinkedHashMap.EvictionPolicy.SECOND_CHANCE, capacity);
+        this.weigher = weigher;
+        // the map evicts by entry count only, so it is unbounded here and shrunk by evict() when weight exceeds capacity.
+        // it is created small, because its backing hash table is preallocated for initial capacity
+        map = ConcurrentLinkedHashMap.create(ConcurrentLinkedHashMap.EvictionPolicy.SECOND_CHANCE, 16, new ConcurrentLinkedHashMap.EvictionListener<K, Weighted<V>>()
+        {
+            public void onEviction(K key, Weighted<V> value)
+            {
+                weight.addAndGet(-value.weight);
+            }
+        });
+        map.setCapacity(Integer.MAX_VALUE);
+    }
+
+    private int weigh(K key, V value)
+    {
+        return weigher == null ? 1 : weigher.weigh(key, value);
     }
 
     public void put(K key, V value)
     {
-        map.put(key, value);
+        int w = weigh(key, value);
+        if (w > capacity)
+        {
+            // would evict everything else and itself
+            remove(key);
+            return;
+        }
+
+        Weighted<V> old = map.put(key, new Weighted<V>(value, w));
+        weight.addAndGet(old == null ? w : w - old.weight);
+        evict();
+    }
+
+    /**
+     * evicts entries in order of map eviction policy, until weight is within capacity
+     */
+    private void evict()
+    {
+        if (weight.get() <= capacity)
+            return;
+
+        synchronized (map)
+        {
+            while (weight.get() > capacity && map.size() > 0)
+            {
+                map.setCapacity(map.size() - 1);
+            }
+            map.setCapacity(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * accounts change of weight of cached value, which was modified in place
+     */
+    public void addWeight(K key, int delta)
+    {
+        while (true)
+        {
+            Weighted<V> old = map.get(key);
+            if (old == null)
+                return;
+            if (map.replace(key, old, new Weighted<V>(old.value, old.weight + delta)))
+                break;
+        }
+        weight.addAndGet(delta);
+        evict();
     }
 
     public V get(K key)
     {
-        V v = map.get(key);
+        Weighted<V> v = map.get(key);
         requests.incrementAndGet();
-        if (v != null)
-            hits.incrementAndGet();
-        return v;
+        if (v == null)
+            return null;
+
+        hits.incrementAndGet();
+        return v.value;
     }
 
     public V getInternal(K key)
     {
-        return map.get(key);
+        Weighted<V> v = map.get(key);
+        return v == null ? null : v.value;
     }
 
     public void remove(K key)
     {
-        map.remove(key);
+        Weighted<V> old = map.remove(key);
+        if (old != null)
+            weight.addAndGet(-old.weight);
+    }
+
+    /**
+     * @return true, if capacity is in bytes, false if in entries
+     */
+    public boolean isWeighted()
+    {
+        return weigher != null;
     }
 
     public int getCapacity()
     {
-        return capacity;
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    public long getCapacityInBytes()
+    {
+        return isWeighted() ? capacity : -1;
+    }
+
+    public long getSizeInBytes()
+    {
+        return isWeighted() ? weight.get() : -1;
     }
 
     public boolean isCapacitySetManually()
@@ -76,13 +171,18 @@ public class InstrumentedCache<K, V>
         return capacitySetManually;
     }
     
-    public void updateCapacity(int capacity)
+    public void updateCapacity(long capacity)
     {
-        map.setCapacity(capacity);
         this.capacity = capacity;
+        evict();
     }
 
     public void setCapacity(int capacity)
+    {
+        setCapacityInBytes(capacity);
+    }
+
+    public void setCapacityInBytes(long capacity)
     {
         updateCapacity(capacity);
         capacitySetManually = true;
@@ -120,7 +220,10 @@ public class InstrumentedCache<K, V>
 
     public void clear()
     {
-        map.clear();
+        for (K key : map.keySet())
+        {
+            remove(key);
+        }
         requests.set(0);
         hits.set(0);
     }
@@ -129,4 +232,24 @@ public class InstrumentedCache<K, V>
     {
         return map.keySet();
     }
+
+    public boolean isPutCopying()
+    {
+        return false;
+    }
+
+    /**
+     * cached value with its weight at the time it was put, so it is accounted the same when removed
+     */
+    private static class Weighted<V>
+    {
+        final V value;
+        final int weight;
+
+        Weighted(V value, int weight)
+        {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
 }
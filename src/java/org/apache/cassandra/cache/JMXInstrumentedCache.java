@@ -28,4 +28,10 @@ public class JMXInstrumentedCache<K, V> extends InstrumentedCache<K, V> implemen
         super(capacity);
         AbstractCache.registerMBean(this, table, name);
     }
+
+    public JMXInstrumentedCache(String table, String name, long capacity, IWeigher<K, V> weigher)
+    {
+        super(capacity, weigher);
+        AbstractCache.registerMBean(this, table, name);
+    }
 }
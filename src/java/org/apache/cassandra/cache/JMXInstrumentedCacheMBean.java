@@ -27,6 +27,13 @@ public interface JMXInstrumentedCacheMBean
     public void setCapacity(int capacity);
     public int getSize();
 
+    /** maximum size of entries of cache sized in bytes, -1 for cache sized in entries */
+    public long getCapacityInBytes();
+    /** same as setCapacity, for caches sized in bytes */
+    public void setCapacityInBytes(long capacity);
+    /** estimated size of entries of cache sized in bytes, -1 for cache sized in entries */
+    public long getSizeInBytes();
+
     /** total request count since cache creation */
     public long getRequests();
 
@@ -0,0 +1,460 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.io.*;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.io.SSTable;
+import org.apache.cassandra.utils.BloomFilter;
+
+/**
+ * Cache of positions of keys in sstables of a column family. Unlike InstrumentedCache of (file name, key) pairs,
+ * it keeps neither keys nor objects: an entry is the 64 bit murmur hash of the key, the generation of the sstable,
+ * the position and size of the row, in parallel primitive arrays of an open addressing hash table. 32 bits of
+ * the second murmur hash of the key are kept too and must match as well, so two keys would be mistaken for each
+ * other only if 96 bits of their hashes collide. Both hashes are computed once per key for bloom filter probes
+ * anyway, so lookups compute nothing and allocate nothing but the returned position.
+ *
+ * Table is split into segments locked on their own; every segment evicts by second chance (clock) policy and
+ * grows up to its share of capacity. Capacity is either in entries, or, when cache is weighted, in bytes.
+ */
+public class KeyCache implements JMXInstrumentedCacheMBean, IBudgetedCache
+{
+    /** bytes of a slot: hash, check, generation, position, size and clock state */
+    private static final int SLOT_SIZE = 8 + 4 + 4 + 8 + 4 + 1;
+    private static final float LOAD_FACTOR = 0.75f;
+    /** estimated java heap used per cached entry, counting free slots */
+    public static final int ENTRY_SIZE = (int) Math.ceil(SLOT_SIZE / LOAD_FACTOR);
+
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+    private static final int MIN_SLOTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final boolean weighted;
+    private volatile long capacity;
+    private volatile boolean capacitySetManually;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong lastRequests = new AtomicLong(0);
+    private final AtomicLong lastHits = new AtomicLong(0);
+
+    /**
+     * @param capacity max entries, or bytes if weighted
+     */
+    public KeyCache(long capacity, boolean weighted)
+    {
+        this.weighted = weighted;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment();
+        updateCapacity(capacity);
+    }
+
+    public KeyCache(String table, String name, long capacity, boolean weighted)
+    {
+        this(capacity, weighted);
+        AbstractCache.registerMBean(this, table, name);
+    }
+
+    /**
+     * murmur fmix64 of hash mixed with generation: top bits select segment, the rest the home slot in it
+     */
+    private static long mix(long hash, int generation)
+    {
+        long h = hash ^ (generation * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Segment segmentFor(long mixed)
+    {
+        return segments[(int) (mixed >>> (64 - SEGMENT_SHIFT))];
+    }
+
+    /**
+     * @return cached position of key in sstable of generation, or null. Counted in hit rate statistics
+     */
+    public SSTable.PositionSize get(BloomFilter.KeyHash key, int generation)
+    {
+        requests.incrementAndGet();
+        SSTable.PositionSize position = getInternal(key, generation);
+        if (position != null)
+            hits.incrementAndGet();
+        return position;
+    }
+
+    /**
+     * same as get, but not counted in hit rate statistics
+     */
+    public SSTable.PositionSize getInternal(BloomFilter.KeyHash key, int generation)
+    {
+        long mixed = mix(key.hash1, generation);
+        return segmentFor(mixed).get(mixed, key.hash1, (int) key.hash2, generation);
+    }
+
+    public void put(BloomFilter.KeyHash key, int generation, SSTable.PositionSize position)
+    {
+        put(key.hash1, (int) key.hash2, generation, position.position, position.size);
+    }
+
+    private void put(long hash, int check, int generation, long position, long size)
+    {
+        // slots keep sizes in 32 bits; rows of 2Gb and more are not worth a wider slot, so they are not cached
+        if (size > Integer.MAX_VALUE)
+            return;
+        assert size >= 0 : size;
+        long mixed = mix(hash, generation);
+        segmentFor(mixed).put(mixed, hash, check, generation, position, (int) size);
+    }
+
+    private long maxEntries()
+    {
+        return weighted ? capacity / ENTRY_SIZE : capacity;
+    }
+
+    public boolean isWeighted()
+    {
+        return weighted;
+    }
+
+    public int getCapacity()
+    {
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    public long getCapacityInBytes()
+    {
+        return weighted ? capacity : -1;
+    }
+
+    public long getSizeInBytes()
+    {
+        return weighted ? (long) getSize() * ENTRY_SIZE : -1;
+    }
+
+    public boolean isCapacitySetManually()
+    {
+        return capacitySetManually;
+    }
+
+    public void updateCapacity(long capacity)
+    {
+        this.capacity = capacity;
+        // segments split max entries exactly, the first ones take the remainder
+        long entries = maxEntries();
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i].setMaxEntries((int) Math.min(entries / SEGMENTS + (i < entries % SEGMENTS ? 1 : 0), Integer.MAX_VALUE));
+    }
+
+    public void setCapacity(int capacity)
+    {
+        setCapacityInBytes(capacity);
+    }
+
+    public void setCapacityInBytes(long capacity)
+    {
+        updateCapacity(capacity);
+        capacitySetManually = true;
+    }
+
+    public int getSize()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    public double getRecentHitRate()
+    {
+        long r = requests.get();
+        long h = hits.get();
+        try
+        {
+            return ((double)(h - lastHits.get())) / (r - lastRequests.get());
+        }
+        finally
+        {
+            lastRequests.set(r);
+            lastHits.set(h);
+        }
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+        requests.set(0);
+        hits.set(0);
+    }
+
+    /**
+     * writes entries of sstables of the given generations
+     */
+    public void write(DataOutput out, Set<Integer> generations) throws IOException
+    {
+        for (Segment segment : segments)
+            segment.write(out, generations);
+    }
+
+    /**
+     * puts entries of sstables of the given generations, written by write, as long as there is capacity for them
+     * @return number of entries put
+     */
+    public int read(DataInput in, Set<Integer> generations) throws IOException
+    {
+        int count = 0;
+        while (true)
+        {
+            long hash;
+            try
+            {
+                hash = in.readLong();
+            }
+            catch (EOFException e)
+            {
+                return count;
+            }
+            int check = in.readInt();
+            int generation = in.readInt();
+            long position = in.readLong();
+            int size = in.readInt();
+            if (generations.contains(generation) && getSize() < maxEntries())
+            {
+                put(hash, check, generation, position, size);
+                count++;
+            }
+        }
+    }
+
+    private static class Segment
+    {
+        private static final byte EMPTY = 0, PRESENT = 1, REFERENCED = 2;
+
+        private long[] hashes = new long[0];
+        private int[] checks = new int[0];
+        private int[] generations = new int[0];
+        private long[] positions = new long[0];
+        private int[] sizes = new int[0];
+        private byte[] states = new byte[0];
+
+        private volatile int size;
+        private int maxEntries;
+        private int hand;
+
+        private static int slotsFor(int entries)
+        {
+            return Math.max(MIN_SLOTS, (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(entries / LOAD_FACTOR) + 1));
+        }
+
+        private int home(long mixed)
+        {
+            return (int) ((mixed & (-1L >>> SEGMENT_SHIFT)) % states.length);
+        }
+
+        synchronized SSTable.PositionSize get(long mixed, long hash, int check, int generation)
+        {
+            if (size == 0)
+                return null;
+            int i = home(mixed);
+            while (states[i] != EMPTY)
+            {
+                if (hashes[i] == hash && generations[i] == generation)
+                {
+                    if (checks[i] != check)
+                        return null;
+                    states[i] = REFERENCED;
+                    return new SSTable.PositionSize(positions[i], sizes[i]);
+                }
+                i = next(i);
+            }
+            return null;
+        }
+
+        synchronized void put(long mixed, long hash, int check, int generation, long position, int size)
+        {
+            if (maxEntries == 0)
+                return;
+
+            if (this.size > 0)
+            {
+                int i = home(mixed);
+                while (states[i] != EMPTY)
+                {
+                    if (hashes[i] == hash && generations[i] == generation)
+                    {
+                        set(i, hash, check, generation, position, size);
+                        return;
+                    }
+                    i = next(i);
+                }
+            }
+
+            if (this.size >= maxEntries)
+                evict();
+            else if (this.size + 1 > states.length * LOAD_FACTOR)
+                resize(Math.min(slotsFor(maxEntries), Math.max(MIN_SLOTS, states.length * 2)));
+
+            int i = home(mixed);
+            while (states[i] != EMPTY)
+                i = next(i);
+            set(i, hash, check, generation, position, size);
+            this.size++;
+        }
+
+        private void set(int i, long hash, int check, int generation, long position, int size)
+        {
+            hashes[i] = hash;
+            checks[i] = check;
+            generations[i] = generation;
+            positions[i] = position;
+            sizes[i] = size;
+            states[i] = PRESENT;
+        }
+
+        private int next(int i)
+        {
+            return i + 1 == states.length ? 0 : i + 1;
+        }
+
+        /**
+         * removes the first entry found by clock hand, which was not referenced since the hand passed it last time
+         */
+        private void evict()
+        {
+            while (true)
+            {
+                hand = next(hand);
+                if (states[hand] == REFERENCED)
+                    states[hand] = PRESENT;
+                else if (states[hand] == PRESENT)
+                {
+                    removeAt(hand);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * removes entry from slot, shifting back entries after it, which would not be found past the freed slot
+         */
+        private void removeAt(int free)
+        {
+            int i = free;
+            while (true)
+            {
+                i = next(i);
+                if (states[i] == EMPTY)
+                    break;
+                int home = home(mix(hashes[i], generations[i]));
+                // entry stays, if its home slot is cyclically in (free, i]
+                if (free <= i ? (free < home && home <= i) : (free < home || home <= i))
+                    continue;
+                set(free, hashes[i], checks[i], generations[i], positions[i], sizes[i]);
+                states[free] = states[i];
+                free = i;
+            }
+            states[free] = EMPTY;
+            size--;
+        }
+
+        synchronized void setMaxEntries(int maxEntries)
+        {
+            this.maxEntries = maxEntries;
+            while (size > maxEntries)
+                evict();
+            // give memory back, if capacity shrank a lot
+            if (states.length > 2 * slotsFor(maxEntries))
+                resize(slotsFor(Math.max(size, maxEntries)));
+        }
+
+        private void resize(int slots)
+        {
+            long[] oldHashes = hashes;
+            int[] oldChecks = checks, oldGenerations = generations, oldSizes = sizes;
+            long[] oldPositions = positions;
+            byte[] oldStates = states;
+
+            hashes = new long[slots];
+            checks = new int[slots];
+            generations = new int[slots];
+            positions = new long[slots];
+            sizes = new int[slots];
+            states = new byte[slots];
+            hand = 0;
+
+            for (int j = 0; j < oldStates.length; j++)
+            {
+                if (oldStates[j] == EMPTY)
+                    continue;
+                int i = home(mix(oldHashes[j], oldGenerations[j]));
+                while (states[i] != EMPTY)
+                    i = next(i);
+                set(i, oldHashes[j], oldChecks[j], oldGenerations[j], oldPositions[j], oldSizes[j]);
+                states[i] = oldStates[j];
+            }
+        }
+
+        synchronized void clear()
+        {
+            hashes = new long[0];
+            checks = new int[0];
+            generations = new int[0];
+            positions = new long[0];
+            sizes = new int[0];
+            states = new byte[0];
+            size = 0;
+            hand = 0;
+        }
+
+        synchronized void write(DataOutput out, Set<Integer> liveGenerations) throws IOException
+        {
+            for (int i = 0; i < states.length; i++)
+            {
+                if (states[i] == EMPTY || !liveGenerations.contains(generations[i]))
+                    continue;
+                out.writeLong(hashes[i]);
+                out.writeInt(checks[i]);
+                out.writeInt(generations[i]);
+                out.writeLong(positions[i]);
+                out.writeInt(sizes[i]);
+            }
+        }
+    }
+}
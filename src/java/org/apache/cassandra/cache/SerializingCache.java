@@ -0,0 +1,200 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.cassandra.io.ICompactSerializer2;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+/**
+ * Cache, which keeps values serialized into byte arrays instead of live objects. A serialized value is several times
+ * smaller than its object graph and is a single object for garbage collector, so the same heap holds more entries
+ * and costs less to collect.
+ *
+ * Capacity is in bytes of serialized values plus estimated per entry overhead, not in entries. getCapacity and
+ * setCapacity of JMXInstrumentedCacheMBean are in bytes too.
+ *
+ * Every get deserializes a new copy of value, so its changes must be put back to be seen by cache.
+ */
+public class SerializingCache<K, V> implements ICache<K, V>, JMXInstrumentedCacheMBean
+{
+    /** estimated memory used by map entry and array header, in addition to serialized value */
+    static final int ENTRY_OVERHEAD = 64;
+
+    private static final ThreadLocal<DataOutputBuffer> serializeBuffer = new ThreadLocal<DataOutputBuffer>()
+    {
+        @Override
+        protected DataOutputBuffer initialValue()
+        {
+            return new DataOutputBuffer();
+        }
+    };
+
+    private final ICompactSerializer2<V> serializer;
+    private final InstrumentedCache<K, byte[]> cache;
+
+    public SerializingCache(String table, String name, ICompactSerializer2<V> serializer, long capacity)
+    {
+        this(serializer, capacity);
+        AbstractCache.registerMBean(this, table, name);
+    }
+
+    SerializingCache(ICompactSerializer2<V> serializer, long capacity)
+    {
+        this.serializer = serializer;
+        this.cache = new InstrumentedCache<K, byte[]>(capacity, new IWeigher<K, byte[]>()
+        {
+            public int weigh(K key, byte[] value)
+            {
+                return value.length + ENTRY_OVERHEAD;
+            }
+        });
+    }
+
+    /**
+     * @return cache of serialized values, which does actual caching
+     */
+    public InstrumentedCache<K, byte[]> getSerializedCache()
+    {
+        return cache;
+    }
+
+    public void put(K key, V value)
+    {
+        DataOutputBuffer buffer = serializeBuffer.get();
+        buffer.reset();
+        try
+        {
+            serializer.serialize(value, buffer);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        cache.put(key, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+    }
+
+    public V get(K key)
+    {
+        DataInput in = getSerialized(key);
+        return in == null ? null : deserialize(in);
+    }
+
+    /**
+     * @return serialized value to read it partially, or null if key is not cached. Counted in hit rate statistics.
+     */
+    public DataInput getSerialized(K key)
+    {
+        byte[] bytes = cache.get(key);
+        return bytes == null ? null : new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    public V getInternal(K key)
+    {
+        byte[] bytes = cache.getInternal(key);
+        return bytes == null ? null : deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private V deserialize(DataInput in)
+    {
+        try
+        {
+            return serializer.deserialize(in);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    public void remove(K key)
+    {
+        cache.remove(key);
+    }
+
+    public boolean isPutCopying()
+    {
+        return true;
+    }
+
+    public long getCapacityInBytes()
+    {
+        return cache.getCapacityInBytes();
+    }
+
+    public void setCapacityInBytes(long capacity)
+    {
+        cache.setCapacityInBytes(capacity);
+    }
+
+    public long getSizeInBytes()
+    {
+        return cache.getSizeInBytes();
+    }
+
+    public int getCapacity()
+    {
+        return cache.getCapacity();
+    }
+
+    public void setCapacity(int capacity)
+    {
+        cache.setCapacity(capacity);
+    }
+
+    public int getSize()
+    {
+        return cache.getSize();
+    }
+
+    public long getHits()
+    {
+        return cache.getHits();
+    }
+
+    public long getRequests()
+    {
+        return cache.getRequests();
+    }
+
+    public double getRecentHitRate()
+    {
+        return cache.getRecentHitRate();
+    }
+
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    public Set<K> getKeySet()
+    {
+        return cache.getKeySet();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.concurrent;
+
+/**
+ * Task, which is of no use if it starts after a deadline. JMXEnabledThreadPoolExecutor drops such tasks instead of
+ * running them, and records how long they waited in its queue.
+ */
+public interface IDeadlineTask extends Runnable
+{
+    /**
+     * @return System.nanoTime() of when the task was submitted
+     */
+    public long getQueuedAtNanos();
+
+    /**
+     * @return System.currentTimeMillis() after which the task must not run, or Long.MAX_VALUE if it never expires
+     */
+    public long getDeadline();
+
+    /**
+     * @return kind of the task, which dropped tasks are counted by
+     */
+    public String getKind();
+
+    /**
+     * called instead of run(), when the task is dropped
+     */
+    public void expired();
+}
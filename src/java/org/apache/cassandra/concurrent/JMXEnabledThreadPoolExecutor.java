@@ -19,13 +19,19 @@
 package org.apache.cassandra.concurrent;
 
 import java.lang.management.ManagementFactory;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import org.apache.cassandra.utils.LatencyTracker;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
 /**
  * This is a wrapper class for the <i>ScheduledThreadPoolExecutor</i>. It provides an implementation
  * for the <i>afterExecute()</i> found in the <i>ThreadPoolExecutor</i> class to log any unexpected 
@@ -35,6 +41,8 @@ import javax.management.ObjectName;
 public class JMXEnabledThreadPoolExecutor extends DebuggableThreadPoolExecutor implements JMXEnabledThreadPoolExecutorMBean
 {
     private final String mbeanName;
+    private final LatencyTracker queueWait = new LatencyTracker();
+    private final NonBlockingHashMap<String, AtomicLong> droppedTasks = new NonBlockingHashMap<String, AtomicLong>();
 
     public JMXEnabledThreadPoolExecutor(String threadPoolName)
     {
@@ -104,6 +112,45 @@ public class JMXEnabledThreadPoolExecutor extends DebuggableThreadPoolExecutor i
         return super.shutdownNow();
     }
 
+    /**
+     * Tasks with a deadline are checked against it when a thread takes them from the queue
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        super.execute(task instanceof IDeadlineTask ? new DeadlineChecker((IDeadlineTask) task) : task);
+    }
+
+    private void dropped(IDeadlineTask task)
+    {
+        AtomicLong dropped = droppedTasks.get(task.getKind());
+        if (dropped == null)
+        {
+            droppedTasks.putIfAbsent(task.getKind(), new AtomicLong());
+            dropped = droppedTasks.get(task.getKind());
+        }
+        dropped.incrementAndGet();
+        task.expired();
+    }
+
+    public Map<String, Long> getDroppedTasks()
+    {
+        Map<String, Long> dropped = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : droppedTasks.entrySet())
+            dropped.put(entry.getKey(), entry.getValue().get());
+        return dropped;
+    }
+
+    public long[] getRecentQueueWaitHistogramMicros()
+    {
+        return queueWait.getRecentLatencyHistogramMicros();
+    }
+
+    public long[] getTotalQueueWaitHistogramMicros()
+    {
+        return queueWait.getTotalLatencyHistogramMicros();
+    }
+
     /**
      * Get the number of completed tasks
      */
@@ -119,4 +166,23 @@ public class JMXEnabledThreadPoolExecutor extends DebuggableThreadPoolExecutor i
     {
         return getTaskCount() - getCompletedTaskCount();
     }
+
+    private class DeadlineChecker implements Runnable
+    {
+        private final IDeadlineTask task;
+
+        DeadlineChecker(IDeadlineTask task)
+        {
+            this.task = task;
+        }
+
+        public void run()
+        {
+            queueWait.addNano(System.nanoTime() - task.getQueuedAtNanos());
+            if (System.currentTimeMillis() > task.getDeadline())
+                dropped(task);
+            else
+                task.run();
+        }
+    }
 }
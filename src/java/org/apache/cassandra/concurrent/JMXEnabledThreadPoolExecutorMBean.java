@@ -18,6 +18,18 @@
 */
 package org.apache.cassandra.concurrent;
 
+import java.util.Map;
+
 public interface JMXEnabledThreadPoolExecutorMBean extends IExecutorMBean
 {
-}
\ No newline at end of file
+    /**
+     * Get the number of tasks dropped after waiting in queue past their deadline, by kind of task
+     */
+    public Map<String, Long> getDroppedTasks();
+
+    /**
+     * Get times tasks waited in queue before running
+     */
+    public long[] getRecentQueueWaitHistogramMicros();
+    public long[] getTotalQueueWaitHistogramMicros();
+}
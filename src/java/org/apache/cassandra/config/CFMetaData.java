@@ -56,13 +56,49 @@ public final class CFMetaData
     
     /** MM: row processor descriptors **/
     public final List<Pair<Class<? extends IRowProcessor>,Properties>> rowProcessors;
+
+    /** MM: where live memtable keeps its columns **/
+    public final DatabaseDescriptor.MemtableAllocation memtableAllocation;
+
+    /** MM: are new sstable bloom filters written in cache line blocked format **/
+    public final boolean blockedBloomFilter;
+
+    /** MM: rows in this many sstables or more are looked up in parallel. 0 - never **/
+    public final int parallelReadThreshold;
+
+    /** MM: how row cache keeps rows **/
+    public final DatabaseDescriptor.RowCacheProvider rowCacheProvider;
+
+    /** MM: size of row cache in bytes, overrides rowCacheSize. 0 - not set **/
+    public final int rowCacheSizeInMB;
+
+    /** MM: size of key cache in bytes, overrides keyCacheSize. 0 - not set **/
+    public final int keyCacheSizeInMB;
+
+    /** MM: when reads of this CF are sent to one more replica, if the ones asked are slow to respond **/
+    public final SpeculativeRetry speculativeRetry;
+
+    /** MM: size of cache of column indexes of wide rows read from sstables in bytes. 0 - no cache **/
+    public final int columnIndexCacheSizeInMB;
+
+    /** MM: length of uncompressed chunks of compressed sstable data files in KB. 0 - data files are not compressed **/
+    public final int compressionChunkSizeInKB;
     
     CFMetaData(String tableName, String cfName, String columnType, AbstractType comparator, AbstractType subcolumnComparator,
                boolean bloomColumns,
                String comment, double rowCacheSize, double keyCacheSize, int rowCacheSavePeriodInSeconds, int keyCacheSavePeriodInSeconds,
                boolean domainSplit, String domainCFName, Token domainMin, Token domainMax,
                int gcGraceSeconds,
-               List<Pair<Class<? extends IRowProcessor>,Properties>> rowProcClasses
+               List<Pair<Class<? extends IRowProcessor>,Properties>> rowProcClasses,
+               DatabaseDescriptor.MemtableAllocation memtableAllocation,
+               boolean blockedBloomFilter,
+               int parallelReadThreshold,
+               DatabaseDescriptor.RowCacheProvider rowCacheProvider,
+               int rowCacheSizeInMB,
+               int keyCacheSizeInMB,
+               SpeculativeRetry speculativeRetry,
+               int columnIndexCacheSizeInMB,
+               int compressionChunkSizeInKB
                )
     {
         this.tableName = tableName;
@@ -84,6 +120,15 @@ public final class CFMetaData
         this.gcGraceSeconds = gcGraceSeconds;
         
         this.rowProcessors = rowProcClasses;
+        this.memtableAllocation = memtableAllocation;
+        this.blockedBloomFilter = blockedBloomFilter;
+        this.parallelReadThreshold = parallelReadThreshold;
+        this.rowCacheProvider = rowCacheProvider;
+        this.rowCacheSizeInMB = rowCacheSizeInMB;
+        this.keyCacheSizeInMB = keyCacheSizeInMB;
+        this.speculativeRetry = speculativeRetry;
+        this.columnIndexCacheSizeInMB = columnIndexCacheSizeInMB;
+        this.compressionChunkSizeInKB = compressionChunkSizeInKB;
     }
 
     // a quick and dirty pretty printer for describing the column family...
@@ -112,7 +157,90 @@ public final class CFMetaData
                 && other.keyCacheSavePeriodInSeconds == keyCacheSavePeriodInSeconds
                 && other.domainSplit == domainSplit
                 && other.domainCFName.equals(domainCFName)
-                && other.domainMinToken.compareTo( domainMinToken )==0;
+                && other.domainMinToken.compareTo( domainMinToken )==0
+                && other.memtableAllocation == memtableAllocation
+                && other.blockedBloomFilter == blockedBloomFilter
+                && other.parallelReadThreshold == parallelReadThreshold
+                && other.rowCacheProvider == rowCacheProvider
+                && other.rowCacheSizeInMB == rowCacheSizeInMB
+                && other.keyCacheSizeInMB == keyCacheSizeInMB
+                && other.speculativeRetry.equals(speculativeRetry)
+                && other.columnIndexCacheSizeInMB == columnIndexCacheSizeInMB
+                && other.compressionChunkSizeInKB == compressionChunkSizeInKB;
+    }
+
+    /**
+     * Speculative retry policy: none, a fixed delay ("50ms") or a percentile of recent read latency of
+     * the column family ("99percentile").
+     */
+    public static final class SpeculativeRetry
+    {
+        public enum Type { NONE, FIXED, PERCENTILE }
+
+        public static final SpeculativeRetry NONE = new SpeculativeRetry(Type.NONE, 0);
+
+        public final Type type;
+        /** milliseconds for FIXED, percentile for PERCENTILE */
+        public final double value;
+
+        private SpeculativeRetry(Type type, double value)
+        {
+            this.type = type;
+            this.value = value;
+        }
+
+        public static SpeculativeRetry fromString(String policy) throws ConfigurationException
+        {
+            String lower = policy.trim().toLowerCase();
+            try
+            {
+                if (lower.equals("none"))
+                    return NONE;
+                if (lower.endsWith("ms"))
+                {
+                    long millis = Long.parseLong(lower.substring(0, lower.length() - 2).trim());
+                    if (millis > 0)
+                        return new SpeculativeRetry(Type.FIXED, millis);
+                }
+                else if (lower.endsWith("percentile"))
+                {
+                    double percentile = Double.parseDouble(lower.substring(0, lower.length() - "percentile".length()).trim());
+                    if (percentile > 0 && percentile < 100)
+                        return new SpeculativeRetry(Type.PERCENTILE, percentile);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                // reported below
+            }
+            throw new ConfigurationException("SpeculativeRetry must be 'none', a positive number of milliseconds like '50ms' or a percentile like '99percentile', but was " + policy);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof SpeculativeRetry))
+                return false;
+            SpeculativeRetry other = (SpeculativeRetry) obj;
+            return other.type == type && other.value == value;
+        }
+
+        public int hashCode()
+        {
+            return type.hashCode() * 31 + (int) value;
+        }
+
+        public String toString()
+        {
+            switch (type)
+            {
+                case FIXED:
+                    return (long) value + "ms";
+                case PERCENTILE:
+                    return value + "percentile";
+                default:
+                    return "none";
+            }
+        }
     }
 
 }
@@ -84,7 +84,8 @@ public class DatabaseDescriptor
     // don't capitalize these; we need them to match what's in the config file for CLS.valueOf to parse
     public static enum CommitLogSync {
         periodic,
-        batch
+        batch,
+        group
     }
 
     public static enum DiskAccessMode {
@@ -95,6 +96,48 @@ public class DatabaseDescriptor
         standard,
     }
 
+    /**
+     * How live memtables keep column data:
+     * heap - as Column objects (classic);
+     * slab - serialized into large pooled on-heap regions;
+     * offheap - serialized into large direct (off-heap) regions.
+     */
+    public static enum MemtableAllocation {
+        heap,
+        slab,
+        offheap
+    }
+
+    /**
+     * How row cache keeps cached rows:
+     * live - as ColumnFamily objects, up to RowsCached rows (classic);
+     * serializing - serialized into byte arrays, up to RowCacheSizeInMB megabytes.
+     */
+    public static enum RowCacheProvider {
+        live,
+        serializing
+    }
+
+    public static enum InternodeTransport {
+        socket,
+        nio
+    }
+
+    public static enum InternodeCompression {
+        none,
+        all,
+        dc
+    }
+
+    /* classes of messages, each sent over its own connection to a peer */
+    public static enum OutboundLane {
+        response,
+        gossip,
+        read,
+        write,
+        bulk
+    }
+
     public static final String random = "RANDOM";
     public static final String ophf = "OPHF";
     private static int storagePort = 7000;
@@ -127,7 +170,23 @@ public class DatabaseDescriptor
     private static String savedCachesDirectory;
     private static int consistencyThreads = 4; // not configurable
     private static int concurrentReaders = 8;
+    /* threads looking up sstables of a row in parallel, for column families with ParallelReadThreshold set */
+    private static int parallelSSTableReaders = -1;
     private static int concurrentWriters = 32;
+    private static InternodeTransport internodeTransport = InternodeTransport.socket;
+    private static int internodeIOThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static InternodeCompression internodeCompression = InternodeCompression.none;
+    private static int internodeCompressionThreshold = 1024;
+    /* max messages queued to a peer in every lane; 0 is unbounded */
+    private static final Map<OutboundLane, Integer> outboundQueueSizes = new EnumMap<OutboundLane, Integer>(OutboundLane.class);
+    private static int commitLogReplayThreads = Runtime.getRuntime().availableProcessors();
+    /* max keys read from a replica in a single message; 1 sends every key in its own */
+    private static int multiReadBatchSize = 1;
+    /* max token ranges a range slice queries at once */
+    private static volatile int rangeSliceConcurrency = 1;
+    /* memory shared by key and row caches of column families, which do not set their own size in bytes */
+    private static long keyCacheBudgetInMB = 0;
+    private static long rowCacheBudgetInMB = 0;
 
     private static int minimumCompactionThreshold = 4; // compact this many sstables min at a time
     private static int maximumCompactionThreshold = 32; // compact this many sstables max at a time
@@ -182,12 +241,15 @@ public class DatabaseDescriptor
     private static int commitLogSyncPeriodMS;
     private static int maxCommitLogSegmentsActive=4;
     private static boolean logFileCompression;
+    private static DiskAccessMode commitLogAccessMode = DiskAccessMode.standard;
 
     private static DiskAccessMode diskAccessMode;
     private static DiskAccessMode indexAccessMode;
     private static boolean diskRandomHint = false;
 
     private static boolean snapshotBeforeCompaction;
+    /* if true, received reads and writes expire rpc timeout after the sender created them, by sender's clock */
+    private static boolean crossNodeTimeout = false;
     private static boolean autoBootstrap = false;
     private static boolean manualBootstrapComplete = false;
     
@@ -286,13 +348,13 @@ public class DatabaseDescriptor
             }
             catch (IllegalArgumentException e)
             {
-                throw new ConfigurationException("CommitLogSync must be either 'periodic' or 'batch'");
+                throw new ConfigurationException("CommitLogSync must be either 'periodic', 'batch' or 'group'");
             }
             if (commitLogSync == null)
             {
                 throw new ConfigurationException("Missing required directive CommitLogSync");
             }
-            else if (commitLogSync == CommitLogSync.batch)
+            else if (commitLogSync == CommitLogSync.batch || commitLogSync == CommitLogSync.group)
             {
                 try
                 {
@@ -302,9 +364,13 @@ public class DatabaseDescriptor
                 {
                     throw new ConfigurationException("Unrecognized value for CommitLogSyncBatchWindowInMS.  Double expected.");
                 }
+                if (commitLogSyncBatchMS < 0)
+                {
+                    throw new ConfigurationException("CommitLogSyncBatchWindowInMS must be non negative");
+                }
                 if (xmlUtils.getNodeValue("/Storage/CommitLogSyncPeriodInMS") != null)
                 {
-                    throw new ConfigurationException("Batch sync specified, but CommitLogSyncPeriodInMS found.  Only specify CommitLogSyncBatchWindowInMS when using batch sync.");
+                    throw new ConfigurationException("Batch sync specified, but CommitLogSyncPeriodInMS found.  Only specify CommitLogSyncBatchWindowInMS when using batch or group sync.");
                 }
                 logger.debug("Syncing log with a batch window of " + commitLogSyncBatchMS);
             }
@@ -357,6 +423,19 @@ public class DatabaseDescriptor
                 }
             }
 
+            String clModeRaw = xmlUtils.getNodeValue("/Storage/CommitLogAccessMode");
+            if (clModeRaw != null)
+            {
+                if (clModeRaw.equals(DiskAccessMode.mmap.name()) || clModeRaw.equals(DiskAccessMode.standard.name()))
+                {
+                    commitLogAccessMode = DiskAccessMode.valueOf(clModeRaw);
+                }
+                else
+                {
+                    throw new ConfigurationException("CommitLogAccessMode must be either 'mmap' or 'standard'");
+                }
+            }
+
             String modeRaw = xmlUtils.getNodeValue("/Storage/DiskAccessMode");
             try
             {
@@ -471,6 +550,16 @@ public class DatabaseDescriptor
             if ( rpcTimeout != null )
                 rpcTimeoutInMillis = Integer.parseInt(rpcTimeout);
 
+            /* cross node timeout. defaults to false: deadlines of received messages count from local receive time */
+            String cnt = xmlUtils.getNodeValue("/Storage/CrossNodeTimeout");
+            if (cnt != null)
+            {
+                if (cnt.equalsIgnoreCase("true") || cnt.equalsIgnoreCase("false"))
+                    crossNodeTimeout = Boolean.valueOf(cnt);
+                else
+                    throw new ConfigurationException("Unrecognized value for CrossNodeTimeout.  Use 'true' or 'false'.");
+            }
+
             /* RPC Server Type */
             String rpcST = xmlUtils.getNodeValue("/Storage/RpcServerType");
             if ( rpcST != null )
@@ -514,6 +603,69 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("ConcurrentWrites must be at least 2");
             }
 
+            String rawParallelSSTableReaders = xmlUtils.getNodeValue("/Storage/ParallelSSTableReaders");
+            if (rawParallelSSTableReaders != null)
+            {
+                parallelSSTableReaders = Integer.parseInt(rawParallelSSTableReaders);
+                if (parallelSSTableReaders < 2)
+                {
+                    throw new ConfigurationException("ParallelSSTableReaders must be at least 2");
+                }
+            }
+            else
+            {
+                parallelSSTableReaders = concurrentReaders * 2;
+            }
+
+            String rawMultiReadBatchSize = xmlUtils.getNodeValue("/Storage/MultiReadBatchSize");
+            if (rawMultiReadBatchSize != null)
+            {
+                multiReadBatchSize = Integer.parseInt(rawMultiReadBatchSize);
+                if (multiReadBatchSize < 1)
+                {
+                    throw new ConfigurationException("MultiReadBatchSize must be at least 1");
+                }
+            }
+
+            String rawRangeSliceConcurrency = xmlUtils.getNodeValue("/Storage/RangeSliceConcurrency");
+            if (rawRangeSliceConcurrency != null)
+            {
+                rangeSliceConcurrency = Integer.parseInt(rawRangeSliceConcurrency);
+                if (rangeSliceConcurrency < 1)
+                {
+                    throw new ConfigurationException("RangeSliceConcurrency must be at least 1");
+                }
+            }
+
+            String rawReplayThreads = xmlUtils.getNodeValue("/Storage/CommitLogReplayThreads");
+            if (rawReplayThreads != null)
+            {
+                commitLogReplayThreads = Integer.parseInt(rawReplayThreads);
+                if (commitLogReplayThreads < 1)
+                {
+                    throw new ConfigurationException("CommitLogReplayThreads must be at least 1");
+                }
+            }
+
+            String rawKeyCacheBudget = xmlUtils.getNodeValue("/Storage/KeyCacheBudgetInMB");
+            if (rawKeyCacheBudget != null)
+            {
+                keyCacheBudgetInMB = Long.parseLong(rawKeyCacheBudget);
+                if (keyCacheBudgetInMB < 0)
+                {
+                    throw new ConfigurationException("KeyCacheBudgetInMB must be non negative");
+                }
+            }
+            String rawRowCacheBudget = xmlUtils.getNodeValue("/Storage/RowCacheBudgetInMB");
+            if (rawRowCacheBudget != null)
+            {
+                rowCacheBudgetInMB = Long.parseLong(rawRowCacheBudget);
+                if (rowCacheBudgetInMB < 0)
+                {
+                    throw new ConfigurationException("RowCacheBudgetInMB must be non negative");
+                }
+            }
+
             /* Compaction thresholds */
             String minimumCompactionThresholdStr = xmlUtils.getNodeValue("/Storage/MinimumCompactionThreshold");
             if (minimumCompactionThresholdStr != null)
@@ -574,6 +726,64 @@ public class DatabaseDescriptor
             if ( port != null )
                 storagePort = Integer.parseInt(port);
 
+            /* how messages are sent and received between nodes */
+            String transport = xmlUtils.getNodeValue("/Storage/InternodeTransport");
+            if (transport != null)
+            {
+                try
+                {
+                    internodeTransport = InternodeTransport.valueOf(transport);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new ConfigurationException("InternodeTransport must be either 'socket' or 'nio'");
+                }
+            }
+
+            String ioThreads = xmlUtils.getNodeValue("/Storage/InternodeIOThreads");
+            if (ioThreads != null)
+            {
+                internodeIOThreads = Integer.parseInt(ioThreads);
+                if (internodeIOThreads < 1)
+                    throw new ConfigurationException("InternodeIOThreads must be at least 1");
+            }
+
+            /* which messages are compressed: none, all or ones to other datacenters */
+            String compression = xmlUtils.getNodeValue("/Storage/InternodeCompression");
+            if (compression != null)
+            {
+                try
+                {
+                    internodeCompression = InternodeCompression.valueOf(compression);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new ConfigurationException("InternodeCompression must be one of 'none', 'all' or 'dc'");
+                }
+            }
+
+            String compressionThreshold = xmlUtils.getNodeValue("/Storage/InternodeCompressionThresholdInBytes");
+            if (compressionThreshold != null)
+            {
+                internodeCompressionThreshold = Integer.parseInt(compressionThreshold);
+                if (internodeCompressionThreshold < 0)
+                    throw new ConfigurationException("InternodeCompressionThresholdInBytes must be non-negative");
+            }
+
+            /* bounds of outbound message queues: a default and overrides for single lanes */
+            int defaultQueueSize = 0;
+            String queueSize = xmlUtils.getNodeValue("/Storage/OutboundQueueSize[not(@Lane)]");
+            if (queueSize != null)
+                defaultQueueSize = Integer.parseInt(queueSize);
+            for (OutboundLane lane : OutboundLane.values())
+            {
+                queueSize = xmlUtils.getNodeValue("/Storage/OutboundQueueSize[@Lane='" + lane.name() + "']");
+                int size = queueSize == null ? defaultQueueSize : Integer.parseInt(queueSize);
+                if (size < 0)
+                    throw new ConfigurationException("OutboundQueueSize must be non-negative");
+                outboundQueueSizes.put(lane, size);
+            }
+
             /* Local IP or hostname to bind services to */
             String listenAddr = xmlUtils.getNodeValue("/Storage/ListenAddress");
             if (listenAddr != null)
@@ -818,7 +1028,16 @@ public class DatabaseDescriptor
                                                                             SystemTable.STATUS_CF,
                                                                             null,null,
                                                                             0,
-                                                                            null
+                                                                            null,
+                                                                            MemtableAllocation.heap,
+                                                                            false,
+                                                                            0,
+                                                                            RowCacheProvider.live,
+                                                                            0,
+                                                                            0,
+                                                                            CFMetaData.SpeculativeRetry.NONE,
+                                                                            0,
+                                                                            0
                                                                             ));
 
             systemMeta.cfMetaData.put(HintedHandOffManager.HINTS_CF, new CFMetaData(Table.SYSTEM_TABLE,
@@ -836,7 +1055,16 @@ public class DatabaseDescriptor
                                                                                     HintedHandOffManager.HINTS_CF,
                                                                                     null,null,
                                                                                     0,
-                                                                                    null
+                                                                                    null,
+                                                                                    MemtableAllocation.heap,
+                                                                                    false,
+                                                                                    0,
+                                                                                    RowCacheProvider.live,
+                                                                                    0,
+                                                                                    0,
+                                                                                    CFMetaData.SpeculativeRetry.NONE,
+                                                                                    0,
+                                                                                    0
                                                                                     ));
 
             // Configured local storages
@@ -1206,6 +1434,102 @@ public class DatabaseDescriptor
                 }
             }                    
 
+            // MM: parse out memtable allocation mode for this CF
+            MemtableAllocation memtableAllocation = MemtableAllocation.heap;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "MemtableAllocation")) != null)
+            {
+                try
+                {
+                    memtableAllocation = MemtableAllocation.valueOf(value);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new ConfigurationException("MemtableAllocation must be either 'heap', 'slab' or 'offheap'");
+                }
+
+                if (memtableAllocation != MemtableAllocation.heap)
+                    logger.info("Memtable of " + cfName + " is allocated in " + memtableAllocation + " slabs");
+            }
+
+            // MM: parse out number of sstables to look up row in parallel from
+            int parallelReadThreshold = 0;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "ParallelReadThreshold")) != null)
+            {
+                parallelReadThreshold = Integer.parseInt(value);
+                if (parallelReadThreshold < 0)
+                    throw new ConfigurationException("ParallelReadThreshold must be non negative");
+                if (parallelReadThreshold > 0)
+                    logger.info("Rows of " + cfName + " are looked up in parallel, if they are in " + parallelReadThreshold + " or more sstables");
+            }
+
+            // MM: parse out bloom filter format of new sstables of this CF
+            boolean blockedBloomFilter = false;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "BlockedBloomFilter")) != null)
+            {
+                blockedBloomFilter = Boolean.valueOf(value);
+                if (blockedBloomFilter)
+                    logger.info("Bloom filters of new sstables of " + cfName + " are written in blocked format");
+            }
+
+            // MM: parse out row cache provider and its size in bytes for this CF
+            RowCacheProvider rowCacheProvider = RowCacheProvider.live;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "RowCacheProvider")) != null)
+            {
+                try
+                {
+                    rowCacheProvider = RowCacheProvider.valueOf(value);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new ConfigurationException("RowCacheProvider must be either 'live' or 'serializing'");
+                }
+            }
+            int rowCacheSizeInMB = 0;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "RowCacheSizeInMB")) != null)
+            {
+                rowCacheSizeInMB = Integer.parseInt(value);
+                if (rowCacheSizeInMB < 0)
+                    throw new ConfigurationException("RowCacheSizeInMB must be non negative");
+            }
+            if (rowCacheProvider == RowCacheProvider.serializing)
+                logger.info("Rows of " + cfName + " are cached serialized");
+
+            // MM: parse out key cache size in bytes for this CF
+            int keyCacheSizeInMB = 0;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "KeyCacheSizeInMB")) != null)
+            {
+                keyCacheSizeInMB = Integer.parseInt(value);
+                if (keyCacheSizeInMB < 0)
+                    throw new ConfigurationException("KeyCacheSizeInMB must be non negative");
+            }
+
+            // MM: parse out speculative retry policy of reads of this CF
+            CFMetaData.SpeculativeRetry speculativeRetry = CFMetaData.SpeculativeRetry.NONE;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "SpeculativeRetry")) != null)
+            {
+                speculativeRetry = CFMetaData.SpeculativeRetry.fromString(value);
+                if (speculativeRetry != CFMetaData.SpeculativeRetry.NONE)
+                    logger.info("Reads of " + cfName + " are retried on another replica after " + speculativeRetry);
+            }
+
+            // MM: parse out size of column index cache of this CF
+            int columnIndexCacheSizeInMB = 0;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "ColumnIndexCacheSizeInMB")) != null)
+            {
+                columnIndexCacheSizeInMB = Integer.parseInt(value);
+                if (columnIndexCacheSizeInMB < 0)
+                    throw new ConfigurationException("ColumnIndexCacheSizeInMB must be non negative");
+            }
+
+            // MM: parse out chunk size of compressed data files of this CF
+            int compressionChunkSizeInKB = 0;
+            if ((value = XMLUtils.getAttributeValue(columnFamily, "CompressionChunkSizeInKB")) != null)
+            {
+                compressionChunkSizeInKB = Integer.parseInt(value);
+                if (compressionChunkSizeInKB < 0)
+                    throw new ConfigurationException("CompressionChunkSizeInKB must be non negative");
+            }
+
             // Parse out user-specified logical names for the various dimensions
             // of a the column family from the config.
             String comment = xmlUtils.getNodeValue(xqlCF + "Comment");
@@ -1259,12 +1583,12 @@ public class DatabaseDescriptor
                     String postfix='_'+domainToken.toString();
                     domainToken = getPartitioner().getToken(domainToken.toString()+((char)0));
                     Token domainMax = domain==255 ? getPartitioner().getToken(Integer.toHexString(0)) : getPartitioner().getToken(Integer.toHexString(domain+1));
-                    meta.cfMetaData.put(cfName+postfix, new CFMetaData(tableName, cfName+postfix, columnType, comparator, subcolumnComparator, bloomColumns, comment, rowCacheSize, keyCacheSize, keyCacheSavePeriod, rowCacheSavePeriod, true,cfName, domainToken,domainMax,gcGraceInSeconds,processors));
+                    meta.cfMetaData.put(cfName+postfix, new CFMetaData(tableName, cfName+postfix, columnType, comparator, subcolumnComparator, bloomColumns, comment, rowCacheSize, keyCacheSize, keyCacheSavePeriod, rowCacheSavePeriod, true,cfName, domainToken,domainMax,gcGraceInSeconds,processors,memtableAllocation,blockedBloomFilter,parallelReadThreshold,rowCacheProvider,rowCacheSizeInMB,keyCacheSizeInMB,speculativeRetry,columnIndexCacheSizeInMB,compressionChunkSizeInKB));
                 }
             }
             else
             {
-                meta.cfMetaData.put(cfName, new CFMetaData(tableName, cfName, columnType, comparator, subcolumnComparator, bloomColumns, comment, rowCacheSize, keyCacheSize, keyCacheSavePeriod, rowCacheSavePeriod, false,cfName,null,null,gcGraceInSeconds,processors));
+                meta.cfMetaData.put(cfName, new CFMetaData(tableName, cfName, columnType, comparator, subcolumnComparator, bloomColumns, comment, rowCacheSize, keyCacheSize, keyCacheSavePeriod, rowCacheSavePeriod, false,cfName,null,null,gcGraceInSeconds,processors,memtableAllocation,blockedBloomFilter,parallelReadThreshold,rowCacheProvider,rowCacheSizeInMB,keyCacheSizeInMB,speculativeRetry,columnIndexCacheSizeInMB,compressionChunkSizeInKB));
             }
         }
         
@@ -1629,6 +1953,45 @@ public class DatabaseDescriptor
         return storagePort;
     }
 
+    public static InternodeTransport getInternodeTransport()
+    {
+        return internodeTransport;
+    }
+
+    public static int getInternodeIOThreads()
+    {
+        return internodeIOThreads;
+    }
+
+    /**
+     * @return max messages queued to a peer in the lane, or 0 if unbounded
+     */
+    public static int getOutboundQueueSize(OutboundLane lane)
+    {
+        Integer size = outboundQueueSizes.get(lane);
+        return size == null ? 0 : size;
+    }
+
+    public static InternodeCompression getInternodeCompression()
+    {
+        return internodeCompression;
+    }
+
+    public static void setInternodeCompression(InternodeCompression compression)
+    {
+        internodeCompression = compression;
+    }
+
+    public static int getInternodeCompressionThreshold()
+    {
+        return internodeCompressionThreshold;
+    }
+
+    public static void setInternodeCompressionThreshold(int thresholdInBytes)
+    {
+        internodeCompressionThreshold = thresholdInBytes;
+    }
+
     public static int getThriftPort()
     {
         return thriftPort;
@@ -1643,6 +2006,19 @@ public class DatabaseDescriptor
     {
         return rpcTimeoutInMillis;
     }
+
+    public static boolean isCrossNodeTimeout()
+    {
+        return crossNodeTimeout;
+    }
+
+    /**
+     * for unit tests
+     */
+    public static void setCrossNodeTimeout(boolean enabled)
+    {
+        crossNodeTimeout = enabled;
+    }
     
     public static RpcServerTypes getRpcServerType()
     {
@@ -1695,6 +2071,41 @@ public class DatabaseDescriptor
         return concurrentReaders;
     }
 
+    public static int getParallelSSTableReaders()
+    {
+        return parallelSSTableReaders;
+    }
+
+    public static int getCommitLogReplayThreads()
+    {
+        return commitLogReplayThreads;
+    }
+
+    public static int getMultiReadBatchSize()
+    {
+        return multiReadBatchSize;
+    }
+
+    public static int getRangeSliceConcurrency()
+    {
+        return rangeSliceConcurrency;
+    }
+
+    public static void setRangeSliceConcurrency(int concurrency)
+    {
+        rangeSliceConcurrency = concurrency;
+    }
+
+    public static long getKeyCacheBudgetInBytes()
+    {
+        return keyCacheBudgetInMB * 1024 * 1024;
+    }
+
+    public static long getRowCacheBudgetInBytes()
+    {
+        return rowCacheBudgetInMB * 1024 * 1024;
+    }
+
     public static int getConcurrentWriters()
     {
         return concurrentWriters;
@@ -1826,6 +2237,60 @@ public class DatabaseDescriptor
         return cfMetaData==null ? false : cfMetaData.bloomColumns;
     }
 
+    public static boolean getBlockedBloomFilter(String tableName, String cfName)
+    {
+        assert tableName != null;
+        CFMetaData cfMetaData = getCFMetaData(tableName, cfName);
+        return cfMetaData==null ? false : cfMetaData.blockedBloomFilter;
+    }
+
+    public static RowCacheProvider getRowCacheProvider(String tableName, String cfName)
+    {
+        assert tableName != null;
+        CFMetaData cfMetaData = getCFMetaData(tableName, cfName);
+        return cfMetaData==null ? RowCacheProvider.live : cfMetaData.rowCacheProvider;
+    }
+
+    /**
+     * @return size of row cache of the columnfamily in bytes, 0 if it is not sized in bytes
+     */
+    public static long getRowCacheCapacityInBytes(String tableName, String cfName)
+    {
+        assert tableName != null;
+        CFMetaData cfMetaData = getCFMetaData(tableName, cfName);
+        return cfMetaData==null ? 0 : cfMetaData.rowCacheSizeInMB * 1024L * 1024L;
+    }
+
+    /**
+     * @return size of key cache of the columnfamily in bytes, 0 if it is not sized in bytes
+     */
+    public static long getKeyCacheCapacityInBytes(String tableName, String cfName)
+    {
+        assert tableName != null;
+        CFMetaData cfMetaData = getCFMetaData(tableName, cfName);
+        return cfMetaData==null ? 0 : cfMetaData.keyCacheSizeInMB * 1024L * 1024L;
+    }
+
+    /**
+     * @return size of column index cache of the columnfamily in bytes, 0 if there is no cache
+     */
+    public static long getColumnIndexCacheCapacityInBytes(String tableName, String cfName)
+    {
+        assert tableName != null;
+        CFMetaData cfMetaData = getCFMetaData(tableName, cfName);
+        return cfMetaData==null ? 0 : cfMetaData.columnIndexCacheSizeInMB * 1024L * 1024L;
+    }
+
+    /**
+     * @return length of uncompressed chunks of compressed data files of the columnfamily in bytes, 0 if data files are not compressed
+     */
+    public static int getCompressionChunkLength(String tableName, String cfName)
+    {
+        assert tableName != null;
+        CFMetaData cfMetaData = getCFMetaData(tableName, cfName);
+        return cfMetaData==null ? 0 : cfMetaData.compressionChunkSizeInKB * 1024;
+    }
+
     /**
      * @return The absolute number of keys that should be cached per table.
      */
@@ -1878,11 +2343,24 @@ public class DatabaseDescriptor
         return commitLogSync;
     }
 
+    /**
+     * for unit tests; takes effect only if set before CommitLog is instantiated
+     */
+    public static void setCommitLogSync(CommitLogSync sync)
+    {
+        commitLogSync = sync;
+    }
+
     public static boolean isLogFileCompression()
     {
         return logFileCompression;
     }
 
+    public static DiskAccessMode getCommitLogAccessMode()
+    {
+        return commitLogAccessMode;
+    }
+
     public static DiskAccessMode getDiskAccessMode()
     {
         return diskAccessMode;
@@ -303,6 +303,34 @@ public class ColumnFamily implements IColumnContainer
         return size;
     }
 
+    /** estimated java heap used by column family (or super column) object with its empty column map */
+    static final int HEAP_OVERHEAD = 200;
+    /** estimated java heap used by column in addition to its serialized size: map node and index, object and array headers */
+    static final int COLUMN_HEAP_OVERHEAD = 104;
+
+    /**
+     * @return estimated java heap used by this column family and its columns, in bytes
+     */
+    public int heapSize()
+    {
+        return HEAP_OVERHEAD + columnsHeapSize();
+    }
+
+    /**
+     * @return estimated java heap used by columns of this column family, in bytes
+     */
+    public int columnsHeapSize()
+    {
+        long size = 0;
+        for (IColumn column : columns_.values())
+        {
+            size += COLUMN_HEAP_OVERHEAD + column.serializedSize();
+            if (column instanceof SuperColumn)
+                size += HEAP_OVERHEAD + column.getSubColumns().size() * COLUMN_HEAP_OVERHEAD;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
     public int hashCode()
     {
         return name().hashCode();
@@ -26,10 +26,12 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Collection;
 
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.ICompactSerializer2;
 import org.apache.cassandra.io.SSTableReader;
 import org.apache.cassandra.io.util.CalcSizeOutput;
+import org.apache.cassandra.utils.FBUtilities;
 
 public class ColumnFamilySerializer implements ICompactSerializer2<ColumnFamily>
 {
@@ -164,6 +166,49 @@ public class ColumnFamilySerializer implements ICompactSerializer2<ColumnFamily>
         return cf;
     }
 
+    /**
+     * deserializes column family in sstable format, merging its deletion info and columns into cf
+     */
+    public void deserializeFromSSTableInto(ColumnFamily cf, DataInput input) throws IOException
+    {
+        FBUtilities.atomicSetMax(cf.localDeletionTime, input.readInt());
+        FBUtilities.atomicSetMax(cf.markedForDeleteAt, input.readLong());
+        deserializeColumns(input, cf);
+    }
+
+    /**
+     * like deserializeFromSSTableInto, but adds only columns the filter may return. Others are skipped
+     * without materializing them.
+     */
+    public void deserializeFromSSTableInto(ColumnFamily cf, DataInput input, QueryFilter filter) throws IOException
+    {
+        FBUtilities.atomicSetMax(cf.localDeletionTime, input.readInt());
+        FBUtilities.atomicSetMax(cf.markedForDeleteAt, input.readLong());
+
+        AbstractType comparator = cf.getComparator();
+        int size = input.readInt();
+        for (int i = 0; i < size; ++i)
+        {
+            byte[] name = ColumnSerializer.readName(input);
+            boolean matches = filter.mayMatchColumn(name, comparator);
+            if (cf.isSuper())
+            {
+                SuperColumnSerializer serializer = (SuperColumnSerializer) cf.getColumnSerializer();
+                if (matches)
+                    cf.addColumn(serializer.deserialize(name, input));
+                else
+                    serializer.skip(input);
+            }
+            else
+            {
+                if (matches)
+                    cf.addColumn(Column.serializer().deserialize(name, input));
+                else
+                    Column.serializer().skip(input);
+            }
+        }
+    }
+
     public ColumnFamily deserializeFromSSTable(SSTableReader sstable, DataInput file) throws IOException
     {
         ColumnFamily cf = sstable.makeColumnFamily();
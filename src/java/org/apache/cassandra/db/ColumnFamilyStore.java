@@ -24,8 +24,10 @@ import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.management.MBeanServer;
@@ -37,6 +39,9 @@ import com.google.common.collect.Iterators;
 import org.apache.log4j.Logger;
 import org.apache.commons.collections.IteratorUtils;
 
+import org.apache.cassandra.cache.ICache;
+import org.apache.cassandra.cache.InstrumentedCache;
+import org.apache.cassandra.cache.SerializingCache;
 import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.concurrent.RetryingScheduledThreadPoolExecutor;
@@ -95,8 +100,26 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                                new NamedThreadFactory("FLUSH-WRITER-POOL",DatabaseDescriptor.getCompactionPriority()));
     public static final ExecutorService postFlushExecutor = new JMXEnabledThreadPoolExecutor("MEMTABLE-POST-FLUSHER");
 
+    /**
+     * Looks up a row in sstables in parallel, for column families with ParallelReadThreshold set.
+     * Created on first use, so nodes not using parallel reads do not start its threads.
+     */
+    private static class SSTableReaders
+    {
+        static final ExecutorService executor
+                = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getParallelSSTableReaders(),
+                                                   DatabaseDescriptor.getParallelSSTableReaders(),
+                                                   Integer.MAX_VALUE,
+                                                   TimeUnit.SECONDS,
+                                                   new LinkedBlockingQueue<Runnable>(),
+                                                   new NamedThreadFactory("SSTABLE-READ-POOL"));
+    }
+
     private static final int KEY_RANGE_FILE_BUFFER_SIZE = 256 * 1024;
 
+    private static final long SPECULATIVE_RETRY_INTERVAL_IN_MS = 1000;
+    private static final long SPECULATIVE_RETRY_MIN_READS = 100;
+
     private Set<Memtable> memtablesPendingFlush = new ConcurrentSkipListSet<Memtable>();
 
     private final String table_;
@@ -109,10 +132,21 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     /* This is used to generate the next index for a SSTable */
     private AtomicInteger fileIndexGenerator_ = new AtomicInteger(0);
+    /* sstables names reads did not look at, since they held nothing newer than the columns already found */
+    private final AtomicLong sstablesSkippedByTimestamp_ = new AtomicLong(0);
 
     /* active memtable associated with this ColumnFamilyStore. */
     private Memtable memtable_;
 
+    /**
+     * accesses to memtable_ should acquire this for thread safety.
+     * maybeSwitchMemtable aquires the writeLock; see that method for the full explanation.
+     * Only this column family is locked, so switching its memtable does not stall writes to others.
+     *
+     * (Enabling fairness in the RRWL is observed to decrease throughput, so we leave it off.)
+     */
+    final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+
     // TODO binarymemtable ops are not threadsafe (do they need to be?)
     private AtomicReference<BinaryMemtable> binaryMemtable_;
 
@@ -121,6 +155,14 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     private LatencyTracker readStats_ = new LatencyTracker();
     private LatencyTracker writeStats_ = new LatencyTracker();
+    /* time to look up row in all sstables in parallel */
+    private LatencyTracker parallelReadStats_ = new LatencyTracker();
+    /* time coordinator waited for replicas to answer reads, network round trip included */
+    private LatencyTracker coordinatorReadStats_ = new LatencyTracker();
+    /* coordinator read latency percentile of speculative retry policy, recalculated from reads since the previous calculation */
+    private volatile long speculativeRetryMillis_ = Long.MAX_VALUE;
+    private volatile long speculativeRetryCalculatedAt_;
+    private long[] speculativeRetryHistogram_;
 
     private long minRowCompactedSize = 0L;
     private long maxRowCompactedSize = 0L;
@@ -138,20 +180,20 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         metadata = DatabaseDescriptor.getCFMetaData(table, columnFamilyName);
         
         fileIndexGenerator_.set(indexValue);
-        memtable_ = new Memtable(this);
+        memtable_ = newMemtable();
         binaryMemtable_ = new AtomicReference<BinaryMemtable>(new BinaryMemtable(this));
 
         if (logger_.isDebugEnabled())
             logger_.debug("Starting CFS " + columnFamily_);
         // scan for data files corresponding to this CF
         List<File> sstableFiles = new ArrayList<File>();
-        Pattern auxFilePattern = Pattern.compile("(.*)(-Filter\\.db$|-Index\\.db$)");
+        Pattern auxFilePattern = Pattern.compile("(.*)(-Filter\\.db$|-Index\\.db$|-CompressionInfo\\.db$|-Statistics\\.db$)");
         Pattern tmpCacheFilePattern = Pattern.compile(table + "-" + columnFamilyName + "-(Key|Row)Cache.*\\.tmp$");
         for (File file : files())
         {
             String filename = file.getName();
 
-            /* look for and remove orphans. An orphan is a -Filter.db or -Index.db with no corresponding -Data.db. */
+            /* look for and remove orphans. An orphan is a -Filter.db, -Index.db, -CompressionInfo.db or -Statistics.db with no corresponding -Data.db. */
             Matcher matcher = auxFilePattern.matcher(file.getAbsolutePath());
             if (matcher.matches())
             {
@@ -186,7 +228,6 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         // scan for sstables corresponding to this cf and load them
         ssTables_ = new SSTableTracker(table, columnFamilyName);
-        Set<String> savedKeys = readSavedCache(DatabaseDescriptor.getSerializedKeyCachePath(table, columnFamilyName), false);
         List<SSTableReader> sstables = new ArrayList<SSTableReader>();
         for (File file : sstableFiles)
         {
@@ -197,7 +238,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             SSTableReader sstable;
             try
             {
-                sstable = SSTableReader.open(filename, savedKeys, ssTables_);
+                sstable = SSTableReader.open(filename, ssTables_);
             }
             catch (IOException ex)
             {
@@ -207,6 +248,20 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             sstables.add(sstable);
         }
         ssTables_.add(sstables);
+        ssTables_.loadKeyCache();
+    }
+
+    private Memtable newMemtable()
+    {
+        switch (metadata.memtableAllocation)
+        {
+            case slab:
+                return new SlabMemtable(this, false);
+            case offheap:
+                return new SlabMemtable(this, true);
+            default:
+                return new Memtable(this);
+        }
     }
 
     protected Set<String> readSavedCache(File path, boolean sort)
@@ -262,7 +317,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         long start = System.currentTimeMillis();
         for (String key : readSavedCache(DatabaseDescriptor.getSerializedRowCachePath(table_, columnFamily_), true))
         {
-            cacheRow(key);
+            cacheRow(key, new IdentityQueryFilter(key, new QueryPath(columnFamily_)));
         }
         if (ssTables_.getRowCache().getSize() > 0)
             logger_.info(String.format("completed loading (%d ms; %d keys) %s",
@@ -530,10 +585,12 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         /**
          *  If we can get the writelock, that means no new updates can come in and 
-         *  all ongoing updates to memtables have completed. We can get the tail
-         *  of the log and use it as the starting position for log replay on recovery.
+         *  all ongoing updates to this memtable have completed, together with their commit log appends.
+         *  We can get the tail of the log and use it as the starting position for log replay on recovery.
+         *  Appends of other column families may interleave, which is fine as the commit log keeps
+         *  replay positions per column family.
          */
-        Table.flusherLock.writeLock().lock();
+        switchLock.writeLock().lock();
         try
         {
             if (oldMemtable.isFrozen())
@@ -549,7 +606,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             final Future<CommitLogContext> ctx = writeCommitLog ? CommitLog.instance().getContext() : null;
 //            logger_.info(columnFamily_ + " has reached its threshold; switching in a fresh Memtable at " + ctx);
             final Condition condition = submitFlush(oldMemtable);
-            memtable_ = new Memtable(this);
+            memtable_ = newMemtable();
             // a second executor that makes sure the onMemtableFlushes get called in the right order,
             // while keeping the wait-for-flush (future.get) out of anything latency-sensitive.
             return postFlushExecutor.submit(new WrappedRunnable()
@@ -574,7 +631,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
         finally
         {
-            Table.flusherLock.writeLock().unlock();
+            switchLock.writeLock().unlock();
             if (memtableSwitchCount == Integer.MAX_VALUE)
             {
                 memtableSwitchCount = 0;
@@ -625,7 +682,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     /**
      * Insert/Update the column family for this key.
-     * Caller is responsible for acquiring Table.flusherLock!
+     * Caller is responsible for acquiring switchLock!
      * param @ lock - lock that needs to be used.
      * param @ key - key for update/insert
      * param @ columnFamily - columnFamily changes
@@ -729,7 +786,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     {
         for (SSTableReader sstable : ssTables_)
         {
-            if (!sstablesToIgnore.contains(sstable) && sstable.getBloomFilter().isPresent(key.key))
+            if (!sstablesToIgnore.contains(sstable) && sstable.getBloomFilter().isPresent(key.bloomHash()))
                 return true;
         }
         return false;
@@ -853,6 +910,31 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return memtableSwitchCount;
     }
 
+    public long getMemtableSlabsAllocatedBytes()
+    {
+        long bytes = getMemtableThreadSafe().getSlabsAllocatedBytes();
+        for (Memtable memtable : memtablesPendingFlush)
+        {
+            bytes += memtable.getSlabsAllocatedBytes();
+        }
+        return bytes;
+    }
+
+    public long getMemtableSlabsUsedBytes()
+    {
+        long bytes = getMemtableThreadSafe().getSlabsUsedBytes();
+        for (Memtable memtable : memtablesPendingFlush)
+        {
+            bytes += memtable.getSlabsUsedBytes();
+        }
+        return bytes;
+    }
+
+    public long getTotalSlabsAllocatedBytes()
+    {
+        return SlabAllocator.getTotalAllocatedBytes();
+    }
+
     /**
      * get the current memtable in a threadsafe fashion.  note that simply "return memtable_" is
      * incorrect; you need to lock to introduce a thread safe happens-before ordering.
@@ -865,27 +947,27 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
      */
     private Memtable getMemtableThreadSafe()
     {
-        Table.flusherLock.readLock().lock();
+        switchLock.readLock().lock();
         try
         {
             return memtable_;
         }
         finally
         {
-            Table.flusherLock.readLock().unlock();
+            switchLock.readLock().unlock();
         }
     }
 
     public Iterator<DecoratedKey> memtableKeyIterator(DecoratedKey startWith) throws ExecutionException, InterruptedException
     {
-        Table.flusherLock.readLock().lock();
+        switchLock.readLock().lock();
         try
         {
              return memtable_.getKeyIterator(startWith);
         }
         finally
         {
-            Table.flusherLock.readLock().unlock();
+            switchLock.readLock().unlock();
         }
     }
 
@@ -919,10 +1001,84 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return readStats_.getTotalLatencyMicros();
     }
 
+    /**
+     * records time coordinator of a read of this column family waited for replicas to answer it
+     */
+    public void addCoordinatorReadLatency(long nanos)
+    {
+        coordinatorReadStats_.addNano(nanos);
+    }
+
+    /**
+     * @return milliseconds to wait for replicas before sending a read to one more replica, per the speculative
+     * retry policy of this column family; Long.MAX_VALUE to never do so
+     */
+    public long getSpeculativeRetryMillis()
+    {
+        switch (metadata.speculativeRetry.type)
+        {
+            case FIXED:
+                return (long) metadata.speculativeRetry.value;
+            case PERCENTILE:
+                if (System.currentTimeMillis() - speculativeRetryCalculatedAt_ > SPECULATIVE_RETRY_INTERVAL_IN_MS)
+                    calculateSpeculativeRetry();
+                return speculativeRetryMillis_;
+            default:
+                return Long.MAX_VALUE;
+        }
+    }
+
+    private synchronized void calculateSpeculativeRetry()
+    {
+        long now = System.currentTimeMillis();
+        if (now - speculativeRetryCalculatedAt_ <= SPECULATIVE_RETRY_INTERVAL_IN_MS)
+            return;
+
+        // coordinator latency, since local read latency misses network time a retry is to hide;
+        // lifetime histogram, so recent one stays for JMX
+        long[] histogram = coordinatorReadStats_.getTotalLatencyHistogramMicros();
+        long[] recent = histogram.clone();
+        long reads = 0;
+        for (int i = 0; i < recent.length; i++)
+        {
+            if (speculativeRetryHistogram_ != null)
+                recent[i] -= speculativeRetryHistogram_[i];
+            reads += recent[i];
+        }
+
+        // too few reads to tell yet, keep the previous value and collect more
+        if (reads >= SPECULATIVE_RETRY_MIN_READS)
+        {
+            speculativeRetryMillis_ = Math.max(1, EstimatedHistogram.percentile(recent, metadata.speculativeRetry.value) / 1000);
+            speculativeRetryHistogram_ = histogram;
+        }
+        speculativeRetryCalculatedAt_ = now;
+    }
+
+    public long getParallelReadCount()
+    {
+        return parallelReadStats_.getOpCount();
+    }
+
+    public long getTotalParallelReadLatencyMicros()
+    {
+        return parallelReadStats_.getTotalLatencyMicros();
+    }
+
+    public long[] getRecentParallelReadLatencyHistogramMicros()
+    {
+        return parallelReadStats_.getRecentLatencyHistogramMicros();
+    }
+
+    public long getSSTablesSkippedByTimestamp()
+    {
+        return sstablesSkippedByTimestamp_.get();
+    }
+
 // TODO this actually isn't a good meature of pending tasks
     public int getPendingTasks()
     {
-        return Table.flusherLock.getQueueLength();
+        return switchLock.getQueueLength();
     }
 
     public long getWriteCount()
@@ -960,16 +1116,40 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return getColumnFamily(filter, CompactionManager.getDefaultGcBefore(this));
     }
 
-    private ColumnFamily cacheRow(String key) 
+    /**
+     * @return cached row, reading it from memtables and sstables and caching on miss. Serializing row cache
+     * returns just columns the filter may need on hit.
+     */
+    private ColumnFamily cacheRow(String key, QueryFilter filter) 
     {
+        ICache<String, ColumnFamily> rowCache = ssTables_.getRowCache();
         ColumnFamily cached;
-        if ((cached = ssTables_.getRowCache().get(key)) == null)
+        if (rowCache instanceof SerializingCache)
         {
-            cached = getTopLevelColumns(new IdentityQueryFilter(key, new QueryPath(columnFamily_)), Integer.MIN_VALUE);
-            if (cached == null)
-                return null;
-            ssTables_.getRowCache().put(key, cached);
+            DataInput serialized = ((SerializingCache<String, ColumnFamily>) rowCache).getSerialized(key);
+            if (serialized != null)
+            {
+                cached = ColumnFamily.create(table_, columnFamily_);
+                try
+                {
+                    ColumnFamily.serializer().deserializeFromSSTableInto(cached, serialized, filter);
+                }
+                catch (IOException e)
+                {
+                    throw new AssertionError(e);
+                }
+                return cached;
+            }
         }
+        else if ((cached = rowCache.get(key)) != null)
+        {
+            return cached;
+        }
+
+        cached = getTopLevelColumns(new IdentityQueryFilter(key, new QueryPath(columnFamily_)), Integer.MIN_VALUE);
+        if (cached == null)
+            return null;
+        rowCache.put(key, cached);
         return cached;
     }
 
@@ -990,7 +1170,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 if (ssTables_.getRowCache().getCapacity() == 0)
                     return removeDeleted(getTopLevelColumns(filter, gcBefore), gcBefore);
 
-                ColumnFamily cached = cacheRow(filter.key);
+                ColumnFamily cached = cacheRow(filter.key, filter);
                 ColumnIterator ci = filter.getMemColumnIterator(memtable_, cached, getComparator()); // TODO passing memtable here is confusing since it's almost entirely unused
                 ColumnFamily returnCF = ci.getColumnFamily();
                 filter.collectCollatedColumns(returnCF, ci, gcBefore);
@@ -1012,7 +1192,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             }
             else
             {
-                cf = cacheRow(filter.key);
+                cf = cacheRow(filter.key, new NamesQueryFilter(filter.key, new QueryPath(columnFamily_), filter.path.superColumnName));
                 if (cf == null)
                     return null;
                 sc = (SuperColumn)cf.getColumn(filter.path.superColumnName);
@@ -1050,8 +1230,15 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             final ColumnFamily returnCF;
             ColumnIterator iter;
 
+            // rows the memtable iterators read, to tell which requested columns are already resolved by them
+            List<ColumnFamily> memtableRows = new ArrayList<ColumnFamily>();
+
             /* add the current memtable */
-            iter = filter.getMemColumnIterator(getMemtableThreadSafe(), getComparator());
+            Memtable memtable = getMemtableThreadSafe();
+            ColumnFamily memtableRow = memtable.getColumnFamily(filter.key);
+            if (memtableRow != null)
+                memtableRows.add(memtableRow);
+            iter = filter.getMemColumnIterator(memtable, memtableRow, getComparator());
             // TODO this is a little subtle: the Memtable ColumnIterator has to be a shallow clone of the source CF,
             // with deletion times set correctly, so we can use it as the "base" CF to add query results to.
             // (for sstable ColumnIterators we do not care if it is a shallow clone or not.)
@@ -1059,21 +1246,36 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             iterators.add(iter);
 
             /* add the memtables being flushed */
-            for (Memtable memtable : getMemtablesPendingFlush())
+            for (Memtable flushing : getMemtablesPendingFlush())
             {
-                iter = filter.getMemColumnIterator(memtable, getComparator());
+                memtableRow = flushing.getColumnFamily(filter.key);
+                if (memtableRow != null)
+                    memtableRows.add(memtableRow);
+                iter = filter.getMemColumnIterator(flushing, memtableRow, getComparator());
                 returnCF.delete(iter.getColumnFamily());
                 iterators.add(iter);
             }
 
             /* add the SSTables on disk */
-            for (SSTableReader sstable : ssTables_)
+            Set<SSTableReader> sstables = ssTables_.getSSTables();
+            if (metadata.parallelReadThreshold > 0 && sstables.size() >= metadata.parallelReadThreshold && filter.canReadSSTablesInParallel())
             {
-                iter = filter.getSSTableColumnIterator(sstable);
-                if (iter.getColumnFamily() != null)
+                addSSTableIteratorsParallel(filter, sstables, returnCF, iterators);
+            }
+            else if (filter instanceof NamesQueryFilter && !isSuper_)
+            {
+                addSSTableIteratorsNewestFirst((NamesQueryFilter) filter, memtableRows, sstables, returnCF, iterators);
+            }
+            else
+            {
+                for (SSTableReader sstable : sstables)
                 {
-                    returnCF.delete(iter.getColumnFamily());
-                    iterators.add(iter);
+                    iter = filter.getSSTableColumnIterator(sstable);
+                    if (iter.getColumnFamily() != null)
+                    {
+                        returnCF.delete(iter.getColumnFamily());
+                        iterators.add(iter);
+                    }
                 }
             }
 
@@ -1101,6 +1303,120 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /**
+     * Adds iterators of sstables in the order of their newest timestamps, newest first, stopping as soon as every
+     * requested column was found (or row deleted) in memtables or added sstables later than anything in the
+     * remaining sstables, so these cannot change the result. Standard column families only: a supercolumn found
+     * in a newer source may still miss subcolumns stored in older ones.
+     */
+    private void addSSTableIteratorsNewestFirst(NamesQueryFilter filter, List<ColumnFamily> memtableRows, Collection<SSTableReader> sstables,
+                                                ColumnFamily returnCF, List<ColumnIterator> iterators)
+    throws IOException
+    {
+        byte[][] names = filter.columns.toArray(new byte[filter.columns.size()][]);
+        long[] changedAt = new long[names.length];
+        Arrays.fill(changedAt, Long.MIN_VALUE);
+        for (ColumnFamily row : memtableRows)
+            updateChangedAt(row, names, changedAt);
+
+        List<SSTableReader> newestFirst = new ArrayList<SSTableReader>(sstables);
+        Collections.sort(newestFirst, SSTableReader.maxTimestampDescending);
+        for (int i = 0; i < newestFirst.size(); i++)
+        {
+            SSTableReader sstable = newestFirst.get(i);
+            if (names.length > 0 && min(changedAt) > sstable.getMaxTimestamp())
+            {
+                if (logger_.isDebugEnabled())
+                    logger_.debug(String.format("Read of %d older sstables avoided by max timestamp for key %s", newestFirst.size() - i, filter.key));
+                sstablesSkippedByTimestamp_.addAndGet(newestFirst.size() - i);
+                return;
+            }
+
+            ColumnIterator iter = filter.getSSTableColumnIterator(sstable);
+            ColumnFamily cf = iter.getColumnFamily();
+            if (cf != null)
+            {
+                returnCF.delete(cf);
+                iterators.add(iter);
+                // names iterator has already read all requested columns into its column family
+                updateChangedAt(cf, names, changedAt);
+            }
+        }
+    }
+
+    /**
+     * raises changedAt of each name to the timestamp of its column in the row, or of the row tombstone
+     */
+    private static void updateChangedAt(ColumnFamily row, byte[][] names, long[] changedAt)
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            IColumn column = row.getColumn(names[i]);
+            long timestamp = column == null ? row.getMarkedForDeleteAt() : Math.max(column.timestamp(), row.getMarkedForDeleteAt());
+            changedAt[i] = Math.max(changedAt[i], timestamp);
+        }
+    }
+
+    private static long min(long[] values)
+    {
+        long min = Long.MAX_VALUE;
+        for (long value : values)
+            min = Math.min(min, value);
+        return min;
+    }
+
+    /**
+     * Looks up row position and reads its first block in all sstables in parallel, adding iterators
+     * in the same order as sequential lookup does.
+     */
+    private void addSSTableIteratorsParallel(final QueryFilter filter, Collection<SSTableReader> sstables, ColumnFamily returnCF, List<ColumnIterator> iterators)
+    throws IOException
+    {
+        long start = System.nanoTime();
+
+        List<Future<ColumnIterator>> futures = new ArrayList<Future<ColumnIterator>>(sstables.size());
+        for (final SSTableReader sstable : sstables)
+        {
+            futures.add(SSTableReaders.executor.submit(new Callable<ColumnIterator>()
+            {
+                public ColumnIterator call() throws Exception
+                {
+                    return filter.getSSTableColumnIterator(sstable);
+                }
+            }));
+        }
+
+        // wait for all of them, even if some failed, so caller closes every opened iterator
+        Throwable error = null;
+        for (Future<ColumnIterator> future : futures)
+        {
+            try
+            {
+                ColumnIterator iter = future.get();
+                if (iter.getColumnFamily() != null)
+                {
+                    returnCF.delete(iter.getColumnFamily());
+                    iterators.add(iter);
+                }
+            }
+            catch (ExecutionException e)
+            {
+                if (error == null)
+                    error = e.getCause();
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+        parallelReadStats_.addNano(System.nanoTime() - start);
+
+        if (error instanceof IOException)
+            throw (IOException) error;
+        if (error != null)
+            throw new RuntimeException(error);
+    }
+
     /**
      * @param range: either a Bounds, which includes start key, or a Range, which does not.
      * @param maxResults
@@ -1299,6 +1615,20 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             targetLink = new File(snapshotDirectoryPath, sourceFile.getName());
             CLibrary.createHardLink(sourceFile, targetLink);
 
+            if (ssTable.isCompressed())
+            {
+                sourceFile = new File(ssTable.compressionInfoFilename());
+                targetLink = new File(snapshotDirectoryPath, sourceFile.getName());
+                CLibrary.createHardLink(sourceFile, targetLink);
+            }
+
+            sourceFile = new File(ssTable.statisticsFilename());
+            if (sourceFile.exists())
+            {
+                targetLink = new File(snapshotDirectoryPath, sourceFile.getName());
+                CLibrary.createHardLink(sourceFile, targetLink);
+            }
+
             sourceFile = new File(ssTable.filterFilename());
             targetLink = new File(snapshotDirectoryPath, sourceFile.getName());
             CLibrary.createHardLink(sourceFile, targetLink);
@@ -1329,6 +1659,22 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return ssTables_.size();
     }
 
+    public double getCompressionRatio()
+    {
+        return compressionRatio(ssTables_.getSSTables());
+    }
+
+    static double compressionRatio(Iterable<SSTableReader> sstables)
+    {
+        long compressed = 0, uncompressed = 0;
+        for (SSTableReader sstable : sstables)
+        {
+            compressed += sstable.length();
+            uncompressed += sstable.uncompressedLength();
+        }
+        return uncompressed == 0 ? 1 : (double) compressed / uncompressed;
+    }
+
     /** raw cached row -- does not fetch the row if it is not present.  not counted in cache statistics.  */
     public ColumnFamily getRawCachedRow(String key)
     {
@@ -1340,6 +1686,29 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         ssTables_.getRowCache().remove(key);
     }
 
+    /**
+     * applies columnFamily written to row cache. Rows of cache, which keeps its own copies, cannot be changed
+     * in place, so they are invalidated and cached again by the next read.
+     */
+    void updateCachedRow(String key, ColumnFamily columnFamily)
+    {
+        if (ssTables_.getRowCache().isPutCopying())
+        {
+            invalidateCachedRow(key);
+            return;
+        }
+
+        ColumnFamily cachedRow = getRawCachedRow(key);
+        if (cachedRow != null)
+        {
+            cachedRow.addAll(columnFamily);
+            // written columns are accounted as new ones, so the row weighs more than it is, until it is cached again
+            InstrumentedCache<String, ColumnFamily> rowCache = (InstrumentedCache<String, ColumnFamily>) ssTables_.getRowCache();
+            if (rowCache.isWeighted())
+                rowCache.addWeight(key, columnFamily.columnsHeapSize());
+        }
+    }
+
     public void forceMajorCompaction()
     {
         CompactionManager.instance.submitMajor(this);
@@ -53,6 +53,27 @@ public interface ColumnFamilyStoreMBean
      */
     public int getMemtableSwitchCount();
 
+    /**
+     * Returns the size of slabs allocated by live memtable and memtables
+     * pending flush. Always 0 for memtables allocated on heap.
+     *
+     * @return The size in bytes.
+     */
+    public long getMemtableSlabsAllocatedBytes();
+
+    /**
+     * Returns the amount of data stored in slabs of live memtable and
+     * memtables pending flush.
+     *
+     * @return The size in bytes.
+     */
+    public long getMemtableSlabsUsedBytes();
+
+    /**
+     * @return size in bytes of memtable slabs allocated by all column families
+     */
+    public long getTotalSlabsAllocatedBytes();
+
     /**
      * Triggers an immediate memtable flush.
      */
@@ -83,6 +104,26 @@ public interface ColumnFamilyStoreMBean
      */
     public double getRecentReadLatencyMicros();
 
+    /**
+     * @return the number of reads, which looked up sstables in parallel (see ParallelReadThreshold)
+     */
+    public long getParallelReadCount();
+
+    /**
+     * @return total time of parallel sstable lookups (divide by getParallelReadCount() for average)
+     */
+    public long getTotalParallelReadLatencyMicros();
+
+    /**
+     * @return an array representing the parallel sstable lookup latency histogram since the last call
+     */
+    public long[] getRecentParallelReadLatencyHistogramMicros();
+
+    /**
+     * @return the number of sstables names reads did not look at, since their max timestamp was older than the columns already found
+     */
+    public long getSSTablesSkippedByTimestamp();
+
     /**
      * @return the number of write operations on this column family
      */
@@ -128,6 +169,12 @@ public interface ColumnFamilyStoreMBean
      */
     public long getTotalDiskSpaceUsed();
 
+    /**
+     * @return size of data files of live SSTables of this CF on disk divided by size of their uncompressed data,
+     * 1 if none of them is compressed
+     */
+    public double getCompressionRatio();
+
     /**
      * force a major compaction of this column family
      */
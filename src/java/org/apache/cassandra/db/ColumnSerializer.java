@@ -23,6 +23,7 @@ package org.apache.cassandra.db;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 
 import org.apache.cassandra.io.ICompactSerializer2;
@@ -58,6 +59,24 @@ public class ColumnSerializer implements ICompactSerializer2<IColumn>
         return bytes;
     }
 
+    /**
+     * skips serialized name, not reading it
+     */
+    static void skipName(DataInput in) throws IOException
+    {
+        int length = 0;
+        length |= (in.readByte() & 0xFF) << 8;
+        length |= in.readByte() & 0xFF;
+        skipFully(in, length);
+    }
+
+    static void skipFully(DataInput in, int length) throws IOException
+    {
+        int skipped = in.skipBytes(length);
+        if (skipped != length)
+            throw new EOFException("attempted to skip " + length + " bytes but only skipped " + skipped);
+    }
+
     public void serialize(IColumn column, DataOutput dos)
     {
         ColumnSerializer.writeName(column.name(), dos);
@@ -75,7 +94,14 @@ public class ColumnSerializer implements ICompactSerializer2<IColumn>
 
     public Column deserialize(DataInput dis) throws IOException
     {
-        byte[] name = ColumnSerializer.readName(dis);
+        return deserialize(ColumnSerializer.readName(dis), dis);
+    }
+
+    /**
+     * reads the rest of column, which name was already read
+     */
+    Column deserialize(byte[] name, DataInput dis) throws IOException
+    {
         boolean delete = dis.readBoolean();
         long ts = dis.readLong();
         int length = dis.readInt();
@@ -90,4 +116,19 @@ public class ColumnSerializer implements ICompactSerializer2<IColumn>
         }
         return new Column(name, value, ts, delete);
     }
+
+    /**
+     * skips the rest of column, which name was already read
+     */
+    void skip(DataInput dis) throws IOException
+    {
+        dis.readBoolean();
+        dis.readLong();
+        int length = dis.readInt();
+        if (length < 0)
+        {
+            throw new IOException("Corrupt (negative) value length encountered");
+        }
+        skipFully(dis, length);
+    }
 }
@@ -7,10 +7,14 @@ package org.apache.cassandra.db;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import com.sun.jmx.snmp.tasks.Task;
 
+import org.apache.cassandra.io.SSTableReader;
+import org.apache.cassandra.utils.SlabAllocator;
+
 /**
  * This is just mbean proxy to column family mbeans, split by domain, to make their management simpler.
  * 
@@ -151,6 +155,83 @@ public class CompositeColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getMemtableSlabsAllocatedBytes()
+     */
+    @Override
+    public long getMemtableSlabsAllocatedBytes()
+    {
+        try {
+            return traverse(new Task<Long>()
+            {
+                long r=0;
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#process(org.apache.cassandra.db.ColumnFamilyStore)
+                 */
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    r+=cfs.getMemtableSlabsAllocatedBytes();
+                    return true;
+                }
+                
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#result()
+                 */
+                @Override
+                public Long result()
+                {
+                    return r;
+                }
+            });
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getMemtableSlabsUsedBytes()
+     */
+    @Override
+    public long getMemtableSlabsUsedBytes()
+    {
+        try {
+            return traverse(new Task<Long>()
+            {
+                long r=0;
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#process(org.apache.cassandra.db.ColumnFamilyStore)
+                 */
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    r+=cfs.getMemtableSlabsUsedBytes();
+                    return true;
+                }
+                
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#result()
+                 */
+                @Override
+                public Long result()
+                {
+                    return r;
+                }
+            });
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getTotalSlabsAllocatedBytes()
+     */
+    @Override
+    public long getTotalSlabsAllocatedBytes()
+    {
+        return SlabAllocator.getTotalAllocatedBytes();
+    }
+
     /* (non-Javadoc)
      * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#forceFlush()
      */
@@ -312,6 +393,147 @@ public class CompositeColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getParallelReadCount()
+     */
+    @Override
+    public long getParallelReadCount()
+    {
+        try {
+            return traverse(new Task<Long>()
+            {
+                long r=0;
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#process(org.apache.cassandra.db.ColumnFamilyStore)
+                 */
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    r+=cfs.getParallelReadCount();
+                    return true;
+                }
+                
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#result()
+                 */
+                @Override
+                public Long result()
+                {
+                    return r;
+                }
+            });
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getTotalParallelReadLatencyMicros()
+     */
+    @Override
+    public long getTotalParallelReadLatencyMicros()
+    {
+        try {
+            return traverse(new Task<Long>()
+            {
+                long r=0;
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#process(org.apache.cassandra.db.ColumnFamilyStore)
+                 */
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    r+=cfs.getTotalParallelReadLatencyMicros();
+                    return true;
+                }
+                
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#result()
+                 */
+                @Override
+                public Long result()
+                {
+                    return r;
+                }
+            });
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getRecentParallelReadLatencyHistogramMicros()
+     */
+    @Override
+    public long[] getRecentParallelReadLatencyHistogramMicros()
+    {
+        try {
+            return traverse(new Task<long[]>()
+            {
+                long[] r=null;
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#process(org.apache.cassandra.db.ColumnFamilyStore)
+                 */
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    long[] h=cfs.getRecentParallelReadLatencyHistogramMicros();
+                    if (r==null)
+                        r=h;
+                    else
+                        for (int i=0;i<r.length;i++)
+                            r[i]+=h[i];
+                    return true;
+                }
+                
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#result()
+                 */
+                @Override
+                public long[] result()
+                {
+                    return r;
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getSSTablesSkippedByTimestamp()
+     */
+    @Override
+    public long getSSTablesSkippedByTimestamp()
+    {
+        try {
+            return traverse(new Task<Long>()
+            {
+                long r=0;
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#process(org.apache.cassandra.db.ColumnFamilyStore)
+                 */
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    r+=cfs.getSSTablesSkippedByTimestamp();
+                    return true;
+                }
+                
+                /* (non-Javadoc)
+                 * @see org.apache.cassandra.db.CompositeColumnFamilyStore.Task#result()
+                 */
+                @Override
+                public Long result()
+                {
+                    return r;
+                }
+            });
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getWriteCount()
      */
@@ -486,6 +708,35 @@ public class CompositeColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getCompressionRatio()
+     */
+    @Override
+    public double getCompressionRatio()
+    {
+        try {
+            return traverse(new Task<Double>()
+            {
+                List<SSTableReader> sstables = new ArrayList<SSTableReader>();
+
+                @Override
+                public boolean process(ColumnFamilyStore cfs)
+                {
+                    sstables.addAll(cfs.getSSTables());
+                    return true;
+                }
+
+                @Override
+                public Double result()
+                {
+                    return ColumnFamilyStore.compressionRatio(sstables);
+                }
+            });
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.cassandra.db.ColumnFamilyStoreMBean#getLiveDiskSpaceUsed()
      */
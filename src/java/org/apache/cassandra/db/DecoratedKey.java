@@ -27,6 +27,7 @@ import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.ICompactSerializer2;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.BloomFilter;
 import org.apache.cassandra.utils.FBUtilities;
 
 /**
@@ -59,6 +60,9 @@ public class DecoratedKey<T extends Token> implements Comparable<DecoratedKey>
     public final T token;
     public final String key;
 
+    /** bloom filter hashes of key, computed on first probe. racy, but KeyHash is immutable */
+    private BloomFilter.KeyHash bloomHash;
+
     public DecoratedKey(T token, String key)
     {
         super();
@@ -92,6 +96,17 @@ public class DecoratedKey<T extends Token> implements Comparable<DecoratedKey>
         return token.compareTo(other.token);
     }
 
+    /**
+     * @return bloom filter hashes of this key, computed once per key and reused for probing of all sstables
+     */
+    public BloomFilter.KeyHash bloomHash()
+    {
+        BloomFilter.KeyHash hash = bloomHash;
+        if (hash == null)
+            bloomHash = hash = BloomFilter.hash(key);
+        return hash;
+    }
+
     public boolean isEmpty()
     {
         return token.equals(partitioner.getMinimumToken());
@@ -60,8 +60,8 @@ public class Memtable implements Comparable<Memtable>, IFlushable
 
     private final long creationTime;
     private final ConcurrentNavigableMap<DecoratedKey, ColumnFamily> columnFamilies = new ConcurrentSkipListMap<DecoratedKey, ColumnFamily>();
-    private final IPartitioner partitioner = StorageService.getPartitioner();
-    private final ColumnFamilyStore cfs;
+    protected final IPartitioner partitioner = StorageService.getPartitioner();
+    protected final ColumnFamilyStore cfs;
 
     public Memtable(ColumnFamilyStore cfs)
     {
@@ -120,17 +120,17 @@ public class Memtable implements Comparable<Memtable>, IFlushable
     void put(String key, ColumnFamily columnFamily)
     {
         assert !isFrozen; // not 100% foolproof but hell, it's an assert
-        resolve(key, columnFamily);
+
+        currentThroughput.addAndGet(columnFamily.size());
+        currentOperations.addAndGet((columnFamily.getColumnCount() == 0)
+                ? columnFamily.isMarkedForDelete() ? 1 : 0
+                : columnFamily.getColumnCount());
+
+        resolve(partitioner.decorateKey(key), columnFamily);
     }
 
-    private void resolve(String key, ColumnFamily cf)
+    protected void resolve(DecoratedKey decoratedKey, ColumnFamily cf)
     {
-        currentThroughput.addAndGet(cf.size());
-        currentOperations.addAndGet((cf.getColumnCount() == 0)
-                ? cf.isMarkedForDelete() ? 1 : 0
-                : cf.getColumnCount());
-
-        DecoratedKey decoratedKey = partitioner.decorateKey(key);
         ColumnFamily oldCf = columnFamilies.putIfAbsent(decoratedKey, cf);
         if (oldCf == null)
             return;
@@ -151,12 +151,52 @@ public class Memtable implements Comparable<Memtable>, IFlushable
         return builder.toString();
     }
 
+    /**
+     * @return number of rows in this memtable
+     */
+    protected int rowCount()
+    {
+        return columnFamilies.size();
+    }
+
+    /**
+     * @return rows of this memtable in partitioner order, for flushing
+     */
+    protected Iterator<Map.Entry<DecoratedKey, ColumnFamily>> sortedRows()
+    {
+        return columnFamilies.entrySet().iterator();
+    }
+
+    /**
+     * called when this memtable is flushed to sstable and no longer
+     * used for reads by new requests.
+     */
+    protected void released()
+    {
+    }
+
+    /**
+     * @return bytes allocated in memtable slabs, if memtable uses them
+     */
+    public long getSlabsAllocatedBytes()
+    {
+        return 0;
+    }
+
+    /**
+     * @return bytes occupied by data in memtable slabs, if memtable uses them
+     */
+    public long getSlabsUsedBytes()
+    {
+        return 0;
+    }
+
 
     private SSTableReader writeSortedContents() 
     {
         try {
             logger.info("Writing " + this);
-            SSTableWriter writer = new SSTableWriter(cfs.getFlushPath(), columnFamilies.size(), StorageService.getPartitioner());
+            SSTableWriter writer = new SSTableWriter(cfs.getFlushPath(), rowCount(), StorageService.getPartitioner());
             
             boolean bloomColumns = writer.getBloomFilterWriter().isBloomColumns();
             BloomFilterWriter bloomFilterWriter = writer.getBloomFilterWriter();
@@ -174,8 +214,10 @@ public class Memtable implements Comparable<Memtable>, IFlushable
                 bloomFilterWriter.setEstimatedColumnCount(getCurrentOperations());
 
             DataOutputBuffer buffer = new DataOutputBuffer();
-            for (Map.Entry<DecoratedKey, ColumnFamily> entry : columnFamilies.entrySet())
+            Iterator<Map.Entry<DecoratedKey, ColumnFamily>> rows = sortedRows();
+            while (rows.hasNext())
             {
+                Map.Entry<DecoratedKey, ColumnFamily> entry = rows.next();
                 buffer.reset();
                 
                 DecoratedKey key = entry.getKey();
@@ -192,6 +234,7 @@ public class Memtable implements Comparable<Memtable>, IFlushable
                 ColumnFamily.serializer().serializeWithIndexes(cf, buffer, bloomColumns);
                 /* Now write the key and value to disk */
                 writer.append(key, buffer);
+                writer.getMetadataCollector().update(cf);
                 
                 if (bloomColumns)
                     bloomFilterWriter.add(key, cf);
@@ -215,6 +258,7 @@ public class Memtable implements Comparable<Memtable>, IFlushable
             {
                 cfs.addSSTable(writeSortedContents());
                 cfs.getMemtablesPendingFlush().remove(Memtable.this);
+                released();
                 condition.signalAll();
             }
         });
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.io.ICompactSerializer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Reads of several keys from a single replica in one message. Replica answers with one message of all their
+ * ReadResponses, in the order of commands, each as it would be sent alone.
+ */
+public class MultiReadCommand
+{
+    private static final MultiReadCommandSerializer serializer = new MultiReadCommandSerializer();
+
+    public final List<ReadCommand> commands;
+
+    public MultiReadCommand(List<ReadCommand> commands)
+    {
+        this.commands = commands;
+    }
+
+    public Message getMessage() throws IOException
+    {
+        DataOutputBuffer dob = new DataOutputBuffer();
+        serializer.serialize(this, dob);
+        return new Message(FBUtilities.getLocalAddress(),
+                           StageManager.READ_STAGE,
+                           StorageService.Verb.MULTI_READ,
+                           Arrays.copyOf(dob.getData(), dob.getLength()));
+    }
+
+    public static MultiReadCommand read(Message message) throws IOException
+    {
+        byte[] bytes = message.getMessageBody();
+        ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+        return serializer.deserialize(new DataInputStream(bis));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MultiReadCommand" + commands;
+    }
+}
+
+class MultiReadCommandSerializer implements ICompactSerializer<MultiReadCommand>
+{
+    public void serialize(MultiReadCommand multiCommand, DataOutputStream dos) throws IOException
+    {
+        dos.writeInt(multiCommand.commands.size());
+        for (ReadCommand command : multiCommand.commands)
+            ReadCommand.serializer().serialize(command, dos);
+    }
+
+    public MultiReadCommand deserialize(DataInputStream dis) throws IOException
+    {
+        int count = dis.readInt();
+        List<ReadCommand> commands = new ArrayList<ReadCommand>(count);
+        for (int i = 0; i < count; i++)
+            commands.add(ReadCommand.serializer().deserialize(dis));
+        return new MultiReadCommand(commands);
+    }
+}
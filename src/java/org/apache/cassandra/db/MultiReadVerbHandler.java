@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Reads all keys of a MultiReadCommand, one after another, and answers with their responses, each prefixed by
+ * its length, so the coordinator hands each of them over to the callback of its key as is. A key that cannot
+ * be read gets a length of -1 and no response.
+ */
+public class MultiReadVerbHandler implements IVerbHandler
+{
+    private static final Logger logger_ = Logger.getLogger(MultiReadVerbHandler.class);
+
+    public void doVerb(Message message)
+    {
+        if (StorageService.instance.isBootstrapMode())
+        {
+            /* Don't service reads! */
+            throw new RuntimeException("Cannot service reads while bootstrapping!");
+        }
+
+        try
+        {
+            MultiReadCommand multiCommand = MultiReadCommand.read(message);
+            DataOutputBuffer out = new DataOutputBuffer();
+            DataOutputBuffer responseOut = new DataOutputBuffer();
+            out.writeInt(multiCommand.commands.size());
+            for (ReadCommand command : multiCommand.commands)
+            {
+                responseOut.reset();
+                try
+                {
+                    Row row = command.getRow(Table.open(command.table));
+                    ReadResponse readResponse = command.isDigestQuery()
+                                              ? new ReadResponse(ColumnFamily.digest(row.cf))
+                                              : new ReadResponse(row);
+                    readResponse.setIsDigestQuery(command.isDigestQuery());
+                    ReadResponse.serializer().serialize(readResponse, responseOut);
+                }
+                catch (IOException e)
+                {
+                    // leave this key out rather than failing the others; its read times out at the coordinator
+                    logger_.error("Error reading " + command, e);
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(responseOut.getLength());
+                out.write(responseOut.getData(), 0, responseOut.getLength());
+            }
+
+            Message response = message.getReply(FBUtilities.getLocalAddress(), Arrays.copyOf(out.getData(), out.getLength()));
+            if (logger_.isDebugEnabled())
+                logger_.debug("Read " + multiCommand.commands.size() + " keys; sending response to " + message.getMessageId() + "@" + message.getFrom());
+            MessagingService.instance.sendOneWay(response, message.getFrom());
+        }
+        catch (IOException ex)
+        {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.SlabAllocator;
+
+/**
+ * Memtable, which does not keep Column objects for its rows. Instead every update of a row is serialized
+ * (in sstable format) into large slabs, and row index keeps only a compact array of references to them.
+ * So write heavy column families produce a few big long living objects instead of millions of small ones,
+ * which otherwise get promoted to old generation only to die at flush.
+ *
+ * Reads deserialize all row updates and merge them. To keep this cheap for often updated rows, their updates
+ * are merged into single slab chunk once their number reaches MERGE_THRESHOLD.
+ *
+ * All slabs are released at once after memtable is flushed and no more readers use it.
+ */
+class SlabMemtable extends Memtable
+{
+    /** number of chunks in a row to merge them into single one */
+    static final int MERGE_THRESHOLD = 16;
+
+    private static final ThreadLocal<DataOutputBuffer> serializeBuffer = new ThreadLocal<DataOutputBuffer>()
+    {
+        @Override
+        protected DataOutputBuffer initialValue()
+        {
+            return new DataOutputBuffer();
+        }
+    };
+
+    private final ConcurrentNavigableMap<DecoratedKey, RowChunks> rows = new ConcurrentSkipListMap<DecoratedKey, RowChunks>();
+    private final SlabAllocator allocator;
+
+    SlabMemtable(ColumnFamilyStore cfs, boolean offHeap)
+    {
+        super(cfs);
+
+        this.allocator = new SlabAllocator(offHeap);
+    }
+
+    @Override
+    protected void resolve(DecoratedKey decoratedKey, ColumnFamily cf)
+    {
+        long ref = write(cf);
+
+        RowChunks chunks = rows.get(decoratedKey);
+        if (chunks == null)
+        {
+            chunks = rows.putIfAbsent(decoratedKey, new RowChunks(ref));
+            if (chunks == null)
+                return;
+        }
+
+        chunks.add(ref);
+    }
+
+    private long write(ColumnFamily cf)
+    {
+        DataOutputBuffer buffer = serializeBuffer.get();
+        buffer.reset();
+        ColumnFamily.serializer().serializeForSSTable(cf, buffer);
+
+        return allocator.allocate(buffer.getData(), 0, buffer.getLength());
+    }
+
+    private ColumnFamily read(RowChunks chunks)
+    {
+        long[] refs = chunks.refs;
+
+        ColumnFamily cf = ColumnFamily.create(getTableName(), cfs.getColumnFamilyName());
+        try
+        {
+            for (int i = 0; i < refs.length; i++)
+            {
+                ColumnFamily.serializer().deserializeFromSSTableInto(cf, allocator.read(refs[i]));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+        return cf;
+    }
+
+    @Override
+    public ColumnFamily getColumnFamily(String key)
+    {
+        RowChunks chunks = rows.get(partitioner.decorateKey(key));
+        if (chunks == null)
+            return null;
+
+        // slabs could be already released, if memtable was flushed after reader got it.
+        // its data is in sstable then, which reader will see after memtables
+        if (!allocator.ref())
+            return null;
+        try
+        {
+            return read(chunks);
+        }
+        finally
+        {
+            allocator.unref();
+        }
+    }
+
+    @Override
+    protected int rowCount()
+    {
+        return rows.size();
+    }
+
+    @Override
+    protected Iterator<Map.Entry<DecoratedKey, ColumnFamily>> sortedRows()
+    {
+        return Iterators.transform(rows.entrySet().iterator(), new Function<Map.Entry<DecoratedKey, RowChunks>, Map.Entry<DecoratedKey, ColumnFamily>>()
+        {
+            public Map.Entry<DecoratedKey, ColumnFamily> apply(Map.Entry<DecoratedKey, RowChunks> entry)
+            {
+                return new AbstractMap.SimpleImmutableEntry<DecoratedKey, ColumnFamily>(entry.getKey(), read(entry.getValue()));
+            }
+        });
+    }
+
+    @Override
+    protected void released()
+    {
+        allocator.unref();
+    }
+
+    @Override
+    public Iterator<DecoratedKey> getKeyIterator(DecoratedKey startWith)
+    {
+        return rows.navigableKeySet().tailSet(startWith).iterator();
+    }
+
+    @Override
+    public boolean isClean()
+    {
+        return rows.isEmpty();
+    }
+
+    @Override
+    public long getSlabsAllocatedBytes()
+    {
+        return allocator.getAllocatedBytes();
+    }
+
+    @Override
+    public long getSlabsUsedBytes()
+    {
+        return allocator.getUsedBytes();
+    }
+
+    // for debugging
+    @Override
+    public String contents()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{");
+        for (DecoratedKey key : rows.keySet())
+        {
+            builder.append(key).append(": ").append(getColumnFamily(key.key)).append(", ");
+        }
+        builder.append("}");
+        return builder.toString();
+    }
+
+    @Override
+    void clearUnsafe()
+    {
+        rows.clear();
+    }
+
+    /**
+     * References to slab chunks with updates of a single row, in order they were applied.
+     * Refs array is copied on write, so readers always see consistent snapshot.
+     */
+    private class RowChunks
+    {
+        private volatile long[] refs;
+
+        RowChunks(long ref)
+        {
+            refs = new long[] { ref };
+        }
+
+        synchronized void add(long ref)
+        {
+            if (refs.length == MERGE_THRESHOLD)
+            {
+                refs = new long[] { write(read(this)), ref };
+                return;
+            }
+
+            long[] newRefs = Arrays.copyOf(refs, refs.length + 1);
+            newRefs[refs.length] = ref;
+            refs = newRefs;
+        }
+    }
+}
@@ -326,7 +326,14 @@ class SuperColumnSerializer implements ICompactSerializer2<IColumn>
 
     public IColumn deserialize(DataInput dis) throws IOException
     {
-        byte[] name = ColumnSerializer.readName(dis);
+        return deserialize(ColumnSerializer.readName(dis), dis);
+    }
+
+    /**
+     * reads the rest of super column, which name was already read
+     */
+    IColumn deserialize(byte[] name, DataInput dis) throws IOException
+    {
         SuperColumn superColumn = new SuperColumn(name, comparator);
         int localDeleteTime = dis.readInt();
         if (localDeleteTime != Integer.MIN_VALUE && localDeleteTime <= 0)
@@ -344,4 +351,19 @@ class SuperColumnSerializer implements ICompactSerializer2<IColumn>
         }
         return superColumn;
     }
+
+    /**
+     * skips the rest of super column, which name was already read
+     */
+    void skip(DataInput dis) throws IOException
+    {
+        dis.readInt();
+        dis.readLong();
+        int size = dis.readInt();
+        for (int i = 0; i < size; ++i)
+        {
+            ColumnSerializer.skipName(dis);
+            Column.serializer().skip(dis);
+        }
+    }
 }
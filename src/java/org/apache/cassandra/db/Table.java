@@ -28,7 +28,6 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
@@ -57,13 +56,14 @@ public class Table
 
     private static final Logger logger = Logger.getLogger(Table.class);
     private static final String SNAPSHOT_SUBDIR_NAME = "snapshots";
-    /**
-     * accesses to CFS.memtable should acquire this for thread safety.
-     * Table.maybeSwitchMemtable should aquire the writeLock; see that method for the full explanation.
-     *
-     * (Enabling fairness in the RRWL is observed to decrease throughput, so we leave it off.)
-     */
-    static final ReentrantReadWriteLock flusherLock = new ReentrantReadWriteLock();
+    /* mutations take switch locks of their column families in this order, not to deadlock with each other */
+    private static final Comparator<ColumnFamily> SWITCH_LOCK_ORDER = new Comparator<ColumnFamily>()
+    {
+        public int compare(ColumnFamily cf1, ColumnFamily cf2)
+        {
+            return cf1.name().compareTo(cf2.name());
+        }
+    };
 
     private static Timer flushTimer = new Timer("FLUSH-TIMER");
     private final boolean waitForCommitLog;
@@ -431,7 +431,7 @@ public class Table
     private Table(final String table) throws IOException
     {
         name = table;
-        waitForCommitLog = DatabaseDescriptor.getCommitLogSync() == DatabaseDescriptor.CommitLogSync.batch;
+        waitForCommitLog = DatabaseDescriptor.getCommitLogSync() != DatabaseDescriptor.CommitLogSync.periodic;
         tableMetadata = Table.TableMetadata.instance(table);
         
         // MM : Speed up startup by parallelling all CF initializations
@@ -559,31 +559,43 @@ public class Table
         
        
 
-        // write the mutation to the commitlog and memtables
-        flusherLock.readLock().lock();
+        // write the mutation to the commitlog and memtables, holding switch locks of the column families written,
+        // so none of their memtables is switched between the commit log append and the memtable put
+        ColumnFamily[] columnFamilies = mutation.getColumnFamilies().toArray(new ColumnFamily[0]);
+        if (columnFamilies.length > 1)
+            Arrays.sort(columnFamilies, SWITCH_LOCK_ORDER);
+        ColumnFamilyStore[] stores = new ColumnFamilyStore[columnFamilies.length];
+        for (int i = 0; i < columnFamilies.length; i++)
+        {
+            stores[i] = columnFamilyStores.get(columnFamilies[i].name());
+            if (stores[i] == null)
+                throw new IllegalArgumentException("Cannot find column family " + columnFamilies[i].name() + " in table " + name);
+        }
+        int locked = 0;
         try
         {
+            for (; locked < stores.length; locked++)
+                stores[locked].switchLock.readLock().lock();
+
             if (writeCommitLog)
             {
                 CommitLog.instance().add(mutation, serializedMutation);
             }
 
-            for (ColumnFamily columnFamily : mutation.getColumnFamilies())
+            for (int i = 0; i < columnFamilies.length; i++)
             {
                 Memtable memtableToFlush;
-                ColumnFamilyStore cfs = columnFamilyStores.get(columnFamily.name());
-                if ((memtableToFlush=cfs.apply(mutation.key(), columnFamily)) != null)
+                ColumnFamilyStore cfs = stores[i];
+                if ((memtableToFlush=cfs.apply(mutation.key(), columnFamilies[i])) != null)
                     memtablesToFlush.put(cfs, memtableToFlush);
 
-                ColumnFamily cachedRow = cfs.getRawCachedRow(mutation.key());
-                if (cachedRow != null)
-                    cachedRow.addAll(columnFamily);
+                cfs.updateCachedRow(mutation.key(), columnFamilies[i]);
             }
         }
         finally
         {
-            flusherLock.readLock().unlock();
-
+            for (int i = locked - 1; i >= 0; i--)
+                stores[i].switchLock.readLock().unlock();
         }
 
 
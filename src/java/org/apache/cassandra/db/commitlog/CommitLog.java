@@ -23,28 +23,20 @@ import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.zip.CRC32;
-import java.util.zip.Checksum;
 
 import org.apache.log4j.Logger;
 import org.apache.commons.lang.StringUtils;
 
-import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.DatabaseDescriptor;
-import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.FSWriteError;
-import org.apache.cassandra.db.IColumn;
 import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.db.Table;
 import org.apache.cassandra.db.commitlog.CommitLogSegment.CommitLogContext;
 import org.apache.cassandra.io.DeletionService;
-import org.apache.cassandra.io.util.BufferedRandomAccessFile;
 import org.apache.cassandra.io.util.FileUtils;
-import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.WrappedRunnable;
 import org.apache.cassandra.utils.CLibrary;
-import org.xerial.snappy.Snappy;
 
 /*
  * Commit Log tracks every write operation into the system. The aim
@@ -76,7 +68,6 @@ import org.xerial.snappy.Snappy;
  */
 public class CommitLog
 {
-    private static final int MAX_OUTSTANDING_REPLAY_COUNT = 1024;
     private static volatile int SEGMENT_SIZE = 128*1024*1024; // roll after log gets this big
 
     /**
@@ -121,7 +112,7 @@ public class CommitLog
         // all old segments are recovered and deleted before CommitLog is instantiated.
         // All we need to do is create a new one.
         int cfSize = Table.TableMetadata.getColumnFamilyCount();
-        segments.add(new CommitLogSegment(cfSize));
+        segments.add(newSegment(cfSize, 0));
         
         if (DatabaseDescriptor.getCommitLogSync() == DatabaseDescriptor.CommitLogSync.periodic)
         {
@@ -159,6 +150,10 @@ public class CommitLog
                 }
             }, "PERIODIC-COMMIT-LOG-SYNCER").start();
         }
+        else if (DatabaseDescriptor.getCommitLogSync() == DatabaseDescriptor.CommitLogSync.group)
+        {
+            executor = new GroupCommitLogExecutorService();
+        }
         else
         {
             executor = new BatchCommitLogExecutorService();
@@ -231,207 +226,7 @@ public class CommitLog
     
     public static void recover(File[] clogs, boolean forced, long maxReplayTimestamp) throws IOException
     {
-        Set<Table> tablesRecovered = new HashSet<Table>();
-        List<Future<?>> futures = new ArrayList<Future<?>>();
-        REPLAYLOOP:
-        for (File file : clogs)
-        {
-            // empty log file - just removing it
-            if (file.length()==0)
-            {
-                continue;
-            }
-            
-            int bufferSize = (int)Math.min(file.length(), 32 * 1024 * 1024);
-            BufferedRandomAccessFile reader = new BufferedRandomAccessFile(file.getAbsolutePath(), "r", bufferSize);
-
-            try
-            {
-                CommitLogHeader clHeader = null;
-                int replayPosition = 0;
-                if (!forced)
-                {
-                    String headerPath = CommitLogHeader.getHeaderPathFromSegmentPath(file.getAbsolutePath());
-                    try
-                    {
-                        clHeader = CommitLogHeader.readCommitLogHeader(headerPath);
-                        replayPosition = CommitLogHeader.getLowestPosition(clHeader);
-                    }
-                    catch (IOException ioe)
-                    {
-                        logger.info(headerPath + " incomplete, missing or corrupt.  Everything is ok, don't panic.  CommitLog will be replayed from the beginning");
-                        logger.debug("exception was", ioe);
-                    }
-                    
-                    if (replayPosition < 0 || replayPosition > reader.length())
-                    {
-                        // replayPosition > reader.length() can happen if some data gets flushed before it is written to the commitlog
-                        // (see https://issues.apache.org/jira/browse/CASSANDRA-2285)
-                        logger.debug("skipping replay of fully-flushed "+ file);
-                        continue;
-                    }
-                }
-
-                /* seek to the lowest position where any CF has non-flushed data 
-                 * if replay was forced - reading all records, regardless of commit log header 
-                 */
-                reader.seek(replayPosition);
-                if (logger.isDebugEnabled())
-                    logger.debug("Replaying " + file + " starting at " + replayPosition);
-
-                if (forced)
-                    logger.info("Replaying " + file + " starting at " + replayPosition);
-
-                // assume file is compressed, if it has the special extension
-                boolean logFileCompression = file.getName().endsWith(COMPRESSION_EXTENSION);
-                if (logFileCompression && logger.isDebugEnabled())
-                    logger.debug("Filename: " + file + " ends with \"" + COMPRESSION_EXTENSION + "\", expecting compression");
-
-                /* read the logs populate RowMutation and apply */
-                while (!reader.isEOF())
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Reading mutation at " + reader.getFilePointer());
-
-                    long claimedCRC32;
-                    byte[] bytes;
-                    try
-                    {
-                        long length = reader.readLong();
-                        // RowMutation must be at LEAST 10 bytes:
-                        // 3 each for a non-empty Table and Key (including the 2-byte length from writeUTF), 4 bytes for column count.
-                        // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                        if (length < 10 || length > Integer.MAX_VALUE)
-                            break;
-                        bytes = new byte[(int) length]; // readlong can throw EOFException too
-                        reader.readFully(bytes);
-                        claimedCRC32 = reader.readLong();
-                    }
-                    catch (EOFException e)
-                    {
-                        // last CL entry didn't get completely written.  that's ok.
-                        break;
-                    }
-
-                    Checksum checksum = new CRC32();
-                    checksum.update(bytes, 0, bytes.length);
-                    if (claimedCRC32 != checksum.getValue())
-                    {
-                        // this part of the log must not have been fsynced.  probably the rest is bad too,
-                        // but just in case there is no harm in trying them.
-                        continue;
-                    }
-
-                    // apply decompression
-                    if (logFileCompression) {
-                        bytes = Snappy.uncompress(bytes);
-                    }
-
-                    ByteArrayInputStream bufIn = new ByteArrayInputStream(bytes);
-                    
-                    /* deserialize the commit log entry */
-                    final RowMutation rm = RowMutation.serializer().deserialize(new DataInputStream(bufIn));
-                    
-                    if (maxReplayTimestamp<Long.MAX_VALUE)
-                    {
-                        // inspecting mutation if it has any column with timestamp value greater than max
-                        boolean timestampLimitReached=false;
-                        for (ColumnFamily cf : rm.getColumnFamilies()) 
-                        {
-                            if (cf.isMarkedForDelete() && cf.getMarkedForDeleteAt()>maxReplayTimestamp)
-                            {
-                                timestampLimitReached = true;
-                                break;
-                            }
-                            
-                            for (IColumn c : cf.getSortedColumns())
-                            {
-                                if ( (c.isMarkedForDelete() && c.getMarkedForDeleteAt()>maxReplayTimestamp) || c.timestamp()>maxReplayTimestamp)
-                                {
-                                    timestampLimitReached = true;
-                                    break;
-                                }
-                            }
-                        }
-                        
-                        if (timestampLimitReached)
-                        {
-                            logger.info("Stopped replay at "+file+", position "+reader.getFilePointer()+" - mutation "+rm+" has timestamp >"+maxReplayTimestamp);
-                            break REPLAYLOOP;
-                        }
-                        
-                    }
-                    
-                    if (logger.isDebugEnabled())
-                        logger.debug(String.format("replaying mutation for %s.%s: %s",
-                                                    rm.getTable(),
-                                                    rm.key(),
-                                                    "{" + StringUtils.join(rm.getColumnFamilies(), ", ") + "}"));
-                    final Table table = Table.open(rm.getTable());
-                    tablesRecovered.add(table);
-                    final Collection<ColumnFamily> columnFamilies = new ArrayList<ColumnFamily>(rm.getColumnFamilies());
-                    final long entryLocation = reader.getFilePointer();
-                    Runnable runnable;
-
-                    if (forced || clHeader == null)
-                    {
-                        runnable = new WrappedRunnable()
-                        {
-                            public void runMayThrow() throws IOException
-                            {
-                                if (!rm.isEmpty())
-                                {
-                                    Table.open(rm.getTable()).apply(rm, null, false);
-                                }
-                            }
-                        };
-                    } else {
-                        final CommitLogHeader finalHeader = clHeader;
-                        runnable = new WrappedRunnable()
-                        {
-                            public void runMayThrow() throws IOException
-                            {
-                                /* remove column families that have already been flushed before applying the rest */
-                                for (ColumnFamily columnFamily : columnFamilies)
-                                {
-                                    int id = table.getColumnFamilyId(columnFamily.name());
-                                    if (!finalHeader.isDirty(id) || entryLocation <= finalHeader.getPosition(id))
-                                    {
-                                        rm.removeColumnFamily(columnFamily);
-                                    }
-                                }
-                                if (!rm.isEmpty())
-                                {
-                                    Table.open(rm.getTable()).apply(rm, null, false);
-                                }
-                            }
-                        };
-                    }
-                    futures.add(StageManager.getStage(StageManager.MUTATION_STAGE).submit(runnable));
-                    if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
-                    {
-                        FBUtilities.waitOnFutures(futures);
-                        futures.clear();
-                    }
-                }
-            }
-            finally
-            {
-                reader.close();
-                logger.info("Finished reading " + file);
-            }
-        }
-
-
-        // wait for all the writes to finish on the mutation stage
-        FBUtilities.waitOnFutures(futures);
-        logger.debug("Finished waiting on mutations from recovery");
-
-        // flush replayed tables
-        futures.clear();
-        for (Table table : tablesRecovered)
-            futures.addAll(table.flush());
-        FBUtilities.waitOnFutures(futures);
+        new CommitLogReplayer(forced, maxReplayTimestamp, DatabaseDescriptor.getCommitLogReplayThreads()).replay(clogs);
         logger.info("Recovery complete");
     }
 
@@ -439,6 +234,11 @@ public class CommitLog
     {
         return segments.getLast();
     }
+
+    private static CommitLogSegment newSegment(int cfCount, int minRecordSize)
+    {
+        return CommitLogSegment.create(cfCount, SEGMENT_SIZE, minRecordSize);
+    }
     
     public Future<CommitLogContext> getContext() 
     {
@@ -701,7 +501,7 @@ public class CommitLog
         segments.clear();
         int cfSize = Table.TableMetadata.getColumnFamilyCount();
 
-        segments.add(new CommitLogSegment(cfSize));
+        segments.add(newSegment(cfSize, 0));
     }
 
     // for tests mainly
@@ -718,7 +518,7 @@ public class CommitLog
             public Object call() throws Exception
             {
                 sync();
-                segments.add(new CommitLogSegment(currentSegment().getHeader().getColumnFamilyCount()));
+                segments.add(newSegment(currentSegment().getHeader().getColumnFamilyCount(), 0));
                 return null;
             }
         };
@@ -753,13 +553,37 @@ public class CommitLog
         {
             try
             {
+                if (currentSegment().isPreallocated())
+                {
+                    write(CommitLogSegment.frame(serializedRow));
+                    return;
+                }
+
                 currentSegment().write(rowMutation, serializedRow);
-                // roll log if necessary
-                if (currentSegment().length() >= SEGMENT_SIZE)
+                maybeRoll();
+            }
+            catch (IOException e)
+            {
+                throw new FSWriteError(e);
+            }
+        }
+
+        /**
+         * writes the row, already framed by CommitLogSegment.frame(serializedRow)
+         */
+        void write(byte[] record)
+        {
+            try
+            {
+                // preallocated segment is rolled before it overflows
+                if (!currentSegment().hasRoomFor(record.length))
                 {
                     sync();
-                    segments.add(new CommitLogSegment(currentSegment().getHeader().getColumnFamilyCount()));
+                    segments.add(newSegment(currentSegment().getHeader().getColumnFamilyCount(), record.length));
                 }
+
+                currentSegment().writeRecord(rowMutation, record);
+                maybeRoll();
             }
             catch (IOException e)
             {
@@ -767,6 +591,15 @@ public class CommitLog
             }
         }
 
+        private void maybeRoll()
+        {
+            if (currentSegment().length() >= SEGMENT_SIZE)
+            {
+                sync();
+                segments.add(newSegment(currentSegment().getHeader().getColumnFamilyCount(), 0));
+            }
+        }
+
         public Object call() throws Exception
         {
             run();
@@ -0,0 +1,495 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db.commitlog;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.apache.commons.lang.StringUtils;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.Table;
+import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.utils.FBUtilities;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Replays commit log files on several threads.
+ *
+ * Files are read, checksummed and deserialized by reader threads in parallel, each one into its own bounded queue.
+ * Mutations are taken from these queues in file order and passed to applier threads, partitioned by key, so
+ * mutations of a row are applied in the order they were logged. Appliers drain their queues and apply mutations
+ * in batches.
+ *
+ * Replay limited by timestamp stops at the first mutation newer than the limit, so files are read one by one then.
+ */
+class CommitLogReplayer implements CommitLogReplayerMBean
+{
+    private static final Logger logger = Logger.getLogger(CommitLogReplayer.class);
+
+    public static final String MBEAN_NAME = "org.apache.cassandra.db:type=CommitLogReplay";
+
+    /** mutations a reader may read ahead of appliers */
+    private static final int READ_AHEAD = 1024;
+    /** mutations an applier applies without looking at its queue again */
+    private static final int APPLY_BATCH = 128;
+    private static final int READ_BUFFER_SIZE = 32 * 1024 * 1024;
+    private static final long PROGRESS_LOG_INTERVAL = 10000;
+
+    /** marks the end of file in reader queue and the end of replay in applier queues */
+    private static final RowMutation END = new RowMutation("", "");
+
+    private final boolean forced;
+    private final long maxReplayTimestamp;
+    private final int threads;
+
+    private volatile boolean stopped = false;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong mutationsRead = new AtomicLong();
+    private final AtomicLong mutationsApplied = new AtomicLong();
+    private volatile long bytesTotal;
+    private volatile int filesTotal;
+    private volatile int filesReplayed;
+
+    CommitLogReplayer(boolean forced, long maxReplayTimestamp, int threads)
+    {
+        this.forced = forced;
+        this.maxReplayTimestamp = maxReplayTimestamp;
+        this.threads = threads;
+    }
+
+    public void replay(File[] clogs) throws IOException
+    {
+        filesTotal = clogs.length;
+        for (File file : clogs)
+            bytesTotal += file.length();
+
+        int readerCount = maxReplayTimestamp < Long.MAX_VALUE ? 1 : Math.min(threads, Math.max(clogs.length, 1));
+        ExecutorService readers = Executors.newFixedThreadPool(readerCount, new NamedThreadFactory("COMMIT-LOG-REPLAY-READER"));
+        Applier[] appliers = new Applier[threads];
+        for (int i = 0; i < appliers.length; i++)
+        {
+            appliers[i] = new Applier();
+            Thread thread = new Thread(appliers[i], "COMMIT-LOG-REPLAY-APPLIER:" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        registerMBean();
+        long start = System.currentTimeMillis();
+        Set<String> tablesRecovered = new HashSet<String>();
+        try
+        {
+            List<Reader> fileReaders = new ArrayList<Reader>(clogs.length);
+            List<Future<?>> readerFutures = new ArrayList<Future<?>>(clogs.length);
+            for (File file : clogs)
+            {
+                Reader reader = new Reader(file, Math.max(READ_BUFFER_SIZE / readerCount, 1024 * 1024));
+                fileReaders.add(reader);
+                readerFutures.add(readers.submit(reader));
+            }
+
+            long lastProgressLog = start;
+            for (int i = 0; i < fileReaders.size(); i++)
+            {
+                BlockingQueue<RowMutation> mutations = fileReaders.get(i).mutations;
+                RowMutation rm;
+                while ((rm = mutations.take()) != END)
+                {
+                    tablesRecovered.add(rm.getTable());
+                    appliers[(rm.key().hashCode() & Integer.MAX_VALUE) % appliers.length].queue.put(rm);
+
+                    if (System.currentTimeMillis() - lastProgressLog > PROGRESS_LOG_INTERVAL)
+                    {
+                        logProgress();
+                        lastProgressLog = System.currentTimeMillis();
+                    }
+                }
+
+                FBUtilities.waitOnFutures(readerFutures.subList(i, i + 1));
+                filesReplayed++;
+            }
+
+            for (Applier applier : appliers)
+                applier.queue.put(END);
+            for (Applier applier : appliers)
+                applier.done.await();
+            for (Applier applier : appliers)
+            {
+                if (applier.error != null)
+                    throw new RuntimeException(applier.error);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        catch (RuntimeException e)
+        {
+            if (e.getCause() instanceof ExecutionException && e.getCause().getCause() instanceof IOException)
+                throw (IOException) e.getCause().getCause();
+            throw e;
+        }
+        finally
+        {
+            stopped = true;
+            readers.shutdownNow();
+            for (Applier applier : appliers)
+                applier.queue.offer(END);
+            unregisterMBean();
+        }
+
+        logger.info(String.format("Replayed %d mutations from %d files (%d bytes) in %d ms using %d threads",
+                                  mutationsApplied.get(), filesTotal, bytesTotal, System.currentTimeMillis() - start, threads));
+
+        // flush replayed tables
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (String table : tablesRecovered)
+            futures.addAll(Table.open(table).flush());
+        FBUtilities.waitOnFutures(futures);
+    }
+
+    private void logProgress()
+    {
+        logger.info(String.format("Commit log replay: %d of %d files, %d of %d bytes read, %d mutations applied",
+                                  filesReplayed, filesTotal, bytesRead.get(), bytesTotal, mutationsApplied.get()));
+    }
+
+    private void registerMBean()
+    {
+        try
+        {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!mbs.isRegistered(name))
+                mbs.registerMBean(this, name);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void unregisterMBean()
+    {
+        try
+        {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (mbs.isRegistered(name))
+                mbs.unregisterMBean(name);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Cannot unregister " + MBEAN_NAME, e);
+        }
+    }
+
+    public int getFilesTotal()
+    {
+        return filesTotal;
+    }
+
+    public int getFilesReplayed()
+    {
+        return filesReplayed;
+    }
+
+    public long getBytesTotal()
+    {
+        return bytesTotal;
+    }
+
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    public long getMutationsRead()
+    {
+        return mutationsRead.get();
+    }
+
+    public long getMutationsApplied()
+    {
+        return mutationsApplied.get();
+    }
+
+    /**
+     * Reads mutations of a single file into its queue, ending it with END.
+     */
+    private class Reader implements Callable<Object>
+    {
+        private final File file;
+        private final int bufferSize;
+        final BlockingQueue<RowMutation> mutations = new ArrayBlockingQueue<RowMutation>(READ_AHEAD);
+
+        Reader(File file, int bufferSize)
+        {
+            this.file = file;
+            this.bufferSize = bufferSize;
+        }
+
+        public Object call() throws Exception
+        {
+            try
+            {
+                // empty log file - just removing it
+                if (!stopped && file.length() > 0)
+                    read();
+            }
+            finally
+            {
+                mutations.put(END);
+            }
+            return null;
+        }
+
+        private void read() throws IOException, InterruptedException
+        {
+            BufferedRandomAccessFile reader = new BufferedRandomAccessFile(file.getAbsolutePath(), "r", (int) Math.min(file.length(), bufferSize));
+            long lastPosition = 0;
+            try
+            {
+                CommitLogHeader clHeader = null;
+                int replayPosition = 0;
+                if (!forced)
+                {
+                    String headerPath = CommitLogHeader.getHeaderPathFromSegmentPath(file.getAbsolutePath());
+                    try
+                    {
+                        clHeader = CommitLogHeader.readCommitLogHeader(headerPath);
+                        replayPosition = CommitLogHeader.getLowestPosition(clHeader);
+                    }
+                    catch (IOException ioe)
+                    {
+                        logger.info(headerPath + " incomplete, missing or corrupt.  Everything is ok, don't panic.  CommitLog will be replayed from the beginning");
+                        logger.debug("exception was", ioe);
+                    }
+
+                    if (replayPosition < 0 || replayPosition > reader.length())
+                    {
+                        // replayPosition > reader.length() can happen if some data gets flushed before it is written to the commitlog
+                        // (see https://issues.apache.org/jira/browse/CASSANDRA-2285)
+                        logger.debug("skipping replay of fully-flushed "+ file);
+                        return;
+                    }
+                }
+
+                // records of preallocated segments follow the file header and have checksums salted with segment id
+                boolean preallocated = MmappedCommitLogSegment.isMmappedSegment(reader);
+                long checksumSalt = 0;
+                if (preallocated)
+                {
+                    checksumSalt = reader.readLong();
+                    replayPosition = Math.max(replayPosition, MmappedCommitLogSegment.HEADER_SIZE);
+                }
+
+                /* seek to the lowest position where any CF has non-flushed data
+                 * if replay was forced - reading all records, regardless of commit log header
+                 */
+                reader.seek(replayPosition);
+                if (logger.isDebugEnabled())
+                    logger.debug("Replaying " + file + " starting at " + replayPosition);
+
+                if (forced)
+                    logger.info("Replaying " + file + " starting at " + replayPosition);
+
+                // assume file is compressed, if it has the special extension
+                boolean logFileCompression = file.getName().endsWith(CommitLog.COMPRESSION_EXTENSION);
+                if (logFileCompression && logger.isDebugEnabled())
+                    logger.debug("Filename: " + file + " ends with \"" + CommitLog.COMPRESSION_EXTENSION + "\", expecting compression");
+
+                /* read the logs populate RowMutation and apply */
+                while (!reader.isEOF() && !stopped)
+                {
+                    if (logger.isDebugEnabled())
+                        logger.debug("Reading mutation at " + reader.getFilePointer());
+
+                    long claimedCRC32;
+                    byte[] bytes;
+                    try
+                    {
+                        long length = reader.readLong();
+                        // RowMutation must be at LEAST 10 bytes:
+                        // 3 each for a non-empty Table and Key (including the 2-byte length from writeUTF), 4 bytes for column count.
+                        // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                        if (length < 10 || length > Integer.MAX_VALUE)
+                            break;
+                        bytes = new byte[(int) length]; // readlong can throw EOFException too
+                        reader.readFully(bytes);
+                        claimedCRC32 = reader.readLong();
+                    }
+                    catch (EOFException e)
+                    {
+                        // last CL entry didn't get completely written.  that's ok.
+                        break;
+                    }
+
+                    long position = reader.getFilePointer();
+                    bytesRead.addAndGet(position - lastPosition);
+                    lastPosition = position;
+
+                    Checksum checksum = new CRC32();
+                    checksum.update(bytes, 0, bytes.length);
+                    if (claimedCRC32 != (checksum.getValue() ^ checksumSalt))
+                    {
+                        // end of preallocated segment: the rest is either not fsynced or left from previous use of the file
+                        if (preallocated)
+                            break;
+
+                        // this part of the log must not have been fsynced.  probably the rest is bad too,
+                        // but just in case there is no harm in trying them.
+                        continue;
+                    }
+
+                    // apply decompression
+                    if (logFileCompression) {
+                        bytes = Snappy.uncompress(bytes);
+                    }
+
+                    /* deserialize the commit log entry */
+                    RowMutation rm = RowMutation.serializer().deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+
+                    if (maxReplayTimestamp < Long.MAX_VALUE && isNewerThanMax(rm))
+                    {
+                        logger.info("Stopped replay at "+file+", position "+reader.getFilePointer()+" - mutation "+rm+" has timestamp >"+maxReplayTimestamp);
+                        stopped = true;
+                        break;
+                    }
+
+                    if (logger.isDebugEnabled())
+                        logger.debug(String.format("replaying mutation for %s.%s: %s",
+                                                    rm.getTable(),
+                                                    rm.key(),
+                                                    "{" + StringUtils.join(rm.getColumnFamilies(), ", ") + "}"));
+
+                    if (!forced && clHeader != null)
+                    {
+                        /* remove column families that have already been flushed before applying the rest */
+                        Table table = Table.open(rm.getTable());
+                        for (ColumnFamily columnFamily : new ArrayList<ColumnFamily>(rm.getColumnFamilies()))
+                        {
+                            int id = table.getColumnFamilyId(columnFamily.name());
+                            if (!clHeader.isDirty(id) || position <= clHeader.getPosition(id))
+                            {
+                                rm.removeColumnFamily(columnFamily);
+                            }
+                        }
+                    }
+
+                    mutationsRead.incrementAndGet();
+                    if (!rm.isEmpty())
+                        mutations.put(rm);
+                }
+            }
+            finally
+            {
+                bytesRead.addAndGet(file.length() - lastPosition);
+                reader.close();
+                logger.info("Finished reading " + file);
+            }
+        }
+
+        private boolean isNewerThanMax(RowMutation rm)
+        {
+            // inspecting mutation if it has any column with timestamp value greater than max
+            for (ColumnFamily cf : rm.getColumnFamilies())
+            {
+                if (cf.isMarkedForDelete() && cf.getMarkedForDeleteAt()>maxReplayTimestamp)
+                    return true;
+
+                for (IColumn c : cf.getSortedColumns())
+                {
+                    if ( (c.isMarkedForDelete() && c.getMarkedForDeleteAt()>maxReplayTimestamp) || c.timestamp()>maxReplayTimestamp)
+                        return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Applies mutations of its key partition, in the order it gets them
+     */
+    private class Applier implements Runnable
+    {
+        final BlockingQueue<RowMutation> queue = new LinkedBlockingQueue<RowMutation>(READ_AHEAD);
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error;
+
+        public void run()
+        {
+            List<RowMutation> batch = new ArrayList<RowMutation>(APPLY_BATCH);
+            try
+            {
+                while (true)
+                {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, APPLY_BATCH - 1);
+                    for (RowMutation rm : batch)
+                    {
+                        if (rm == END)
+                            return;
+                        apply(rm);
+                    }
+                    batch.clear();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                error = e;
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+
+        private void apply(RowMutation rm)
+        {
+            // after an error the queue is still drained, so dispatcher never blocks on it
+            if (error != null)
+                return;
+
+            try
+            {
+                Table.open(rm.getTable()).apply(rm, null, false);
+                mutationsApplied.incrementAndGet();
+            }
+            catch (Throwable t)
+            {
+                logger.error("Commit log replay failed", t);
+                error = t;
+            }
+        }
+    }
+}
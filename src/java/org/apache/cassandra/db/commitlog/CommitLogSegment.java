@@ -24,11 +24,13 @@ package org.apache.cassandra.db.commitlog;
 import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.DatabaseDescriptor.CommitLogSync;
+import org.apache.cassandra.config.DatabaseDescriptor.DiskAccessMode;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.FSReadError;
 import org.apache.cassandra.db.FSWriteError;
@@ -45,7 +47,7 @@ public class CommitLogSegment
     private static final Logger logger = Logger.getLogger(CommitLogSegment.class);
 
     private final BufferedRandomAccessFile logWriter;
-    private final CommitLogHeader header;
+    protected final CommitLogHeader header;
 
     // right after creation of a new commit log segment there is a flood of
     // column families with requests to turn on dirty flag in it.
@@ -59,27 +61,55 @@ public class CommitLogSegment
 
     public CommitLogSegment(int cfCount)
     {
-        this.header = new CommitLogHeader(cfCount);
-        long now = System.currentTimeMillis();
-        String logFile = DatabaseDescriptor.getLogFileLocation() + File.separator + "CommitLog-" + now + ".log";
-        
+        this(new CommitLogHeader(cfCount), openWriter(newLogFilePath()));
+    }
+
+    /**
+     * @param logWriter null for segments managing their file themselves
+     */
+    protected CommitLogSegment(CommitLogHeader header, BufferedRandomAccessFile logWriter)
+    {
+        this.header = header;
+        this.logWriter = logWriter;
+
+        if (DatabaseDescriptor.getCommitLogSync() == CommitLogSync.periodic) {
+            delayWriteUntil = System.currentTimeMillis() + DatabaseDescriptor.getCommitLogSyncPeriod();
+        } else {
+            delayWriteUntil = 0;
+        }
+    }
+
+    /**
+     * @return segment in the format selected by CommitLogAccessMode, with room for a record of minRecordSize bytes at least
+     */
+    static CommitLogSegment create(int cfCount, int segmentSize, int minRecordSize)
+    {
+        if (DatabaseDescriptor.getCommitLogAccessMode() == DiskAccessMode.mmap)
+            return new MmappedCommitLogSegment(cfCount, Math.max(segmentSize, MmappedCommitLogSegment.HEADER_SIZE + minRecordSize));
+
+        return new CommitLogSegment(cfCount);
+    }
+
+    static String newLogFilePath()
+    {
+        String logFile = DatabaseDescriptor.getLogFileLocation() + File.separator + "CommitLog-" + System.currentTimeMillis() + ".log";
+
         // add special file extension, if compression is enabled
         if (DatabaseDescriptor.isLogFileCompression()) {
             logFile += CommitLog.COMPRESSION_EXTENSION;
         }
+        return logFile;
+    }
 
+    private static BufferedRandomAccessFile openWriter(String logFile)
+    {
         logger.info("Creating new commitlog segment " + logFile);
 
         try
         {
-            logWriter = createWriter(logFile);
+            BufferedRandomAccessFile logWriter = createWriter(logFile);
             logWriter.setSkipCache(true);
-
-            if (DatabaseDescriptor.getCommitLogSync() == CommitLogSync.periodic) {
-                delayWriteUntil = now + DatabaseDescriptor.getCommitLogSyncPeriod();
-            } else {
-                delayWriteUntil = 0;
-            }
+            return logWriter;
         }
         catch (IOException e)
         {
@@ -100,7 +130,7 @@ public class CommitLogSegment
         }
     }
     
-    private boolean isDelayedHeaderWritePending() {
+    protected boolean isDelayedHeaderWritePending() {
         return delayWriteUntil!=0;
     }
 
@@ -119,15 +149,7 @@ public class CommitLogSegment
             Table table = Table.open(rowMutation.getTable());
 
             // update header
-            boolean writePending = false;
-            for (ColumnFamily columnFamily : rowMutation.getColumnFamilies())
-            {
-                int id = table.getColumnFamilyId(columnFamily.name());
-                writePending|=header.turnOn(id, logWriter.getFilePointer());
-            }
-            
-            if (writePending)
-                writeHeader();
+            markDirty(table, rowMutation);
 
             // write mutation, w/ checksum
             Checksum checkum = new CRC32();
@@ -180,11 +202,99 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * Writes the record, already framed by {@link #frame(Object)}. Framing is the expensive part
+     * (compression and checksum), so group commit does it in writer threads and the single log writer
+     * thread just appends records.
+     */
+    public CommitLogSegment.CommitLogContext writeRecord(RowMutation rowMutation, byte[] record) throws IOException
+    {
+        long currentPosition = -1L;
+        try
+        {
+            currentPosition = position();
+            CommitLogSegment.CommitLogContext cLogCtx = new CommitLogSegment.CommitLogContext(currentPosition);
+
+            markDirty(Table.open(rowMutation.getTable()), rowMutation);
+            appendRecord(record);
+
+            return cLogCtx;
+        }
+        catch (IOException e)
+        {
+            if (currentPosition != -1)
+                seek(currentPosition);
+            throw e;
+        }
+    }
+
+    protected void appendRecord(byte[] record) throws IOException
+    {
+        logWriter.write(record);
+    }
+
+    protected void seek(long position) throws IOException
+    {
+        logWriter.seek(position);
+    }
+
+    private void markDirty(Table table, RowMutation rowMutation) throws IOException
+    {
+        boolean writePending = false;
+        for (ColumnFamily columnFamily : rowMutation.getColumnFamilies())
+        {
+            int id = table.getColumnFamilyId(columnFamily.name());
+            writePending|=header.turnOn(id, position());
+        }
+
+        if (writePending)
+            writeHeader();
+    }
+
+    /**
+     * @return serialized row as a log record (length, maybe compressed row, checksum), in the same format
+     * write(RowMutation, Object) produces
+     */
+    public static byte[] frame(Object serializedRow) throws IOException
+    {
+        byte[] bytes;
+        int length;
+        if (serializedRow instanceof DataOutputBuffer)
+        {
+            DataOutputBuffer buffer = (DataOutputBuffer) serializedRow;
+            bytes = buffer.getData();
+            length = buffer.getLength();
+        }
+        else
+        {
+            assert serializedRow instanceof byte[];
+            bytes = (byte[]) serializedRow;
+            length = bytes.length;
+        }
+
+        if (DatabaseDescriptor.isLogFileCompression())
+        {
+            byte[] compressed = new byte[Snappy.maxCompressedLength(length)];
+            length = Snappy.compress(bytes, 0, length, compressed, 0);
+            bytes = compressed;
+        }
+
+        Checksum checksum = new CRC32();
+        checksum.update(bytes, 0, length);
+
+        byte[] record = new byte[8 + length + 8];
+        ByteBuffer bb = ByteBuffer.wrap(record);
+        bb.putLong(length);
+        bb.put(bytes, 0, length);
+        bb.putLong(checksum.getValue());
+        return record;
+    }
+
     public void sync() 
     {
         
         try {
-            logWriter.sync();
+            syncData();
 
             if (isDelayedHeaderWritePending())
                 writeHeader();
@@ -194,9 +304,39 @@ public class CommitLogSegment
         }
     }
 
+    protected void syncData() throws IOException
+    {
+        logWriter.sync();
+    }
+
     public CommitLogContext getContext()
     {
-        return new CommitLogContext(logWriter.getFilePointer());
+        return new CommitLogContext(position());
+    }
+
+    /**
+     * @return position, where the next record will be written
+     */
+    protected long position()
+    {
+        return logWriter.getFilePointer();
+    }
+
+    /**
+     * @return true, if a record of the given size fits into this segment. Segments, which grow as they are written, always
+     * have room; preallocated ones have to be rolled before the record is written
+     */
+    public boolean hasRoomFor(int recordSize)
+    {
+        return true;
+    }
+
+    /**
+     * @return true, if segment file is preallocated, so records must be framed (see frame()) before they are written
+     */
+    public boolean isPreallocated()
+    {
+        return false;
     }
 
     public CommitLogHeader getHeader()
@@ -249,7 +389,7 @@ public class CommitLogSegment
     @Override
     public String toString()
     {
-        return "CommitLogSegment(" + logWriter.getPath() + ')';
+        return getClass().getSimpleName() + "(" + getPath() + ')';
     }
 
     public class CommitLogContext
@@ -271,7 +411,7 @@ public class CommitLogSegment
         public String toString()
         {
             return "CommitLogContext(" +
-                   "file='" + logWriter.getPath() + '\'' +
+                   "file='" + getPath() + '\'' +
                    ", position=" + position +
                    ')';
         }
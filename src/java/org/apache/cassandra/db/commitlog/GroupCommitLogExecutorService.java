@@ -0,0 +1,280 @@
+package org.apache.cassandra.db.commitlog;
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.FSWriteError;
+import org.apache.cassandra.utils.EstimatedHistogram;
+import org.apache.cassandra.utils.LatencyTracker;
+import org.apache.cassandra.utils.WrappedRunnable;
+
+/**
+ * Group commit: writes are acked only after they are fsynced, like in batch mode, but the expensive parts
+ * are spread so that a single fsync covers as many writes as possible.
+ *
+ * Writer threads frame their rows into log records themselves (compression and checksum), so the log writer
+ * thread only appends ready records into the segment buffer. It takes all records queued while the previous
+ * fsync was running, waits up to the batch window for more, writes them and fsyncs once, then wakes up all
+ * their writers together. Window of 0 does not wait at all: batches are just what accumulates during fsync.
+ *
+ * Other tasks (context requests, segment discards) are executed in order with writes, at batch boundaries.
+ */
+class GroupCommitLogExecutorService extends AbstractCommitLogExecutorService implements GroupCommitLogExecutorServiceMBean
+{
+    private static final Logger logger = Logger.getLogger(GroupCommitLogExecutorService.class);
+
+    private final BlockingQueue<Runnable> queue;
+
+    private volatile long windowNanos;
+
+    private final AtomicLong syncCount = new AtomicLong();
+    private final LatencyTracker syncStats = new LatencyTracker();
+    private final LatencyTracker writeStats = new LatencyTracker();
+    private final EstimatedHistogram totalBatchSizes = new EstimatedHistogram();
+    private final EstimatedHistogram recentBatchSizes = new EstimatedHistogram();
+
+    public GroupCommitLogExecutorService()
+    {
+        this(1024 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public GroupCommitLogExecutorService(int queueSize)
+    {
+        queue = new LinkedBlockingQueue<Runnable>(queueSize);
+        setBatchWindowInMS(DatabaseDescriptor.getCommitLogSyncBatchWindow());
+
+        Runnable runnable = new WrappedRunnable()
+        {
+            public void runMayThrow() throws Exception
+            {
+                while (true)
+                {
+                    processGroup();
+                }
+            }
+        };
+        new Thread(runnable, "COMMIT-LOG-WRITER").start();
+
+        registerMBean(this);
+    }
+
+    private final ArrayList<PendingWrite> group = new ArrayList<PendingWrite>();
+
+    private void processGroup() throws InterruptedException
+    {
+        Runnable first = queue.take();
+        if (!(first instanceof PendingWrite))
+        {
+            first.run();
+            completedTaskCount++;
+            return;
+        }
+
+        group.clear();
+        group.add((PendingWrite) first);
+
+        // collect writes, which are already waiting, and then those coming during the window.
+        // a task other than write ends the group; it runs right after the group is synced
+        Runnable barrier = null;
+        long end = System.nanoTime() + windowNanos;
+        while (true)
+        {
+            Runnable next = queue.poll();
+            if (next == null)
+            {
+                long wait = end - System.nanoTime();
+                if (wait <= 0 || (next = queue.poll(wait, TimeUnit.NANOSECONDS)) == null)
+                    break;
+            }
+            if (!(next instanceof PendingWrite))
+            {
+                barrier = next;
+                break;
+            }
+            group.add((PendingWrite) next);
+        }
+
+        Throwable error = null;
+        try
+        {
+            for (int i = 0; i < group.size(); i++)
+                group.get(i).run();
+
+            long start = System.nanoTime();
+            CommitLog.instance().sync();
+            syncStats.addNano(System.nanoTime() - start);
+        }
+        catch (Throwable t)
+        {
+            logger.error("Failed to write commit log", t);
+            error = t;
+        }
+
+        syncCount.incrementAndGet();
+        totalBatchSizes.add(group.size());
+        recentBatchSizes.add(group.size());
+
+        for (int i = 0; i < group.size(); i++)
+            group.get(i).done(error);
+        completedTaskCount += group.size();
+        group.clear();
+
+        if (barrier != null)
+        {
+            barrier.run();
+            completedTaskCount++;
+        }
+    }
+
+    public void execute(Runnable command)
+    {
+        try
+        {
+            queue.put(command);
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void add(CommitLog.LogRecordAdder adder)
+    {
+        long start = System.nanoTime();
+        PendingWrite write;
+        try
+        {
+            write = new PendingWrite(adder, CommitLogSegment.frame(adder.serializedRow));
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e);
+        }
+
+        execute(write);
+        write.await();
+
+        writeStats.addNano(System.nanoTime() - start);
+    }
+
+    public long getPendingTasks()
+    {
+        return queue.size();
+    }
+
+    public double getBatchWindowInMS()
+    {
+        return windowNanos / 1000000d;
+    }
+
+    public void setBatchWindowInMS(double windowInMS)
+    {
+        windowNanos = (long) (windowInMS * 1000000);
+    }
+
+    public long getSyncCount()
+    {
+        return syncCount.get();
+    }
+
+    public long[] getTotalSyncLatencyHistogramMicros()
+    {
+        return syncStats.getTotalLatencyHistogramMicros();
+    }
+
+    public long[] getRecentSyncLatencyHistogramMicros()
+    {
+        return syncStats.getRecentLatencyHistogramMicros();
+    }
+
+    public long[] getTotalWriteLatencyHistogramMicros()
+    {
+        return writeStats.getTotalLatencyHistogramMicros();
+    }
+
+    public long[] getRecentWriteLatencyHistogramMicros()
+    {
+        return writeStats.getRecentLatencyHistogramMicros();
+    }
+
+    public long[] getTotalBatchSizeHistogram()
+    {
+        return totalBatchSizes.get(false);
+    }
+
+    public long[] getRecentBatchSizeHistogram()
+    {
+        return recentBatchSizes.get(true);
+    }
+
+    /**
+     * framed log record of a single mutation, and its writer waiting for it to be synced
+     */
+    private static class PendingWrite implements Runnable
+    {
+        private final CommitLog.LogRecordAdder adder;
+        private final byte[] record;
+        private final CountDownLatch synced = new CountDownLatch(1);
+        private volatile Throwable error;
+
+        PendingWrite(CommitLog.LogRecordAdder adder, byte[] record)
+        {
+            this.adder = adder;
+            this.record = record;
+        }
+
+        public void run()
+        {
+            adder.write(record);
+        }
+
+        void done(Throwable error)
+        {
+            this.error = error;
+            synced.countDown();
+        }
+
+        void await()
+        {
+            try
+            {
+                synced.await();
+            }
+            catch (InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            if (error != null)
+                throw new RuntimeException(error);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db.commitlog;
+
+import org.apache.cassandra.concurrent.IExecutorMBean;
+
+public interface GroupCommitLogExecutorServiceMBean extends IExecutorMBean
+{
+    /**
+     * how long log writer waits for more writes to join a group before fsync, in milliseconds
+     */
+    public double getBatchWindowInMS();
+    public void setBatchWindowInMS(double windowInMS);
+
+    /**
+     * @return number of fsyncs done
+     */
+    public long getSyncCount();
+
+    /**
+     * fsync latencies
+     */
+    public long[] getTotalSyncLatencyHistogramMicros();
+    public long[] getRecentSyncLatencyHistogramMicros();
+
+    /**
+     * latencies of commit log writes, from submit until fsync is done
+     */
+    public long[] getTotalWriteLatencyHistogramMicros();
+    public long[] getRecentWriteLatencyHistogramMicros();
+
+    /**
+     * numbers of writes covered by a single fsync, in EstimatedHistogram buckets
+     */
+    public long[] getTotalBatchSizeHistogram();
+    public long[] getRecentBatchSizeHistogram();
+}
@@ -0,0 +1,299 @@
+package org.apache.cassandra.db.commitlog;
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+import sun.nio.ch.DirectBuffer;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.FSWriteError;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.io.DeletionService;
+import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+
+/**
+ * Commit log segment, which file is preallocated to the full segment size and memory mapped, so writes are just
+ * copies into the mapping and sync forces only regions written since the last one, without file metadata updates.
+ * Files of discarded segments are recycled for new ones instead of being deleted and created again.
+ *
+ * File starts with MAGIC and segment id, followed by records in the usual format (see CommitLogSegment.frame()),
+ * except the checksum of every record is xor-ed with segment id. So after the last record replay sees either zeroes
+ * of preallocation or records left from the previous use of the file, which do not match the checksum, and stops.
+ */
+public class MmappedCommitLogSegment extends CommitLogSegment
+{
+    private static final Logger logger = Logger.getLogger(MmappedCommitLogSegment.class);
+
+    /** not a valid record length, so files of this format are never taken for the old one */
+    public static final long MAGIC = 0xCA55A4D2A3C0FFEEL;
+    public static final int HEADER_SIZE = 16;
+
+    private static final int REGION_SIZE = 1024 * 1024;
+
+    /** files of discarded segments to reuse */
+    private static final Queue<String> recycled = new ConcurrentLinkedQueue<String>();
+    private static final int MAX_RECYCLED = 2;
+
+    private final String path;
+    private final long id;
+    private final long size;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] regions;
+    private final byte[] longBuffer = new byte[8];
+
+    private long position;
+    private long syncedPosition;
+
+    MmappedCommitLogSegment(int cfCount, long size)
+    {
+        super(new CommitLogHeader(cfCount), null);
+        this.path = newLogFilePath();
+        this.id = System.currentTimeMillis();
+        this.size = size;
+
+        try
+        {
+            boolean reused = reuseRecycled(path, size);
+            logger.info((reused ? "Reusing recycled file for commitlog segment " : "Creating new commitlog segment ") + path);
+
+            file = new RandomAccessFile(path, "rw");
+            if (!reused)
+                preallocate(file.getChannel(), size);
+
+            regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++)
+            {
+                long start = (long) i * REGION_SIZE;
+                regions[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, start, Math.min(REGION_SIZE, size - start));
+            }
+
+            // new id invalidates records left from the previous use of recycled file; zero length ends the empty segment
+            appendLong(MAGIC);
+            appendLong(id);
+            appendLong(0);
+            position = syncedPosition = HEADER_SIZE;
+            regions[0].force();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e);
+        }
+    }
+
+    private static boolean reuseRecycled(String path, long size)
+    {
+        String old;
+        while ((old = recycled.poll()) != null)
+        {
+            File oldFile = new File(old);
+            if (oldFile.length() == size && oldFile.renameTo(new File(path)))
+                return true;
+            DeletionService.submitDelete(old);
+        }
+        return false;
+    }
+
+    private static void preallocate(FileChannel channel, long size) throws IOException
+    {
+        ByteBuffer zeroes = ByteBuffer.allocate((int) Math.min(REGION_SIZE, size));
+        for (long written = 0; written < size; )
+        {
+            zeroes.clear();
+            zeroes.limit((int) Math.min(zeroes.capacity(), size - written));
+            written += channel.write(zeroes, written);
+        }
+        channel.force(true);
+    }
+
+    /**
+     * @return true, if reader is at the start of a file written by this class. Reader is positioned at segment id then
+     */
+    static boolean isMmappedSegment(BufferedRandomAccessFile reader) throws IOException
+    {
+        if (reader.length() < HEADER_SIZE)
+            return false;
+
+        reader.seek(0);
+        return reader.readLong() == MAGIC;
+    }
+
+    @Override
+    public CommitLogContext write(RowMutation rowMutation, Object serializedRow) throws IOException
+    {
+        return writeRecord(rowMutation, frame(serializedRow));
+    }
+
+    @Override
+    protected void appendRecord(byte[] record) throws IOException
+    {
+        assert hasRoomFor(record.length);
+
+        int checksumAt = record.length - 8;
+        append(record, 0, checksumAt);
+        appendLong(ByteBuffer.wrap(record).getLong(checksumAt) ^ id);
+    }
+
+    private void appendLong(long v)
+    {
+        for (int i = 7; i >= 0; i--)
+        {
+            longBuffer[i] = (byte) v;
+            v >>>= 8;
+        }
+        append(longBuffer, 0, 8);
+    }
+
+    private void append(byte[] bytes, int offset, int length)
+    {
+        while (length > 0)
+        {
+            MappedByteBuffer region = regions[(int) (position / REGION_SIZE)];
+            region.position((int) (position % REGION_SIZE));
+            int n = Math.min(length, region.remaining());
+            region.put(bytes, offset, n);
+
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    protected void seek(long position)
+    {
+        this.position = position;
+    }
+
+    @Override
+    protected long position()
+    {
+        return position;
+    }
+
+    @Override
+    public boolean hasRoomFor(int recordSize)
+    {
+        return position + recordSize <= size;
+    }
+
+    @Override
+    public boolean isPreallocated()
+    {
+        return true;
+    }
+
+    @Override
+    protected void syncData()
+    {
+        if (position == syncedPosition)
+            return;
+
+        int last = (int) ((position - 1) / REGION_SIZE);
+        for (int i = (int) (syncedPosition / REGION_SIZE); i <= last; i++)
+            regions[i].force();
+        syncedPosition = position;
+    }
+
+    @Override
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return bytes written so far; the file itself is always preallocated to full size
+     */
+    @Override
+    public long length()
+    {
+        return position;
+    }
+
+    @Override
+    public void close()
+    {
+        for (int i = 0; i < regions.length; i++)
+        {
+            if (regions[i] != null)
+                ((DirectBuffer) regions[i]).cleaner().clean();
+            regions[i] = null;
+        }
+
+        try
+        {
+            file.close();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e);
+        }
+    }
+
+    /**
+     * Recycles the file, unless it is archived (archive is a hard link to the same file) or there are enough files
+     * to reuse already. Recycled file is invalidated first, so it replays as empty if node restarts before its reuse.
+     */
+    @Override
+    public void submitDelete()
+    {
+        if (DatabaseDescriptor.isLogArchiveActive() || recycled.size() >= MAX_RECYCLED)
+        {
+            super.submitDelete();
+            return;
+        }
+
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(path, "rw");
+            try
+            {
+                raf.seek(8);
+                raf.writeLong(-1);
+                raf.writeLong(0);
+                raf.getFD().sync();
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Cannot recycle " + path + ", deleting it", e);
+            super.submitDelete();
+            return;
+        }
+
+        if (!isDelayedHeaderWritePending())
+            DeletionService.submitDelete(getHeaderPath());
+        recycled.add(path);
+    }
+}
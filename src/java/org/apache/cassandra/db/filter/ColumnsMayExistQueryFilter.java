@@ -51,6 +51,15 @@ public class ColumnsMayExistQueryFilter extends QueryFilter
         this.collector = collector;
         this.limit = limit;
     }
+
+    /**
+     * collects results of sstables into this filter's state, so sstables must be read one by one
+     */
+    @Override
+    public boolean canReadSSTablesInParallel()
+    {
+        return false;
+    }
     
 
     /* (non-Javadoc)
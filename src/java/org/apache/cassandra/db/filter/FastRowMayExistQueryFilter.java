@@ -15,6 +15,7 @@ import org.apache.cassandra.db.Memtable;
 import org.apache.cassandra.db.SuperColumn;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.SSTableReader;
+import org.apache.cassandra.utils.BloomFilter;
 
 /**
  * This query checks for possible existance of a row. 
@@ -33,11 +34,25 @@ public class FastRowMayExistQueryFilter extends QueryFilter
     
     private EmptyColumnIterator emptyColumnIterator;
     
+    /**
+     * hashes of key, computed once for bloom filters of all sstables
+     */
+    private BloomFilter.KeyHash keyHash;
+    
     public FastRowMayExistQueryFilter(String key, QueryPath path)
     {
         super(key, path);
     }
 
+    /**
+     * collects results of sstables into this filter's state, so sstables must be read one by one
+     */
+    @Override
+    public boolean canReadSSTablesInParallel()
+    {
+        return false;
+    }
+
     /**
      * @return true, if row may exist in local store
      */
@@ -69,7 +84,9 @@ public class FastRowMayExistQueryFilter extends QueryFilter
         if (!mayExist)
         {
             // did not found it in memtable. inspecting sstable bloom filters
-            mayExist=sstable.getBloomFilter().isPresent(key);
+            if (keyHash == null)
+                keyHash = BloomFilter.hash(key);
+            mayExist=sstable.getBloomFilter().isPresent(keyHash);
         }
         
         return this.emptyColumnIterator;
@@ -67,6 +67,12 @@ public class NamesQueryFilter extends QueryFilter
         return new SSTableNamesIterator(sstable, key, columns);
     }
 
+    @Override
+    public boolean mayMatchColumn(byte[] name, AbstractType comparator)
+    {
+        return columns.contains(name);
+    }
+
     public SuperColumn filterSuperColumn(SuperColumn superColumn, int gcBefore)
     {
         for (IColumn column : superColumn.getSubColumns())
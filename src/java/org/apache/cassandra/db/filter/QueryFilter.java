@@ -59,6 +59,23 @@ public abstract class QueryFilter
      */
     public abstract ColumnIterator getSSTableColumnIterator(SSTableReader sstable) throws IOException;
 
+    /**
+     * @return true, if getSSTableColumnIterator could be called for several sstables concurrently
+     */
+    public boolean canReadSSTablesInParallel()
+    {
+        return true;
+    }
+
+    /**
+     * @return false, if column with this name is never returned by this filter. Used to skip such columns
+     * without materializing them, when reading serialized rows.
+     */
+    public boolean mayMatchColumn(byte[] name, AbstractType comparator)
+    {
+        return true;
+    }
+
     /**
      * collects columns from reducedColumns into returnCF.  Termination is determined
      * by the filter code, which should have some limit on the number of columns
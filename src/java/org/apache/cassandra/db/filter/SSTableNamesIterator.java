@@ -84,16 +84,16 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator
             DecoratedKey keyInDisk = ssTable.getPartitioner().convertFromDiskFormat(file.readUTF());
             assert keyInDisk.equals(decoratedKey) 
                    : String.format("%s != %s in %s", keyInDisk, decoratedKey, file.getPath());
-            file.readInt(); // data size
+            int rowSize = file.readInt();
 
-            List<IndexHelper.IndexInfo> indexList;
+            IndexHelper.ColumnIndex indexList;
             if (ssTable.isColumnBloom())
             {
                 // MM: we dont need column level bloom filter - we already filtered all columns
                 // by ssTable's bloom filter
                 IndexHelper.skipBloomFilter(file);
                 
-                indexList = IndexHelper.deserializeIndex(file);
+                indexList = ssTable.getColumnIndex(file, rowSize);
 
                 cf = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ssTable.makeColumnFamily(), file);
 
@@ -102,7 +102,7 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator
                 /* Read the bloom filter and index summarizing the columns */
                 BloomFilter bf = IndexHelper.defreezeBloomFilter(file);
 
-                indexList = IndexHelper.deserializeIndex(file);
+                indexList = ssTable.getColumnIndex(file, rowSize);
 
                 cf = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ssTable.makeColumnFamily(), file);
                 // we can stop early if bloom filter says none of the columns actually exist -- but,
@@ -121,28 +121,28 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator
 
             file.readInt(); // column count
 
-            /* get the various column ranges we have to read */
+            /* get the various column ranges we have to read, as indexes of their blocks, which are in column order */
             AbstractType comparator = ssTable.getColumnComparator();
-            SortedSet<IndexHelper.IndexInfo> ranges = new TreeSet<IndexHelper.IndexInfo>(IndexHelper.getComparator(comparator, false));
+            SortedSet<Integer> ranges = new TreeSet<Integer>();
             for (byte[] name : filteredColumnNames)
             {
-                int index = IndexHelper.indexFor(name, indexList, comparator, false);
+                int index = indexList.indexFor(name, comparator, false);
                 if (index == indexList.size())
                     continue;
-                IndexHelper.IndexInfo indexInfo = indexList.get(index);
-                if (comparator.compare(name, indexInfo.firstName) < 0)
+                if (comparator.compare(name, indexList.firstName(index)) < 0)
                    continue;
-                ranges.add(indexInfo);
+                ranges.add(index);
             }
 
             file.mark();
-            for (IndexHelper.IndexInfo indexInfo : ranges)
+            for (int index : ranges)
             {
+                long offset = indexList.offset(index);
                 file.reset();
-                long curOffsert = file.skipBytes((int)indexInfo.offset);
-                assert curOffsert == indexInfo.offset;
+                long curOffsert = file.skipBytes((int)offset);
+                assert curOffsert == offset;
                 // TODO only completely deserialize columns we are interested in
-                while (file.bytesPastMark() < indexInfo.offset + indexInfo.width)
+                while (file.bytesPastMark() < offset + indexList.width(index))
                 {
                     final IColumn column = cf.getColumnSerializer().deserialize(file);
                     // we check vs the original Set, not the filtered List, for efficiency
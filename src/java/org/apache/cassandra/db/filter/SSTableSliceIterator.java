@@ -24,7 +24,6 @@ package org.apache.cassandra.db.filter;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.List;
 
 import com.google.common.collect.AbstractIterator;
 
@@ -116,7 +115,7 @@ class SSTableSliceIterator extends AbstractIterator<IColumn> implements ColumnIt
     {
         private final ColumnFamily emptyColumnFamily;
 
-        private final List<IndexHelper.IndexInfo> indexes;
+        private final IndexHelper.ColumnIndex indexes;
         private final FileDataInput file;
 
         private int curRangeIndex;
@@ -130,15 +129,15 @@ class SSTableSliceIterator extends AbstractIterator<IColumn> implements ColumnIt
             assert keyInDisk.equals(key)
                    : String.format("%s != %s in %s", keyInDisk, key, file.getPath());
 
-            file.readInt(); // row size
+            int rowSize = file.readInt();
             IndexHelper.skipBloomFilter(file);
-            indexes = IndexHelper.deserializeIndex(file);
+            indexes = ssTable.getColumnIndex(file, rowSize);
 
             emptyColumnFamily = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ssTable.makeColumnFamily(), file);
             file.readInt(); // column count
 
             file.mark();
-            curRangeIndex = IndexHelper.indexFor(startColumn, indexes, comparator, reversed);
+            curRangeIndex = indexes.indexFor(startColumn, comparator, reversed);
         }
 
         public ColumnFamily getEmptyColumnFamily()
@@ -170,28 +169,28 @@ class SSTableSliceIterator extends AbstractIterator<IColumn> implements ColumnIt
                 return false;
 
             /* seek to the correct offset to the data, and calculate the data size */
-            IndexHelper.IndexInfo curColPosition = indexes.get(curRangeIndex);
+            long offset = indexes.offset(curRangeIndex);
 
             /* see if this read is really necessary. */
             if (reversed)
             {
-                if ((finishColumn.length > 0 && comparator.compare(finishColumn, curColPosition.lastName) > 0) ||
-                    (startColumn.length > 0 && comparator.compare(startColumn, curColPosition.firstName) < 0))
+                if ((finishColumn.length > 0 && comparator.compare(finishColumn, indexes.lastName(curRangeIndex)) > 0) ||
+                    (startColumn.length > 0 && comparator.compare(startColumn, indexes.firstName(curRangeIndex)) < 0))
                     return false;
             }
             else
             {
-                if ((startColumn.length > 0 && comparator.compare(startColumn, curColPosition.lastName) > 0) ||
-                    (finishColumn.length > 0 && comparator.compare(finishColumn, curColPosition.firstName) < 0))
+                if ((startColumn.length > 0 && comparator.compare(startColumn, indexes.lastName(curRangeIndex)) > 0) ||
+                    (finishColumn.length > 0 && comparator.compare(finishColumn, indexes.firstName(curRangeIndex)) < 0))
                     return false;
             }
 
             boolean outOfBounds = false;
 
             file.reset();
-            long curOffset = file.skipBytes((int) curColPosition.offset); 
-            assert curOffset == curColPosition.offset;
-            while (file.bytesPastMark() < curColPosition.offset + curColPosition.width && !outOfBounds)
+            long curOffset = file.skipBytes((int) offset); 
+            assert curOffset == offset;
+            while (file.bytesPastMark() < offset + indexes.width(curRangeIndex) && !outOfBounds)
             {
                 IColumn column = emptyColumnFamily.getColumnSerializer().deserialize(file);
                 if (reversed)
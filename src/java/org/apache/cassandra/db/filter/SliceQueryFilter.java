@@ -63,6 +63,15 @@ public class SliceQueryFilter extends QueryFilter
         return new SSTableSliceIterator(sstable, key, start, finish, reversed);
     }
 
+    @Override
+    public boolean mayMatchColumn(byte[] name, AbstractType comparator)
+    {
+        byte[] low = reversed ? finish : start;
+        byte[] high = reversed ? start : finish;
+        return (low.length == 0 || comparator.compare(name, low) >= 0)
+               && (high.length == 0 || comparator.compare(name, high) <= 0);
+    }
+
     public SuperColumn filterSuperColumn(SuperColumn superColumn, int gcBefore)
     {
         // we clone shallow, then add, under the theory that generally we're interested in a relatively small number of subcolumns.
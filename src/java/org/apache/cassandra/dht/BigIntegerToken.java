@@ -19,10 +19,13 @@
 package org.apache.cassandra.dht;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 public class BigIntegerToken extends Token<BigInteger>
 {
     private static final long serialVersionUID = -5833589141319293006L;
+
+    private static final int COMPARABLE_LENGTH = 17;
     
     public BigIntegerToken(BigInteger token)
     {
@@ -39,4 +42,24 @@ public class BigIntegerToken extends Token<BigInteger>
     {
         return token.compareTo(o.token);
     }
+
+    /**
+     * two's complement of token, sign extended to fixed COMPARABLE_LENGTH bytes, with sign bit
+     * flipped, so negative values are ordered before positive ones.
+     * 17 bytes are enough for all md5 generated tokens and MINIMUM.
+     */
+    @Override
+    public byte[] toComparableBytes()
+    {
+        byte[] value = token.toByteArray();
+        assert value.length <= COMPARABLE_LENGTH : token;
+
+        byte[] bytes = new byte[COMPARABLE_LENGTH];
+        if (token.signum() < 0)
+            Arrays.fill(bytes, 0, COMPARABLE_LENGTH - value.length, (byte) 0xFF);
+        System.arraycopy(value, 0, bytes, COMPARABLE_LENGTH - value.length, value.length);
+        bytes[0] ^= 0x80;
+
+        return bytes;
+    }
 }
@@ -41,6 +41,12 @@ public class BytesToken extends Token<byte[]>
         return FBUtilities.compareByteArrays(token, o.token);
     }
 
+    @Override
+    public byte[] toComparableBytes()
+    {
+        return token;
+    }
+
     @Override
     public int hashCode()
     {
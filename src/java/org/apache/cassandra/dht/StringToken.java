@@ -32,4 +32,21 @@ public class StringToken extends Token<String>
     {
         return token.compareTo(o.token);
     }
+
+    /**
+     * chars of token as big endian 16 bit values, so they compare
+     * exactly as String.compareTo does
+     */
+    @Override
+    public byte[] toComparableBytes()
+    {
+        byte[] bytes = new byte[token.length() * 2];
+        for (int i = 0; i < token.length(); i++)
+        {
+            char c = token.charAt(i);
+            bytes[i * 2] = (byte) (c >>> 8);
+            bytes[i * 2 + 1] = (byte) c;
+        }
+        return bytes;
+    }
 }
@@ -48,6 +48,13 @@ public abstract class Token<T> implements Comparable<Token<T>>, Serializable
      */
     abstract public int compareTo(Token<T> o);
 
+    /**
+     * @return bytes of this token, which compare as unsigned bytes
+     * in exactly the same order as tokens themselves do.
+     * Used to search packed keys without materializing Tokens.
+     */
+    abstract public byte[] toComparableBytes();
+
     public String toString()
     {
         return token.toString();
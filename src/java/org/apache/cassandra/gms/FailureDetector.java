@@ -24,14 +24,15 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import org.apache.log4j.Logger;
-import org.apache.commons.lang.StringUtils;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
-import org.apache.cassandra.utils.BoundedStatsDeque;
 import org.apache.cassandra.utils.FBUtilities;
 
 /**
@@ -50,8 +51,8 @@ public class FailureDetector implements IFailureDetector, FailureDetectorMBean
     /* The time when the module was instantiated. */
     private static long creationTime_;
     
-    private Map<InetAddress, ArrivalWindow> arrivalSamples_ = new Hashtable<InetAddress, ArrivalWindow>();
-    private List<IFailureDetectionEventListener> fdEvntListeners_ = new ArrayList<IFailureDetectionEventListener>();
+    private final ConcurrentMap<InetAddress, ArrivalWindow> arrivalSamples_ = new ConcurrentHashMap<InetAddress, ArrivalWindow>();
+    private final List<IFailureDetectionEventListener> fdEvntListeners_ = new CopyOnWriteArrayList<IFailureDetectionEventListener>();
     
     public FailureDetector()
     {
@@ -102,7 +103,8 @@ public class FailureDetector implements IFailureDetector, FailureDetectorMBean
         {
             FileOutputStream fos = new FileOutputStream("/var/tmp/output-" + System.currentTimeMillis() + "-" + ep + ".dat", true);
             ArrivalWindow hWnd = arrivalSamples_.get(ep);
-            fos.write(hWnd.toString().getBytes());
+            if (hWnd != null)
+                fos.write(hWnd.toString().getBytes());
             fos.close();
         }
         catch (IOException e)
@@ -143,8 +145,10 @@ public class FailureDetector implements IFailureDetector, FailureDetectorMBean
         ArrivalWindow heartbeatWindow = arrivalSamples_.get(ep);
         if ( heartbeatWindow == null )
         {
-            heartbeatWindow = new ArrivalWindow(sampleSize_);
-            arrivalSamples_.put(ep, heartbeatWindow);
+            ArrivalWindow newWindow = new ArrivalWindow(sampleSize_);
+            heartbeatWindow = arrivalSamples_.putIfAbsent(ep, newWindow);
+            if (heartbeatWindow == null)
+                heartbeatWindow = newWindow;
         }
         heartbeatWindow.add(now);
     }
@@ -188,14 +192,12 @@ public class FailureDetector implements IFailureDetector, FailureDetectorMBean
     public String toString()
     {
         StringBuilder sb = new StringBuilder();
-        Set<InetAddress> eps = arrivalSamples_.keySet();
         
         sb.append("-----------------------------------------------------------------------");
-        for ( InetAddress ep : eps )
+        for ( Map.Entry<InetAddress, ArrivalWindow> entry : arrivalSamples_.entrySet() )
         {
-            ArrivalWindow hWnd = arrivalSamples_.get(ep);
-            sb.append(ep + " : ");
-            sb.append(hWnd.toString());
+            sb.append(entry.getKey() + " : ");
+            sb.append(entry.getValue().toString());
             sb.append( System.getProperty("line.separator") );
         }
         sb.append("-----------------------------------------------------------------------");
@@ -207,20 +209,31 @@ public class FailureDetector implements IFailureDetector, FailureDetectorMBean
     }
 }
 
+/**
+ * Last inter arrival times of heartbeats of an endpoint, kept in a ring buffer of primitives with a running sum,
+ * so adding a sample and computing phi are O(1) and do not allocate. Intervals are whole milliseconds, so
+ * the running sum is exact and does not drift however long the window lives.
+ */
 class ArrivalWindow
 {
-    private static Logger logger_ = Logger.getLogger(ArrivalWindow.class);
-    private double tLast_ = 0L;
-    private BoundedStatsDeque arrivalIntervals_;
+    /* -log10(e^(-t/mean)) == t/mean * log10(e) */
+    private static final double PHI_FACTOR = 1.0 / Math.log(10.0);
+
+    private final long[] arrivalIntervals_;
+    private long tLast_ = 0L;
+    /* index of the oldest interval, which is overwritten next once the window is full */
+    private int head_ = 0;
+    private int size_ = 0;
+    private long sum_ = 0L;
 
     ArrivalWindow(int size)
     {
-        arrivalIntervals_ = new BoundedStatsDeque(size);
+        arrivalIntervals_ = new long[size];
     }
     
-    synchronized void add(double value)
+    synchronized void add(long value)
     {
-        double interArrivalTime;
+        long interArrivalTime;
         if ( tLast_ > 0L )
         {                        
             interArrivalTime = (value - tLast_);            
@@ -229,63 +242,56 @@ class ArrivalWindow
         {
             interArrivalTime = Gossiper.intervalInMillis_ / 2;
         }
-        tLast_ = value;            
-        arrivalIntervals_.add(interArrivalTime);        
-    }
-    
-    synchronized double sum()
-    {
-        return arrivalIntervals_.sum();
+        tLast_ = value;
+
+        if (size_ == arrivalIntervals_.length)
+        {
+            sum_ -= arrivalIntervals_[head_];
+            arrivalIntervals_[head_] = interArrivalTime;
+            head_ = (head_ + 1) % arrivalIntervals_.length;
+        }
+        else
+        {
+            arrivalIntervals_[(head_ + size_) % arrivalIntervals_.length] = interArrivalTime;
+            size_++;
+        }
+        sum_ += interArrivalTime;
     }
     
-    synchronized double sumOfDeviations()
+    synchronized int size()
     {
-        return arrivalIntervals_.sumOfDeviations();
+        return size_;
     }
     
     synchronized double mean()
     {
-        return arrivalIntervals_.mean();
+        return size_ == 0 ? 0d : (double) sum_ / size_;
     }
     
-    synchronized double variance()
+    synchronized void clear()
     {
-        return arrivalIntervals_.variance();
+        head_ = 0;
+        size_ = 0;
+        sum_ = 0L;
     }
     
-    double stdev()
+    synchronized double phi(long tnow)
     {
-        return arrivalIntervals_.stdev();
-    }
-    
-    void clear()
-    {
-        arrivalIntervals_.clear();
-    }
+        if ( size_ == 0 )
+            return 0d;
+        double t = tnow - tLast_;
+        return PHI_FACTOR * t * size_ / sum_;
+    } 
     
-    double p(double t)
+    public synchronized String toString()
     {
-        double mean = mean();
-        double exponent = (-1)*(t)/mean;
-        return 1 - ( 1 - Math.pow(Math.E, exponent) );
-    }
-    
-    double phi(long tnow)
-    {            
-        int size = arrivalIntervals_.size();
-        double log = 0d;
-        if ( size > 0 )
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size_; i++)
         {
-            double t = tnow - tLast_;                
-            double probability = p(t);       
-            log = (-1) * Math.log10( probability );                                 
+            if (i > 0)
+                sb.append(' ');
+            sb.append(arrivalIntervals_[(head_ + i) % arrivalIntervals_.length]);
         }
-        return log;           
-    } 
-    
-    public String toString()
-    {
-        return StringUtils.join(arrivalIntervals_.iterator(), " ");
+        return sb.toString();
     }
 }
-
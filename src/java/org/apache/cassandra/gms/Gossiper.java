@@ -28,7 +28,6 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -36,6 +35,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -45,6 +46,7 @@ import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.log4j.Logger;
+import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
 /**
  * This module is responsible for Gossiping information for the local endpoint. This abstraction
@@ -102,12 +104,14 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
                            See CASSANDRA-150 for more exposition. */
                         if (!gossipedToSeed || liveEndpoints_.size() < seeds_.size())
                             doGossipToSeed(message);
-
-                        if (logger_.isTraceEnabled())
-                            logger_.trace("Performing status check ...");
-                        doStatusCheck();
                     }
                 }
+
+                /* the status check interprets every endpoint, so it is done without holding the gossiper lock,
+                   not to stall the gossip stage for it; it takes the lock only to remove or evict endpoints */
+                if (logger_.isTraceEnabled())
+                    logger_.trace("Performing status check ...");
+                doStatusCheck();
             }
             catch (Exception e)
             {
@@ -127,25 +131,25 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
     private Random random_ = new Random();
 
     /* subscribers for interest in EndPointState change */
-    private List<IEndPointStateChangeSubscriber> subscribers_ = new ArrayList<IEndPointStateChangeSubscriber>();
+    private List<IEndPointStateChangeSubscriber> subscribers_ = new CopyOnWriteArrayList<IEndPointStateChangeSubscriber>();
 
     /* live member set */
-    private Set<InetAddress> liveEndpoints_ = new HashSet<InetAddress>();
+    private Set<InetAddress> liveEndpoints_ = new NonBlockingHashSet<InetAddress>();
 
     /* unreachable member set */
-    private Set<InetAddress> unreachableEndpoints_ = new HashSet<InetAddress>();
+    private Set<InetAddress> unreachableEndpoints_ = new NonBlockingHashSet<InetAddress>();
 
     /* initial seeds for joining the cluster */
     private Set<InetAddress> seeds_ = new HashSet<InetAddress>();
 
     /* map where key is the endpoint and value is the state associated with the endpoint */
-    Map<InetAddress, EndPointState> endPointStateMap_ = new Hashtable<InetAddress, EndPointState>();
+    Map<InetAddress, EndPointState> endPointStateMap_ = new ConcurrentHashMap<InetAddress, EndPointState>();
 
     /* map where key is endpoint and value is timestamp when this endpoint was removed from
      * gossip. We will ignore any gossip regarding these endpoints for Streaming.RING_DELAY time
      * after removal to prevent nodes from falsely reincarnating during the time when removal
      * gossip gets propagated to all nodes */
-    Map<InetAddress, Long> justRemovedEndPoints_ = new Hashtable<InetAddress, Long>();
+    Map<InetAddress, Long> justRemovedEndPoints_ = new ConcurrentHashMap<InetAddress, Long>();
 
     private Gossiper()
     {
@@ -190,7 +194,8 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
     public void convict(InetAddress endpoint)
     {
         EndPointState epState = endPointStateMap_.get(endpoint);
-        if (epState.isAlive())
+        // may have been removed since the status check picked it
+        if (epState != null && epState.isAlive())
         {
             logger_.info("InetAddress " + endpoint + " is now dead.");
             isAlive(endpoint, epState, false);
@@ -221,7 +226,7 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
      *
      * @param endpoint endpoint to be removed from the current membership.
     */
-    void evictFromMembership(InetAddress endpoint)
+    synchronized void evictFromMembership(InetAddress endpoint)
     {
         unreachableEndpoints_.remove(endpoint);
     }
@@ -229,7 +234,7 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
     /**
      * Removes the endpoint completely from Gossip
      */
-    public void removeEndPoint(InetAddress endpoint)
+    public synchronized void removeEndPoint(InetAddress endpoint)
     {
         // do subscribers first so anything in the subscriber that depends on gossiper state won't get confused
         for (IEndPointStateChangeSubscriber subscriber : subscribers_)
@@ -331,9 +336,12 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
      */
     boolean sendGossip(Message message, Set<InetAddress> epSet)
     {
-        int size = epSet.size();
-        /* Generate a random number from 0 -> size */
+        /* the set may change concurrently, so size is taken from the copy */
         List<InetAddress> liveEndPoints = new ArrayList<InetAddress>(epSet);
+        int size = liveEndPoints.size();
+        if (size == 0)
+            return false;
+        /* Generate a random number from 0 -> size */
         int index = (size == 1) ? 0 : random_.nextInt(size);
         InetAddress to = liveEndPoints.get(index);
         if (logger_.isTraceEnabled())
@@ -398,50 +406,50 @@ public class Gossiper implements IFailureDetectionEventListener, IEndPointStateC
     {
         long now = System.currentTimeMillis();
 
-        Set<InetAddress> eps = endPointStateMap_.keySet();
-        for ( InetAddress endpoint : eps )
+        for ( InetAddress endpoint : endPointStateMap_.keySet() )
         {
             if ( endpoint.equals(localEndPoint_) )
                 continue;
 
             FailureDetector.instance.interpret(endpoint);
-            EndPointState epState = endPointStateMap_.get(endpoint);
-            if ( epState != null )
-            {
-                long duration = now - epState.getUpdateTimestamp();
 
-                // check if this is a fat client. fat clients are removed automatically from
-                // gosip after FatClientTimeout
-                if (!epState.getHasToken() && !epState.isAlive() && (duration > FatClientTimeout_))
+            // decided under the lock, so an endpoint being (re)added by the gossip stage is not removed meanwhile
+            synchronized (this)
+            {
+                EndPointState epState = endPointStateMap_.get(endpoint);
+                if ( epState != null )
                 {
-                    if (StorageService.instance.getTokenMetadata().isMember(endpoint))
-                        epState.setHasToken(true);
-                    else
+                    long duration = now - epState.getUpdateTimestamp();
+
+                    // check if this is a fat client. fat clients are removed automatically from
+                    // gosip after FatClientTimeout
+                    if (!epState.getHasToken() && !epState.isAlive() && (duration > FatClientTimeout_))
                     {
-                        logger_.info("FatClient " + endpoint + " has been silent for " + FatClientTimeout_ + "ms, removing from gossip");
-                        removeEndPoint(endpoint);
-                        break; // avoid CME. this is fixed better in 0.7
+                        if (StorageService.instance.getTokenMetadata().isMember(endpoint))
+                            epState.setHasToken(true);
+                        else
+                        {
+                            logger_.info("FatClient " + endpoint + " has been silent for " + FatClientTimeout_ + "ms, removing from gossip");
+                            removeEndPoint(endpoint);
+                            continue;
+                        }
                     }
-                }
 
-                if ( !epState.isAlive() && (duration > aVeryLongTime_) )
-                {
-                    evictFromMembership(endpoint);
+                    if ( !epState.isAlive() && (duration > aVeryLongTime_) )
+                    {
+                        evictFromMembership(endpoint);
+                    }
                 }
             }
+        }
 
-            if (!justRemovedEndPoints_.isEmpty())
+        for (Map.Entry<InetAddress, Long> entry : justRemovedEndPoints_.entrySet())
+        {
+            if ((now - entry.getValue()) > StorageService.RING_DELAY)
             {
-                Hashtable<InetAddress, Long> copy = new Hashtable<InetAddress, Long>(justRemovedEndPoints_);
-                for (Map.Entry<InetAddress, Long> entry : copy.entrySet())
-                {
-                    if ((now - entry.getValue()) > StorageService.RING_DELAY)
-                    {
-                        if (logger_.isDebugEnabled())
-                            logger_.debug(StorageService.RING_DELAY + " elapsed, " + entry.getKey() + " gossip quarantine over");
-                        justRemovedEndPoints_.remove(entry.getKey());
-                    }
-                }
+                if (logger_.isDebugEnabled())
+                    logger_.debug(StorageService.RING_DELAY + " elapsed, " + entry.getKey() + " gossip quarantine over");
+                justRemovedEndPoints_.remove(entry.getKey());
             }
         }
     }
@@ -14,6 +14,7 @@ import java.util.SortedSet;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.utils.BlockedBloomFilter;
 import org.apache.cassandra.utils.BloomFilter;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.log4j.Logger;
@@ -34,6 +35,7 @@ public class BloomFilterWriter implements IColumnNameObserver
     private BloomFilter bf;
     private ByteBuffer bb;
     private final boolean bloomColumns;
+    private final boolean blocked;
     private long keyCount;
     private long estimatedKeyCount;
     
@@ -42,9 +44,18 @@ public class BloomFilterWriter implements IColumnNameObserver
      * 
      */
     public BloomFilterWriter(String filterFilename,long keyCount, boolean bloomColumns) throws IOException
+    {
+        this(filterFilename, keyCount, bloomColumns, false);
+    }
+
+    /**
+     * @param blocked write filter in cache line blocked format (see BlockedBloomFilter)
+     */
+    public BloomFilterWriter(String filterFilename,long keyCount, boolean bloomColumns, boolean blocked) throws IOException
     {
         this.filterFilename = filterFilename;
         this.bloomColumns = bloomColumns;
+        this.blocked = blocked;
         
         this.bb = ByteBuffer.allocate(512);
         this.estimatedKeyCount = keyCount;
@@ -62,7 +73,7 @@ public class BloomFilterWriter implements IColumnNameObserver
     private BloomFilter bf()
     {
         if (this.bf==null)
-            this.bf = BloomFilter.getFilter(estimatedKeyCount, 15);
+            this.bf = blocked ? BlockedBloomFilter.getFilter(estimatedKeyCount, 15) : BloomFilter.getFilter(estimatedKeyCount, 15);
         
         return bf;
     }
@@ -165,11 +176,11 @@ public class BloomFilterWriter implements IColumnNameObserver
         // bloom filter
         BufferedRandomAccessFile file = new BufferedRandomAccessFile(filterFilename, "rw", 128*1024);
         file.setSkipCache(true);
-        BloomFilter.serializerForSSTable().serialize(bf(), file);
+        (blocked ? BlockedBloomFilter.serializer() : BloomFilter.serializerForSSTable()).serialize(bf(), file);
         file.close();
         
         if (logger.isInfoEnabled())
-            logger.info("Written filter "+filterFilename+", with actual elements (estimated elements) counts: "+this.bf().getElementCount()+'('+estimatedKeyCount+')'+" with page size="+bf().bitset.getPageSize()+", count="+bf().bitset.getPageCount());
+            logger.info("Written filter "+filterFilename+", with actual elements (estimated elements) counts: "+this.bf().getElementCount()+'('+estimatedKeyCount+')'+(blocked ? " blocked" : "")+" with page size="+bf().bitset.getPageSize()+", count="+bf().bitset.getPageCount());
         
         return bf();
     }
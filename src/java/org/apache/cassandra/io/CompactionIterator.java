@@ -56,6 +56,8 @@ public abstract class CompactionIterator extends ReducingIterator<IteratingRow,
     private ObservingColumnFamilyDeserializer observingDeserializer;
     private final boolean skipBloom;
     private IColumnNameObserver columnNameObserver;
+    // collects timestamps of written rows, if rows are written
+    private SSTableMetadata.Collector metadataCollector;
     
     private IRowProcessor rowProcessor;
     private final boolean deserializeAllRows;
@@ -161,6 +163,8 @@ public abstract class CompactionIterator extends ReducingIterator<IteratingRow,
                 
                 finishRowWrite(compactedRow);
 
+                if (metadataCollector != null)
+                    metadataCollector.update(cf);
                 if (columnNameObserver!=null)
                     columnNameObserver.add(key,cf);
             }
@@ -182,6 +186,9 @@ public abstract class CompactionIterator extends ReducingIterator<IteratingRow,
                     }
 
                     finishRowWrite(compactedRow);
+
+                    if (metadataCollector != null)
+                        metadataCollector.update(row0.sstable.getSSTableMetadata());
                 }
                 catch (IOException e)
                 {
@@ -241,6 +248,11 @@ public abstract class CompactionIterator extends ReducingIterator<IteratingRow,
         this.observingDeserializer = new ObservingColumnFamilyDeserializer(columnNameObserver);
     }
     
+    protected void setMetadataCollector(SSTableMetadata.Collector metadataCollector)
+    {
+        this.metadataCollector = metadataCollector;
+    }
+
     public long getTotalBytes()
     {
         return totalBytes;
@@ -67,6 +67,7 @@ public class CompactionWriterIterator extends CompactionIterator
         
         try {
             writer = new SSTableWriter(newFilename, expectedBloomFilterSize, StorageService.getPartitioner(),cfs.metadata.bloomColumns);
+            setMetadataCollector(writer.getMetadataCollector());
             if (cfs.metadata.bloomColumns)
                 setColumnNameObserver(writer.getBloomFilterWriter());
             
@@ -20,6 +20,7 @@ package org.apache.cassandra.io;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -177,4 +178,124 @@ public class IndexHelper
             return new IndexInfo(ColumnSerializer.readName(dis), ColumnSerializer.readName(dis), dis.readLong(), dis.readLong());
         }
     }
+
+    /**
+     * Column index of a row, like a list of IndexInfo, but kept in parallel arrays, which take a fraction of the
+     * memory of IndexInfo objects in a list, so column indexes of wide rows can be cached.
+     */
+    public static class ColumnIndex
+    {
+        public static final ColumnIndex EMPTY = new ColumnIndex(new byte[0][], new byte[0][], new long[0], new long[0]);
+
+        private final byte[][] firstNames;
+        private final byte[][] lastNames;
+        private final long[] offsets;
+        private final long[] widths;
+
+        private ColumnIndex(byte[][] firstNames, byte[][] lastNames, long[] offsets, long[] widths)
+        {
+            this.firstNames = firstNames;
+            this.lastNames = lastNames;
+            this.offsets = offsets;
+            this.widths = widths;
+        }
+
+        public int size()
+        {
+            return offsets.length;
+        }
+
+        public byte[] firstName(int i)
+        {
+            return firstNames[i];
+        }
+
+        public byte[] lastName(int i)
+        {
+            return lastNames[i];
+        }
+
+        public long offset(int i)
+        {
+            return offsets[i];
+        }
+
+        public long width(int i)
+        {
+            return widths[i];
+        }
+
+        /**
+         * same as IndexHelper.indexFor over the list of IndexInfo.
+         * If the index is size() or -1, the @name appears nowhere.
+         */
+        public int indexFor(byte[] name, AbstractType comparator, boolean reversed)
+        {
+            if (name.length == 0 && reversed)
+                return size() - 1;
+
+            byte[][] names = reversed ? firstNames : lastNames;
+            int low = 0;
+            int high = names.length - 1;
+            while (low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int cmp = comparator.compare(names[mid], name);
+                if (cmp < 0)
+                    low = mid + 1;
+                else if (cmp > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return reversed ? low - 1 : low;
+        }
+
+        /**
+         * @return estimated java heap used: 4 arrays and per block 2 names with their array references and 2 longs
+         */
+        public int heapSize()
+        {
+            int size = 4 * 16;
+            for (int i = 0; i < offsets.length; i++)
+                size += 16 + firstNames[i].length + 16 + lastNames[i].length + 2 * 8 + 2 * 8;
+            return size;
+        }
+
+        /**
+         * Deserialize the index, like deserializeIndex does
+         */
+        public static ColumnIndex deserialize(FileDataInput in) throws IOException
+        {
+            int columnIndexSize = in.readInt();
+            if (columnIndexSize == 0)
+                return EMPTY;
+
+            List<byte[]> firstNames = new ArrayList<byte[]>();
+            List<byte[]> lastNames = new ArrayList<byte[]>();
+            long[] offsets = new long[16];
+            long[] widths = new long[16];
+            in.mark();
+            while (in.bytesPastMark() < columnIndexSize)
+            {
+                int i = firstNames.size();
+                if (i == offsets.length)
+                {
+                    offsets = Arrays.copyOf(offsets, i * 2);
+                    widths = Arrays.copyOf(widths, i * 2);
+                }
+                firstNames.add(ColumnSerializer.readName(in));
+                lastNames.add(ColumnSerializer.readName(in));
+                offsets[i] = in.readLong();
+                widths[i] = in.readLong();
+            }
+            assert in.bytesPastMark() == columnIndexSize;
+
+            int size = firstNames.size();
+            return new ColumnIndex(firstNames.toArray(new byte[size][]),
+                                   lastNames.toArray(new byte[size][]),
+                                   Arrays.copyOf(offsets, size),
+                                   Arrays.copyOf(widths, size));
+        }
+    }
 }
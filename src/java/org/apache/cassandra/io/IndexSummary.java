@@ -21,82 +21,268 @@ package org.apache.cassandra.io;
  */
 
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
 
+/**
+ * Sampled index of an sstable, kept in a few primitive arrays instead of a list of KeyPosition objects.
+ *
+ * Tokens of sampled keys are packed into a single byte array in their comparable form (see Token.toComparableBytes),
+ * each followed by the UTF-8 bytes of its key, so lookups binary search the packed bytes directly and allocate
+ * nothing besides the comparable bytes of the searched key. Index entries, spanning mmap segment boundary, are kept
+ * in parallel arrays sorted by their index position.
+ */
 public class IndexSummary
 {
-    private ArrayList<KeyPosition> indexPositions = new ArrayList<KeyPosition>();
-    private Map<KeyPosition, SSTable.PositionSize> spannedIndexDataPositions;
-    private Map<Long, KeyPosition> spannedIndexPositions;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final IPartitioner partitioner;
+
+    /** packed tokens and keys of sampled entries. entry i occupies keys[tokenOffsets[i]..tokenOffsets[i+1]) */
+    private byte[] keys = new byte[4096];
+    private int keysLength = 0;
+    /** start of token of entry i; tokenOffsets[size] is end of the last entry */
+    private int[] tokenOffsets = new int[65];
+    /** start of key of entry i, which is also end of its token */
+    private int[] keyOffsets = new int[64];
+    private long[] indexPositions = new long[64];
+    private int size = 0;
+
+    private int[] spannedEntries = new int[0];
+    private long[] spannedIndexPositions = new long[0];
+    private long[] spannedDataPositions = new long[0];
+    private long[] spannedRowSizes = new long[0];
+    private long[] spannedNextIndexPositions = new long[0];
+    private int spannedSize = 0;
+
     private int keysWritten = 0;
     private long lastIndexPosition;
 
+    public IndexSummary(IPartitioner partitioner)
+    {
+        this.partitioner = partitioner;
+    }
+
     public void maybeAddEntry(DecoratedKey decoratedKey, long dataPosition, long rowSize, long indexPosition, long nextIndexPosition)
     {
         boolean spannedIndexEntry = DatabaseDescriptor.getIndexAccessMode() == DatabaseDescriptor.DiskAccessMode.mmap
                                     && SSTableReader.bufferIndex(indexPosition) != SSTableReader.bufferIndex(nextIndexPosition);
         if ((keysWritten++ % DatabaseDescriptor.getIndexInterval() == 0) || spannedIndexEntry)
         {
-            KeyPosition info = new KeyPosition(decoratedKey, indexPosition);
-            indexPositions.add(info);
+            int entry = addEntry(decoratedKey, indexPosition);
 
             if (spannedIndexEntry)
-            {
-                if (spannedIndexDataPositions == null)
-                {
-                    spannedIndexDataPositions = new HashMap<KeyPosition, SSTable.PositionSize>();
-                    spannedIndexPositions = new HashMap<Long, KeyPosition>();
-                }
-                spannedIndexDataPositions.put(info, new SSTable.PositionSize(dataPosition, rowSize));
-                spannedIndexPositions.put(info.indexPosition, info);
-            }
+                addSpannedEntry(entry, indexPosition, dataPosition, rowSize, nextIndexPosition);
         }
         lastIndexPosition = indexPosition;
     }
 
-    public Map<KeyPosition, SSTable.PositionSize> getSpannedIndexDataPositions()
+    private int addEntry(DecoratedKey decoratedKey, long indexPosition)
     {
-        return spannedIndexDataPositions;
+        byte[] token = decoratedKey.token.toComparableBytes();
+        byte[] key = decoratedKey.key.getBytes(UTF8);
+
+        if (size == indexPositions.length)
+        {
+            int capacity = size * 2;
+            tokenOffsets = Arrays.copyOf(tokenOffsets, capacity + 1);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            indexPositions = Arrays.copyOf(indexPositions, capacity);
+        }
+        if (keysLength + token.length + key.length > keys.length)
+            keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + token.length + key.length));
+
+        tokenOffsets[size] = keysLength;
+        System.arraycopy(token, 0, keys, keysLength, token.length);
+        keysLength += token.length;
+
+        keyOffsets[size] = keysLength;
+        System.arraycopy(key, 0, keys, keysLength, key.length);
+        keysLength += key.length;
+
+        tokenOffsets[size + 1] = keysLength;
+        indexPositions[size] = indexPosition;
+
+        return size++;
     }
 
-    public List<KeyPosition> getIndexPositions()
+    private void addSpannedEntry(int entry, long indexPosition, long dataPosition, long rowSize, long nextIndexPosition)
     {
-        return indexPositions;
+        if (spannedSize == spannedEntries.length)
+        {
+            int capacity = Math.max(4, spannedSize * 2);
+            spannedEntries = Arrays.copyOf(spannedEntries, capacity);
+            spannedIndexPositions = Arrays.copyOf(spannedIndexPositions, capacity);
+            spannedDataPositions = Arrays.copyOf(spannedDataPositions, capacity);
+            spannedRowSizes = Arrays.copyOf(spannedRowSizes, capacity);
+            spannedNextIndexPositions = Arrays.copyOf(spannedNextIndexPositions, capacity);
+        }
+
+        // entries are added in index order, so spanned ones are sorted by index position
+        assert spannedSize == 0 || spannedIndexPositions[spannedSize - 1] < indexPosition;
+        spannedEntries[spannedSize] = entry;
+        spannedIndexPositions[spannedSize] = indexPosition;
+        spannedDataPositions[spannedSize] = dataPosition;
+        spannedRowSizes[spannedSize] = rowSize;
+        spannedNextIndexPositions[spannedSize] = nextIndexPosition;
+        spannedSize++;
     }
 
     public void complete()
     {
-        indexPositions.trimToSize();
+        keys = Arrays.copyOf(keys, keysLength);
+        tokenOffsets = Arrays.copyOf(tokenOffsets, size + 1);
+        keyOffsets = Arrays.copyOf(keyOffsets, size);
+        indexPositions = Arrays.copyOf(indexPositions, size);
+
+        spannedEntries = Arrays.copyOf(spannedEntries, spannedSize);
+        spannedIndexPositions = Arrays.copyOf(spannedIndexPositions, spannedSize);
+        spannedDataPositions = Arrays.copyOf(spannedDataPositions, spannedSize);
+        spannedRowSizes = Arrays.copyOf(spannedRowSizes, spannedSize);
+        spannedNextIndexPositions = Arrays.copyOf(spannedNextIndexPositions, spannedSize);
+    }
+
+    /**
+     * @return number of sampled entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public long getIndexPosition(int entry)
+    {
+        return indexPositions[entry];
+    }
+
+    /**
+     * materializes key of sampled entry. Not for hot paths.
+     */
+    public DecoratedKey getKey(int entry)
+    {
+        return partitioner.decorateKey(new String(keys, keyOffsets[entry], tokenOffsets[entry + 1] - keyOffsets[entry], UTF8));
+    }
+
+    /**
+     * @return the last sampled entry, which key is less or equal to the given one,
+     * or -1 if the key is less than the first sampled one
+     */
+    public int binarySearch(DecoratedKey decoratedKey)
+    {
+        byte[] token = decoratedKey.token.toComparableBytes();
+
+        int low = 0, high = size - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int v = compare(mid, token);
+            if (v < 0)
+                low = mid + 1;
+            else if (v > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return low - 1;
+    }
+
+    public boolean keyEquals(int entry, DecoratedKey decoratedKey)
+    {
+        return compare(entry, decoratedKey.token.toComparableBytes()) == 0;
     }
 
-    public SSTable.PositionSize getSpannedDataPosition(KeyPosition sampledPosition)
+    /**
+     * compares token of sampled entry with the given comparable token bytes as unsigned bytes
+     */
+    private int compare(int entry, byte[] token)
     {
-        if (spannedIndexDataPositions == null)
-            return null;
-        return spannedIndexDataPositions.get(sampledPosition);
+        int offset = tokenOffsets[entry];
+        int length = keyOffsets[entry] - offset;
+        int minLength = Math.min(length, token.length);
+        for (int i = 0; i < minLength; i++)
+        {
+            int b1 = keys[offset + i] & 0xFF;
+            int b2 = token[i] & 0xFF;
+            if (b1 != b2)
+                return b1 - b2;
+        }
+        return length - token.length;
     }
 
-    public KeyPosition getSpannedIndexPosition(long nextIndexPosition)
+    /**
+     * @return number of sampled entries spanning mmap segment boundary
+     */
+    public int getSpannedSize()
     {
-        return spannedIndexPositions == null ? null : spannedIndexPositions.get(nextIndexPosition);
+        return spannedSize;
     }
 
-    public SSTable.PositionSize getSpannedDataPosition(long nextIndexPosition)
+    /**
+     * @return spanned entry number of index entry at indexPosition or -1, if it does not span mmap segment boundary
+     */
+    public int getSpannedEntry(long indexPosition)
+    {
+        if (spannedSize == 0)
+            return -1;
+        int spanned = Arrays.binarySearch(spannedIndexPositions, 0, spannedSize, indexPosition);
+        return spanned < 0 ? -1 : spanned;
+    }
+
+    /**
+     * @return sampled entry of spanned one
+     */
+    public int getSpannedSampledEntry(int spanned)
     {
-        if (spannedIndexDataPositions == null)
-            return null;
+        return spannedEntries[spanned];
+    }
 
-        KeyPosition info = spannedIndexPositions.get(nextIndexPosition);
-        if (info == null)
-            return null;
+    public SSTable.PositionSize getSpannedDataPosition(int spanned)
+    {
+        return new SSTable.PositionSize(spannedDataPositions[spanned], spannedRowSizes[spanned]);
+    }
 
-        return spannedIndexDataPositions.get(info);
+    /**
+     * @return position in index file of the entry following the spanned one
+     */
+    public long getSpannedNextIndexPosition(int spanned)
+    {
+        return spannedNextIndexPositions[spanned];
+    }
+
+    /**
+     * @return data position of the row of spanned index entry at indexPosition or -1, if it is not spanned
+     */
+    public long getSpannedRowPosition(long indexPosition)
+    {
+        int spanned = getSpannedEntry(indexPosition);
+        return spanned < 0 ? -1 : spannedDataPositions[spanned];
+    }
+
+    /**
+     * @return view of sampled entries, materializing KeyPosition on every access
+     */
+    public List<KeyPosition> getIndexPositions()
+    {
+        return new AbstractList<KeyPosition>()
+        {
+            public KeyPosition get(int entry)
+            {
+                if (entry >= size)
+                    throw new IndexOutOfBoundsException(String.valueOf(entry));
+                return new KeyPosition(getKey(entry), indexPositions[entry]);
+            }
+
+            public int size()
+            {
+                return size;
+            }
+        };
     }
 
     public long getLastIndexPosition()
@@ -107,9 +293,7 @@ public class IndexSummary
 
     /**
      * This is a simple container for the index Key and its corresponding position
-     * in the index file. Binary search is performed on a list of these objects
-     * to find where to start looking for the index entry containing the data position
-     * (which will be turned into a PositionSize object)
+     * in the index file, handed out to callers which iterate over sampled keys.
      */
     public static class KeyPosition implements Comparable<KeyPosition>
     {
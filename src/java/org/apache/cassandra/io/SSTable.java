@@ -23,6 +23,7 @@ package org.apache.cassandra.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -109,6 +110,12 @@ public abstract class SSTable
             FileUtils.deleteWithConfirm(new File(dataFilename));
             FileUtils.deleteWithConfirm(new File(SSTable.indexFilename(dataFilename)));
             FileUtils.deleteWithConfirm(new File(SSTable.filterFilename(dataFilename)));
+            File compressionInfo = new File(SSTable.compressionInfoFilename(dataFilename));
+            if (compressionInfo.exists())
+                FileUtils.deleteWithConfirm(compressionInfo);
+            File statistics = new File(SSTable.statisticsFilename(dataFilename));
+            if (statistics.exists())
+                FileUtils.deleteWithConfirm(statistics);
             FileUtils.deleteWithConfirm(new File(SSTable.compactedFilename(dataFilename)));
             logger.info("Deleted " + dataFilename);
             return true;
@@ -133,6 +140,36 @@ public abstract class SSTable
         return filterFilename(path);
     }
 
+    /**
+     * chunk offsets of the data file, present only if the data file is compressed
+     */
+    public static String compressionInfoFilename(String dataFile)
+    {
+        String[] parts = dataFile.split("-");
+        parts[parts.length - 1] = "CompressionInfo.db";
+        return StringUtils.join(parts, "-");
+    }
+
+    public String compressionInfoFilename()
+    {
+        return compressionInfoFilename(path);
+    }
+
+    /**
+     * column timestamp range of the sstable, absent for sstables written before it was introduced
+     */
+    public static String statisticsFilename(String dataFile)
+    {
+        String[] parts = dataFile.split("-");
+        parts[parts.length - 1] = "Statistics.db";
+        return StringUtils.join(parts, "-");
+    }
+
+    public String statisticsFilename()
+    {
+        return statisticsFilename(path);
+    }
+
     public String getFilename()
     {
         return path;
@@ -142,7 +179,13 @@ public abstract class SSTable
     public List<String> getAllFilenames()
     {
         // TODO streaming relies on the -Data (getFilename) file to be last, this is clunky
-        return Arrays.asList(indexFilename(), filterFilename(), getFilename());
+        List<String> filenames = new ArrayList<String>(Arrays.asList(indexFilename(), filterFilename()));
+        if (new File(compressionInfoFilename()).exists())
+            filenames.add(compressionInfoFilename());
+        if (new File(statisticsFilename()).exists())
+            filenames.add(statisticsFilename());
+        filenames.add(getFilename());
+        return filenames;
     }
 
     public String getColumnFamilyName()
@@ -190,6 +233,9 @@ public abstract class SSTable
 
     public static class PositionSize
     {
+        /** estimated java heap used by the object: header and two longs */
+        public static final int HEAP_SIZE = 32;
+
         public final long position;
         public final long size;
 
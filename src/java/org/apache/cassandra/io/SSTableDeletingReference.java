@@ -97,6 +97,12 @@ public class SSTableDeletingReference extends PhantomReference<SSTableReader>
             {
                 FileUtils.deleteWithConfirm(new File(SSTable.indexFilename(path)));
                 FileUtils.deleteWithConfirm(new File(SSTable.filterFilename(path)));
+                File compressionInfo = new File(SSTable.compressionInfoFilename(path));
+                if (compressionInfo.exists())
+                    FileUtils.deleteWithConfirm(compressionInfo);
+                File statistics = new File(SSTable.statisticsFilename(path));
+                if (statistics.exists())
+                    FileUtils.deleteWithConfirm(statistics);
                 FileUtils.deleteWithConfirm(new File(SSTable.compactedFilename(path)));
             }
             catch (IOException e)
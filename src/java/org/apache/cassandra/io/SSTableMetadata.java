@@ -0,0 +1,145 @@
+package org.apache.cassandra.io;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.io.*;
+
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.IColumn;
+
+/**
+ * Per-sstable statistics, stored in its own Statistics component: the range of timestamps of all columns and
+ * tombstones in the sstable. Sstables written before the component existed (or by writers unable to see row
+ * contents) get UNKNOWN, whose range covers every timestamp.
+ */
+public class SSTableMetadata
+{
+    public static final SSTableMetadata UNKNOWN = new SSTableMetadata(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    public final long minTimestamp;
+    public final long maxTimestamp;
+
+    public SSTableMetadata(long minTimestamp, long maxTimestamp)
+    {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+    }
+
+    public void write(String filename) throws IOException
+    {
+        FileOutputStream stream = new FileOutputStream(filename);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        try
+        {
+            out.writeLong(minTimestamp);
+            out.writeLong(maxTimestamp);
+            out.flush();
+            stream.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return metadata stored in filename, or UNKNOWN if there is no such file
+     */
+    public static SSTableMetadata read(String filename) throws IOException
+    {
+        File file = new File(filename);
+        if (!file.exists())
+            return UNKNOWN;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            return new SSTableMetadata(in.readLong(), in.readLong());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SSTableMetadata(minTimestamp=" + minTimestamp + ", maxTimestamp=" + maxTimestamp + ")";
+    }
+
+    /**
+     * Accumulates metadata of rows as they are written. Every written row must be reported exactly once,
+     * either by its contents or by the metadata of the sstable it was copied from unchanged.
+     */
+    public static class Collector
+    {
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long rows;
+
+        public void update(ColumnFamily cf)
+        {
+            if (cf.isMarkedForDelete())
+                updateTimestamp(cf.getMarkedForDeleteAt());
+            for (IColumn column : cf.getSortedColumns())
+            {
+                if (!cf.isSuper())
+                {
+                    updateTimestamp(column.timestamp());
+                    continue;
+                }
+                if (column.isMarkedForDelete())
+                    updateTimestamp(column.getMarkedForDeleteAt());
+                for (IColumn subColumn : column.getSubColumns())
+                    updateTimestamp(subColumn.timestamp());
+            }
+            rows++;
+        }
+
+        /**
+         * reports a row copied unchanged from an sstable with the given metadata
+         */
+        public void update(SSTableMetadata metadata)
+        {
+            minTimestamp = Math.min(minTimestamp, metadata.minTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, metadata.maxTimestamp);
+            rows++;
+        }
+
+        private void updateTimestamp(long timestamp)
+        {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        public long getRowCount()
+        {
+            return rows;
+        }
+
+        public SSTableMetadata finish()
+        {
+            return rows == 0 ? new SSTableMetadata(Long.MIN_VALUE, Long.MIN_VALUE) : new SSTableMetadata(minTimestamp, maxTimestamp);
+        }
+    }
+}
@@ -29,11 +29,14 @@ import java.util.*;
 import org.apache.log4j.Logger;
 
 import org.apache.cassandra.cache.InstrumentedCache;
+import org.apache.cassandra.cache.KeyCache;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.io.util.CompressedRandomAccessReader;
+import org.apache.cassandra.io.util.CompressionMetadata;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.MappedFileDataInput;
 import org.apache.cassandra.service.StorageService;
@@ -102,7 +105,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 
         for (SSTableReader sstable : sstables)
         {
-            long indexKeyCount = sstable.getIndexPositions().size();
+            long indexKeyCount = sstable.indexSummary.size();
             count = count + (indexKeyCount + 1) * DatabaseDescriptor.getIndexInterval();
             countBF += sstable.getBloomFilter().getElementCount();
             if (logger.isDebugEnabled())
@@ -120,15 +123,15 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     /** public, but only for tests */
     public static SSTableReader open(String dataFileName, IPartitioner partitioner) throws IOException
     {
-        return open(dataFileName, partitioner, Collections.<String>emptySet(), null);
+        return open(dataFileName, partitioner, null);
     }
 
-    public static SSTableReader open(String dataFileName, Collection<String> savedKeyCacheKeys, SSTableTracker tracker) throws IOException
+    public static SSTableReader open(String dataFileName, SSTableTracker tracker) throws IOException
     {
-        return open(dataFileName, StorageService.getPartitioner(), savedKeyCacheKeys, tracker);
+        return open(dataFileName, StorageService.getPartitioner(), tracker);
     }
 
-    public static SSTableReader open(String dataFileName, IPartitioner partitioner, Collection<String> savedKeyCacheKeys, SSTableTracker tracker) throws IOException
+    public static SSTableReader open(String dataFileName, IPartitioner partitioner, SSTableTracker tracker) throws IOException
     {
         assert partitioner != null;
 
@@ -136,7 +139,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         SSTableReader sstable = new SSTableReader(dataFileName, partitioner);
         sstable.setTrackedBy(tracker);
         logger.info("Opening " + dataFileName);
-        sstable.loadIndexAndCache(savedKeyCacheKeys);
+        sstable.loadIndex();
         sstable.loadBloomFilter();
 
         if (logger.isDebugEnabled())
@@ -149,8 +152,14 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     // jvm can only map up to 2GB at a time, so we split index/data into segments of that size when using mmap i/o
     private final MappedByteBuffer[] indexBuffers;
     private final MappedByteBuffer[] buffers;
+    // chunk offsets of compressed data file, null if data file is not compressed
+    private final CompressionMetadata compression;
+    private final SSTableMetadata sstableMetadata;
 
-    private InstrumentedCache<Pair<String, DecoratedKey>, PositionSize> keyCache;
+    private KeyCache keyCache;
+    // generation of this sstable in key cache, set along with it
+    private int generation;
+    private InstrumentedCache<Pair<String, Long>, IndexHelper.ColumnIndex> columnIndexCache;
 
     private BloomFilterTracker bloomFilterTracker = new BloomFilterTracker();
     private final boolean columnBloom;
@@ -181,7 +190,12 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
             indexBuffers = null;
         }
 
-        if (DatabaseDescriptor.getDiskAccessMode() == DatabaseDescriptor.DiskAccessMode.mmap)
+        File compressionInfo = new File(compressionInfoFilename());
+        compression = compressionInfo.exists() ? CompressionMetadata.read(compressionInfo.getPath()) : null;
+        sstableMetadata = SSTableMetadata.read(statisticsFilename());
+
+        // compressed data is read chunk by chunk, so it is never mmapped
+        if (compression == null && DatabaseDescriptor.getDiskAccessMode() == DatabaseDescriptor.DiskAccessMode.mmap)
         {
             int bufferCount = 1 + (int) (new File(path).length() / BUFFER_SIZE);
             buffers = new MappedByteBuffer[bufferCount];
@@ -197,7 +211,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         }
         else
         {
-            assert DatabaseDescriptor.getDiskAccessMode() == DatabaseDescriptor.DiskAccessMode.standard;
+            assert compression != null || DatabaseDescriptor.getDiskAccessMode() == DatabaseDescriptor.DiskAccessMode.standard;
             buffers = null;
         }
 
@@ -215,6 +229,8 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
             // TODO keyCache should never be null in live Cassandra, but only setting it here
             // means it can be during tests, so we have to do otherwise-unnecessary != null checks
             keyCache = tracker.getKeyCache();
+            generation = getGeneration();
+            columnIndexCache = tracker.getColumnIndexCache();
         }
     }
     
@@ -266,7 +282,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 
     public long estimatedKeys()
     {
-        return indexSummary.getIndexPositions().size() * DatabaseDescriptor.getIndexInterval();
+        return indexSummary.size() * DatabaseDescriptor.getIndexInterval();
     }
 
     void loadBloomFilter() throws IOException
@@ -283,25 +299,22 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         }
     }
 
-    void loadIndexAndCache(Collection<String> keysToLoadInCache) throws IOException
+    void loadIndex() throws IOException
     {
         // we read the positions in a BRAF so we don't have to worry about an entry spanning a mmap boundary.
         // any entries that do, we force into the in-memory sample so key lookup can always bsearch within
         // a single mmapped segment.
-        indexSummary = new IndexSummary();
+        indexSummary = new IndexSummary(partitioner);
         BufferedRandomAccessFile input = new BufferedRandomAccessFile(indexFilename(), "r");
         try
         {
-            if (keyCache != null && keyCache.getCapacity() - keyCache.getSize() < keysToLoadInCache.size())
-                keyCache.updateCapacity(keyCache.getSize() + keysToLoadInCache.size());
-
             long indexSize = input.length();
             // we need to know both the current index entry and its data position, as well as the
             // next such pair, in order to compute tne mmap-spanning entries.  since seeking
             // backwards in a 0.6 BRAF is expensive, we make one pass through by reading the "next"
             // entry in each loop through, then summarizing the previous one.
-            IndexSummary.KeyPosition thisEntry = null, nextEntry = null;
-            long thisDataPos = -1, nextDataPos = -1;
+            DecoratedKey thisKey = null;
+            long thisIndexPos = -1, thisDataPos = -1;
             while (true)
             {
                 long indexPosition = input.getFilePointer();
@@ -310,27 +323,17 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 
                 DecoratedKey key = partitioner.convertFromDiskFormat(input.readUTF());
                 long dataPosition = input.readLong();
-                if (thisEntry == null)
+                if (thisKey != null)
                 {
-                    thisEntry = new IndexSummary.KeyPosition(key, indexPosition);
-                    thisDataPos = dataPosition;
-                    continue;
+                    indexSummary.maybeAddEntry(thisKey, thisDataPos, dataPosition - thisDataPos, thisIndexPos, indexPosition);
                 }
 
-                nextEntry = new IndexSummary.KeyPosition(key, indexPosition);
-                nextDataPos = dataPosition;
-                SSTable.PositionSize posSize = new PositionSize(thisDataPos, nextDataPos - thisDataPos);
-                if (keyCache != null && keysToLoadInCache.contains(thisEntry.key.key))
-                    keyCache.put(new Pair<String, DecoratedKey>(path, thisEntry.key), posSize);
-
-                indexSummary.maybeAddEntry(thisEntry.key, posSize.position, posSize.size, thisEntry.indexPosition, nextEntry.indexPosition);
-                //indexSummary.maybeAddEntry(thisEntry.key, thisDataPos, nextDataPos - thisDataPos, thisEntry.indexPosition, nextEntry.indexPosition);
-               
-                thisEntry = nextEntry;
-                thisDataPos = nextDataPos;
+                thisKey = key;
+                thisIndexPos = indexPosition;
+                thisDataPos = dataPosition;
             }
-            assert thisEntry != null; // should not have any zero-row sstables
-            indexSummary.maybeAddEntry(thisEntry.key, thisDataPos, length() - thisDataPos, thisEntry.indexPosition, input.length());
+            assert thisKey != null; // should not have any zero-row sstables
+            indexSummary.maybeAddEntry(thisKey, thisDataPos, uncompressedLength() - thisDataPos, thisIndexPos, input.length());
             indexSummary.complete();
         }
         finally
@@ -339,40 +342,26 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         }
     }
 
-    /** get the position in the index file to start scanning to find the given key (at most indexInterval keys away) */
-    private IndexSummary.KeyPosition getIndexScanPosition(DecoratedKey decoratedKey)
+    /**
+     * get the position in the index file to start scanning to find the given key (at most indexInterval keys away)
+     * @return -1 if key is less than the first key of this sstable
+     */
+    private long getIndexScanPosition(DecoratedKey decoratedKey)
     {
-        assert indexSummary.getIndexPositions() != null && indexSummary.getIndexPositions().size() > 0;
-        int index = Collections.binarySearch(indexSummary.getIndexPositions(), new IndexSummary.KeyPosition(decoratedKey, -1));
-        if (index < 0)
-        {
-            // binary search gives us the first index _greater_ than the key searched for,
-            // i.e., its insertion position
-            int greaterThan = (index + 1) * -1;
-            if (greaterThan == 0)
-                return null;
-            return indexSummary.getIndexPositions().get(greaterThan - 1);
-        }
-        else
-        {
-            return indexSummary.getIndexPositions().get(index);
-        }
+        assert indexSummary.size() > 0;
+        int entry = indexSummary.binarySearch(decoratedKey);
+        return entry < 0 ? -1 : indexSummary.getIndexPosition(entry);
     }
 
     public void cacheKey(DecoratedKey key, PositionSize info)
     {
-        keyCache.put(new Pair<String, DecoratedKey>(path, key), info);
+        keyCache.put(key.bloomHash(), generation, info);
     }
 
     public PositionSize getCachedPosition(DecoratedKey key)
-    {
-        return getCachedPosition(new Pair<String, DecoratedKey>(path, key));
-    }
-
-    private PositionSize getCachedPosition(Pair<String, DecoratedKey> unifiedKey)
     {
         if (keyCache != null && keyCache.getCapacity() > 0)
-            return keyCache.get(unifiedKey);
+            return keyCache.get(key.bloomHash(), generation);
         return null;
     }
     
@@ -389,23 +378,10 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         if (!columnBloom)
             return true;
         
-        int capacity = key.key.length()*2+name.length;
-        ByteBuffer bb = ByteBuffer.allocate(capacity);
-        
-        bb = BloomFilter.toByteBuffer(key.key, bb);
-        
-        bb.position(bb.limit()).limit(capacity);
-        
-        bb.put(name);
-        
-        assert bb.remaining() == 0;
-        
-        bb.flip();
-        
-        boolean present = bf.isPresent(bb);
+        boolean present = bf.isPresent(key.key, name);
 
         if (logger.isDebugEnabled())
-            logger.debug("Checking bloom column of "+getFilename()+":"+FBUtilities.bytesToHex(bb.array())+'='+present+", stats: "+getBloomFilterTracker());
+            logger.debug("Checking bloom column of "+getFilename()+":"+key.key+':'+FBUtilities.bytesToHex(name)+'='+present+", stats: "+getBloomFilterTracker());
         
         return present;
     }
@@ -424,28 +400,26 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     public PositionSize getPosition(DecoratedKey decoratedKey) throws IOException
     {
         // first, check bloom filter
-        if (!bf.isPresent(decoratedKey.key))
+        if (!bf.isPresent(decoratedKey.bloomHash()))
         {
             bloomFilterTracker.addNegativeCount();
             return null;
         }
 
         // next, the key cache
-        Pair<String, DecoratedKey> unifiedKey = new Pair<String, DecoratedKey>(path, decoratedKey);
-        PositionSize cachedPosition = getCachedPosition(unifiedKey);
+        PositionSize cachedPosition = getCachedPosition(decoratedKey);
         if (cachedPosition != null)
             return cachedPosition;
 
         // next, see if the sampled index says it's impossible for the key to be present
-        IndexSummary.KeyPosition sampledPosition = getIndexScanPosition(decoratedKey);
-        if (sampledPosition == null)
+        long p = getIndexScanPosition(decoratedKey);
+        if (p < 0)
         {
             bloomFilterTracker.addFalsePositive();
             return null;
         }
 
         // get either a buffered or a mmap'd input for the on-disk index
-        long p = sampledPosition.indexPosition;
         FileDataInput input;
         if (indexBuffers == null)
         {
@@ -465,29 +439,26 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
             do
             {
                 // handle exact sampled index hit
-                IndexSummary.KeyPosition kp = indexSummary.getSpannedIndexPosition(input.getAbsolutePosition());
-                if (kp != null && kp.key.equals(decoratedKey))
+                int spanned = indexSummary.getSpannedEntry(input.getAbsolutePosition());
+                if (spanned >= 0 && indexSummary.keyEquals(indexSummary.getSpannedSampledEntry(spanned), decoratedKey))
                 {
                     bloomFilterTracker.addTruePositive();
-                    return indexSummary.getSpannedDataPosition(kp);
+                    return indexSummary.getSpannedDataPosition(spanned);
                 }
                 // if using mmapped i/o, skip to the next mmap buffer if necessary
-                if (input.isEOF() || kp != null)
+                if (input.isEOF() || spanned >= 0)
                 {
                     if (indexBuffers == null) // not mmap-ing, just one index input
                         break;
 
                     FileDataInput oldInput = input;
-                    if (kp == null)
+                    if (spanned < 0)
                     {
                         input = indexInputAt(input.getAbsolutePosition());
                     }
                     else
                     {
-                        long nextUnspannedPostion = input.getAbsolutePosition()
-                                                    + 2 + FBUtilities.encodedUTF8Length(StorageService.getPartitioner().convertToDiskFormat(kp.key))
-                                                    + 8;
-                        input = indexInputAt(nextUnspannedPostion);
+                        input = indexInputAt(indexSummary.getSpannedNextIndexPosition(spanned));
                     }
                     oldInput.close();
                     if (input == null)
@@ -505,7 +476,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
                 {
                     PositionSize info = getDataPositionSize(input, dataPosition);
                     if (keyCache != null && keyCache.getCapacity() > 0)
-                        keyCache.put(unifiedKey, info);
+                        keyCache.put(decoratedKey.bloomHash(), generation, info);
                     bloomFilterTracker.addTruePositive();
                     return info;
                 }
@@ -537,14 +508,14 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     {
         // if we've reached the end of the index, then the row size is "the rest of the data file"
         if (input.isEOF())
-            return new PositionSize(dataPosition, length() - dataPosition);
+            return new PositionSize(dataPosition, uncompressedLength() - dataPosition);
 
         // otherwise, row size is the start of the next row (in next index entry), minus the start of this one.
         long nextIndexPosition = input.getAbsolutePosition();
         // if next index entry would span mmap boundary, get the next row position from the summary instead
-        PositionSize nextPositionSize = indexSummary.getSpannedDataPosition(nextIndexPosition);
-        if (nextPositionSize != null)
-            return new PositionSize(dataPosition, nextPositionSize.position - dataPosition);
+        long nextDataPosition = indexSummary.getSpannedRowPosition(nextIndexPosition);
+        if (nextDataPosition >= 0)
+            return new PositionSize(dataPosition, nextDataPosition - dataPosition);
 
         // read next entry directly
         int utflen = input.readUnsignedShort();
@@ -556,15 +527,15 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     /** like getPosition, but if key is not found will return the location of the first key _greater_ than the desired one, or -1 if no such key exists. */
     public long getNearestPosition(DecoratedKey decoratedKey) throws IOException
     {
-        IndexSummary.KeyPosition sampledPosition = getIndexScanPosition(decoratedKey);
-        if (sampledPosition == null)
+        long sampledPosition = getIndexScanPosition(decoratedKey);
+        if (sampledPosition < 0)
         {
             return 0;
         }
 
         // can't use a MappedFileDataInput here, since we might cross a segment boundary while scanning
         BufferedRandomAccessFile input = new BufferedRandomAccessFile(indexFilename(path), "r");
-        input.seek(sampledPosition.indexPosition);
+        input.seek(sampledPosition);
         try
         {
             while (true)
@@ -595,6 +566,49 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         return new File(path).length();
     }
 
+    /**
+     * @return length of the data, which is larger than length of the data file if it is compressed
+     */
+    public long uncompressedLength()
+    {
+        return compression == null ? length() : compression.dataLength;
+    }
+
+    public boolean isCompressed()
+    {
+        return compression != null;
+    }
+
+    public SSTableMetadata getSSTableMetadata()
+    {
+        return sstableMetadata;
+    }
+
+    /**
+     * @return timestamp no column or tombstone in this sstable is newer than
+     */
+    public long getMaxTimestamp()
+    {
+        return sstableMetadata.maxTimestamp;
+    }
+
+    public int getGeneration()
+    {
+        return ColumnFamilyStore.getGenerationFromFileName(path);
+    }
+
+    /**
+     * orders sstables by the newest timestamp they hold, newest first
+     */
+    public static final Comparator<SSTableReader> maxTimestampDescending = new Comparator<SSTableReader>()
+    {
+        public int compare(SSTableReader o1, SSTableReader o2)
+        {
+            long t1 = o1.getMaxTimestamp(), t2 = o2.getMaxTimestamp();
+            return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+        }
+    };
+
     public int compareTo(SSTableReader o)
     {
         return ColumnFamilyStore.getGenerationFromFileName(path) - ColumnFamilyStore.getGenerationFromFileName(o.path);
@@ -647,6 +661,17 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         return new SSTableScanner(this, bufferSize).skipPageCache(true);
     }
 
+    /**
+     * @return reader of the data file, decompressing it if it is compressed. Compressed data is buffered a chunk at
+     * a time, so bufferSize is ignored then
+     */
+    public BufferedRandomAccessFile openDataReader(int bufferSize) throws IOException
+    {
+        return compression == null
+               ? new BufferedRandomAccessFile(path, "r", bufferSize)
+               : new CompressedRandomAccessReader(path, compression);
+    }
+
     public FileDataInput getFileDataInput(DecoratedKey decoratedKey, int bufferSize) throws IOException
     {
         PositionSize info = getPosition(decoratedKey);
@@ -655,13 +680,39 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 
         if (buffers == null || (bufferIndex(info.position) != bufferIndex(info.position + info.size)))
         {
-            BufferedRandomAccessFile file = new BufferedRandomAccessFile(path, "r", bufferSize);
+            BufferedRandomAccessFile file = openDataReader(bufferSize);
             file.seek(info.position);
             return file;
         }
         return new MappedFileDataInput(buffers[bufferIndex(info.position)], path, BUFFER_SIZE * (info.position / BUFFER_SIZE), (int) (info.position % BUFFER_SIZE));
     }
 
+    /**
+     * Reads column index of a row from a file returned by getFileDataInput and positioned at the index, taking it
+     * from the column index cache, if the row is wide enough to have several index blocks. Either way the file is
+     * left positioned right after the index.
+     *
+     * @param rowSize size of the row, as written after its key
+     */
+    public IndexHelper.ColumnIndex getColumnIndex(FileDataInput file, int rowSize) throws IOException
+    {
+        if (columnIndexCache == null || columnIndexCache.getCapacity() == 0 || rowSize <= DatabaseDescriptor.getColumnIndexSize())
+            return IndexHelper.ColumnIndex.deserialize(file);
+
+        Pair<String, Long> key = new Pair<String, Long>(path, file.getAbsolutePosition());
+        IndexHelper.ColumnIndex index = columnIndexCache.get(key);
+        if (index == null)
+        {
+            index = IndexHelper.ColumnIndex.deserialize(file);
+            columnIndexCache.put(key, index);
+        }
+        else
+        {
+            IndexHelper.skipIndex(file);
+        }
+        return index;
+    }
+
     static int bufferIndex(long position)
     {
         return (int) (position / BUFFER_SIZE);
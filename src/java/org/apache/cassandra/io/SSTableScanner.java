@@ -45,7 +45,7 @@ public class SSTableScanner implements Iterator<IteratingRow>, Closeable
      */
     SSTableScanner(SSTableReader sstable, int bufferSize) throws IOException
     {
-        this.file = new BufferedRandomAccessFile(sstable.getFilename(), "r", bufferSize);
+        this.file = sstable.openDataReader(bufferSize);
         this.sstable = sstable;
     }
 
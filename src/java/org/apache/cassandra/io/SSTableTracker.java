@@ -29,10 +29,9 @@ import java.util.concurrent.atomic.AtomicLong;
 import com.google.common.base.Function;
 import org.apache.log4j.Logger;
 
-import org.apache.cassandra.cache.JMXInstrumentedCache;
+import org.apache.cassandra.cache.*;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamily;
-import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.utils.Pair;
 
 public class SSTableTracker implements Iterable<SSTableReader>
@@ -46,21 +45,150 @@ public class SSTableTracker implements Iterable<SSTableReader>
     private final String ksname;
     private final String cfname;
 
-    private final JMXInstrumentedCache<Pair<String, DecoratedKey>, SSTable.PositionSize> keyCache;
-    private final JMXInstrumentedCache<String, ColumnFamily> rowCache;
+    private final KeyCache keyCache;
+    private final ICache<String, ColumnFamily> rowCache;
+    private final JMXInstrumentedCache<Pair<String, Long>, IndexHelper.ColumnIndex> columnIndexCache;
 
+    /** estimated java heap used by row cache entry besides key string characters and row: map entry and string */
+    private static final int ROW_CACHE_ENTRY_OVERHEAD = 100;
+    /** first int of saved key cache, which keeps entries instead of key strings */
+    private static final int SAVED_KEY_CACHE_FORMAT = 0x4b430001;
+    /** estimated java heap used by column index cache entry besides column index: map entry, pair and position */
+    private static final int COLUMN_INDEX_CACHE_ENTRY_OVERHEAD = 100;
+
+    private static final IWeigher<String, ColumnFamily> rowWeigher = new IWeigher<String, ColumnFamily>()
+    {
+        public int weigh(String key, ColumnFamily value)
+        {
+            return ROW_CACHE_ENTRY_OVERHEAD + 2 * key.length() + value.heapSize();
+        }
+    };
+
+    private static final IWeigher<Pair<String, Long>, IndexHelper.ColumnIndex> columnIndexWeigher = new IWeigher<Pair<String, Long>, IndexHelper.ColumnIndex>()
+    {
+        public int weigh(Pair<String, Long> key, IndexHelper.ColumnIndex value)
+        {
+            // sstable file name is shared by all entries of sstable
+            return COLUMN_INDEX_CACHE_ENTRY_OVERHEAD + value.heapSize();
+        }
+    };
+
+    /** memory shared by caches of column families, which do not set their size in bytes */
+    private static final CacheBudget keyCacheBudget = new CacheBudget("KeyCache", DatabaseDescriptor.getKeyCacheBudgetInBytes());
+    private static final CacheBudget rowCacheBudget = new CacheBudget("RowCache", DatabaseDescriptor.getRowCacheBudgetInBytes());
+
+    /**
+     * Caches are sized by their own size in bytes, if column family sets it. Otherwise, if global budget in bytes is set,
+     * enabled caches share it. Otherwise they are sized in entries by key estimate, see updateCacheSizes.
+     */
     public SSTableTracker(String ksname, String cfname)
     {
         this.ksname = ksname;
         this.cfname = cfname;
         sstables = Collections.emptySet();
-        keyCache = new JMXInstrumentedCache<Pair<String, DecoratedKey>, SSTable.PositionSize>(ksname, cfname + "KeyCache", 0);
-        rowCache = new JMXInstrumentedCache<String, ColumnFamily>(ksname, cfname + "RowCache", 0);
+
+        // KeysCached and RowsCached resolve to at least one entry, unless cache is off
+        long keyCacheBytes = DatabaseDescriptor.getKeyCacheCapacityInBytes(ksname, cfname);
+        boolean keyCacheShared = keyCacheBytes == 0 && keyCacheBudget.getBudgetInBytes() > 0
+                                 && DatabaseDescriptor.getKeysCachedFor(ksname, cfname, 1) > 0;
+        keyCache = new KeyCache(ksname, cfname + "KeyCache", keyCacheBytes, keyCacheBytes > 0 || keyCacheShared);
+        if (keyCacheShared)
+        {
+            keyCacheBudget.register(new IBudgetedCacheProvider()
+            {
+                public IBudgetedCache getBudgetedCache()
+                {
+                    return keyCache;
+                }
+
+                public long getObjectCount()
+                {
+                    return estimatedKeys();
+                }
+            });
+        }
+
+        long rowCacheBytes = DatabaseDescriptor.getRowCacheCapacityInBytes(ksname, cfname);
+        if (DatabaseDescriptor.getRowCacheProvider(ksname, cfname) == DatabaseDescriptor.RowCacheProvider.serializing)
+        {
+            SerializingCache<String, ColumnFamily> serializingCache = new SerializingCache<String, ColumnFamily>(ksname, cfname + "RowCache", new CachedRowSerializer(ksname, cfname), rowCacheBytes);
+            if (rowCacheBytes == 0 && rowCacheBudget.getBudgetInBytes() > 0)
+                rowCacheBudget.register(new TrackedCacheProvider<String, byte[]>(serializingCache.getSerializedCache()));
+            rowCache = serializingCache;
+        }
+        else
+        {
+            boolean rowCacheShared = rowCacheBytes == 0 && rowCacheBudget.getBudgetInBytes() > 0
+                                     && DatabaseDescriptor.getRowsCachedFor(ksname, cfname, 1) > 0;
+            JMXInstrumentedCache<String, ColumnFamily> liveCache;
+            if (rowCacheBytes > 0 || rowCacheShared)
+                liveCache = new JMXInstrumentedCache<String, ColumnFamily>(ksname, cfname + "RowCache", rowCacheBytes, rowWeigher);
+            else
+                liveCache = new JMXInstrumentedCache<String, ColumnFamily>(ksname, cfname + "RowCache", 0);
+            if (rowCacheShared)
+                rowCacheBudget.register(new TrackedCacheProvider<String, ColumnFamily>(liveCache));
+            rowCache = liveCache;
+        }
+
+        columnIndexCache = new JMXInstrumentedCache<Pair<String, Long>, IndexHelper.ColumnIndex>(ksname, cfname + "ColumnIndexCache",
+                                                                                               DatabaseDescriptor.getColumnIndexCacheCapacityInBytes(ksname, cfname),
+                                                                                               columnIndexWeigher);
+    }
+
+    /**
+     * Cache of this column family in global budget. Its objects are keys of sstables.
+     */
+    private class TrackedCacheProvider<K, V> implements IAggregatableCacheProvider<K, V>
+    {
+        private final InstrumentedCache<K, V> cache;
+
+        TrackedCacheProvider(InstrumentedCache<K, V> cache)
+        {
+            this.cache = cache;
+        }
+
+        public InstrumentedCache<K, V> getCache()
+        {
+            return cache;
+        }
+
+        public long getObjectCount()
+        {
+            return estimatedKeys();
+        }
+    }
+
+    /**
+     * Serializes rows of serializing row cache in sstable format, so name and comparators of column family
+     * are not repeated in every row.
+     */
+    private static class CachedRowSerializer implements ICompactSerializer2<ColumnFamily>
+    {
+        private final String ksname;
+        private final String cfname;
+
+        CachedRowSerializer(String ksname, String cfname)
+        {
+            this.ksname = ksname;
+            this.cfname = cfname;
+        }
+
+        public void serialize(ColumnFamily cf, DataOutput dos) throws IOException
+        {
+            ColumnFamily.serializer().serializeForSSTable(cf, dos);
+        }
+
+        public ColumnFamily deserialize(DataInput dis) throws IOException
+        {
+            ColumnFamily cf = ColumnFamily.create(ksname, cfname);
+            ColumnFamily.serializer().deserializeFromSSTableInto(cf, dis);
+            return cf;
+        }
     }
 
     protected class CacheWriter<K, V>
     {
-        public void saveCache(JMXInstrumentedCache<K, V> cache, File savedCachePath, Function<K, byte[]> converter) throws IOException
+        public void saveCache(ICache<K, V> cache, File savedCachePath, Function<K, byte[]> converter) throws IOException
         {
             long start = System.currentTimeMillis();
             String msgSuffix = savedCachePath.getName() + " for " + cfname + " of " + ksname;
@@ -87,17 +215,76 @@ public class SSTableTracker implements Iterable<SSTableReader>
         }
     }
 
+    /**
+     * Saves key cache entries of live sstables. Entries are saved as they are, with positions, since sstables of
+     * the same generations have them at the same positions after restart.
+     */
     public void saveKeyCache() throws IOException
     {
-        Function<Pair<String, DecoratedKey>, byte[]> function = new Function<Pair<String, DecoratedKey>, byte[]>()
+        File savedCachePath = DatabaseDescriptor.getSerializedKeyCachePath(ksname, cfname);
+        long start = System.currentTimeMillis();
+        String msgSuffix = savedCachePath.getName() + " for " + cfname + " of " + ksname;
+        logger.info("saving " + msgSuffix);
+        File tmpFile = File.createTempFile(savedCachePath.getName(), null, savedCachePath.getParentFile());
+        FileOutputStream fout = new FileOutputStream(tmpFile);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fout));
+        FileDescriptor fd = fout.getFD();
+        out.writeInt(SAVED_KEY_CACHE_FORMAT);
+        keyCache.write(out, liveGenerations());
+        out.flush();
+        fd.sync();
+        out.close();
+        if (!tmpFile.renameTo(savedCachePath))
+            throw new IOException("Unable to rename cache to " + savedCachePath);
+        if (logger.isDebugEnabled())
+            logger.debug("saved " + keyCache.getSize() + " keys in " + (System.currentTimeMillis() - start) + " ms from " + msgSuffix);
+    }
+
+    /**
+     * Puts entries saved by saveKeyCache into key cache, if they are of live sstables. Called once sstables
+     * are loaded on start.
+     */
+    public void loadKeyCache()
+    {
+        File path = DatabaseDescriptor.getSerializedKeyCachePath(ksname, cfname);
+        if (!path.exists() || keyCache.getCapacity() == 0)
+            return;
+
+        try
         {
-            public byte[] apply(Pair<String, DecoratedKey> key)
+            long start = System.currentTimeMillis();
+            logger.info("reading saved cache " + path);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+            try
             {
-                return key.right.key.getBytes(Charset.forName("UTF-8"));
+                // saved by previous versions as key strings
+                if (in.readInt() != SAVED_KEY_CACHE_FORMAT)
+                {
+                    logger.info("ignoring saved cache " + path + " of older format");
+                    return;
+                }
+                int count = keyCache.read(in, liveGenerations());
+                if (logger.isDebugEnabled())
+                    logger.debug(String.format("completed reading (%d ms; %d keys) saved cache %s",
+                                               (System.currentTimeMillis() - start), count, path));
             }
-        };
-        CacheWriter<Pair<String, DecoratedKey>, SSTable.PositionSize> writer = new CacheWriter<Pair<String, DecoratedKey>, SSTable.PositionSize>();
-        writer.saveCache(keyCache, DatabaseDescriptor.getSerializedKeyCachePath(ksname, cfname), function);
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ioe)
+        {
+            logger.warn("error reading saved cache " + path, ioe);
+        }
+    }
+
+    private Set<Integer> liveGenerations()
+    {
+        Set<Integer> generations = new HashSet<Integer>();
+        for (SSTableReader sstable : sstables)
+            generations.add(sstable.getGeneration());
+        return generations;
     }
 
     public void saveRowCache() throws IOException
@@ -157,7 +344,8 @@ public class SSTableTracker implements Iterable<SSTableReader>
     {
         long keys = estimatedKeys();
 
-        if (!keyCache.isCapacitySetManually())
+        // caches sized in bytes are sized by configuration or budget, not by key estimate
+        if (!keyCache.isWeighted() && !keyCache.isCapacitySetManually())
         {
             int keyCacheSize = DatabaseDescriptor.getKeysCachedFor(ksname, cfname, keys);
             if (keyCacheSize != keyCache.getCapacity())
@@ -169,14 +357,15 @@ public class SSTableTracker implements Iterable<SSTableReader>
             }
         }
 
-        if (!rowCache.isCapacitySetManually())
+        if (rowCache instanceof InstrumentedCache && !((InstrumentedCache) rowCache).isWeighted()
+            && !((InstrumentedCache) rowCache).isCapacitySetManually())
         {
             int rowCacheSize = DatabaseDescriptor.getRowsCachedFor(ksname, cfname, keys);
             if (rowCacheSize != rowCache.getCapacity())
             {
                 if (logger.isDebugEnabled())
                     logger.debug("row cache capacity for " + cfname + " is " + rowCacheSize);
-                rowCache.updateCapacity(rowCacheSize);
+                ((InstrumentedCache) rowCache).updateCapacity(rowCacheSize);
             }
         }
     }
@@ -203,7 +392,7 @@ public class SSTableTracker implements Iterable<SSTableReader>
         sstables = Collections.emptySet();
     }
 
-    public JMXInstrumentedCache<String, ColumnFamily> getRowCache()
+    public ICache<String, ColumnFamily> getRowCache()
     {
         return rowCache;
     }
@@ -233,9 +422,17 @@ public class SSTableTracker implements Iterable<SSTableReader>
         totalSize.addAndGet(-size);
     }
 
-    public JMXInstrumentedCache<Pair<String, DecoratedKey>, SSTable.PositionSize> getKeyCache()
+    public KeyCache getKeyCache()
     {
         return keyCache;
     }
+
+    /**
+     * @return cache of column indexes of wide rows, keyed by sstable file name and position of the index in it
+     */
+    public JMXInstrumentedCache<Pair<String, Long>, IndexHelper.ColumnIndex> getColumnIndexCache()
+    {
+        return columnIndexCache;
+    }
 }
 
@@ -22,6 +22,7 @@ package org.apache.cassandra.io;
 
 
 import java.io.DataOutput;
+import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 
@@ -31,6 +32,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.io.util.CompressedSequentialWriter;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -42,29 +44,38 @@ public class SSTableWriter extends SSTable
     private BufferedRandomAccessFile indexFile;
     private DecoratedKey lastWrittenKey;
     private BloomFilterWriter bfw;
-    
-    
+    private final SSTableMetadata.Collector metadataCollector = new SSTableMetadata.Collector();
+    private long rowCount;
+
 
     public SSTableWriter(String filename, long keyCount, IPartitioner partitioner) throws IOException
     {
         super(filename, partitioner);
-        indexSummary = new IndexSummary();
-        dataFile = new BufferedRandomAccessFile(path, "rw", (int)(DatabaseDescriptor.getFlushDataBufferSizeInMB() * 1024 * 1024));
-        dataFile.setSkipCache(true);
+        indexSummary = new IndexSummary(partitioner);
+        dataFile = openDataFile();
         indexFile = new BufferedRandomAccessFile(indexFilename(), "rw", (int)(DatabaseDescriptor.getFlushIndexBufferSizeInMB() * 1024 * 1024));
         
-        bfw = new BloomFilterWriter(filterFilename(), keyCount, DatabaseDescriptor.getBloomColumns(getTableName(), getColumnFamilyName()));
+        bfw = new BloomFilterWriter(filterFilename(), keyCount, DatabaseDescriptor.getBloomColumns(getTableName(), getColumnFamilyName()),
+                                    DatabaseDescriptor.getBlockedBloomFilter(getTableName(), getColumnFamilyName()));
     }
 
     public SSTableWriter(String filename, long keyCount, IPartitioner partitioner, boolean columnBloom) throws IOException
     {
         super(filename, partitioner);
-        indexSummary = new IndexSummary();
-        dataFile = new BufferedRandomAccessFile(path, "rw", (int)(DatabaseDescriptor.getFlushDataBufferSizeInMB() * 1024 * 1024));
-        dataFile.setSkipCache(true);
+        indexSummary = new IndexSummary(partitioner);
+        dataFile = openDataFile();
         indexFile = new BufferedRandomAccessFile(indexFilename(), "rw", (int)(DatabaseDescriptor.getFlushIndexBufferSizeInMB() * 1024 * 1024));
         
-        bfw = new BloomFilterWriter(filterFilename(), keyCount, columnBloom );
+        bfw = new BloomFilterWriter(filterFilename(), keyCount, columnBloom, DatabaseDescriptor.getBlockedBloomFilter(getTableName(), getColumnFamilyName()));
+    }
+
+    private BufferedRandomAccessFile openDataFile() throws IOException
+    {
+        int chunkLength = DatabaseDescriptor.getCompressionChunkLength(getTableName(), getColumnFamilyName());
+        BufferedRandomAccessFile file = chunkLength > 0
+                                        ? new CompressedSequentialWriter(path, compressionInfoFilename(), chunkLength)
+                                        : new BufferedRandomAccessFile(path, "rw", (int)(DatabaseDescriptor.getFlushDataBufferSizeInMB() * 1024 * 1024));
+        return file.setSkipCache(true);
     }
 
     private long beforeAppend(DecoratedKey decoratedKey) throws IOException
@@ -88,6 +99,7 @@ public class SSTableWriter extends SSTable
         String diskKey = partitioner.convertToDiskFormat(decoratedKey);
         bfw.add(decoratedKey);
         lastWrittenKey = decoratedKey;
+        rowCount++;
         long indexPosition = indexFile.getFilePointer();
         indexFile.writeUTF(diskKey);
         indexFile.writeLong(dataPosition);
@@ -140,6 +152,15 @@ public class SSTableWriter extends SSTable
         return bfw;
     }
 
+    /**
+     * Rows are appended serialized, so whoever appends them must report each one to the collector as well.
+     * Statistics are not written unless all rows were reported.
+     */
+    public SSTableMetadata.Collector getMetadataCollector()
+    {
+        return metadataCollector;
+    }
+
     /**
      * Renames temporary SSTable files to valid data, index, and bloom filter files
      */
@@ -155,8 +176,19 @@ public class SSTableWriter extends SSTable
         // main data
         dataFile.close(); // calls force
 
+        // statistics
+        boolean hasStatistics = metadataCollector.getRowCount() == rowCount;
+        if (hasStatistics)
+            metadataCollector.finish().write(statisticsFilename());
+        else
+            logger.debug(String.format("%d of %d rows reported to statistics of %s, not writing them", metadataCollector.getRowCount(), rowCount, path));
+
         rename(indexFilename());
         rename(filterFilename());
+        if (dataFile instanceof CompressedSequentialWriter)
+            rename(compressionInfoFilename());
+        if (hasStatistics)
+            rename(statisticsFilename());
         path = rename(path); // important to do this last since index & filter file names are derived from it
 
         indexSummary.complete();
@@ -194,6 +226,10 @@ public class SSTableWriter extends SSTable
     {
         SSTableWriter.rename(indexFilename(dataFileName));
         SSTableWriter.rename(filterFilename(dataFileName));
+        if (new File(compressionInfoFilename(dataFileName)).exists())
+            SSTableWriter.rename(compressionInfoFilename(dataFileName));
+        if (new File(statisticsFilename(dataFileName)).exists())
+            SSTableWriter.rename(statisticsFilename(dataFileName));
         dataFileName = SSTableWriter.rename(dataFileName);
         return SSTableReader.open(dataFileName);
     }
@@ -49,16 +49,17 @@ public class BufferedRandomAccessFile extends RandomAccessFile implements FileDa
     public static final int DEFAULT_BUFFER_SIZE = 65535;
 
     // isDirty - true if this.buffer contains any un-synced bytes
-    private boolean isDirty, syncNeeded;
+    protected boolean isDirty;
+    private boolean syncNeeded;
 
     // buffer which will cache file blocks
-    private byte[] buffer;
+    protected byte[] buffer;
 
     // `current` as current position in file
     // `bufferOffset` is the offset of the beginning of the buffer
     // `validBufferBytes` is the number of bytes in the buffer that are actually valid; this will be LESS than buffer capacity if buffer is not full!
-    private long bufferOffset, current = 0;
-    private int validBufferBytes = 0;
+    protected long bufferOffset, current = 0;
+    protected int validBufferBytes = 0;
 
     // constant, used for caching purpose, -1 if file is open in "rw" mode
     // otherwise this will hold cached file length
@@ -73,7 +74,7 @@ public class BufferedRandomAccessFile extends RandomAccessFile implements FileDa
     private int fd;
 
     // skip cache - used for commit log and sstable writing w/ posix_fadvise
-    private boolean skipCache;
+    protected boolean skipCache;
 
     private long bytesSinceCacheFlush = 0;
     private long minBufferOffset = Long.MAX_VALUE;
@@ -203,13 +204,13 @@ public class BufferedRandomAccessFile extends RandomAccessFile implements FileDa
         }
     }
 
-    private void resetBuffer()
+    protected void resetBuffer()
     {
         bufferOffset = current;
         validBufferBytes = 0;
     }
 
-    private void reBuffer() throws IOException
+    protected void reBuffer() throws IOException
     {
         flush(); // synchronizing buffer and file on disk
         resetBuffer();
@@ -366,9 +367,9 @@ public class BufferedRandomAccessFile extends RandomAccessFile implements FileDa
         if (newPosition < 0)
             throw new IllegalArgumentException("new position should not be negative");
 
-        if (isReadOnly() && newPosition > fileLength)
+        if (isReadOnly() && newPosition > length())
             throw new EOFException(String.format("unable to seek to position %d in %s (%d bytes) in read-only mode",
-                                                 newPosition, filePath, fileLength));
+                                                 newPosition, filePath, length()));
 
         current = newPosition;
 
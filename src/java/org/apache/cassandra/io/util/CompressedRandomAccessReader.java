@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.utils.CLibrary;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Reader of a compressed data file, written by CompressedSequentialWriter. Positions are the ones of the
+ * uncompressed data; buffer holds the uncompressed chunk current position falls into, which is read and
+ * decompressed whenever the reader moves to another chunk.
+ */
+public class CompressedRandomAccessReader extends BufferedRandomAccessFile
+{
+    private final CompressionMetadata metadata;
+    private byte[] compressed;
+
+    public CompressedRandomAccessReader(String path, CompressionMetadata metadata) throws IOException
+    {
+        this(path, metadata, false);
+    }
+
+    public CompressedRandomAccessReader(String path, CompressionMetadata metadata, boolean skipCache) throws IOException
+    {
+        super(new File(path), "r", metadata.chunkLength, skipCache);
+        this.metadata = metadata;
+        compressed = new byte[Snappy.maxCompressedLength(metadata.chunkLength)];
+        reBuffer();
+    }
+
+    @Override
+    protected void reBuffer() throws IOException
+    {
+        // called by the super constructor, before metadata is set
+        if (metadata == null)
+            return;
+
+        bufferOffset = current - current % metadata.chunkLength;
+        validBufferBytes = 0;
+        if (bufferOffset >= metadata.dataLength)
+            return;
+
+        int chunk = metadata.chunkFor(bufferOffset);
+        int length = metadata.compressedChunkLength(chunk);
+        if (compressed.length < length)
+            compressed = new byte[length];
+
+        ByteBuffer bb = ByteBuffer.wrap(compressed, 0, length);
+        long position = metadata.chunkOffset(chunk);
+        while (bb.hasRemaining())
+        {
+            if (getChannel().read(bb, position + bb.position()) < 0)
+                throw new EOFException(String.format("unexpected end of %s reading chunk %d", getPath(), chunk));
+        }
+        validBufferBytes = Snappy.uncompress(compressed, 0, length, buffer, 0);
+    }
+
+    @Override
+    public long length() throws IOException
+    {
+        return metadata.dataLength;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (skipCache)
+            CLibrary.trySkipCache(CLibrary.getfd(getFD()), 0, 0);
+        super.close();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cassandra.utils.CLibrary;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Sequential writer of a compressed data file. Data is buffered in chunks of chunkLength bytes, every full chunk
+ * is compressed and appended to the file, its offset added to the chunk offset table, which is written to the
+ * metadata file on close. File pointer is the position in the uncompressed data, so it can be used as the
+ * data position of rows.
+ *
+ * Only appending is supported, no seeks.
+ */
+public class CompressedSequentialWriter extends BufferedRandomAccessFile
+{
+    private static Logger logger = Logger.getLogger(CompressedSequentialWriter.class);
+
+    private final String metadataPath;
+    private final int chunkLength;
+    private byte[] compressed;
+    private long[] chunkOffsets = new long[64];
+    private int chunkCount = 0;
+    private long compressedLength = 0;
+
+    public CompressedSequentialWriter(String path, String metadataPath, int chunkLength) throws IOException
+    {
+        super(new File(path), "rw", chunkLength);
+        this.metadataPath = metadataPath;
+        this.chunkLength = chunkLength;
+        compressed = new byte[Snappy.maxCompressedLength(chunkLength)];
+    }
+
+    /**
+     * writes the buffer out if it holds a full chunk; partial chunk stays buffered until it fills up or the file
+     * is closed, so every chunk but the last one holds exactly chunkLength bytes.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (isDirty && validBufferBytes == chunkLength)
+            writeChunk();
+    }
+
+    @Override
+    protected void reBuffer() throws IOException
+    {
+        flush();
+        assert !isDirty : "seeking is not supported by " + getClass().getSimpleName();
+        resetBuffer();
+    }
+
+    private void writeChunk() throws IOException
+    {
+        int length = Snappy.compress(buffer, 0, validBufferBytes, compressed, 0);
+
+        if (chunkCount == chunkOffsets.length)
+            chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+        chunkOffsets[chunkCount++] = compressedLength;
+
+        ByteBuffer bb = ByteBuffer.wrap(compressed, 0, length);
+        while (bb.hasRemaining())
+            getChannel().write(bb, compressedLength + bb.position());
+        compressedLength += length;
+
+        isDirty = false;
+    }
+
+    @Override
+    public long length() throws IOException
+    {
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (isDirty)
+            writeChunk();
+
+        CompressionMetadata metadata = new CompressionMetadata(chunkLength, current, compressedLength, Arrays.copyOf(chunkOffsets, chunkCount));
+        metadata.write(metadataPath);
+        if (logger.isDebugEnabled())
+            logger.debug(String.format("compressed %s from %d to %d bytes (%.2f)", getPath(), current, compressedLength, metadata.ratio()));
+
+        sync();
+        if (skipCache)
+            CLibrary.trySkipCache(CLibrary.getfd(getFD()), 0, 0);
+        super.close();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.util;
+
+import java.io.*;
+
+/**
+ * Chunk offset table of a compressed data file, stored in its own CompressionInfo component. Data file holds
+ * chunks of chunkLength uncompressed bytes (the last one may be shorter), each compressed on its own and written
+ * back to back; chunk i holds uncompressed bytes [i * chunkLength, (i + 1) * chunkLength).
+ */
+public class CompressionMetadata
+{
+    public final int chunkLength;
+    /** uncompressed length of the data */
+    public final long dataLength;
+    /** length of the compressed data file */
+    public final long compressedLength;
+    private final long[] chunkOffsets;
+
+    public CompressionMetadata(int chunkLength, long dataLength, long compressedLength, long[] chunkOffsets)
+    {
+        assert chunkLength > 0;
+        this.chunkLength = chunkLength;
+        this.dataLength = dataLength;
+        this.compressedLength = compressedLength;
+        this.chunkOffsets = chunkOffsets;
+    }
+
+    public int chunkCount()
+    {
+        return chunkOffsets.length;
+    }
+
+    /**
+     * @return index of the chunk holding the uncompressed position
+     */
+    public int chunkFor(long position)
+    {
+        return (int) (position / chunkLength);
+    }
+
+    /**
+     * @return offset of the chunk in the compressed data file
+     */
+    public long chunkOffset(int chunk)
+    {
+        return chunkOffsets[chunk];
+    }
+
+    /**
+     * @return length of the compressed chunk
+     */
+    public int compressedChunkLength(int chunk)
+    {
+        long end = chunk + 1 < chunkOffsets.length ? chunkOffsets[chunk + 1] : compressedLength;
+        return (int) (end - chunkOffsets[chunk]);
+    }
+
+    /**
+     * @return compressed to uncompressed size ratio, 1 for empty data
+     */
+    public double ratio()
+    {
+        return dataLength == 0 ? 1 : (double) compressedLength / dataLength;
+    }
+
+    public void write(String filename) throws IOException
+    {
+        FileOutputStream stream = new FileOutputStream(filename);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        try
+        {
+            out.writeInt(chunkLength);
+            out.writeLong(dataLength);
+            out.writeLong(compressedLength);
+            out.writeInt(chunkOffsets.length);
+            for (long offset : chunkOffsets)
+                out.writeLong(offset);
+            // renamed into place as a live component, so it must be on disk before that
+            out.flush();
+            stream.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public static CompressionMetadata read(String filename) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+        try
+        {
+            int chunkLength = in.readInt();
+            long dataLength = in.readLong();
+            long compressedLength = in.readLong();
+            long[] chunkOffsets = new long[in.readInt()];
+            for (int i = 0; i < chunkOffsets.length; i++)
+                chunkOffsets[i] = in.readLong();
+            return new CompressionMetadata(chunkLength, dataLength, compressedLength, chunkOffsets);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
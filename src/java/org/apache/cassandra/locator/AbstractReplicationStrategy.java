@@ -20,7 +20,10 @@ package org.apache.cassandra.locator;
 
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,8 +41,6 @@ import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.service.WriteResponseHandler;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.utils.FBUtilities;
-import org.apache.cassandra.utils.Pair;
-import org.cliffc.high_scale_lib.NonBlockingHashMap;
 
 /**
  * This class contains a helper method that will be used by
@@ -61,44 +62,106 @@ public abstract class AbstractReplicationStrategy
         tokenMetadata_.register(this);
     }
 
-    private final Map<Pair<String, Token>, ArrayList<InetAddress>> cachedEndpoints = new NonBlockingHashMap<Pair<String, Token>, ArrayList<InetAddress>>();
-
-    public ArrayList<InetAddress> getCachedEndpoints(String table, Token t)
+    /**
+     * Replica sets of every ring position of a table, all calculated from a single state of token metadata and
+     * never changed after, so lookups need neither locking nor allocation.
+     */
+    protected static class ReplicaRing
     {
-        return cachedEndpoints.get(new Pair<String, Token>(table,t));
-    }
+        /** sorted */
+        final Token[] positions;
+        /** read-only replicas of every position */
+        final List<InetAddress>[] endpoints;
 
-    public void cacheEndpoint(String table, Token t, ArrayList<InetAddress> addr)
-    {
-        cachedEndpoints.put(new Pair<String, Token>(table,t), addr);
+        protected ReplicaRing(Token[] positions, List<InetAddress>[] endpoints)
+        {
+            assert positions.length == endpoints.length;
+            this.positions = positions;
+            this.endpoints = endpoints;
+        }
     }
 
+    /** rings by table, replaced as a whole on change. */
+    private volatile Map<String, ReplicaRing> rings = Collections.emptyMap();
+    /** incremented on every invalidation, so rings calculated from a stale token metadata are not published */
+    private long ringsVersion; // guarded by this
+
     public void clearEndpointCache()
     {
         logger_.debug("clearing cached endpoints");
-        cachedEndpoints.clear();
+        synchronized (this)
+        {
+            ringsVersion++;
+            rings = Collections.emptyMap();
+        }
     }
 
     /**
      * get the (possibly cached) endpoints that should store the given Token.
      * Note that while the endpoints are conceptually a Set (no duplicates will be included),
      * we return a List to avoid an extra allocation when sorting by proximity later
-     * @param searchPosition the position the natural endpoints are requested for
-     * @return a copy of the natural endpoints for the given token
+     * @param token the position the natural endpoints are requested for
+     * @return a read-only view of the natural endpoints for the given token, copy it before sorting
      */
-    public ArrayList<InetAddress> getNaturalEndpoints(Token token, TokenMetadata metadata, String table)
+    public List<InetAddress> getNaturalEndpoints(Token token, TokenMetadata metadata, String table)
+    {
+        ReplicaRing ring = rings.get(table);
+        if (ring == null)
+            ring = buildReplicaRing(metadata, table);
+        return ring.endpoints[ringPosition(ring, token)];
+    }
+
+    private ReplicaRing buildReplicaRing(TokenMetadata metadata, String table)
     {
-        Token keyToken = TokenMetadata.firstToken(metadata.sortedTokens(), token);
-        ArrayList<InetAddress> endpoints = getCachedEndpoints(table,keyToken);
-        if (endpoints == null)
+        long version;
+        synchronized (this)
         {
-            TokenMetadata tokenMetadataClone = metadata.cloneOnlyTokenMap();
-            keyToken = TokenMetadata.firstToken(tokenMetadataClone.sortedTokens(), token);
-            endpoints = new ArrayList<InetAddress>(calculateNaturalEndpoints(token, tokenMetadataClone, table));
-            cacheEndpoint(table,keyToken, endpoints);
+            version = ringsVersion;
         }
 
-        return new ArrayList<InetAddress>(endpoints);
+        ReplicaRing ring = calculateReplicaRing(metadata.cloneOnlyTokenMap(), table);
+
+        synchronized (this)
+        {
+            if (version == ringsVersion)
+            {
+                Map<String, ReplicaRing> updated = new HashMap<String, ReplicaRing>(rings);
+                updated.put(table, ring);
+                rings = updated;
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * calculates replicas of every token of the ring. Strategies, which place replicas by something other than
+     * ring tokens, override this together with ringPosition.
+     */
+    @SuppressWarnings("unchecked")
+    protected ReplicaRing calculateReplicaRing(TokenMetadata metadata, String table)
+    {
+        List<Token> tokens = metadata.sortedTokens();
+        Token[] positions = tokens.toArray(new Token[tokens.size()]);
+        List<InetAddress>[] endpoints = new List[positions.length];
+        for (int i = 0; i < positions.length; i++)
+            endpoints[i] = Collections.unmodifiableList(calculateNaturalEndpoints(positions[i], metadata, table));
+        return new ReplicaRing(positions, endpoints);
+    }
+
+    /**
+     * @return index of the position of the ring, which replicas store the given token
+     */
+    protected int ringPosition(ReplicaRing ring, Token token)
+    {
+        assert ring.positions.length > 0;
+        int index = Arrays.binarySearch(ring.positions, token);
+        if (index < 0)
+        {
+            index = -index - 1;
+            if (index == ring.positions.length)
+                index = 0;
+        }
+        return index;
     }
 
     /**
@@ -116,7 +179,7 @@ public abstract class AbstractReplicationStrategy
         return new WriteResponseHandler(blockFor, endpointCount, table);
     }
 
-    public ArrayList<InetAddress> getNaturalEndpoints(Token token, String table)
+    public List<InetAddress> getNaturalEndpoints(Token token, String table)
     {
         return getNaturalEndpoints(token, tokenMetadata_, table);
     }
@@ -8,6 +8,7 @@ package org.apache.cassandra.locator;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -58,24 +59,49 @@ public class OdklEvenStrategy extends
 //        odklPartitioner = new OdklDomainPartitioner();
     }
     
-    /* (non-Javadoc)
-     * @see org.apache.cassandra.locator.AbstractReplicationStrategy#getNaturalEndpoints(org.apache.cassandra.dht.Token, org.apache.cassandra.locator.TokenMetadata, java.lang.String)
+    /**
+     * for odkl style we considering only odkl domain, which consists of first 2 chars of token,
+     * so ring positions are the 256 domains
      */
+    @SuppressWarnings("unchecked")
     @Override
-    public ArrayList<InetAddress> getNaturalEndpoints(Token token,
-            TokenMetadata metadata, String table)
+    protected ReplicaRing calculateReplicaRing(TokenMetadata metadata, String table)
     {
-        // for odkl style we considering only odkl domain, which consists of first 2 chars of token
-        Token keyToken = keyToken(token);
-        ArrayList<InetAddress> endpoints = getCachedEndpoints(table,keyToken);
-        if (endpoints == null)
+        Token[] positions = new Token[256];
+        List<InetAddress>[] endpoints = new List[positions.length];
+        for (int domain = 0; domain < positions.length; domain++)
         {
-            TokenMetadata tokenMetadataClone = metadata.cloneOnlyTokenMap();
-            endpoints = new ArrayList<InetAddress>(doCalculateEndpoints(keyToken, tokenMetadataClone, table));
-            cacheEndpoint(table,keyToken, endpoints);
+            positions[domain] = new StringToken(odklPartitioner.toStringToken(domain).toString() + "0");
+            endpoints[domain] = Collections.unmodifiableList(doCalculateEndpoints(positions[domain], metadata, table));
         }
+        return new ReplicaRing(positions, endpoints);
+    }
+
+    /**
+     * same domain as keyToken, but parsed in place
+     */
+    @Override
+    protected int ringPosition(ReplicaRing ring, Token token)
+    {
+        String tokenString = token.toString();
+
+        if (tokenString.length() <= 2)
+            return (parseDomain(tokenString, tokenString.length()) + 0xff) & 0xff; // prevDomain
+
+        return parseDomain(tokenString, 2);
+    }
 
-        return new ArrayList<InetAddress>(endpoints);
+    private static int parseDomain(String tokenString, int length)
+    {
+        int domain = 0;
+        for (int i = 0; i < length; i++)
+        {
+            int digit = Character.digit(tokenString.charAt(i), 16);
+            if (digit < 0)
+                throw new NumberFormatException("For input string: \"" + tokenString + "\"");
+            domain = domain << 4 | digit;
+        }
+        return domain & 0xff;
     }
 
     private StringToken keyToken(Token token)
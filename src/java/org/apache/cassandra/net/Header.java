@@ -25,7 +25,7 @@ import java.net.InetAddress;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.cassandra.io.ICompactSerializer;
 import org.apache.cassandra.service.StorageService;
@@ -33,7 +33,7 @@ import org.apache.cassandra.service.StorageService;
 public class Header
 {
     private static ICompactSerializer<Header> serializer_;
-    private static AtomicInteger idGen_ = new AtomicInteger(0);
+    private static AtomicLong idGen_ = new AtomicLong(0);
     
     static
     {
@@ -48,12 +48,13 @@ public class Header
     private InetAddress from_;
     private String type_;
     private StorageService.Verb verb_;
-    private String messageId_;
+    private long messageId_;
+    /* when the message was created, in sender's clock. Travels as a detail, which nodes not knowing it ignore */
+    private long timestamp_ = System.currentTimeMillis();
     protected Map<String, byte[]> details_;
     
-    Header(String id, InetAddress from, String messageType, StorageService.Verb verb)
+    Header(long id, InetAddress from, String messageType, StorageService.Verb verb)
     {
-        assert id != null;
         assert from != null;
         assert messageType != null;
         assert verb != null;
@@ -64,15 +65,21 @@ public class Header
         verb_ = verb;        
     }
     
-    Header(String id, InetAddress from, String messageType, StorageService.Verb verb, Map<String, byte[]> details)
+    Header(long id, InetAddress from, String messageType, StorageService.Verb verb, Map<String, byte[]> details)
     {
         this(id, from, messageType, verb);
         details_ = details;
     }
 
+    Header(long id, InetAddress from, String messageType, StorageService.Verb verb, Map<String, byte[]> details, long timestamp)
+    {
+        this(id, from, messageType, verb, details);
+        timestamp_ = timestamp;
+    }
+
     Header(InetAddress from, String messageType, StorageService.Verb verb)
     {
-        this(Integer.toString(idGen_.incrementAndGet()), from, messageType, verb);
+        this(idGen_.incrementAndGet(), from, messageType, verb);
     }        
 
     InetAddress getFrom()
@@ -90,11 +97,16 @@ public class Header
         return verb_;
     }
 
-    String getMessageId()
+    long getMessageId()
     {
         return messageId_;
     }
 
+    long getTimestamp()
+    {
+        return timestamp_;
+    }
+
     byte[] getDetail(Object key)
     {
         if (details_==null)
@@ -114,22 +126,22 @@ public class Header
 
 class HeaderSerializer implements ICompactSerializer<Header>
 {
+    static final String TIMESTAMP_KEY = "TS";
+
     public void serialize(Header t, DataOutputStream dos) throws IOException
     {           
-        dos.writeUTF(t.getMessageId());
+        writeId(t.getMessageId(), dos);
         CompactEndPointSerializationHelper.serialize(t.getFrom(), dos);
         dos.writeUTF(t.getMessageType());
         dos.writeInt(t.getVerb().ordinal());
         
-        /* Serialize the message header */
-        if (t.details_==null)
-        {
-            dos.writeInt(0);
-        }
-        else
+        /* Serialize the message header; the timestamp goes first */
+        dos.writeInt(1 + (t.details_ == null ? 0 : t.details_.size()));
+        dos.writeUTF(TIMESTAMP_KEY);
+        dos.writeInt(8);
+        dos.writeLong(t.getTimestamp());
+        if (t.details_ != null)
         {
-            int size = t.details_.size();
-            dos.writeInt(size);
             Set<String> keys = t.details_.keySet();
 
             for( String key : keys )
@@ -144,28 +156,84 @@ class HeaderSerializer implements ICompactSerializer<Header>
 
     public Header deserialize(DataInputStream dis) throws IOException
     {
-        String id = dis.readUTF();
+        long id = readId(dis);
         InetAddress from = CompactEndPointSerializationHelper.deserialize(dis);
         String type = dis.readUTF();
         int verbOrdinal = dis.readInt();
         
-        /* Deserializing the message header */
+        /* Deserializing the message header; senders not sending timestamp are taken as sending it now */
         int size = dis.readInt();
         Map<String, byte[]> details = null;
-        if (size>0)
+        long timestamp = System.currentTimeMillis();
+        for ( int i = 0; i < size; ++i )
         {
-            details = new Hashtable<String, byte[]>(size);
-            for ( int i = 0; i < size; ++i )
+            String key = dis.readUTF();
+            int length = dis.readInt();
+            if (length == 8 && key.equals(TIMESTAMP_KEY))
             {
-                String key = dis.readUTF();
-                int length = dis.readInt();
-                byte[] bytes = new byte[length];
-                dis.readFully(bytes);
-                details.put(key, bytes);
+                timestamp = dis.readLong();
+                continue;
             }
+
+            byte[] bytes = new byte[length];
+            dis.readFully(bytes);
+            if (details == null)
+                details = new Hashtable<String, byte[]>(size);
+            details.put(key, bytes);
         }
         
-        return new Header(id, from, type, StorageService.VERBS[verbOrdinal], details);
+        return new Header(id, from, type, StorageService.VERBS[verbOrdinal], details, timestamp);
+    }
+
+    /**
+     * Ids travel as decimal strings in writeUTF format, as they did when they were ints, so nodes with int and
+     * long ids talk to each other; a peer only ever echoes ids back. Ids are signed, since int ids of older nodes
+     * wrap to negative. Digits are written and parsed directly, without building a String.
+     */
+    static void writeId(long id, DataOutputStream dos) throws IOException
+    {
+        boolean negative = id < 0;
+        // 19 digits and sign of Long.MIN_VALUE
+        byte[] digits = new byte[20];
+        int start = digits.length;
+        do
+        {
+            digits[--start] = (byte) ('0' + Math.abs(id % 10));
+            id /= 10;
+        }
+        while (id != 0);
+        if (negative)
+            digits[--start] = '-';
+
+        dos.writeShort(digits.length - start);
+        dos.write(digits, start, digits.length - start);
+    }
+
+    static long readId(DataInputStream dis) throws IOException
+    {
+        int length = dis.readUnsignedShort();
+        if (length == 0 || length > 20)
+            throw new IOException("Invalid message id length " + length);
+
+        // accumulated negated, since Long.MIN_VALUE has no positive counterpart
+        boolean negative = false;
+        long id = 0;
+        for (int i = 0; i < length; i++)
+        {
+            int c = dis.readUnsignedByte();
+            if (i == 0 && c == '-' && length > 1)
+            {
+                negative = true;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || id < (Long.MIN_VALUE + digit) / 10)
+                throw new IOException("Invalid message id");
+            id = id * 10 - digit;
+        }
+        if (!negative && id == Long.MIN_VALUE)
+            throw new IOException("Invalid message id");
+        return negative ? id : -id;
     }
 }
 
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.service.StorageService;
+
+/**
+ * Queue of messages to a single peer, connected by the configured InternodeTransport
+ */
+public interface IOutboundConnection
+{
+    /**
+     * queues the packed message for sending. never blocks on the network
+     */
+    public void write(ByteBuffer buffer, StorageService.Verb verb);
+
+    /**
+     * drops queued messages and closes the socket; it is reopened on the next write
+     */
+    public void closeSocket();
+
+    /**
+     * @return number of messages queued, but not sent yet
+     */
+    public int getPendingMessages();
+
+    /**
+     * @return bytes sent since connection was created
+     */
+    public long getSentBytes();
+}
@@ -26,6 +26,7 @@ import java.net.Socket;
 
 import org.apache.log4j.Logger;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.streaming.IncomingStreamReader;
 
 public class IncomingTcpConnection extends Thread
@@ -50,6 +51,7 @@ public class IncomingTcpConnection extends Thread
     {
         DataInputStream input;
         boolean isStream;
+        boolean isCompressed;
         try
         {
             // determine the connection type to decide whether to buffer
@@ -57,6 +59,13 @@ public class IncomingTcpConnection extends Thread
             MessagingService.validateMagic(input.readInt());
             int header = input.readInt();
             isStream = MessagingService.getBits(header, 3, 1) == 1;
+            isCompressed = MessagingService.getBits(header, 2, 1) == 1;
+            if (!isStream && DatabaseDescriptor.getInternodeTransport() == DatabaseDescriptor.InternodeTransport.nio)
+            {
+                // the rest of the connection is read by a selector thread
+                NioTransport.instance().receive(socket.getChannel(), socket.getInetAddress(), isCompressed);
+                return;
+            }
             if (!isStream)
                 // we should buffer
                 input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 4096));
@@ -80,7 +89,10 @@ public class IncomingTcpConnection extends Thread
                     int size = input.readInt();
                     byte[] contentBytes = new byte[size];
                     input.readFully(contentBytes);
-                    
+                    MessagingService.addReceivedBytes(socket.getInetAddress(), 4 + 4 + 4 + size);
+                    if (isCompressed)
+                        contentBytes = MessageCompression.decompress(socket.getInetAddress(), contentBytes, 0, size);
+
                     Message message = Message.serializer().deserialize(new DataInputStream(new ByteArrayInputStream(contentBytes)));
                     MessagingService.receive(message);
                 }
@@ -88,6 +100,7 @@ public class IncomingTcpConnection extends Thread
                 MessagingService.validateMagic(input.readInt());
                 int header = input.readInt();
                 assert isStream == (MessagingService.getBits(header, 3, 1) == 1) : "Connections cannot change type: " + isStream;
+                isCompressed = MessagingService.getBits(header, 2, 1) == 1;
             }
             catch (EOFException e)
             {
@@ -88,11 +88,19 @@ public class Message
         return header_.getVerb();
     }
 
-    public String getMessageId()
+    public long getMessageId()
     {
         return header_.getMessageId();
     }
 
+    /**
+     * @return when the message was created, in milliseconds of sender's clock
+     */
+    public long getTimestamp()
+    {
+        return header_.getTimestamp();
+    }
+
     // TODO should take byte[] + length so we don't have to copy to a byte[] of exactly the right len
     public Message getReply(InetAddress from, byte[] args)
     {
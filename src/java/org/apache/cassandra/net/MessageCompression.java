@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xerial.snappy.Snappy;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.locator.IEndPointSnitch;
+import org.apache.cassandra.utils.FBUtilities;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+/**
+ * Snappy compression of messages, flagged by the compression bit of the protocol header (see
+ * MessagingService.packIt()). Senders decide by InternodeCompression policy and threshold; receivers
+ * decompress whatever is flagged, so nodes with different policies work together.
+ */
+class MessageCompression
+{
+    private static final NonBlockingHashMap<InetAddress, Stats> stats = new NonBlockingHashMap<InetAddress, Stats>();
+
+    /**
+     * @return true if a message of the size to the endpoint should be compressed
+     */
+    static boolean shouldCompress(InetAddress to, int size)
+    {
+        if (size < DatabaseDescriptor.getInternodeCompressionThreshold())
+            return false;
+
+        switch (DatabaseDescriptor.getInternodeCompression())
+        {
+            case all:
+                return true;
+            case dc:
+                List<String> tables = DatabaseDescriptor.getNonSystemTables();
+                if (tables.isEmpty())
+                    return false;
+                IEndPointSnitch snitch = DatabaseDescriptor.getEndPointSnitch(tables.get(0));
+                return !snitch.isInSameDataCenter(FBUtilities.getLocalAddress(), to);
+            default:
+                return false;
+        }
+    }
+
+    static byte[] compress(InetAddress to, byte[] bytes, int length) throws IOException
+    {
+        long start = System.nanoTime();
+        byte[] buffer = new byte[Snappy.maxCompressedLength(length)];
+        int compressedLength = Snappy.compress(bytes, 0, length, buffer, 0);
+        byte[] compressed = new byte[compressedLength];
+        System.arraycopy(buffer, 0, compressed, 0, compressedLength);
+        getStats(to).compressed(length, compressedLength, System.nanoTime() - start);
+        return compressed;
+    }
+
+    static byte[] decompress(InetAddress from, byte[] bytes, int offset, int length) throws IOException
+    {
+        long start = System.nanoTime();
+        byte[] uncompressed = new byte[Snappy.uncompressedLength(bytes, offset, length)];
+        Snappy.uncompress(bytes, offset, length, uncompressed, 0);
+        getStats(from).decompressed(System.nanoTime() - start);
+        return uncompressed;
+    }
+
+    private static Stats getStats(InetAddress endpoint)
+    {
+        Stats s = stats.get(endpoint);
+        if (s == null)
+        {
+            stats.putIfAbsent(endpoint, new Stats());
+            s = stats.get(endpoint);
+        }
+        return s;
+    }
+
+    /**
+     * @return compressed to uncompressed size of messages sent to every peer
+     */
+    static Map<String, Double> getCompressionRatios()
+    {
+        Map<String, Double> ratios = new HashMap<String, Double>();
+        for (Map.Entry<InetAddress, Stats> entry : stats.entrySet())
+        {
+            Stats s = entry.getValue();
+            long uncompressed = s.uncompressedBytes.get();
+            if (uncompressed > 0)
+                ratios.put(entry.getKey().getHostAddress(), (double) s.compressedBytes.get() / uncompressed);
+        }
+        return ratios;
+    }
+
+    /**
+     * @return time spent compressing messages to and decompressing messages from every peer, in milliseconds
+     */
+    static Map<String, Long> getCompressionTimes()
+    {
+        Map<String, Long> times = new HashMap<String, Long>();
+        for (Map.Entry<InetAddress, Stats> entry : stats.entrySet())
+            times.put(entry.getKey().getHostAddress(), entry.getValue().nanos.get() / 1000000);
+        return times;
+    }
+
+    private static class Stats
+    {
+        final AtomicLong uncompressedBytes = new AtomicLong();
+        final AtomicLong compressedBytes = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+
+        void compressed(int uncompressed, int compressed, long time)
+        {
+            uncompressedBytes.addAndGet(uncompressed);
+            compressedBytes.addAndGet(compressed);
+            nanos.addAndGet(time);
+        }
+
+        void decompressed(long time)
+        {
+            nanos.addAndGet(time);
+        }
+    }
+}
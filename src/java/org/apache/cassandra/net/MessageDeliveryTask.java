@@ -20,41 +20,66 @@ package org.apache.cassandra.net;
 
 import org.apache.log4j.Logger;
 
+import org.apache.cassandra.concurrent.IDeadlineTask;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.service.StorageService;
 
-public class MessageDeliveryTask implements Runnable
+/**
+ * Runs the verb handler of a received message. Reads and writes expire rpc timeout after they were received,
+ * since the coordinator has given up on them by then; they are dropped on receive and by the stage. With
+ * CrossNodeTimeout, they expire rpc timeout after the sender created them, which counts time spent in transit
+ * too, but needs node clocks in sync.
+ */
+public class MessageDeliveryTask implements IDeadlineTask
 {
     private static final Logger logger_ = Logger.getLogger(MessageDeliveryTask.class);    
 
     private Message message_;
     private final long constructionTime_ = System.currentTimeMillis();
+    private final long queuedAt_ = System.nanoTime();
 
     public MessageDeliveryTask(Message message)
     {
         message_ = message;    
     }
-    
-    public void run()
+
+    public long getQueuedAtNanos()
     {
-        StorageService.Verb verb = message_.getVerb();
-        switch (verb)
+        return queuedAt_;
+    }
+
+    public long getDeadline()
+    {
+        switch (message_.getVerb())
         {
             case BINARY:
             case MUTATION:
             case READ:
+            case MULTI_READ:
             case RANGE_SLICE:
             case READ_REPAIR:
-                if (System.currentTimeMillis() > constructionTime_ + DatabaseDescriptor.getRpcTimeout())
-                {
-                    MessagingService.incrementDroppedMessages(verb);
-                    return;
-                }
-                break;
+                if (!DatabaseDescriptor.isCrossNodeTimeout())
+                    return constructionTime_ + DatabaseDescriptor.getRpcTimeout();
+                // sender's clock ahead of ours must not extend the deadline past the local one
+                return Math.min(message_.getTimestamp(), constructionTime_) + DatabaseDescriptor.getRpcTimeout();
             default:
-                break;
+                return Long.MAX_VALUE;
         }
+    }
 
+    public String getKind()
+    {
+        return message_.getVerb().name();
+    }
+
+    public void expired()
+    {
+        MessagingService.incrementDroppedMessages(message_.getVerb());
+    }
+
+    public void run()
+    {
+        StorageService.Verb verb = message_.getVerb();
         IVerbHandler verbHandler = MessagingService.instance.getVerbHandler(verb);
         assert verbHandler != null : "unknown verb " + verb;
         verbHandler.doVerb(message_);
@@ -20,6 +20,7 @@ package org.apache.cassandra.net;
 
 import java.io.IOError;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
@@ -33,6 +34,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 
 import com.google.common.base.Function;
@@ -48,15 +52,17 @@ import org.apache.cassandra.locator.ILatencySubscriber;
 import org.apache.cassandra.net.io.SerializerType;
 import org.apache.cassandra.net.sink.SinkManager;
 import org.apache.cassandra.service.ConsistencyChecker;
+import org.apache.cassandra.service.FirstResponseHandler;
 import org.apache.cassandra.service.GCInspector;
+import org.apache.cassandra.service.MultiReadCallback;
 import org.apache.cassandra.service.QuorumResponseHandler;
 import org.apache.cassandra.service.StorageService;
-import org.apache.cassandra.utils.ExpiringMap;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.SimpleCondition;
+import org.apache.cassandra.utils.TimerWheelExpiringMap;
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
 
-public class MessagingService
+public class MessagingService implements MessagingServiceMBean
 {
     private static int version_ = 1;
     //TODO: make this parameter dynamic somehow.  Not sure if config is appropriate.
@@ -66,7 +72,7 @@ public class MessagingService
     public static final int PROTOCOL_MAGIC = 0xCA552DFA;
 
     /* This records all the results mapped by message Id */
-    private static ExpiringMap<String, CallbackInfo> callbacks;
+    private static TimerWheelExpiringMap<CallbackInfo> callbacks;
 
     /* Lookup table for registering message handlers based on the verb. */
     private static Map<StorageService.Verb, IVerbHandler> verbHandlers_;
@@ -81,12 +87,30 @@ public class MessagingService
     
     private static Logger logger_ = Logger.getLogger(MessagingService.class);
     private static int LOG_DROPPED_INTERVAL_IN_MS = 5000;
+    public static final String MBEAN_OBJECT_NAME = "org.apache.cassandra.net:type=MessagingService";
+
+    /* bytes received from every peer, and rates recomputed every LOG_DROPPED_INTERVAL_IN_MS */
+    private static final NonBlockingHashMap<InetAddress, AtomicLong> receivedBytes = new NonBlockingHashMap<InetAddress, AtomicLong>();
+    private static final Map<InetAddress, long[]> lastTransferred = new HashMap<InetAddress, long[]>();
+    private static volatile Map<String, Long> sentBytesPerSecond = Collections.emptyMap();
+    private static volatile Map<String, Long> receivedBytesPerSecond = Collections.emptyMap();
     
     public static final MessagingService instance = new MessagingService();
 
     private SocketThread socketThread;
     private SimpleCondition listenGate;
     private static final Map<StorageService.Verb, AtomicInteger> droppedMessages = new EnumMap<StorageService.Verb, AtomicInteger>(StorageService.Verb.class);
+    /**
+     * messages whose sender stops waiting for after rpc timeout and retries or fails the request itself,
+     * so they may be dropped when late. Anything else (streaming, repair, gossip, bootstrap) is never retried.
+     */
+    public static final Set<StorageService.Verb> DROPPABLE_VERBS = EnumSet.of(StorageService.Verb.MUTATION,
+                                                                              StorageService.Verb.BINARY,
+                                                                              StorageService.Verb.READ_REPAIR,
+                                                                              StorageService.Verb.READ,
+                                                                              StorageService.Verb.READ_RESPONSE,
+                                                                              StorageService.Verb.RANGE_SLICE,
+                                                                              StorageService.Verb.MULTI_READ);
     private final List<ILatencySubscriber> subscribers = new ArrayList<ILatencySubscriber>();
 
     static
@@ -106,9 +130,9 @@ public class MessagingService
         listenGate = new SimpleCondition();
         verbHandlers_ = new HashMap<StorageService.Verb, IVerbHandler>();
 
-        Function<Pair<String, CallbackInfo>, ?> timeoutReporter = new Function<Pair<String, CallbackInfo>, Object>()
+        Function<Pair<Long, CallbackInfo>, ?> timeoutReporter = new Function<Pair<Long, CallbackInfo>, Object>()
         {
-            public Object apply(Pair<String, CallbackInfo> pair)
+            public Object apply(Pair<Long, CallbackInfo> pair)
             {
                 CallbackInfo expiredCallbackInfo = pair.right;
                 maybeAddLatency(expiredCallbackInfo.callback, expiredCallbackInfo.target, (double) DatabaseDescriptor.getRpcTimeout());
@@ -124,7 +148,7 @@ public class MessagingService
                 return null;
             }
         };
-        callbacks = new ExpiringMap<String, CallbackInfo>((long) (1.1 * DatabaseDescriptor.getRpcTimeout()), timeoutReporter);
+        callbacks = new TimerWheelExpiringMap<CallbackInfo>((long) (1.1 * DatabaseDescriptor.getRpcTimeout()), timeoutReporter);
 
         defaultExecutor_ = new JMXEnabledThreadPoolExecutor("MISCELLANEOUS-POOL");
         streamExecutor_ = new JMXEnabledThreadPoolExecutor("MESSAGE-STREAMING-POOL");
@@ -134,10 +158,21 @@ public class MessagingService
             public void run()
             {
                 logDroppedMessages();
+                updateTransferRates();
             }
         };
         Timer timer = new Timer("DroppedMessagesLogger");
         timer.schedule(logDropped, LOG_DROPPED_INTERVAL_IN_MS, LOG_DROPPED_INTERVAL_IN_MS);
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            mbs.registerMBean(this, new ObjectName(MBEAN_OBJECT_NAME));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
     }
 
     private Future<?> scheduleMutationHint(Message mutationMessage, InetAddress mutationTarget)
@@ -162,6 +197,8 @@ public class MessagingService
     public void maybeAddLatency(IMessageCallback cb, InetAddress address, double latency)
     {
         if (cb instanceof QuorumResponseHandler
+            || cb instanceof FirstResponseHandler
+            || cb instanceof MultiReadCallback
             || cb instanceof AsyncResult
             || cb instanceof ConsistencyChecker.DigestResponseHandler)
             addLatency(address, latency);
@@ -233,7 +270,7 @@ public class MessagingService
         return cp;
     }
 
-    public static OutboundTcpConnection getConnection(InetAddress to, Message msg)
+    public static IOutboundConnection getConnection(InetAddress to, Message msg)
     {
         return getConnectionPool(to).getConnection(msg);
     }
@@ -284,14 +321,14 @@ public class MessagingService
      *           suggest that a timeout occurred to the invoker of the send().
      * @return an reference to message id used to match with the result
      */
-    public String sendRR(Message message, InetAddress to, IAsyncCallback cb)
+    public long sendRR(Message message, InetAddress to, IAsyncCallback cb)
     {        
         return sendRR(message,to,cb,DatabaseDescriptor.hintedHandoffEnabled());
     }
 
-    public String sendRR(Message message, InetAddress to, IAsyncCallback cb, boolean hintEnabled)
+    public long sendRR(Message message, InetAddress to, IAsyncCallback cb, boolean hintEnabled)
     {        
-        String messageId = message.getMessageId();
+        long messageId = message.getMessageId();
         addCallback(cb, message, to,hintEnabled);
         sendOneWay(message, to);
         return messageId;
@@ -320,25 +357,29 @@ public class MessagingService
         }
 
         // get pooled connection (really, connection queue)
-        OutboundTcpConnection connection = getConnection(to, message);
+        IOutboundConnection connection = getConnection(to, message);
 
         // pack message with header in a bytebuffer
         byte[] data;
+        boolean compress;
         try
         {
             DataOutputBuffer buffer = new DataOutputBuffer();
             Message.serializer().serialize(message, buffer);
             data = buffer.getData();
+            compress = MessageCompression.shouldCompress(to, buffer.getLength());
+            if (compress)
+                data = MessageCompression.compress(to, data, buffer.getLength());
         }
         catch (IOException e)
         {
             throw new RuntimeException(e);
         }
         assert data.length > 0;
-        ByteBuffer buffer = packIt(data , false);
+        ByteBuffer buffer = packIt(data, compress);
 
         // write it
-        connection.write(buffer);
+        connection.write(buffer, message.getVerb());
     }
     
     public IAsyncResult sendRR(Message message, InetAddress to)
@@ -407,8 +448,16 @@ public class MessagingService
     public static void receive(Message message)
     {
         message = SinkManager.processServerMessageSink(message);
+        if (message == null)
+            return;
 
-        Runnable runnable = new MessageDeliveryTask(message);
+        MessageDeliveryTask runnable = new MessageDeliveryTask(message);
+        // deadlines from local receive time are checked at dequeue only; sender's may have passed in transit
+        if (DatabaseDescriptor.isCrossNodeTimeout() && System.currentTimeMillis() > runnable.getDeadline())
+        {
+            runnable.expired();
+            return;
+        }
         ExecutorService stage = StageManager.getStage(message.getMessageType());
 
         if (stage == null)
@@ -423,12 +472,12 @@ public class MessagingService
         }
     }
 
-    public static CallbackInfo removeRegisteredCallback(String messageId)
+    public static CallbackInfo removeRegisteredCallback(long messageId)
     {
         return callbacks.remove(messageId);
     }
 
-    public static long getRegisteredCallbackAge(String messageId)
+    public static long getRegisteredCallbackAge(long messageId)
     {
         return callbacks.getAge(messageId);
     }
@@ -529,6 +578,131 @@ public class MessagingService
             GCInspector.instance.logStats();
     }
 
+    static void addReceivedBytes(InetAddress from, long bytes)
+    {
+        AtomicLong received = receivedBytes.get(from);
+        if (received == null)
+        {
+            receivedBytes.putIfAbsent(from, new AtomicLong());
+            received = receivedBytes.get(from);
+        }
+        received.addAndGet(bytes);
+    }
+
+    private static synchronized void updateTransferRates()
+    {
+        Map<String, Long> sentRates = new HashMap<String, Long>();
+        Map<String, Long> receivedRates = new HashMap<String, Long>();
+        Set<InetAddress> peers = new HashSet<InetAddress>(connectionManagers_.keySet());
+        peers.addAll(receivedBytes.keySet());
+        for (InetAddress peer : peers)
+        {
+            OutboundTcpConnectionPool pool = connectionManagers_.get(peer);
+            AtomicLong received = receivedBytes.get(peer);
+            long[] current = new long[] { pool == null ? 0 : pool.getSentBytes(), received == null ? 0 : received.get() };
+            long[] last = lastTransferred.put(peer, current);
+            if (last == null)
+                last = new long[2];
+            sentRates.put(peer.getHostAddress(), (current[0] - last[0]) * 1000 / LOG_DROPPED_INTERVAL_IN_MS);
+            receivedRates.put(peer.getHostAddress(), (current[1] - last[1]) * 1000 / LOG_DROPPED_INTERVAL_IN_MS);
+        }
+        sentBytesPerSecond = sentRates;
+        receivedBytesPerSecond = receivedRates;
+    }
+
+    public String getTransport()
+    {
+        return DatabaseDescriptor.getInternodeTransport().name();
+    }
+
+    public Map<String, Integer> getPendingMessages()
+    {
+        Map<String, Integer> pending = new HashMap<String, Integer>();
+        for (Map.Entry<InetAddress, OutboundTcpConnectionPool> entry : connectionManagers_.entrySet())
+            pending.put(entry.getKey().getHostAddress(), entry.getValue().getPendingMessages());
+        return pending;
+    }
+
+    public Map<String, Long> getSentBytes()
+    {
+        Map<String, Long> sent = new HashMap<String, Long>();
+        for (Map.Entry<InetAddress, OutboundTcpConnectionPool> entry : connectionManagers_.entrySet())
+            sent.put(entry.getKey().getHostAddress(), entry.getValue().getSentBytes());
+        return sent;
+    }
+
+    public Map<String, Long> getReceivedBytes()
+    {
+        Map<String, Long> received = new HashMap<String, Long>();
+        for (Map.Entry<InetAddress, AtomicLong> entry : receivedBytes.entrySet())
+            received.put(entry.getKey().getHostAddress(), entry.getValue().get());
+        return received;
+    }
+
+    public Map<String, Long> getSentBytesPerSecond()
+    {
+        return sentBytesPerSecond;
+    }
+
+    public Map<String, Long> getReceivedBytesPerSecond()
+    {
+        return receivedBytesPerSecond;
+    }
+
+    public String getCompression()
+    {
+        return DatabaseDescriptor.getInternodeCompression().name();
+    }
+
+    public void setCompression(String compression)
+    {
+        DatabaseDescriptor.setInternodeCompression(DatabaseDescriptor.InternodeCompression.valueOf(compression));
+    }
+
+    public int getCompressionThresholdInBytes()
+    {
+        return DatabaseDescriptor.getInternodeCompressionThreshold();
+    }
+
+    public void setCompressionThresholdInBytes(int thresholdInBytes)
+    {
+        DatabaseDescriptor.setInternodeCompressionThreshold(thresholdInBytes);
+    }
+
+    public Map<String, Double> getCompressionRatio()
+    {
+        return MessageCompression.getCompressionRatios();
+    }
+
+    public Map<String, Long> getCompressionTimeInMS()
+    {
+        return MessageCompression.getCompressionTimes();
+    }
+
+    public Map<String, Double> getRecentLaneLatencyMicros()
+    {
+        Map<String, Double> latencies = new HashMap<String, Double>();
+        for (DatabaseDescriptor.OutboundLane lane : DatabaseDescriptor.OutboundLane.values())
+            latencies.put(lane.name(), OutboundTcpConnectionPool.getLaneLatency(lane).getRecentLatencyMicros());
+        return latencies;
+    }
+
+    public Map<String, long[]> getRecentLaneLatencyHistogramMicros()
+    {
+        Map<String, long[]> histograms = new HashMap<String, long[]>();
+        for (DatabaseDescriptor.OutboundLane lane : DatabaseDescriptor.OutboundLane.values())
+            histograms.put(lane.name(), OutboundTcpConnectionPool.getLaneLatency(lane).getRecentLatencyHistogramMicros());
+        return histograms;
+    }
+
+    public Map<String, long[]> getTotalLaneLatencyHistogramMicros()
+    {
+        Map<String, long[]> histograms = new HashMap<String, long[]>();
+        for (DatabaseDescriptor.OutboundLane lane : DatabaseDescriptor.OutboundLane.values())
+            histograms.put(lane.name(), OutboundTcpConnectionPool.getLaneLatency(lane).getTotalLatencyHistogramMicros());
+        return histograms;
+    }
+
     private class SocketThread extends Thread
     {
         private final ServerSocket server;
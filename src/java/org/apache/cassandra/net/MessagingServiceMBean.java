@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.util.Map;
+
+/**
+ * Per peer messaging statistics, keyed by peer address
+ */
+public interface MessagingServiceMBean
+{
+    /** transport used for outgoing messages, socket or nio */
+    public String getTransport();
+
+    /** messages queued, but not sent yet */
+    public Map<String, Integer> getPendingMessages();
+
+    /** bytes sent and received since start */
+    public Map<String, Long> getSentBytes();
+    public Map<String, Long> getReceivedBytes();
+
+    /** bytes per second sent and received, averaged over the last few seconds */
+    public Map<String, Long> getSentBytesPerSecond();
+    public Map<String, Long> getReceivedBytesPerSecond();
+
+    /** which messages are compressed: none, all or dc (ones to other datacenters) */
+    public String getCompression();
+    public void setCompression(String compression);
+
+    /** messages smaller than this are never compressed */
+    public int getCompressionThresholdInBytes();
+    public void setCompressionThresholdInBytes(int thresholdInBytes);
+
+    /** compressed to uncompressed size of messages sent */
+    public Map<String, Double> getCompressionRatio();
+
+    /** time spent compressing messages to and decompressing messages from the peer */
+    public Map<String, Long> getCompressionTimeInMS();
+
+    /** time messages spend queued before being sent, by outbound lane, for all peers */
+    public Map<String, Double> getRecentLaneLatencyMicros();
+    public Map<String, long[]> getRecentLaneLatencyHistogramMicros();
+    public Map<String, long[]> getTotalLaneLatencyHistogramMicros();
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Inbound message connection of NioTransport. Reads into the buffer shared by all connections of the selector
+ * thread and deserializes messages from it in place; only a message split between reads is copied into a buffer
+ * of this connection, sized to the message.
+ *
+ * Frames are the ones of MessagingService.packIt(): magic, protocol header, size and message. Protocol header
+ * of the first one has been read by IncomingTcpConnection before the hand over. Compressed messages are
+ * decompressed into a new array before deserialization.
+ */
+class NioIncomingConnection implements NioSelectorThread.Handler
+{
+    private static final Logger logger = Logger.getLogger(NioIncomingConnection.class);
+
+    private static final int PREFIX_SIZE = 4 + 4 + 4;
+
+    private final SocketChannel channel;
+    private final InetAddress from;
+    private final NioSelectorThread thread;
+
+    private boolean first = true;
+    private boolean compressed;
+    private final ByteBuffer prefix = ByteBuffer.allocate(PREFIX_SIZE);
+    /** size of the message being read, or -1 while reading the frame prefix */
+    private int size = -1;
+    private ByteBuffer partial;
+
+    private NioIncomingConnection(SocketChannel channel, InetAddress from, boolean compressed, NioSelectorThread thread)
+    {
+        this.channel = channel;
+        this.from = from;
+        this.compressed = compressed;
+        this.thread = thread;
+    }
+
+    static void register(final SocketChannel channel, final InetAddress from, final boolean compressed, final NioSelectorThread thread)
+    {
+        thread.execute(new Runnable()
+        {
+            public void run()
+            {
+                NioIncomingConnection connection = new NioIncomingConnection(channel, from, compressed, thread);
+                try
+                {
+                    channel.configureBlocking(false);
+                    channel.register(thread.selector, SelectionKey.OP_READ, connection);
+                }
+                catch (IOException e)
+                {
+                    connection.failed(e);
+                }
+            }
+        });
+    }
+
+    public void ready(SelectionKey key) throws IOException
+    {
+        ByteBuffer in = thread.readBuffer;
+        in.clear();
+        int read = channel.read(in);
+        if (read < 0)
+        {
+            if (logger.isTraceEnabled())
+                logger.trace("eof reading from socket; closing");
+            close();
+            return;
+        }
+        MessagingService.addReceivedBytes(from, read);
+
+        in.flip();
+        while (in.hasRemaining())
+        {
+            if (size < 0 && !readPrefix(in))
+                return;
+
+            if (partial == null && in.remaining() >= size)
+            {
+                deliver(in.array(), in.arrayOffset() + in.position(), size);
+                in.position(in.position() + size);
+                size = -1;
+                continue;
+            }
+
+            if (partial == null)
+                partial = ByteBuffer.allocate(size);
+            copy(in, partial);
+            if (partial.hasRemaining())
+                return;
+            deliver(partial.array(), 0, size);
+            partial = null;
+            size = -1;
+        }
+    }
+
+    /**
+     * @return true if the whole prefix has been read, and size of the message is set
+     */
+    private boolean readPrefix(ByteBuffer in) throws IOException
+    {
+        int needed = first ? 4 : PREFIX_SIZE;
+        ByteBuffer source;
+        if (prefix.position() == 0 && in.remaining() >= needed)
+        {
+            source = in;
+        }
+        else
+        {
+            prefix.limit(needed);
+            copy(in, prefix);
+            if (prefix.hasRemaining())
+                return false;
+            prefix.flip();
+            source = prefix;
+        }
+
+        if (!first)
+        {
+            MessagingService.validateMagic(source.getInt());
+            int header = source.getInt();
+            if (MessagingService.getBits(header, 3, 1) == 1)
+                throw new IOException("Connections cannot change type: false");
+            compressed = MessagingService.getBits(header, 2, 1) == 1;
+        }
+        size = source.getInt();
+        if (size <= 0)
+            throw new IOException("invalid message size " + size);
+
+        prefix.clear();
+        first = false;
+        return true;
+    }
+
+    private static void copy(ByteBuffer from, ByteBuffer to)
+    {
+        int n = Math.min(from.remaining(), to.remaining());
+        ByteBuffer slice = from.duplicate();
+        slice.limit(slice.position() + n);
+        to.put(slice);
+        from.position(from.position() + n);
+    }
+
+    private void deliver(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (compressed)
+        {
+            bytes = MessageCompression.decompress(from, bytes, offset, length);
+            offset = 0;
+            length = bytes.length;
+        }
+        thread.messageBytes.reset(bytes, offset, length);
+        Message message = Message.serializer().deserialize(thread.messageInput);
+        MessagingService.receive(message);
+    }
+
+    public void failed(IOException e)
+    {
+        if (logger.isDebugEnabled())
+            logger.debug("error reading from socket; closing", e);
+        close();
+    }
+
+    private void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("error closing socket", e);
+        }
+    }
+}
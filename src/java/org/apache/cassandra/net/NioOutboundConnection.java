@@ -0,0 +1,303 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Outbound connection of NioTransport. Writers only queue messages and schedule a flush on the selector thread,
+ * which gathers as many queued messages as fit into its direct buffer and sends them with a single write.
+ * Messages larger than the buffer are written directly from their own buffers.
+ *
+ * Connecting is retried like in OutboundTcpConnection: every OPEN_RETRY_DELAY ms until rpc timeout, after which
+ * queued messages are dropped.
+ */
+class NioOutboundConnection implements IOutboundConnection, NioSelectorThread.Handler
+{
+    private static final Logger logger = Logger.getLogger(NioOutboundConnection.class);
+
+    private static final int OPEN_RETRY_DELAY = 100; // ms between retries
+
+    private final InetAddress endpoint;
+    private final NioSelectorThread thread;
+    private final OutboundQueue queue;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile long sentBytes;
+
+    // touched by the selector thread only
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connecting;
+    private long connectStart;
+    /** part of queued messages already taken from the queue, which socket did not accept yet */
+    private ByteBuffer unsent;
+    /** message taken from the queue, which did not fit into the current write */
+    private OutboundQueue.QueuedMessage next;
+
+    private final Runnable flushTask = new Runnable()
+    {
+        public void run()
+        {
+            flushScheduled.set(false);
+            flush();
+        }
+    };
+
+    private final Runnable connectTask = new Runnable()
+    {
+        public void run()
+        {
+            // unless closeSocket() or another write restarted connecting meanwhile
+            if (connecting && channel == null)
+                connect();
+        }
+    };
+
+    private final Runnable disconnectTask = new Runnable()
+    {
+        public void run()
+        {
+            disconnect();
+        }
+    };
+
+    NioOutboundConnection(InetAddress endpoint, OutboundQueue queue, NioSelectorThread thread)
+    {
+        this.endpoint = endpoint;
+        this.queue = queue;
+        this.thread = thread;
+    }
+
+    public void write(ByteBuffer buffer, StorageService.Verb verb)
+    {
+        queue.add(new OutboundQueue.QueuedMessage(buffer, verb));
+        if (flushScheduled.compareAndSet(false, true))
+            thread.execute(flushTask);
+    }
+
+    public void closeSocket()
+    {
+        queue.clear();
+        thread.execute(disconnectTask);
+    }
+
+    public int getPendingMessages()
+    {
+        return queue.size();
+    }
+
+    public long getSentBytes()
+    {
+        return sentBytes;
+    }
+
+    private void flush()
+    {
+        if (connecting || (queue.isEmpty() && next == null))
+            return;
+
+        if (channel == null)
+        {
+            connectStart = System.currentTimeMillis();
+            connect();
+            return;
+        }
+
+        // socket is busy with previous writes; OP_WRITE readiness will continue
+        if (unsent != null)
+            return;
+
+        try
+        {
+            writeQueued();
+        }
+        catch (IOException e)
+        {
+            failed(e);
+        }
+    }
+
+    private void writeQueued() throws IOException
+    {
+        ByteBuffer buffer = thread.writeBuffer;
+        while (true)
+        {
+            if (unsent != null)
+            {
+                sentBytes += channel.write(unsent);
+                if (unsent.hasRemaining())
+                {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                unsent = null;
+            }
+
+            buffer.clear();
+            OutboundQueue.QueuedMessage message;
+            while ((message = next != null ? next : queue.poll()) != null)
+            {
+                next = null;
+                if (message.buffer.remaining() > buffer.remaining())
+                {
+                    if (buffer.position() == 0)
+                        // too large to gather, write it from its own buffer
+                        unsent = message.buffer.duplicate();
+                    else
+                        next = message;
+                    break;
+                }
+                buffer.put(message.buffer.duplicate());
+            }
+
+            if (buffer.position() == 0)
+            {
+                if (unsent != null)
+                    continue;
+                key.interestOps(0);
+                return;
+            }
+
+            buffer.flip();
+            sentBytes += channel.write(buffer);
+            if (buffer.hasRemaining())
+            {
+                unsent = ByteBuffer.allocate(buffer.remaining());
+                unsent.put(buffer);
+                unsent.flip();
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    private void connect()
+    {
+        if (logger.isDebugEnabled())
+            logger.debug("attempting to connect to " + endpoint);
+
+        connecting = true;
+        try
+        {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            // zero means 'bind on any available port.'
+            channel.socket().bind(new InetSocketAddress(FBUtilities.getLocalAddress(), 0));
+            channel.socket().setKeepAlive(true);
+            channel.socket().setTcpNoDelay(true);
+            key = channel.register(thread.selector, 0, this);
+            if (channel.connect(new InetSocketAddress(endpoint, DatabaseDescriptor.getStoragePort())))
+                connected();
+            else
+                key.interestOps(SelectionKey.OP_CONNECT);
+        }
+        catch (IOException e)
+        {
+            connectFailed(e);
+        }
+    }
+
+    private void connected() throws IOException
+    {
+        connecting = false;
+        key.interestOps(0);
+        writeQueued();
+    }
+
+    private void connectFailed(IOException e)
+    {
+        if (logger.isTraceEnabled())
+            logger.trace("unable to connect to " + endpoint, e);
+
+        disconnect();
+        if (System.currentTimeMillis() < connectStart + DatabaseDescriptor.getRpcTimeout())
+        {
+            connecting = true;
+            thread.schedule(connectTask, OPEN_RETRY_DELAY);
+        }
+        else
+        {
+            // clear out the queue, else gossip messages back up.
+            queue.clear();
+            next = null;
+        }
+    }
+
+    public void ready(SelectionKey key) throws IOException
+    {
+        if (key.isConnectable())
+        {
+            if (channel.finishConnect())
+                connected();
+        }
+        else if (key.isWritable())
+        {
+            writeQueued();
+        }
+    }
+
+    public void failed(IOException e)
+    {
+        if (connecting)
+        {
+            connectFailed(e);
+            return;
+        }
+
+        logger.info("error writing to " + endpoint);
+        disconnect();
+        // reconnect for messages queued meanwhile, like OutboundTcpConnection does with the next message
+        flush();
+    }
+
+    private void disconnect()
+    {
+        connecting = false;
+        unsent = null;
+        next = null;
+        if (channel != null)
+        {
+            if (key != null)
+                key.cancel();
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("exception closing connection to " + endpoint, e);
+            }
+            channel = null;
+            key = null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.io.DataInputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cassandra.utils.ReentrantByteArrayInputStream;
+
+/**
+ * I/O thread of NioTransport. Owns a selector and all channels registered with it, so connection state is
+ * touched by this thread only; other threads pass work to it with execute().
+ *
+ * Buffers are per thread and shared by all its connections: a direct one, which outbound connections gather
+ * queued messages into, and a heap one, which inbound connections read into and deserialize messages from in place.
+ */
+class NioSelectorThread extends Thread
+{
+    private static final Logger logger = Logger.getLogger(NioSelectorThread.class);
+
+    static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    interface Handler
+    {
+        /**
+         * called when channel of the key is ready for operations of its interest set
+         */
+        public void ready(SelectionKey key) throws IOException;
+
+        /**
+         * called when ready() throws
+         */
+        public void failed(IOException e);
+    }
+
+    final Selector selector;
+    final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    final ReentrantByteArrayInputStream messageBytes = new ReentrantByteArrayInputStream(new byte[0]);
+    final DataInputStream messageInput = new DataInputStream(messageBytes);
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final PriorityQueue<Timed> timers = new PriorityQueue<Timed>();
+
+    NioSelectorThread(String name)
+    {
+        super(name);
+        setDaemon(true);
+        try
+        {
+            selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * runs the task on this thread
+     */
+    void execute(Runnable task)
+    {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * runs the task on this thread after delay. Must be called from this thread
+     */
+    void schedule(Runnable task, long delayInMS)
+    {
+        assert Thread.currentThread() == this;
+        timers.add(new Timed(System.currentTimeMillis() + delayInMS, task));
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+
+                long now = System.currentTimeMillis();
+                while (!timers.isEmpty() && timers.peek().at <= now)
+                    timers.poll().task.run();
+
+                if (!tasks.isEmpty())
+                    selector.selectNow();
+                else if (timers.isEmpty())
+                    selector.select();
+                else
+                    selector.select(Math.max(1, timers.peek().at - now));
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    Handler handler = (Handler) key.attachment();
+                    try
+                    {
+                        if (key.isValid())
+                            handler.ready(key);
+                    }
+                    catch (IOException e)
+                    {
+                        handler.failed(e);
+                    }
+                }
+            }
+            catch (Throwable t)
+            {
+                logger.error("Error in " + getName(), t);
+            }
+        }
+    }
+
+    private static class Timed implements Comparable<Timed>
+    {
+        final long at;
+        final Runnable task;
+
+        Timed(long at, Runnable task)
+        {
+            this.at = at;
+            this.task = task;
+        }
+
+        public int compareTo(Timed o)
+        {
+            return at < o.at ? -1 : (at == o.at ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+/**
+ * Message transport multiplexing all messaging connections over a few selector threads (InternodeIOThreads),
+ * instead of a thread per connection. Wire format is the same as of OutboundTcpConnection and
+ * IncomingTcpConnection, so nodes using different transports talk to each other.
+ *
+ * Accepting connections and streaming stay on their own threads; message connections are handed over to
+ * a selector thread once IncomingTcpConnection has read their protocol header.
+ */
+class NioTransport
+{
+    private static NioTransport instance;
+
+    private final NioSelectorThread[] threads;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private NioTransport(int threadCount)
+    {
+        threads = new NioSelectorThread[threadCount];
+        for (int i = 0; i < threadCount; i++)
+        {
+            threads[i] = new NioSelectorThread("MESSAGING-IO-" + i);
+            threads[i].start();
+        }
+    }
+
+    static synchronized NioTransport instance()
+    {
+        if (instance == null)
+            instance = new NioTransport(DatabaseDescriptor.getInternodeIOThreads());
+        return instance;
+    }
+
+    private NioSelectorThread nextThread()
+    {
+        return threads[(next.getAndIncrement() & Integer.MAX_VALUE) % threads.length];
+    }
+
+    IOutboundConnection openConnection(InetAddress remoteEp, OutboundQueue queue)
+    {
+        return new NioOutboundConnection(remoteEp, queue, nextThread());
+    }
+
+    /**
+     * continues reading messages from the channel on a selector thread. Protocol header of the first message
+     * must be read already; compressed tells whether it flags the message as compressed.
+     */
+    void receive(SocketChannel channel, InetAddress from, boolean compressed)
+    {
+        NioIncomingConnection.register(channel, from, compressed, nextThread());
+    }
+}
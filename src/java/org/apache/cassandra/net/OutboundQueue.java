@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.LatencyTracker;
+
+/**
+ * Queue of packed messages of a single outbound connection, optionally bounded. Only messages of droppable verbs
+ * (see MessagingService.DROPPABLE_VERBS) are ever dropped; all others are kept until sent, since nobody retries
+ * them. When full, the oldest droppable message, the first to expire, is dropped. Droppable messages queued for
+ * longer than rpc timeout are dropped when taken, since whoever waited for them has timed out already. Dropped
+ * messages are counted in MessagingService dropped messages.
+ */
+class OutboundQueue
+{
+    static class QueuedMessage
+    {
+        final ByteBuffer buffer;
+        /** null for control entries, which never expire */
+        final StorageService.Verb verb;
+        final boolean droppable;
+        final long queuedAt = System.nanoTime();
+
+        QueuedMessage(ByteBuffer buffer, StorageService.Verb verb)
+        {
+            this.buffer = buffer;
+            this.verb = verb;
+            this.droppable = verb != null && MessagingService.DROPPABLE_VERBS.contains(verb);
+        }
+    }
+
+    private final BlockingQueue<QueuedMessage> queue = new LinkedBlockingQueue<QueuedMessage>();
+    private final int capacity;
+    private final LatencyTracker latency;
+
+    /**
+     * @param capacity max messages queued, 0 is unbounded
+     * @param latency records time from queueing until message is taken for sending
+     */
+    OutboundQueue(int capacity, LatencyTracker latency)
+    {
+        this.capacity = capacity;
+        this.latency = latency;
+    }
+
+    void add(QueuedMessage message)
+    {
+        if (capacity > 0)
+        {
+            while (queue.size() >= capacity && dropOldest())
+                ;
+        }
+        queue.add(message);
+    }
+
+    /**
+     * @return false if there was no droppable message queued
+     */
+    private boolean dropOldest()
+    {
+        for (QueuedMessage queued : queue)
+        {
+            if (queued.droppable)
+            {
+                // sender may have taken it meanwhile
+                if (queue.remove(queued))
+                    drop(queued);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return next message to send, or null if there are none
+     */
+    QueuedMessage poll()
+    {
+        QueuedMessage message;
+        while ((message = queue.poll()) != null && !isLive(message))
+            ;
+        return message;
+    }
+
+    /**
+     * @return next message to send, waiting for one if there are none
+     */
+    QueuedMessage take() throws InterruptedException
+    {
+        QueuedMessage message;
+        do
+        {
+            message = queue.take();
+        }
+        while (!isLive(message));
+        return message;
+    }
+
+    private boolean isLive(QueuedMessage message)
+    {
+        if (message.verb == null)
+            return true;
+
+        long queued = System.nanoTime() - message.queuedAt;
+        if (message.droppable && queued > DatabaseDescriptor.getRpcTimeout() * 1000000L)
+        {
+            drop(message);
+            return false;
+        }
+        latency.addNano(queued);
+        return true;
+    }
+
+    private static void drop(QueuedMessage message)
+    {
+        assert message.droppable;
+        MessagingService.incrementDroppedMessages(message.verb);
+    }
+
+    int size()
+    {
+        return queue.size();
+    }
+
+    boolean isEmpty()
+    {
+        return queue.isEmpty();
+    }
+
+    void clear()
+    {
+        queue.clear();
+    }
+}
@@ -27,62 +27,66 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.log4j.Logger;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 
-public class OutboundTcpConnection extends Thread
+public class OutboundTcpConnection extends Thread implements IOutboundConnection
 {
     private static final Logger logger = Logger.getLogger(OutboundTcpConnection.class);
 
-    private static final ByteBuffer CLOSE_SENTINEL = ByteBuffer.allocate(0);
+    private static final OutboundQueue.QueuedMessage CLOSE_SENTINEL = new OutboundQueue.QueuedMessage(ByteBuffer.allocate(0), null);
     private static final int OPEN_RETRY_DELAY = 100; // ms between retries
 
     private final InetAddress endpoint;
-    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<ByteBuffer>();
+    private final OutboundQueue queue;
     private DataOutputStream output;
     private Socket socket;
+    private volatile long sentBytes;
 
-    public OutboundTcpConnection(InetAddress remoteEp)
+    OutboundTcpConnection(InetAddress remoteEp, String lane, OutboundQueue queue)
     {
-        super("WRITE-" + remoteEp);
+        super("WRITE-" + lane + "-" + remoteEp);
         this.endpoint = remoteEp;
+        this.queue = queue;
     }
 
-    public void write(ByteBuffer buffer)
+    public void write(ByteBuffer buffer, StorageService.Verb verb)
     {
-        try
-        {
-            queue.put(buffer);
-        }
-        catch (InterruptedException e)
-        {
-            throw new AssertionError(e);
-        }
+        queue.add(new OutboundQueue.QueuedMessage(buffer, verb));
     }
 
     public void closeSocket()
     {
         queue.clear();
-        write(CLOSE_SENTINEL);
+        queue.add(CLOSE_SENTINEL);
+    }
+
+    public int getPendingMessages()
+    {
+        return queue.size();
+    }
+
+    public long getSentBytes()
+    {
+        return sentBytes;
     }
 
     public void run()
     {
         while (true)
         {
-            ByteBuffer bb = take();
-            if (bb == CLOSE_SENTINEL)
+            OutboundQueue.QueuedMessage message = take();
+            if (message == CLOSE_SENTINEL)
             {
                 disconnect();
                 continue;
             }
             if (socket != null || connect())
-                writeConnected(bb);
+                writeConnected(message.buffer);
             else
                 // clear out the queue, else gossip messages back up.
                 queue.clear();            
@@ -94,7 +98,8 @@ public class OutboundTcpConnection extends Thread
         try
         {
             output.write(bb.array(), 0, bb.limit());
-            if (queue.peek() == null)
+            sentBytes += bb.limit();
+            if (queue.isEmpty())
             {
                 output.flush();
             }
@@ -124,18 +129,16 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
-    private ByteBuffer take()
+    private OutboundQueue.QueuedMessage take()
     {
-        ByteBuffer bb;
         try
         {
-            bb = queue.take();
+            return queue.take();
         }
         catch (InterruptedException e)
         {
             throw new AssertionError(e);
         }
-        return bb;
     }
 
     private boolean connect()
@@ -19,36 +19,103 @@
 package org.apache.cassandra.net;
 
 import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Map;
 
 import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.DatabaseDescriptor.OutboundLane;
+import org.apache.cassandra.utils.LatencyTracker;
 
+/**
+ * Connections to a single peer, one per OutboundLane, so bulk traffic like repair trees or large mutation
+ * batches does not queue in front of reads, and neither delays responses and gossip.
+ */
 class OutboundTcpConnectionPool
 {
-    private final OutboundTcpConnection cmdCon;
-    private final OutboundTcpConnection ackCon;
+    /* time messages of every lane spend queued, for all peers */
+    private static final Map<OutboundLane, LatencyTracker> laneLatencies = new EnumMap<OutboundLane, LatencyTracker>(OutboundLane.class);
+
+    static
+    {
+        for (OutboundLane lane : OutboundLane.values())
+            laneLatencies.put(lane, new LatencyTracker());
+    }
+
+    private final Map<OutboundLane, IOutboundConnection> connections = new EnumMap<OutboundLane, IOutboundConnection>(OutboundLane.class);
 
     OutboundTcpConnectionPool(InetAddress remoteEp)
     {
-        cmdCon = new OutboundTcpConnection(remoteEp);
-        cmdCon.start();
-        ackCon = new OutboundTcpConnection(remoteEp);
-        ackCon.start();
+        for (OutboundLane lane : OutboundLane.values())
+            connections.put(lane, openConnection(remoteEp, lane));
+    }
+
+    private static IOutboundConnection openConnection(InetAddress remoteEp, OutboundLane lane)
+    {
+        OutboundQueue queue = new OutboundQueue(DatabaseDescriptor.getOutboundQueueSize(lane), laneLatencies.get(lane));
+        if (DatabaseDescriptor.getInternodeTransport() == DatabaseDescriptor.InternodeTransport.nio)
+            return NioTransport.instance().openConnection(remoteEp, queue);
+
+        OutboundTcpConnection connection = new OutboundTcpConnection(remoteEp, lane.name().toUpperCase(), queue);
+        connection.start();
+        return connection;
+    }
+
+    static OutboundLane getLane(Message msg)
+    {
+        String type = msg.getMessageType();
+        if (type.equals(StageManager.RESPONSE_STAGE))
+            return OutboundLane.response;
+        if (type.equals(StageManager.GOSSIP_STAGE))
+            return OutboundLane.gossip;
+
+        switch (msg.getVerb())
+        {
+            case READ:
+            case MULTI_READ:
+            case RANGE_SLICE:
+                return OutboundLane.read;
+            case MUTATION:
+            case READ_REPAIR:
+                return OutboundLane.write;
+            default:
+                // binary loads, anti-entropy trees, streaming and bootstrap control
+                return OutboundLane.bulk;
+        }
+    }
+
+    static LatencyTracker getLaneLatency(OutboundLane lane)
+    {
+        return laneLatencies.get(lane);
     }
 
     /**
      * returns the appropriate connection based on message type.
-     * returns null if a connection could not be established.
      */
-    OutboundTcpConnection getConnection(Message msg)
+    IOutboundConnection getConnection(Message msg)
     {
-        return msg.getMessageType().equals(StageManager.RESPONSE_STAGE) || msg.getMessageType().equals(StageManager.GOSSIP_STAGE)
-               ? ackCon
-               : cmdCon;
+        return connections.get(getLane(msg));
     }
 
     synchronized void reset()
     {
-        for (OutboundTcpConnection con : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection con : connections.values())
             con.closeSocket();
     }
+
+    int getPendingMessages()
+    {
+        int pending = 0;
+        for (IOutboundConnection con : connections.values())
+            pending += con.getPendingMessages();
+        return pending;
+    }
+
+    long getSentBytes()
+    {
+        long sent = 0;
+        for (IOutboundConnection con : connections.values())
+            sent += con.getSentBytes();
+        return sent;
+    }
 }
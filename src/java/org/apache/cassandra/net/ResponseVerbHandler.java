@@ -26,7 +26,7 @@ public class ResponseVerbHandler implements IVerbHandler
 
     public void doVerb(Message message)
     {     
-        String messageId = message.getMessageId();
+        long messageId = message.getMessageId();
         double age = System.currentTimeMillis() - MessagingService.getRegisteredCallbackAge(messageId);
         CallbackInfo callbackInfo = MessagingService.removeRegisteredCallback(messageId);
         if (callbackInfo == null)
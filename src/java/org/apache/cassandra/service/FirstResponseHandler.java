@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.net.IAsyncCallback;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.utils.SimpleCondition;
+
+/**
+ * Takes the first response of a request, which may be sent to more than one endpoint. Later responses are ignored.
+ */
+public class FirstResponseHandler implements IAsyncCallback
+{
+    private final SimpleCondition condition = new SimpleCondition();
+    private final AtomicReference<Message> response = new AtomicReference<Message>();
+    private final long startTime = System.currentTimeMillis();
+    private volatile long completedAt;
+
+    public void response(Message message)
+    {
+        if (response.compareAndSet(null, message))
+        {
+            completedAt = System.nanoTime();
+            condition.signal();
+        }
+    }
+
+    /**
+     * @return System.nanoTime() when the first response arrived, or 0 if none has yet
+     */
+    public long getCompletedAt()
+    {
+        return completedAt;
+    }
+
+    /**
+     * @return true if a response arrived within timeout milliseconds since the request was sent
+     */
+    public boolean await(long timeout)
+    {
+        try
+        {
+            return condition.await(timeout - (System.currentTimeMillis() - startTime), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    public Message get() throws TimeoutException
+    {
+        if (!await(DatabaseDescriptor.getRpcTimeout()))
+            throw new TimeoutException("Operation timed out - received no response");
+        return response.get();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.net.IAsyncCallback;
+import org.apache.cassandra.net.Message;
+
+/**
+ * Splits the response to a MultiReadCommand into responses of single keys, and passes each to the callback of
+ * its key, as if it was read alone. A key the replica has no response for is left out, so its callback times
+ * out as if its read was dropped.
+ */
+public class MultiReadCallback implements IAsyncCallback
+{
+    private static final Logger logger_ = Logger.getLogger(MultiReadCallback.class);
+
+    private final List<IAsyncCallback> callbacks;
+
+    /**
+     * @param callbacks in the order of commands
+     */
+    public MultiReadCallback(List<IAsyncCallback> callbacks)
+    {
+        this.callbacks = callbacks;
+    }
+
+    public void response(Message message)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message.getMessageBody()));
+            int count = in.readInt();
+            assert count <= callbacks.size() : "got " + count + " responses to " + callbacks.size() + " reads";
+            for (int i = 0; i < count; i++)
+            {
+                int length = in.readInt();
+                if (length < 0)
+                {
+                    if (logger_.isDebugEnabled())
+                        logger_.debug("No response to read " + i + " of " + callbacks.size() + " from " + message.getFrom());
+                    continue;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                callbacks.get(i).response(new Message(message.getFrom(), StageManager.RESPONSE_STAGE, StorageService.Verb.READ_RESPONSE, body));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+}
@@ -39,6 +39,7 @@ public class QuorumResponseHandler<T> implements IAsyncCallback
     protected final Collection<Message> responses;
     private IResponseResolver<T> responseResolver;
     private final long startTime;
+    private volatile long completedAt;
 
     public QuorumResponseHandler(int responseCount, IResponseResolver<T> responseResolver)
     {
@@ -47,6 +48,21 @@ public class QuorumResponseHandler<T> implements IAsyncCallback
         startTime = System.currentTimeMillis();
     }
     
+    /**
+     * @return true if enough responses arrived within timeout milliseconds since the request was sent
+     */
+    public boolean await(long timeout)
+    {
+        try
+        {
+            return condition.await(timeout - (System.currentTimeMillis() - startTime), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
     public T get() throws TimeoutException, DigestMismatchException, IOException
     {
         long timeout = DatabaseDescriptor.getRpcTimeout() - (System.currentTimeMillis() - startTime);
@@ -79,7 +95,17 @@ public class QuorumResponseHandler<T> implements IAsyncCallback
         responseResolver.preprocess(message);
         if (responseResolver.isDataPresent(responses))
         {
+            if (completedAt == 0)
+                completedAt = System.nanoTime();
             condition.signal();
         }
     }
+
+    /**
+     * @return System.nanoTime() when enough responses had arrived, or 0 if they have not yet
+     */
+    public long getCompletedAt()
+    {
+        return completedAt;
+    }
 }
@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamily;
@@ -46,7 +47,7 @@ import org.cliffc.high_scale_lib.NonBlockingHashMap;
 public class ReadResponseResolver extends SimpleReadResponseResolver implements IResponseResolver<Row>
 {
 	private final int responseCount;
-    private final Map<InetAddress, ReadResponse> results = new NonBlockingHashMap<InetAddress, ReadResponse>();
+    private final ConcurrentMap<InetAddress, ReadResponse> results = new NonBlockingHashMap<InetAddress, ReadResponse>();
     
     public ReadResponseResolver(String table, String key, int responseCount)
     {
@@ -91,11 +92,9 @@ public class ReadResponseResolver extends SimpleReadResponseResolver implements
          * query exists then we need to compare the digest with 
          * the digest of the data that is received.
         */
-		for (Message message : responses)
+		for (Map.Entry<InetAddress, ReadResponse> entry : results.entrySet())
 		{
-            ReadResponse result = results.get(message.getFrom());
-            if (result == null)
-                continue; // arrived after quorum already achieved
+            ReadResponse result = entry.getValue();
             if (result.isDigestQuery())
             {
                 if (digest == null)
@@ -112,7 +111,7 @@ public class ReadResponseResolver extends SimpleReadResponseResolver implements
             else
             {
                 versions.add(result.row().cf);
-                endPoints.add(message.getFrom());
+                endPoints.add(entry.getKey());
             }
         }
 
@@ -195,7 +194,11 @@ public class ReadResponseResolver extends SimpleReadResponseResolver implements
         try
         {
             ReadResponse result = parseResponse(message);
-            results.put(message.getFrom(), result);
+            // an endpoint asked for both digest and data by speculative retry keeps its data
+            if (result.isDigestQuery())
+                results.putIfAbsent(message.getFrom(), result);
+            else
+                results.put(message.getFrom(), result);
         }
         catch (IOException e)
         {
@@ -203,6 +206,15 @@ public class ReadResponseResolver extends SimpleReadResponseResolver implements
         }
     }
 
+    /**
+     * @return true if data (not digest) response of the endpoint arrived
+     */
+    public boolean isDataFrom(InetAddress endpoint)
+    {
+        ReadResponse result = results.get(endpoint);
+        return result != null && !result.isDigestQuery();
+    }
+
     /** hack so ConsistencyChecker doesn't have to serialize/deserialize an extra real Message */
     public void injectPreProcessed(Message message, ReadResponse result)
     {
@@ -223,11 +235,9 @@ public class ReadResponseResolver extends SimpleReadResponseResolver implements
 	{
         int digests = 0;
         int data = 0;
-        for (Message message : responses)
+        // by endpoint, as speculative retry may get two responses from one
+        for (ReadResponse result : results.values())
         {
-            ReadResponse result = results.get(message.getFrom());
-            if (result == null)
-                continue; // arrived concurrently
             if (result.isDigestQuery())
                 digests++;
             else
@@ -27,7 +27,6 @@ import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -49,7 +48,7 @@ import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.locator.AbstractReplicationStrategy;
 import org.apache.cassandra.locator.TokenMetadata;
-import org.apache.cassandra.net.IAsyncResult;
+import org.apache.cassandra.net.IAsyncCallback;
 import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.thrift.ConsistencyLevel;
@@ -81,6 +80,8 @@ public class StorageProxy implements StorageProxyMBean
     private static AtomicLong strongParConsistencyUnder = new AtomicLong();
     private static AtomicLong strongParConsistencyReuseSuperset = new AtomicLong();
     private static AtomicLong recentReadRepairs = new AtomicLong();
+    private static AtomicLong speculativeRetries = new AtomicLong();
+    private static AtomicLong speculativeRetryWins = new AtomicLong();
     
     private static boolean hintedHandoffEnabled = DatabaseDescriptor.hintedHandoffEnabled();
     /**
@@ -479,10 +480,12 @@ public class StorageProxy implements StorageProxyMBean
 
         // send off all the commands asynchronously
         List<Future<Object>> localFutures = null;
-        HashMap<ReadCommand, IAsyncResult> remoteResults = null;
+        List<WeakRead> remoteReads = null;
+        ReadBatch batch = new ReadBatch();
         for (ReadCommand command: commands)
         {
-            InetAddress endPoint = StorageService.instance.findSuitableEndPoint(command.table, command.key);
+            List<InetAddress> endPoints = StorageService.instance.findSuitableEndPoints(command.table, command.key);
+            InetAddress endPoint = endPoints.get(0);
             if (endPoint.equals(FBUtilities.getLocalAddress()))
             {
                 if (logger.isDebugEnabled())
@@ -495,14 +498,17 @@ public class StorageProxy implements StorageProxyMBean
             }
             else
             {
-                if (remoteResults == null)
-                    remoteResults = new HashMap<ReadCommand, IAsyncResult>();
-                Message message = command.makeReadMessage();
+                if (remoteReads == null)
+                    remoteReads = new ArrayList<WeakRead>();
+                WeakRead read = new WeakRead(command, endPoints);
                 if (logger.isDebugEnabled())
-                    logger.debug("weakread reading " + command + " from " + message.getMessageId() + "@" + endPoint);
-                remoteResults.put(command, MessagingService.instance.sendRR(message, endPoint));
+                    logger.debug("weakread reading " + command + " from " + endPoint);
+                batch.add(endPoint, command, read.handler);
+                remoteReads.add(read);
             }
         }
+        long sentAt = System.nanoTime();
+        batch.send();
 
         // wait for results
         if (localFutures != null)
@@ -521,18 +527,23 @@ public class StorageProxy implements StorageProxyMBean
                 rows.add(row);
             }
         }
-        if (remoteResults != null)
+        if (remoteReads != null)
         {
-            for (Map.Entry<ReadCommand, IAsyncResult> entry : remoteResults.entrySet())
+            for (WeakRead read : remoteReads)
             {
-                IAsyncResult iar = entry.getValue();
-                byte[] body;
-                body = iar.get(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS);
-                ByteArrayInputStream bufIn = new ByteArrayInputStream(body);
+                ColumnFamilyStore cfs = getColumnFamilyStore(read.command);
+                InetAddress retried = maybeSpeculate(read, getSpeculativeRetryMillis(cfs));
+
+                Message message = read.handler.get();
+                if (cfs != null)
+                    cfs.addCoordinatorReadLatency(read.handler.getCompletedAt() - sentAt);
+                if (message.getFrom().equals(retried))
+                    speculativeRetryWins.incrementAndGet();
+                ByteArrayInputStream bufIn = new ByteArrayInputStream(message.getMessageBody());
                 ReadResponse response = ReadResponse.serializer().deserialize(new DataInputStream(bufIn));
                 assert response.row() != null;
                 rows.add(response.row());
-                StorageService.instance.doConsistencyCheck(response.row(), entry.getKey(), iar.getFrom());
+                StorageService.instance.doConsistencyCheck(response.row(), read.command, message.getFrom());
             }
         }
 
@@ -546,6 +557,7 @@ public class StorageProxy implements StorageProxyMBean
         List<Row> rows = new ArrayList<Row>();
 
         // send out read requests
+        ReadBatch batch = new ReadBatch();
         for (ReadCommand command: commands)
         {
             assert !command.isDigestQuery();
@@ -576,15 +588,15 @@ public class StorageProxy implements StorageProxyMBean
                 } else
                 {
                     
-                    Message m = command.makeReadMessage();
                     if (logger.isDebugEnabled())
-                        logger.debug("weakreadPar reading data for " + command + " from " + m.getMessageId() + "@" + endpoint);
-                    MessagingService.instance.sendRR(m, endpoint, parResponseHandler);
+                        logger.debug("weakreadPar reading data for " + command + " from " + endpoint);
+                    batch.add(endpoint, command, parResponseHandler);
                 }
             }
             parResponseHandlers.add(parResponseHandler);
             commandEndPoints.add(endpointList);
         }
+        batch.send();
 
         // read results and make a second pass for any digest mismatches
         for (ParallelWeakResponseHandler parResponseHandler : parResponseHandlers)
@@ -627,18 +639,21 @@ public class StorageProxy implements StorageProxyMBean
     private static List<Row> strongRead(List<ReadCommand> commands, ConsistencyLevel consistency_level) throws IOException, UnavailableException, TimeoutException
     {
         List<QuorumResponseHandler<Row>> quorumResponseHandlers = new ArrayList<QuorumResponseHandler<Row>>();
+        List<ReadResponseResolver> resolvers = new ArrayList<ReadResponseResolver>();
         List<List<InetAddress>> commandEndPoints = new ArrayList<List<InetAddress>>();
         List<Row> rows = new ArrayList<Row>();
 
         // send out read requests
+        ReadBatch batch = new ReadBatch();
         for (ReadCommand command: commands)
         {
             assert !command.isDigestQuery();
             ReadCommand digestCommand = command.copy();
             digestCommand.setDigestQuery(true);
 
-            InetAddress dataPoint = StorageService.instance.findSuitableEndPoint(command.table, command.key);
-            List<InetAddress> endpointList = StorageService.instance.getLiveNaturalEndpoints(command.table, command.key);
+            // closest first
+            List<InetAddress> endpointList = StorageService.instance.findSuitableEndPoints(command.table, command.key);
+            InetAddress dataPoint = endpointList.get(0);
             final String table = command.table;
             int responseCount = determineBlockFor(DatabaseDescriptor.getReplicationFactor(table), consistency_level);
             if (endpointList.size() < responseCount)
@@ -650,14 +665,16 @@ public class StorageProxy implements StorageProxyMBean
             // the data for us. The other replicas are only sent a digest query.
             for (InetAddress endpoint : endpointList)
             {
-                Message m = endpoint.equals(dataPoint) ? command.makeReadMessage() : digestCommand.makeReadMessage();
                 if (logger.isDebugEnabled())
-                    logger.debug("strongread reading " + (endpoint.equals(dataPoint) ? "data" : "digest") + " for " + command + " from " + m.getMessageId() + "@" + endpoint);
-                MessagingService.instance.sendRR(m, endpoint, quorumResponseHandler);
+                    logger.debug("strongread reading " + (endpoint.equals(dataPoint) ? "data" : "digest") + " for " + command + " from " + endpoint);
+                batch.add(endpoint, endpoint.equals(dataPoint) ? command : digestCommand, quorumResponseHandler);
             }
             quorumResponseHandlers.add(quorumResponseHandler);
+            resolvers.add(resolver);
             commandEndPoints.add(endpointList);
         }
+        long sentAt = System.nanoTime();
+        batch.send();
 
         // read results and make a second pass for any digest mismatches
         List<QuorumResponseHandler<Row>> repairResponseHandlers = null;
@@ -666,10 +683,19 @@ public class StorageProxy implements StorageProxyMBean
             QuorumResponseHandler<Row> quorumResponseHandler = quorumResponseHandlers.get(i);
             Row row;
             ReadCommand command = commands.get(i);
+            ReadResponseResolver responseResolver = resolvers.get(i);
+            List<InetAddress> endpoints = commandEndPoints.get(i);
+            ColumnFamilyStore cfs = getColumnFamilyStore(command);
+            InetAddress retried = maybeSpeculate(command, endpoints, quorumResponseHandler, responseResolver, getSpeculativeRetryMillis(cfs));
             try
             {
                 long startTime2 = System.currentTimeMillis();
                 row = quorumResponseHandler.get();
+                // handlers are waited on in turn, so time each to its own completion rather than to now
+                if (cfs != null)
+                    cfs.addCoordinatorReadLatency(quorumResponseHandler.getCompletedAt() - sentAt);
+                if (retried != null && !responseResolver.isDataFrom(endpoints.get(0)))
+                    speculativeRetryWins.incrementAndGet();
                 if (row != null)
                     rows.add(row);
 
@@ -736,6 +762,7 @@ public class StorageProxy implements StorageProxyMBean
         List<Row> rows = new ArrayList<Row>();
 
         // send out read requests
+        ReadBatch batch = new ReadBatch();
         for (ReadCommand command: commands)
         {
             assert !command.isDigestQuery();
@@ -766,15 +793,15 @@ public class StorageProxy implements StorageProxyMBean
                 } else
                 {
                     
-                    Message m = command.makeReadMessage();
                     if (logger.isDebugEnabled())
-                        logger.debug("strongreadPar reading data for " + command + " from " + m.getMessageId() + "@" + endpoint);
-                    MessagingService.instance.sendRR(m, endpoint, parResponseHandler);
+                        logger.debug("strongreadPar reading data for " + command + " from " + endpoint);
+                    batch.add(endpoint, command, parResponseHandler);
                 }
             }
             parResponseHandlers.add(parResponseHandler);
             commandEndPoints.add(endpointList);
         }
+        batch.send();
 
         // read results and make a second pass for any digest mismatches
         for (ParallelQuorumResponseHandler parResponseHandler : parResponseHandlers)
@@ -808,55 +835,99 @@ public class StorageProxy implements StorageProxyMBean
 
         List<AbstractBounds> ranges = getRestrictedRanges(command.range);
 
-        // now scan until we have enough results
+        // now scan until we have enough results, querying as many ranges at once as are expected to be needed
         List<Row> rows = new ArrayList<Row>(command.max_keys);
-        for (AbstractBounds range : ranges)
+        int maxConcurrency = DatabaseDescriptor.getRangeSliceConcurrency();
+        int concurrency = maxConcurrency == 1 ? 1 : rangeSliceConcurrency(command.max_keys, estimateRowsPerRange(command), maxConcurrency);
+        int queried = 0;
+        while (queried < ranges.size() && rows.size() < command.max_keys)
         {
-            List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(command.keyspace, range.right);
-            if (liveEndpoints.size() < responseCount)
-                throw new UnavailableException();
-            DatabaseDescriptor.getEndPointSnitch(command.keyspace).sortByProximity(FBUtilities.getLocalAddress(), liveEndpoints);
-            List<InetAddress> endpoints = liveEndpoints.subList(0, responseCount);
-
-            RangeSliceCommand c2 = new RangeSliceCommand(command.keyspace, command.column_family, command.super_column, command.predicate, range, command.max_keys);
-
-            // collect replies and resolve according to consistency level
-            RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(command.keyspace, endpoints, StorageService.getPartitioner());
-            QuorumResponseHandler<List<Row>> handler = new QuorumResponseHandler<List<Row>>(responseCount, resolver);
-
-            for (InetAddress endpoint : endpoints)
-            {
-                Message message = c2.getMessage();
-                MessagingService.instance.sendRR(message, endpoint, handler);
-                if (logger.isDebugEnabled())
-                    logger.debug("reading " + c2 + " from " + message.getMessageId() + "@" + endpoint);
-            }
-            // TODO read repair on remaining replicas?
-
-            // if we're done, great, otherwise, move to the next range
-            try
+            int count = Math.min(concurrency, ranges.size() - queried);
+            List<QuorumResponseHandler<List<Row>>> handlers = new ArrayList<QuorumResponseHandler<List<Row>>>(count);
+            for (AbstractBounds range : ranges.subList(queried, queried + count))
+                handlers.add(sendRangeSlice(command, range, responseCount));
+            queried += count;
+
+            // in token order; if we're done, great, responses of the rest are dropped
+            for (QuorumResponseHandler<List<Row>> handler : handlers)
             {
-                if (logger.isDebugEnabled())
+                try
                 {
-                    for (Row row : handler.get())
+                    List<Row> rangeRows = handler.get();
+                    if (logger.isDebugEnabled())
                     {
-                        logger.debug("range slices read " + row.key);
+                        for (Row row : rangeRows)
+                        {
+                            logger.debug("range slices read " + row.key);
+                        }
                     }
+                    rows.addAll(rangeRows);
                 }
-                rows.addAll(handler.get());
-            }
-            catch (DigestMismatchException e)
-            {
-                throw new AssertionError(e); // no digests in range slices yet
+                catch (DigestMismatchException e)
+                {
+                    throw new AssertionError(e); // no digests in range slices yet
+                }
+                if (rows.size() >= command.max_keys)
+                    break;
             }
-            if (rows.size() >= command.max_keys)
-                break;
+
+            if (maxConcurrency > 1)
+                concurrency = rangeSliceConcurrency(command.max_keys - rows.size(), (double) rows.size() / queried, maxConcurrency);
         }
 
         rangeStats.addNano(System.nanoTime() - startTime);
         return rows.size() > command.max_keys ? rows.subList(0, command.max_keys) : rows;
     }
 
+    private static QuorumResponseHandler<List<Row>> sendRangeSlice(RangeSliceCommand command, AbstractBounds range, int responseCount)
+    throws IOException, UnavailableException
+    {
+        List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(command.keyspace, range.right);
+        if (liveEndpoints.size() < responseCount)
+            throw new UnavailableException();
+        DatabaseDescriptor.getEndPointSnitch(command.keyspace).sortByProximity(FBUtilities.getLocalAddress(), liveEndpoints);
+        List<InetAddress> endpoints = liveEndpoints.subList(0, responseCount);
+
+        RangeSliceCommand c2 = new RangeSliceCommand(command.keyspace, command.column_family, command.super_column, command.predicate, range, command.max_keys);
+
+        // collect replies and resolve according to consistency level
+        RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(command.keyspace, endpoints, StorageService.getPartitioner());
+        QuorumResponseHandler<List<Row>> handler = new QuorumResponseHandler<List<Row>>(responseCount, resolver);
+
+        for (InetAddress endpoint : endpoints)
+        {
+            Message message = c2.getMessage();
+            MessagingService.instance.sendRR(message, endpoint, handler);
+            if (logger.isDebugEnabled())
+                logger.debug("reading " + c2 + " from " + message.getMessageId() + "@" + endpoint);
+        }
+        // TODO read repair on remaining replicas?
+
+        return handler;
+    }
+
+    /**
+     * @return ranges to query at once to get remainingRows, if each range has rowsPerRange rows
+     */
+    static int rangeSliceConcurrency(int remainingRows, double rowsPerRange, int maxConcurrency)
+    {
+        if (rowsPerRange <= 0)
+            return maxConcurrency; // ranges were empty so far
+        return (int) Math.max(1, Math.min(maxConcurrency, Math.ceil(remainingRows / rowsPerRange)));
+    }
+
+    /**
+     * guesses rows per range from keys of the column family stored locally, which are keys of replication
+     * factor ranges
+     */
+    private static double estimateRowsPerRange(RangeSliceCommand command) throws IOException
+    {
+        ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
+        if (cfs == null)
+            return Double.POSITIVE_INFINITY; // one range at a time, until we know better
+        return (double) cfs.estimateKeys() / DatabaseDescriptor.getReplicationFactor(command.keyspace);
+    }
+
     /**
      * Compute all ranges we're going to query, in sorted order. Nodes can be replica destinations for many ranges,
      * so we need to restrict each scan to the specific range we want, or else we'd get duplicate results.
@@ -1091,6 +1162,157 @@ public class StorageProxy implements StorageProxyMBean
     }
     
 
+    private static ColumnFamilyStore getColumnFamilyStore(ReadCommand command) throws IOException
+    {
+        return Table.open(command.table).getColumnFamilyStore(command.getColumnFamilyName());
+    }
+
+    /**
+     * @return milliseconds to wait for replicas of a read of the column family before retrying it on another one,
+     * rpc timeout for never
+     */
+    private static long getSpeculativeRetryMillis(ColumnFamilyStore cfs)
+    {
+        if (cfs == null)
+            return DatabaseDescriptor.getRpcTimeout();
+        return Math.min(cfs.getSpeculativeRetryMillis(), DatabaseDescriptor.getRpcTimeout());
+    }
+
+    /**
+     * Waits up to retryAfter milliseconds since a weak read was sent for the replica to answer, and sends the read
+     * to the next closest replica as well if it did not.
+     * @return replica the read was retried on, null if it was not retried
+     */
+    static InetAddress maybeSpeculate(WeakRead read, long retryAfter) throws IOException
+    {
+        if (read.endPoints.size() < 2 || retryAfter >= DatabaseDescriptor.getRpcTimeout() || read.handler.await(retryAfter))
+            return null;
+
+        InetAddress retried = read.endPoints.get(1);
+        Message message = read.command.makeReadMessage();
+        if (logger.isDebugEnabled())
+            logger.debug("weakread speculatively reading " + read.command + " from " + message.getMessageId() + "@" + retried);
+        MessagingService.instance.sendRR(message, retried, read.handler);
+        speculativeRetries.incrementAndGet();
+        return retried;
+    }
+
+    /**
+     * data point is slow: ask the next closest replica, which got a digest request, for data as well
+     * @return the replica retried on, or null if none was
+     */
+    static InetAddress maybeSpeculate(ReadCommand command, List<InetAddress> endPoints, QuorumResponseHandler<Row> handler, ReadResponseResolver resolver, long retryAfter) throws IOException
+    {
+        if (endPoints.size() < 2
+            || retryAfter >= DatabaseDescriptor.getRpcTimeout()
+            || handler.await(retryAfter)
+            || resolver.isDataFrom(endPoints.get(0)))
+            return null;
+
+        InetAddress retried = endPoints.get(1);
+        Message message = command.makeReadMessage();
+        if (logger.isDebugEnabled())
+            logger.debug("strongread speculatively reading data for " + command + " from " + message.getMessageId() + "@" + retried);
+        MessagingService.instance.sendRR(message, retried, handler);
+        speculativeRetries.incrementAndGet();
+        return retried;
+    }
+
+    public int getRangeSliceConcurrency()
+    {
+        return DatabaseDescriptor.getRangeSliceConcurrency();
+    }
+
+    public void setRangeSliceConcurrency(int concurrency)
+    {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        DatabaseDescriptor.setRangeSliceConcurrency(concurrency);
+    }
+
+    public long getTotalSpeculativeRetries()
+    {
+        return speculativeRetries.get();
+    }
+
+    public long getTotalSpeculativeRetryWins()
+    {
+        return speculativeRetryWins.get();
+    }
+
+    /**
+     * Remote reads of a multiget, collected by replica to be sent in messages of up to MultiReadBatchSize keys.
+     * Each read keeps its own callback, so digests and read repair work per key as usual.
+     */
+    private static class ReadBatch
+    {
+        private final int batchSize = DatabaseDescriptor.getMultiReadBatchSize();
+        private final Map<InetAddress, List<ReadCommand>> commands = new HashMap<InetAddress, List<ReadCommand>>();
+        private final Map<InetAddress, List<IAsyncCallback>> callbacks = new HashMap<InetAddress, List<IAsyncCallback>>();
+
+        void add(InetAddress endpoint, ReadCommand command, IAsyncCallback callback) throws IOException
+        {
+            if (batchSize == 1)
+            {
+                MessagingService.instance.sendRR(command.makeReadMessage(), endpoint, callback);
+                return;
+            }
+
+            List<ReadCommand> endpointCommands = commands.get(endpoint);
+            if (endpointCommands == null)
+            {
+                endpointCommands = new ArrayList<ReadCommand>();
+                commands.put(endpoint, endpointCommands);
+                callbacks.put(endpoint, new ArrayList<IAsyncCallback>());
+            }
+            endpointCommands.add(command);
+            callbacks.get(endpoint).add(callback);
+        }
+
+        void send() throws IOException
+        {
+            for (Map.Entry<InetAddress, List<ReadCommand>> entry : commands.entrySet())
+            {
+                InetAddress endpoint = entry.getKey();
+                List<ReadCommand> endpointCommands = entry.getValue();
+                List<IAsyncCallback> endpointCallbacks = callbacks.get(endpoint);
+                for (int from = 0; from < endpointCommands.size(); from += batchSize)
+                {
+                    int to = Math.min(endpointCommands.size(), from + batchSize);
+                    if (to - from == 1)
+                    {
+                        MessagingService.instance.sendRR(endpointCommands.get(from).makeReadMessage(), endpoint, endpointCallbacks.get(from));
+                        continue;
+                    }
+
+                    Message message = new MultiReadCommand(endpointCommands.subList(from, to)).getMessage();
+                    if (logger.isDebugEnabled())
+                        logger.debug("reading " + (to - from) + " keys from " + message.getMessageId() + "@" + endpoint);
+                    MessagingService.instance.sendRR(message, endpoint, new MultiReadCallback(endpointCallbacks.subList(from, to)));
+                }
+            }
+            commands.clear();
+            callbacks.clear();
+        }
+    }
+
+    /**
+     * remote read of weakRead, retried on the next closest live replica if the first is slow
+     */
+    static class WeakRead
+    {
+        final ReadCommand command;
+        /** live replicas, closest first */
+        final List<InetAddress> endPoints;
+        final FirstResponseHandler handler = new FirstResponseHandler();
+
+        WeakRead(ReadCommand command, List<InetAddress> endPoints)
+        {
+            this.command = command;
+            this.endPoints = endPoints;
+        }
+    }
+
     static class weakReadLocalCallable implements Callable<Object>
     {
         private final ReadCommand command;
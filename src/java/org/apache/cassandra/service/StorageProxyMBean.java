@@ -100,6 +100,23 @@ public interface StorageProxyMBean
      * @return
      */
     long getRecentReadRepairs();
+
+    /**
+     * @return max token ranges a range slice queries at once
+     */
+    int getRangeSliceConcurrency();
+    void setRangeSliceConcurrency(int concurrency);
+
+    /**
+     * @return reads sent to one more replica, because the ones asked were slower than speculative retry policy
+     * of the column family allows
+     */
+    long getTotalSpeculativeRetries();
+
+    /**
+     * @return speculatively retried reads, which the additional replica answered first
+     */
+    long getTotalSpeculativeRetryWins();
     /**
      * @return
      */
@@ -173,6 +173,7 @@ public class SSTableImport
                            
                 ColumnFamily.serializer().serializeWithIndexes(cfamily, dob, bloomColumns);
                 writer.append(rowKey, dob);
+                writer.getMetadataCollector().update(cfamily);
                 if (bloomColumns)
                     bfw.add(rowKey, cfamily);
                 
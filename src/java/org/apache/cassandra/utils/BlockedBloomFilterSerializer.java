@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.cassandra.utils.obs.OpenBitSet;
+
+/**
+ * Serializes blocked bloom filters of sstables. The format is the one of {@link BloomFilterWithElementCountSerializer},
+ * prefixed with BLOCKED_FORMAT marker instead of element count. Element count is never negative, so
+ * BloomFilter.serializerForSSTable() tells both formats apart and reads filters of existing sstables as before.
+ */
+public class BlockedBloomFilterSerializer extends BloomFilterWithElementCountSerializer
+{
+    static final long BLOCKED_FORMAT = Long.MIN_VALUE;
+
+    @Override
+    public void serialize(BloomFilter bf, DataOutput dos) throws IOException
+    {
+        assert bf instanceof BlockedBloomFilter;
+
+        dos.writeLong(BLOCKED_FORMAT);
+        super.serialize(bf, dos);
+    }
+
+    @Override
+    public BloomFilter deserialize(DataInput dis) throws IOException
+    {
+        long marker = dis.readLong();
+        if (marker != BLOCKED_FORMAT)
+            throw new IOException("Not a blocked bloom filter");
+
+        return deserializeAfterMarker(dis);
+    }
+
+    /**
+     * reads the rest of filter, after BLOCKED_FORMAT marker is read
+     */
+    BloomFilter deserializeAfterMarker(DataInput dis) throws IOException
+    {
+        return super.deserialize(dis);
+    }
+
+    @Override
+    protected BloomFilter createFilter(int hashes, OpenBitSet bs)
+    {
+        return new BlockedBloomFilter(hashes, bs);
+    }
+
+    @Override
+    public long serializeSize(BloomFilter bf)
+    {
+        return super.serializeSize(bf) + 8;
+    }
+}
@@ -33,6 +33,16 @@ public class BloomFilter extends Filter
     static ICompactSerializer2<BloomFilter> serializer_ = new BloomFilterSerializer();
     static ICompactSerializer2<BloomFilter> serializerWithEC_ = new BloomFilterWithElementCountSerializer();
 
+    /** per thread buffer to encode probed keys into, so probes do not allocate */
+    private static final ThreadLocal<ByteBuffer> probeBuffer = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocate(512);
+        }
+    };
+
     public OpenBitSet bitset;
     
     private ByteBuffer strBuffer;
@@ -80,6 +90,12 @@ public class BloomFilter extends Filter
     * for the given number of elements.
     */
     public static BloomFilter getFilter(long numElements, int targetBucketsPerElem)
+    {
+        BloomCalculations.BloomSpecification spec = specFor(numElements, targetBucketsPerElem);
+        return new BloomFilter(spec.K, bucketsFor(numElements, spec.bucketsPerElement));
+    }
+
+    static BloomCalculations.BloomSpecification specFor(long numElements, int targetBucketsPerElem)
     {
         int maxBucketsPerElement = Math.max(1, BloomCalculations.maxBucketsPerElement(numElements));
         int bucketsPerElement = Math.min(targetBucketsPerElem, maxBucketsPerElement);
@@ -88,8 +104,7 @@ public class BloomFilter extends Filter
             logger.warn(String.format("Cannot provide an optimal BloomFilter for %d elements (%d/%d buckets per element).",
                                       numElements, bucketsPerElement, targetBucketsPerElem));
         }
-        BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement);
-        return new BloomFilter(spec.K, bucketsFor(numElements, spec.bucketsPerElement));
+        return BloomCalculations.computeBloomSpec(bucketsPerElement);
     }
 
     /**
@@ -111,11 +126,6 @@ public class BloomFilter extends Filter
       return bitset.size();
     }
 
-    private long[] getHashBuckets(ByteBuffer key)
-    {
-        return BloomFilter.getHashBuckets(key, hashCount, buckets());
-    }
-
     // Murmur is faster than an SHA-based approach and provides as-good collision
     // resistance.  The combinatorial generation approach described in
     // http://www.eecs.harvard.edu/~kirsch/pubs/bbbf/esa06.pdf
@@ -128,11 +138,16 @@ public class BloomFilter extends Filter
         long hash2 = MurmurHash.hash64(b, b.position(), b.remaining(), hash1);
         for (int i = 0; i < hashCount; ++i)
         {
-            result[i] = Math.abs((hash1 + (long)i * hash2) % max);
+            result[i] = bucket(hash1, hash2, i, max);
         }
         return result;
     }
 
+    private static long bucket(long hash1, long hash2, int i, long max)
+    {
+        return Math.abs((hash1 + (long)i * hash2) % max);
+    }
+
     static long[] getHashBuckets(String key, int hashCount, long max)
     {
         return getHashBuckets(toByteBuffer(key, null), hashCount, max);
@@ -142,9 +157,17 @@ public class BloomFilter extends Filter
     {
         elementCount++;
         
-        for (long bucketIndex : getHashBuckets(key))
+        long hash1 = MurmurHash.hash64(key, key.position(), key.remaining(), 0L);
+        long hash2 = MurmurHash.hash64(key, key.position(), key.remaining(), hash1);
+        add(hash1, hash2);
+    }
+
+    protected void add(long hash1, long hash2)
+    {
+        long max = buckets();
+        for (int i = 0; i < hashCount; ++i)
         {
-            bitset.set(bucketIndex);
+            bitset.set(bucket(hash1, hash2, i, max));
         }
     }
 
@@ -158,14 +181,31 @@ public class BloomFilter extends Filter
     
     public boolean isPresent(ByteBuffer key)
     {
-      for (long bucketIndex : getHashBuckets(key))
-      {
-          if (!bitset.get(bucketIndex))
-          {
-              return false;
-          }
-      }
-      return true;
+        long hash1 = MurmurHash.hash64(key, key.position(), key.remaining(), 0L);
+        long hash2 = MurmurHash.hash64(key, key.position(), key.remaining(), hash1);
+        return isPresent(hash1, hash2);
+    }
+
+    /**
+     * Probes hashes of a key, computed once by {@link #hash(String)}. Use it to probe
+     * the same key against filters of many sstables.
+     */
+    public boolean isPresent(KeyHash hash)
+    {
+        return isPresent(hash.hash1, hash.hash2);
+    }
+
+    protected boolean isPresent(long hash1, long hash2)
+    {
+        long max = buckets();
+        for (int i = 0; i < hashCount; ++i)
+        {
+            if (!bitset.get(bucket(hash1, hash2, i, max)))
+            {
+                return false;
+            }
+        }
+        return true;
     }
     
     public void add(byte[] key)
@@ -188,8 +228,53 @@ public class BloomFilter extends Filter
      */
     public boolean isPresent(String key)
     {
-        // cannot use shared byte buffer here, because calls here are highly concurrent
-        return isPresent(toByteBuffer(key,null));
+        // calls here are highly concurrent, so the buffer probed with is per thread rather than shared
+        return isPresent(probeBuffer(key));
+    }
+
+    /**
+     * Checks for key + column name combination, as added by BloomFilterWriter for column bloom filters
+     */
+    public boolean isPresent(String key, byte[] name)
+    {
+        int keyLength = key.length() * 2;
+        ByteBuffer bb = probeBuffer(key, keyLength + name.length);
+
+        bb.limit(keyLength + name.length).position(keyLength);
+        bb.put(name);
+        bb.position(0);
+
+        return isPresent(bb);
+    }
+
+    /**
+     * @return hashes of the key to probe filters with
+     */
+    public static KeyHash hash(String key)
+    {
+        ByteBuffer bb = probeBuffer(key);
+        long hash1 = MurmurHash.hash64(bb, bb.position(), bb.remaining(), 0L);
+        long hash2 = MurmurHash.hash64(bb, bb.position(), bb.remaining(), hash1);
+        return new KeyHash(hash1, hash2);
+    }
+
+    private static ByteBuffer probeBuffer(String key)
+    {
+        return probeBuffer(key, key.length() * 2);
+    }
+
+    /**
+     * @return this thread's probe buffer with key encoded into it, having at least capacity bytes
+     */
+    private static ByteBuffer probeBuffer(String key, int capacity)
+    {
+        ByteBuffer bb = probeBuffer.get();
+        if (bb.capacity() < capacity)
+        {
+            bb = ByteBuffer.allocate(Math.max(capacity * 2, 512));
+            probeBuffer.set(bb);
+        }
+        return toByteBuffer(key, bb);
     }
     
     private ByteBuffer toBB(String s)
@@ -241,5 +326,21 @@ public class BloomFilter extends Filter
     {
         return always;
     }
+
+    /**
+     * Both murmur hashes of a key. Bucket indexes are derived from them for every filter size and hash count,
+     * so they could be computed once and probed against any number of filters.
+     */
+    public static final class KeyHash
+    {
+        public final long hash1;
+        public final long hash2;
+
+        KeyHash(long hash1, long hash2)
+        {
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+        }
+    }
     
 }
@@ -62,6 +62,11 @@ public class BloomFilterSerializer implements ICompactSerializer2<BloomFilter>
                 bits[i] = dis.readLong();
         }
         
+        return createFilter(hashes, bs);
+    }
+
+    protected BloomFilter createFilter(int hashes, OpenBitSet bs)
+    {
         return new BloomFilter(hashes, bs);
     }
     
@@ -34,6 +34,9 @@ public class BloomFilterWithElementCountSerializer extends
     public BloomFilter deserialize(DataInput dis) throws IOException
     {
         long elementCount = dis.readLong();
+        if (elementCount == BlockedBloomFilterSerializer.BLOCKED_FORMAT)
+            return BlockedBloomFilter.serializer().deserializeAfterMarker(dis);
+
         BloomFilter bf = super.deserialize(dis);
         bf.setElementCount(elementCount);
         
@@ -79,4 +79,28 @@ public class EstimatedHistogram
     {
         return bucketOffsets;
     }
+
+    /**
+     * @param counts bucket counts, as returned by get
+     * @param percentile 0..100
+     * @return upper bound of the bucket the percentile falls into, or 0 if there are no counts
+     */
+    public static long percentile(long[] counts, double percentile)
+    {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return bucketOffsets[Math.min(i, bucketOffsets.length - 1)];
+        }
+        return bucketOffsets[bucketOffsets.length - 1];
+    }
 }
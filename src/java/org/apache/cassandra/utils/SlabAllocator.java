@@ -0,0 +1,298 @@
+package org.apache.cassandra.utils;
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * Copies byte chunks into large regions (slabs), so the heap sees a handful of big
+ * long-lived arrays (or none at all, when regions are allocated off-heap) instead of
+ * millions of small ones. Every chunk is addressed by a single long reference:
+ * region index in the high int and offset inside the region in the low one.
+ *
+ * Chunks are never freed one by one - the whole allocator is released at once when
+ * its owner and all readers have {@link #unref()}-ed it.
+ *
+ * Allocation is thread safe and lock free, unless a new region must be added.
+ */
+public class SlabAllocator
+{
+    public final static int REGION_SIZE = 1024 * 1024;
+
+    /** chunks larger than this get their own dedicated region, so they do not waste the tail of shared ones */
+    public final static int MAX_SHARED_CHUNK_SIZE = REGION_SIZE / 4;
+
+    /** every chunk is prefixed with its length */
+    private final static int LENGTH_SIZE = 4;
+
+    /** total bytes of regions allocated by all live slab allocators in this VM */
+    private static final AtomicLong totalAllocatedBytes = new AtomicLong();
+
+    private final boolean offHeap;
+
+    private volatile Region[] regions = new Region[16];
+    private volatile int regionCount = 0;
+    private volatile Region current;
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /** starts from 1 - the owner's reference */
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    public SlabAllocator(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * copies length bytes from data to slab, prefixing them with their length.
+     *
+     * @return reference to the copied chunk
+     */
+    public long allocate(byte[] data, int offset, int length)
+    {
+        assert refCount.get() > 0 : "Allocating from released slabs";
+
+        int size = length + LENGTH_SIZE;
+        if (size > MAX_SHARED_CHUNK_SIZE)
+        {
+            Region region = addRegion(size);
+            return region.put(region.allocate(size), data, offset, length);
+        }
+
+        while (true)
+        {
+            Region region = current;
+            if (region != null)
+            {
+                int position = region.allocate(size);
+                if (position >= 0)
+                    return region.put(position, data, offset, length);
+            }
+
+            replaceCurrent(region);
+        }
+    }
+
+    /**
+     * @return DataInput positioned at start of chunk referenced by ref, limited to its length
+     */
+    public DataInput read(long ref)
+    {
+        Region region = regions[(int) (ref >>> 32)];
+        int position = (int) ref;
+
+        ByteBuffer chunk = region.buffer.duplicate();
+        chunk.position(position);
+        int length = chunk.getInt();
+        chunk.limit(chunk.position() + length);
+
+        return new DataInputStream(new ByteBufferInputStream(chunk));
+    }
+
+    /**
+     * Obtains reader's reference. Reader must {@link #unref()} after it finished reading.
+     *
+     * @return false, if slabs were already released
+     */
+    public boolean ref()
+    {
+        while (true)
+        {
+            int n = refCount.get();
+            if (n <= 0)
+                return false;
+            if (refCount.compareAndSet(n, n + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Releases a reference. Releasing the last one frees all regions.
+     */
+    public void unref()
+    {
+        if (refCount.decrementAndGet() == 0)
+            free();
+    }
+
+    public boolean isOffHeap()
+    {
+        return offHeap;
+    }
+
+    /**
+     * @return bytes in regions allocated by this allocator
+     */
+    public long getAllocatedBytes()
+    {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return bytes in regions occupied by chunks
+     */
+    public long getUsedBytes()
+    {
+        return usedBytes.get();
+    }
+
+    public int getRegionCount()
+    {
+        return regionCount;
+    }
+
+    public static long getTotalAllocatedBytes()
+    {
+        return totalAllocatedBytes.get();
+    }
+
+    private synchronized void replaceCurrent(Region expectedCurrent)
+    {
+        if (current != expectedCurrent)
+            return; // someone already replaced it
+
+        current = addRegion(REGION_SIZE);
+    }
+
+    private synchronized Region addRegion(int size)
+    {
+        if (regionCount == regions.length)
+        {
+            Region[] grown = new Region[regions.length * 2];
+            System.arraycopy(regions, 0, grown, 0, regionCount);
+            regions = grown;
+        }
+
+        Region region = new Region(regionCount, offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+        regions[regionCount] = region;
+        regionCount++; // volatile write publishes region to readers
+
+        allocatedBytes.addAndGet(size);
+        totalAllocatedBytes.addAndGet(size);
+
+        return region;
+    }
+
+    private synchronized void free()
+    {
+        for (int i = 0; i < regionCount; i++)
+        {
+            if (offHeap)
+                ((DirectBuffer) regions[i].buffer).cleaner().clean();
+            regions[i] = null;
+        }
+        current = null;
+        regionCount = 0;
+
+        totalAllocatedBytes.addAndGet(-allocatedBytes.getAndSet(0));
+        usedBytes.set(0);
+    }
+
+    private class Region
+    {
+        private final int index;
+        private final ByteBuffer buffer;
+        private final AtomicInteger nextFree = new AtomicInteger(0);
+
+        Region(int index, ByteBuffer buffer)
+        {
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return position of size bytes reserved in this region or -1, if region has no space left
+         */
+        int allocate(int size)
+        {
+            while (true)
+            {
+                int position = nextFree.get();
+                if (position + size > buffer.capacity())
+                    return -1;
+                if (nextFree.compareAndSet(position, position + size))
+                    return position;
+            }
+        }
+
+        long put(int position, byte[] data, int offset, int length)
+        {
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.position(position);
+            chunk.putInt(length);
+            chunk.put(data, offset, length);
+
+            usedBytes.addAndGet(length + LENGTH_SIZE);
+
+            return ((long) index << 32) | position;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.google.common.base.Function;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
+
+/**
+ * Map of long keys, which entries expire after a fixed time, like ExpiringMap, but without scanning all entries:
+ * every entry is also queued in the slot of a hashed timer wheel its expiration tick maps to, and the timer only
+ * drains slots of ticks passed since its previous run. Removing an entry leaves it in its slot, to be skipped when
+ * the slot is drained, so put, remove and expiration are all O(1).
+ *
+ * Entries expire between expiration and expiration + tick milliseconds after put.
+ */
+public class TimerWheelExpiringMap<V>
+{
+    private static final int DEFAULT_TICK_IN_MS = 10;
+    private static int counter = 0;
+
+    private final NonBlockingHashMapLong<Entry<V>> entries = new NonBlockingHashMapLong<Entry<V>>();
+    private final Queue<Entry<V>>[] wheel;
+    private final int mask;
+    private final long tick;
+    private final long expirationTicks;
+    private final Function<Pair<Long, V>, ?> postExpireHook;
+    private final Timer timer;
+
+    /** last tick, which slot has been drained. touched by the timer thread only */
+    private long sweptTick;
+
+    public TimerWheelExpiringMap(long expiration, Function<Pair<Long, V>, ?> postExpireHook)
+    {
+        this(expiration, DEFAULT_TICK_IN_MS, postExpireHook);
+    }
+
+    /**
+     * @param expiration the TTL for entries in milliseconds
+     * @param tick resolution of expiration in milliseconds
+     * @param postExpireHook called for every expired entry, may be null
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheelExpiringMap(long expiration, long tick, Function<Pair<Long, V>, ?> postExpireHook)
+    {
+        if (expiration <= 0 || tick <= 0)
+            throw new IllegalArgumentException("Argument specified must be a positive number");
+
+        this.tick = tick;
+        this.expirationTicks = (expiration + tick - 1) / tick;
+        this.postExpireHook = postExpireHook;
+
+        // a slot for every tick an entry can live, so every slot is drained once per round
+        int slots = 1;
+        while (slots <= expirationTicks + 1)
+            slots <<= 1;
+        wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++)
+            wheel[i] = new ConcurrentLinkedQueue<Entry<V>>();
+        mask = slots - 1;
+
+        sweptTick = currentTick();
+        timer = new Timer("TIMER-WHEEL-EXPIRING-MAP-" + (++counter), true);
+        timer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                expire();
+            }
+        }, tick, tick);
+    }
+
+    private long currentTick()
+    {
+        return System.currentTimeMillis() / tick;
+    }
+
+    public void shutdown()
+    {
+        timer.cancel();
+    }
+
+    public V put(long key, V value)
+    {
+        Entry<V> entry = new Entry<V>(key, value, currentTick() + expirationTicks + 1);
+        Entry<V> previous = entries.put(key, entry);
+        wheel[(int) (entry.deadline & mask)].add(entry);
+        return previous == null ? null : previous.value;
+    }
+
+    public V get(long key)
+    {
+        Entry<V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    public V remove(long key)
+    {
+        Entry<V> entry = entries.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @return time the entry was put at, or 0 if there is no such entry
+     */
+    public long getAge(long key)
+    {
+        Entry<V> entry = entries.get(key);
+        return entry == null ? 0 : entry.age;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return entries.isEmpty();
+    }
+
+    private void expire()
+    {
+        long now = currentTick();
+        List<Entry<V>> later = new ArrayList<Entry<V>>();
+        while (sweptTick < now)
+        {
+            sweptTick++;
+            Queue<Entry<V>> slot = wheel[(int) (sweptTick & mask)];
+            Entry<V> entry;
+            while ((entry = slot.poll()) != null)
+            {
+                // put after this slot came round, while the timer was late
+                if (entry.deadline > sweptTick)
+                {
+                    later.add(entry);
+                    continue;
+                }
+
+                if (entries.remove(entry.key, entry) && postExpireHook != null)
+                    postExpireHook.apply(new Pair<Long, V>(entry.key, entry.value));
+            }
+            slot.addAll(later);
+            later.clear();
+        }
+    }
+
+    private static class Entry<V>
+    {
+        final long key;
+        final V value;
+        final long age = System.currentTimeMillis();
+        final long deadline;
+
+        Entry(long key, V value, long deadline)
+        {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.cache;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class CacheBudgetTest
+{
+    private static final IWeigher<String, String> weigher = new IWeigher<String, String>()
+    {
+        public int weigh(String key, String value)
+        {
+            return value.length();
+        }
+    };
+
+    private static IAggregatableCacheProvider<String, String> provider(final long objects)
+    {
+        final InstrumentedCache<String, String> cache = new InstrumentedCache<String, String>(0, weigher);
+        return new IAggregatableCacheProvider<String, String>()
+        {
+            public InstrumentedCache<String, String> getCache()
+            {
+                return cache;
+            }
+
+            public long getObjectCount()
+            {
+                return objects;
+            }
+        };
+    }
+
+    @Test
+    public void testRebalance()
+    {
+        CacheBudget budget = new CacheBudget(1000);
+        IAggregatableCacheProvider<String, String> busy = provider(100);
+        IAggregatableCacheProvider<String, String> idle = provider(100);
+        budget.register(busy);
+        assertEquals(1000, busy.getCache().getCapacityInBytes());
+        budget.register(idle);
+        assertEquals(500, busy.getCache().getCapacityInBytes());
+        assertEquals(500, idle.getCache().getCapacityInBytes());
+
+        for (int i = 0; i < 1000; i++)
+            busy.getCache().get("k" + i);
+        budget.rebalance();
+        assertTrue(busy.getCache().getCapacityInBytes() > 900);
+        assertTrue(idle.getCache().getCapacityInBytes() > 0);
+        assertTrue(busy.getCache().getCapacityInBytes() + idle.getCache().getCapacityInBytes() <= 1000);
+
+        // manually sized cache keeps its capacity out of budget
+        idle.getCache().setCapacityInBytes(300);
+        budget.rebalance();
+        assertEquals(300, idle.getCache().getCapacityInBytes());
+        assertEquals(700, busy.getCache().getCapacityInBytes());
+
+        budget.setBudgetInBytes(2300);
+        assertEquals(2000, busy.getCache().getCapacityInBytes());
+        assertEquals(2, budget.getCacheCount());
+    }
+
+    @Test
+    public void testEmptyIsIdle()
+    {
+        CacheBudget budget = new CacheBudget(1000);
+        IAggregatableCacheProvider<String, String> empty = provider(0);
+        IAggregatableCacheProvider<String, String> used = provider(100);
+        budget.register(empty);
+        budget.register(used);
+        for (int i = 0; i < 99; i++)
+            empty.getCache().get("k" + i);
+        used.getCache().get("k");
+        budget.rebalance();
+        assertTrue(empty.getCache().getCapacityInBytes() < used.getCache().getCapacityInBytes());
+    }
+
+    @Test
+    public void testStartedByFirstCache() throws Exception
+    {
+        ObjectName name = new ObjectName(CacheBudget.getMBeanName("Test"));
+        CacheBudget budget = new CacheBudget("Test", 1000);
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        budget.register(provider(100));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        budget.register(provider(100));
+        assertEquals(2, budget.getCacheCount());
+    }
+}
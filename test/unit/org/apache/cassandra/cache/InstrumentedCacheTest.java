@@ -0,0 +1,83 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.cache;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class InstrumentedCacheTest
+{
+    private static final IWeigher<String, String> weigher = new IWeigher<String, String>()
+    {
+        public int weigh(String key, String value)
+        {
+            return value.length();
+        }
+    };
+
+    @Test
+    public void testCapacityInEntries()
+    {
+        InstrumentedCache<String, String> cache = new InstrumentedCache<String, String>(10);
+        for (int i = 0; i < 100; i++)
+            cache.put("k" + i, "v" + i);
+        assertEquals(10, cache.getSize());
+        assertEquals("v99", cache.get("k99"));
+        assertEquals(-1, cache.getSizeInBytes());
+
+        cache.updateCapacity(5);
+        assertEquals(5, cache.getSize());
+
+        cache.updateCapacity(0);
+        cache.put("k", "v");
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testCapacityInBytes()
+    {
+        InstrumentedCache<String, String> cache = new InstrumentedCache<String, String>(1000, weigher);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put("k" + i, String.format("%100d", i));
+            assertTrue(cache.getSizeInBytes() <= 1000);
+        }
+        assertEquals(10, cache.getSize());
+        assertEquals(1000, cache.getSizeInBytes());
+
+        // replacing value accounts the difference
+        cache.put("k99", "small");
+        assertEquals(905, cache.getSizeInBytes());
+
+        cache.addWeight("k99", 95);
+        assertEquals(1000, cache.getSizeInBytes());
+        cache.addWeight("k99", 100);
+        assertTrue(cache.getSizeInBytes() <= 1000);
+        assertEquals(9, cache.getSize());
+
+        cache.remove("k99");
+        cache.clear();
+        assertEquals(0, cache.getSizeInBytes());
+
+        cache.put("huge", String.format("%1001d", 0));
+        assertNull(cache.get("huge"));
+        assertEquals(0, cache.getSizeInBytes());
+    }
+}
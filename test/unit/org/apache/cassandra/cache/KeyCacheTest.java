@@ -0,0 +1,173 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.cache;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.SSTable;
+import org.apache.cassandra.utils.BloomFilter;
+
+import static junit.framework.Assert.*;
+
+public class KeyCacheTest
+{
+    private static BloomFilter.KeyHash key(int i)
+    {
+        return BloomFilter.hash("key" + i);
+    }
+
+    @Test
+    public void testGetPut()
+    {
+        KeyCache cache = new KeyCache(1000, false);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put(key(i), 1, new SSTable.PositionSize(i * 100, 100));
+            cache.put(key(i), 2, new SSTable.PositionSize(i * 200, 200));
+        }
+        assertEquals(200, cache.getSize());
+
+        for (int i = 0; i < 100; i++)
+        {
+            SSTable.PositionSize position = cache.get(key(i), 1);
+            assertEquals(i * 100, position.position);
+            assertEquals(100, position.size);
+            assertEquals(i * 200, cache.get(key(i), 2).position);
+        }
+        assertNull(cache.get(key(0), 3));
+        assertNull(cache.get(key(100), 1));
+        assertEquals(202, cache.getRequests());
+        assertEquals(200, cache.getHits());
+
+        // replaces, does not add
+        cache.put(key(0), 1, new SSTable.PositionSize(5, 6));
+        assertEquals(5, cache.get(key(0), 1).position);
+        assertEquals(200, cache.getSize());
+    }
+
+    @Test
+    public void testLargeRows()
+    {
+        KeyCache cache = new KeyCache(1000, false);
+
+        // size would not fit the slot, so the row is not cached rather than cached with a truncated size
+        cache.put(key(0), 1, new SSTable.PositionSize(100, Integer.MAX_VALUE + 1L));
+        assertNull(cache.get(key(0), 1));
+        assertEquals(0, cache.getSize());
+
+        cache.put(key(0), 1, new SSTable.PositionSize(100, Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, cache.get(key(0), 1).size);
+    }
+
+    @Test
+    public void testCapacityInEntries()
+    {
+        KeyCache cache = new KeyCache(100, false);
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put(key(i), 1, new SSTable.PositionSize(i, 1));
+            assertTrue(cache.getSize() <= 100);
+        }
+        assertEquals(999, cache.get(key(999), 1).position);
+        assertEquals(-1, cache.getSizeInBytes());
+
+        // every surviving entry is still found after evictions shifted entries around
+        int found = 0;
+        for (int i = 0; i < 1000; i++)
+        {
+            SSTable.PositionSize position = cache.getInternal(key(i), 1);
+            if (position != null)
+            {
+                assertEquals(i, position.position);
+                found++;
+            }
+        }
+        assertEquals(cache.getSize(), found);
+
+        cache.updateCapacity(10);
+        assertTrue(cache.getSize() <= 10);
+
+        cache.updateCapacity(0);
+        cache.put(key(0), 1, new SSTable.PositionSize(0, 1));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testCapacityInBytes()
+    {
+        KeyCache cache = new KeyCache(100 * KeyCache.ENTRY_SIZE, true);
+        for (int i = 0; i < 1000; i++)
+            cache.put(key(i), 1, new SSTable.PositionSize(i, 1));
+        assertTrue(cache.getSize() <= 100);
+        assertTrue(cache.getSizeInBytes() <= cache.getCapacityInBytes());
+    }
+
+    @Test
+    public void testReferencedEntriesSurvive()
+    {
+        KeyCache cache = new KeyCache(320, false);
+        for (int i = 0; i < 320; i++)
+            cache.put(key(i), 1, new SSTable.PositionSize(i, 1));
+        Set<Integer> read = new HashSet<Integer>();
+        for (int i = 0; i < 320; i += 2)
+        {
+            if (cache.get(key(i), 1) != null)
+                read.add(i);
+        }
+
+        // evicts the ones not read first
+        for (int i = 320; i < 360; i++)
+            cache.put(key(i), 1, new SSTable.PositionSize(i, 1));
+        for (int i : read)
+            assertNotNull(cache.getInternal(key(i), 1));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException
+    {
+        KeyCache cache = new KeyCache(1000, false);
+        for (int i = 0; i < 100; i++)
+            cache.put(key(i), i % 2, new SSTable.PositionSize(i, i + 1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        cache.write(new DataOutputStream(bytes), new HashSet<Integer>(Arrays.asList(0, 1)));
+
+        // only entries of live generations are read
+        KeyCache read = new KeyCache(1000, false);
+        assertEquals(50, read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), new HashSet<Integer>(Arrays.asList(1))));
+        for (int i = 0; i < 100; i++)
+        {
+            SSTable.PositionSize position = read.getInternal(key(i), i % 2);
+            if (i % 2 == 0)
+            {
+                assertNull(position);
+            }
+            else
+            {
+                assertEquals(i, position.position);
+                assertEquals(i + 1, position.size);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+import org.apache.cassandra.io.ICompactSerializer2;
+
+public class SerializingCacheTest
+{
+    private static final ICompactSerializer2<String> serializer = new ICompactSerializer2<String>()
+    {
+        public void serialize(String s, DataOutput dos) throws IOException
+        {
+            dos.writeUTF(s);
+        }
+
+        public String deserialize(DataInput dis) throws IOException
+        {
+            return dis.readUTF();
+        }
+    };
+
+    private static String value(int i)
+    {
+        return StringUtils.leftPad(String.valueOf(i), 98, 'x'); // 100 bytes serialized
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        SerializingCache<String, String> cache = new SerializingCache<String, String>(serializer, 1024 * 1024);
+        cache.put("k1", value(1));
+        assertEquals(value(1), cache.get("k1"));
+        assertEquals(100 + SerializingCache.ENTRY_OVERHEAD, cache.getSizeInBytes());
+
+        cache.put("k1", value(2));
+        assertEquals(value(2), cache.get("k1"));
+        assertEquals(1, cache.getSize());
+        assertEquals(100 + SerializingCache.ENTRY_OVERHEAD, cache.getSizeInBytes());
+
+        assertNull(cache.get("k2"));
+        assertEquals(3, cache.getRequests());
+        assertEquals(2, cache.getHits());
+
+        cache.remove("k1");
+        assertNull(cache.getInternal("k1"));
+        assertEquals(0, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void testEvictionBySize()
+    {
+        int entrySize = 100 + SerializingCache.ENTRY_OVERHEAD;
+        SerializingCache<String, String> cache = new SerializingCache<String, String>(serializer, 10 * entrySize);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put("k" + i, value(i));
+            assertTrue(cache.getSizeInBytes() <= cache.getCapacityInBytes());
+        }
+        assertEquals(10, cache.getSize());
+        assertEquals(10 * entrySize, cache.getSizeInBytes());
+        assertEquals(value(99), cache.get("k99"));
+
+        cache.setCapacityInBytes(5 * entrySize);
+        assertEquals(5, cache.getSize());
+        assertEquals(5 * entrySize, cache.getSizeInBytes());
+
+        // larger than the whole cache
+        cache.put("big", StringUtils.repeat("x", 5 * entrySize));
+        assertNull(cache.get("big"));
+        assertEquals(5, cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getSizeInBytes());
+    }
+}
@@ -0,0 +1,117 @@
+package org.apache.cassandra.concurrent;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class JMXEnabledThreadPoolExecutorTest
+{
+    private static class Task implements IDeadlineTask
+    {
+        final long queuedAt = System.nanoTime();
+        final long deadline;
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger expirations = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Task(long deadline)
+        {
+            this.deadline = deadline;
+        }
+
+        public long getQueuedAtNanos()
+        {
+            return queuedAt;
+        }
+
+        public long getDeadline()
+        {
+            return deadline;
+        }
+
+        public String getKind()
+        {
+            return "MUTATION";
+        }
+
+        public void expired()
+        {
+            expirations.incrementAndGet();
+            done.countDown();
+        }
+
+        public void run()
+        {
+            runs.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void testDeadlineChecked() throws InterruptedException
+    {
+        JMXEnabledThreadPoolExecutor executor = new JMXEnabledThreadPoolExecutor("DEADLINE-TEST");
+        try
+        {
+            Task expired = new Task(System.currentTimeMillis() - 1);
+            Task live = new Task(Long.MAX_VALUE);
+            executor.execute(expired);
+            executor.execute(live);
+            assertTrue(expired.done.await(10, TimeUnit.SECONDS));
+            assertTrue(live.done.await(10, TimeUnit.SECONDS));
+
+            // expired one is dropped instead of run, and counted under its kind
+            assertEquals(0, expired.runs.get());
+            assertEquals(1, expired.expirations.get());
+            assertEquals(1, live.runs.get());
+            assertEquals(0, live.expirations.get());
+            assertEquals(1, executor.getDroppedTasks().size());
+            assertEquals(Long.valueOf(1), executor.getDroppedTasks().get("MUTATION"));
+            assertNull(executor.getDroppedTasks().get("READ"));
+
+            // both waited in queue, whether run or dropped
+            assertEquals(2, sum(executor.getTotalQueueWaitHistogramMicros()));
+            assertEquals(2, sum(executor.getRecentQueueWaitHistogramMicros()));
+            assertEquals(0, sum(executor.getRecentQueueWaitHistogramMicros()));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static long sum(long[] histogram)
+    {
+        long sum = 0;
+        for (long count : histogram)
+            sum += count;
+        return sum;
+    }
+}
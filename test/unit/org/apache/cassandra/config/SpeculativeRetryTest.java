@@ -0,0 +1,68 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.config;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+public class SpeculativeRetryTest
+{
+    @Test
+    public void testFromString() throws ConfigurationException
+    {
+        assertEquals(CFMetaData.SpeculativeRetry.NONE, CFMetaData.SpeculativeRetry.fromString("none"));
+        assertEquals(CFMetaData.SpeculativeRetry.NONE, CFMetaData.SpeculativeRetry.fromString(" NONE "));
+
+        CFMetaData.SpeculativeRetry fixed = CFMetaData.SpeculativeRetry.fromString("50ms");
+        assertEquals(CFMetaData.SpeculativeRetry.Type.FIXED, fixed.type);
+        assertEquals(50.0, fixed.value);
+        assertEquals(fixed, CFMetaData.SpeculativeRetry.fromString(" 50 MS"));
+
+        CFMetaData.SpeculativeRetry percentile = CFMetaData.SpeculativeRetry.fromString("99percentile");
+        assertEquals(CFMetaData.SpeculativeRetry.Type.PERCENTILE, percentile.type);
+        assertEquals(99.0, percentile.value);
+        assertEquals(99.9, CFMetaData.SpeculativeRetry.fromString("99.9PERCENTILE").value);
+    }
+
+    @Test
+    public void testToStringRoundTrip() throws ConfigurationException
+    {
+        for (String policy : new String[] { "none", "50ms", "99.0percentile", "99.9percentile" })
+            assertEquals(policy, CFMetaData.SpeculativeRetry.fromString(policy).toString());
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        for (String policy : new String[] { "", "50", "ms", "0ms", "-5ms", "1.5ms", "0percentile", "100percentile", "percentile", "always" })
+        {
+            try
+            {
+                CFMetaData.SpeculativeRetry.fromString(policy);
+                fail("accepted " + policy);
+            }
+            catch (ConfigurationException e)
+            {
+                // expected
+            }
+        }
+    }
+}
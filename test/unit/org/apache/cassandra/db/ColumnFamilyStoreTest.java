@@ -113,6 +113,167 @@ public class ColumnFamilyStoreTest extends CleanupHelper
         assertNull(cf);
     }
 
+    @Test
+    public void testParallelRead() throws Exception
+    {
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardParallel");
+
+        // spread row over more sstables than ParallelReadThreshold
+        for (int i = 0; i < 3; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace2", "key1");
+            rm.add(new QueryPath("StandardParallel", null, ("Column" + i).getBytes()), ("value" + i).getBytes(), i);
+            rm.add(new QueryPath("StandardParallel", null, "Column".getBytes()), ("value" + i).getBytes(), i);
+            rm.apply();
+            store.forceBlockingFlush();
+        }
+        assertEquals(3, store.getSSTables().size());
+
+        long parallelReads = store.getParallelReadCount();
+        ColumnFamily cf = store.getColumnFamily(new IdentityQueryFilter("key1", new QueryPath("StandardParallel")));
+        assertEquals(4, cf.getColumnCount());
+        assert Arrays.equals("value2".getBytes(), cf.getColumn("Column".getBytes()).value());
+        for (int i = 0; i < 3; i++)
+            assert Arrays.equals(("value" + i).getBytes(), cf.getColumn(("Column" + i).getBytes()).value());
+        assertEquals(parallelReads + 1, store.getParallelReadCount());
+
+        // these collect results of sstables themselves, so are read one by one
+        FastRowMayExistQueryFilter filter = new FastRowMayExistQueryFilter("key1", new QueryPath("StandardParallel", null, null));
+        store.getColumnFamily(filter);
+        assert filter.mayExist();
+        assertEquals(parallelReads + 1, store.getParallelReadCount());
+    }
+
+    @Test
+    public void testSpeculativeRetryPercentile() throws Exception
+    {
+        ColumnFamilyStore store = Table.open("Keyspace2").getColumnFamilyStore("StandardSpeculative");
+
+        // local reads, which miss network time, do not count
+        RowMutation rm = new RowMutation("Keyspace2", "key1");
+        rm.add(new QueryPath("StandardSpeculative", null, "Column1".getBytes()), "value".getBytes(), 0);
+        rm.apply();
+        for (int i = 0; i < 200; i++)
+            store.getColumnFamily(new NamesQueryFilter("key1", new QueryPath("StandardSpeculative"), "Column1".getBytes()));
+
+        // percentile of latencies seen by read coordinators
+        for (int i = 0; i < 200; i++)
+            store.addCoordinatorReadLatency(20 * 1000000L);
+        long retryAfter = store.getSpeculativeRetryMillis();
+        assert retryAfter >= 20 && retryAfter <= 25 : retryAfter;
+    }
+
+    @Test
+    public void testNamesReadNewestFirst() throws Exception
+    {
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard3");
+        QueryPath path = new QueryPath("Standard3");
+
+        // newest data is flushed first, so sstable generation order does not match timestamp order
+        long[] timestamps = new long[] { 30, 10, 20 };
+        for (long timestamp : timestamps)
+        {
+            RowMutation rm = new RowMutation("Keyspace2", "key1");
+            rm.add(new QueryPath("Standard3", null, "Column1".getBytes()), ("value" + timestamp).getBytes(), timestamp);
+            rm.add(new QueryPath("Standard3", null, ("Column" + timestamp).getBytes()), ("value" + timestamp).getBytes(), timestamp);
+            rm.apply();
+            store.forceBlockingFlush();
+        }
+        assertEquals(3, store.getSSTables().size());
+        Set<Long> maxTimestamps = new HashSet<Long>();
+        for (SSTableReader sstable : store.getSSTables())
+        {
+            assertEquals(sstable.getSSTableMetadata().minTimestamp, sstable.getMaxTimestamp());
+            maxTimestamps.add(sstable.getMaxTimestamp());
+        }
+        assertEquals(new HashSet<Long>(Arrays.asList(30L, 10L, 20L)), maxTimestamps);
+
+        // only the newest sstable is read
+        long skipped = store.getSSTablesSkippedByTimestamp();
+        ColumnFamily cf = store.getColumnFamily(new NamesQueryFilter("key1", path, "Column1".getBytes()));
+        assertEquals(1, cf.getColumnCount());
+        assert Arrays.equals("value30".getBytes(), cf.getColumn("Column1".getBytes()).value());
+        assertEquals(skipped + 2, store.getSSTablesSkippedByTimestamp());
+
+        // columns found only in older sstables are still read
+        SortedSet<byte[]> names = new TreeSet<byte[]>(store.getComparator());
+        names.add("Column1".getBytes());
+        names.add("Column10".getBytes());
+        cf = store.getColumnFamily(new NamesQueryFilter("key1", path, names));
+        assertEquals(2, cf.getColumnCount());
+        assert Arrays.equals("value30".getBytes(), cf.getColumn("Column1".getBytes()).value());
+        assert Arrays.equals("value10".getBytes(), cf.getColumn("Column10".getBytes()).value());
+        assertEquals(skipped + 2, store.getSSTablesSkippedByTimestamp());
+
+        // newer tombstone in memtable hides all sstables
+        RowMutation rm = new RowMutation("Keyspace2", "key1");
+        rm.delete(new QueryPath("Standard3", null, "Column1".getBytes()), 40);
+        rm.apply();
+        cf = store.getColumnFamily(new NamesQueryFilter("key1", path, "Column1".getBytes()));
+        assert cf == null || cf.getColumnCount() == 0;
+        assertEquals(skipped + 5, store.getSSTablesSkippedByTimestamp());
+    }
+
+    @Test
+    public void testSerializingRowCache() throws Exception
+    {
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardSerializingCache");
+
+        RowMutation rm = new RowMutation("Keyspace2", "key1");
+        for (int i = 0; i < 5; i++)
+            rm.add(new QueryPath("StandardSerializingCache", null, ("Column" + i).getBytes()), ("value" + i).getBytes(), 0);
+        rm.apply();
+        store.forceBlockingFlush();
+
+        // the first read caches whole row, the next ones read just requested columns from it
+        QueryPath path = new QueryPath("StandardSerializingCache");
+        assertEquals(5, store.getColumnFamily(new IdentityQueryFilter("key1", path)).getColumnCount());
+        assertEquals(1, store.getRowCacheSize());
+
+        ColumnFamily cf = store.getColumnFamily(new NamesQueryFilter("key1", path, "Column3".getBytes()));
+        assertEquals(1, cf.getColumnCount());
+        assert Arrays.equals("value3".getBytes(), cf.getColumn("Column3".getBytes()).value());
+
+        cf = store.getColumnFamily("key1", path, "Column1".getBytes(), "Column3".getBytes(), false, 100);
+        assertEquals(3, cf.getColumnCount());
+        cf = store.getColumnFamily("key1", path, "Column3".getBytes(), "Column1".getBytes(), true, 2);
+        assertEquals(2, cf.getColumnCount());
+        assert cf.getColumn("Column3".getBytes()) != null && cf.getColumn("Column2".getBytes()) != null;
+
+        // writes invalidate cached row
+        rm = new RowMutation("Keyspace2", "key1");
+        rm.add(new QueryPath("StandardSerializingCache", null, "Column3".getBytes()), "newvalue".getBytes(), 1);
+        rm.apply();
+        assertNull(store.getRawCachedRow("key1"));
+        cf = store.getColumnFamily(new NamesQueryFilter("key1", path, "Column3".getBytes()));
+        assert Arrays.equals("newvalue".getBytes(), cf.getColumn("Column3".getBytes()).value());
+        assertEquals(5, store.getRawCachedRow("key1").getColumnCount());
+    }
+
+    @Test
+    public void testSerializingRowCacheSuper() throws Exception
+    {
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("SuperSerializingCache");
+
+        RowMutation rm = new RowMutation("Keyspace2", "key1");
+        for (int i = 0; i < 3; i++)
+            rm.add(new QueryPath("SuperSerializingCache", ("sc" + i).getBytes(), "subcolumn".getBytes()), ("value" + i).getBytes(), 0);
+        rm.apply();
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+            ColumnFamily cf = store.getColumnFamily(new NamesQueryFilter("key1", new QueryPath("SuperSerializingCache", "sc1".getBytes()), "subcolumn".getBytes()));
+            assertEquals(1, cf.getSortedColumns().size());
+            IColumn sc = cf.getColumn("sc1".getBytes());
+            assert Arrays.equals("value1".getBytes(), sc.getSubColumn("subcolumn".getBytes()).value());
+        }
+        assertEquals(1, store.getRowCacheSize());
+    }
+
     @Test
     public void testEmptyRow() throws Exception
     {
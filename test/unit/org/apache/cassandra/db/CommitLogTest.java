@@ -22,15 +22,20 @@ import org.apache.cassandra.CleanupHelper;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.commitlog.CommitLogSegment;
 import org.apache.cassandra.db.commitlog.CommitLogSegment.CommitLogContext;
+import org.apache.cassandra.db.commitlog.MmappedCommitLogSegment;
+import org.apache.cassandra.db.filter.IdentityQueryFilter;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.junit.Test;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -80,6 +85,39 @@ public class CommitLogTest extends CleanupHelper
         CommitLog.instance().recover(new File[] {tmpFile},false); //CASSANDRA-1119 throws on failure
     }
     
+    @Test
+    public void testRecoveryOfPreallocatedSegment() throws Exception
+    {
+        RowMutation rm = new RowMutation("Keyspace1", "preallocated");
+        rm.add(new QueryPath("Standard1", null, "c1".getBytes()), "v1".getBytes(), 0);
+        RowMutation stale = new RowMutation("Keyspace1", "preallocated");
+        stale.add(new QueryPath("Standard1", null, "c2".getBytes()), "v2".getBytes(), 0);
+
+        File tmpFile = File.createTempFile("testRecoveryOfPreallocatedSegment", null);
+        tmpFile.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile));
+        out.writeLong(MmappedCommitLogSegment.MAGIC);
+        out.writeLong(2); // segment id
+        writePreallocatedRecord(out, rm, 2);
+        writePreallocatedRecord(out, stale, 1); // left from previous use of the file
+        out.write(new byte[1024]);
+        out.close();
+
+        CommitLog.recover(new File[] {tmpFile}, true);
+
+        ColumnFamilyStore store = Table.open("Keyspace1").getColumnFamilyStore("Standard1");
+        ColumnFamily cf = store.getColumnFamily(new IdentityQueryFilter("preallocated", new QueryPath("Standard1")));
+        assert cf.getColumn("c1".getBytes()) != null;
+        assert cf.getColumn("c2".getBytes()) == null;
+    }
+
+    private void writePreallocatedRecord(DataOutputStream out, RowMutation rm, long segmentId) throws IOException
+    {
+        byte[] record = CommitLogSegment.frame(serialize(rm));
+        out.write(record, 0, record.length - 8);
+        out.writeLong(ByteBuffer.wrap(record).getLong(record.length - 8) ^ segmentId);
+    }
+
     @Test
     public void testDontDeleteIfDirty() throws Exception
     {
@@ -0,0 +1,155 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.filter.QueryPath;
+
+public class GroupCommitLogTest extends CleanupHelper
+{
+    private static final int WRITERS = 20;
+    private static final long WINDOW = 200;
+
+    private static ObjectName commitLogName;
+
+    @BeforeClass
+    public static void setUp() throws Exception
+    {
+        // test runs in a jvm of its own, so the commit log is not instantiated yet
+        DatabaseDescriptor.setCommitLogSync(DatabaseDescriptor.CommitLogSync.group);
+        CommitLog.instance();
+        commitLogName = new ObjectName("org.apache.cassandra.db:type=Commitlog");
+        mbeanServer().setAttribute(commitLogName, new Attribute("BatchWindowInMS", (double) WINDOW));
+    }
+
+    private static MBeanServer mbeanServer()
+    {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    private static long getSyncCount() throws Exception
+    {
+        return (Long) mbeanServer().getAttribute(commitLogName, "SyncCount");
+    }
+
+    @Test
+    public void testConcurrentAddsSyncedTogether() throws Exception
+    {
+        List<RowMutation> mutations = new ArrayList<RowMutation>();
+        for (int i = 0; i < WRITERS; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace1", "key" + i);
+            rm.add(new QueryPath("Standard1", null, "Column1".getBytes()), "value".getBytes(), 0);
+            mutations.add(rm);
+        }
+
+        long syncs = getSyncCount();
+        long start = System.currentTimeMillis();
+        for (Future<Long> ack : addConcurrently(mutations))
+        {
+            // acked only once a sync covered it
+            assertTrue(ack.get() > syncs);
+        }
+        // acked together after the window, rather than a window after another
+        assertTrue(System.currentTimeMillis() - start < WRITERS * WINDOW / 2);
+
+        // all writers arrived within one window, so a sync or two covered them all
+        long syncCount = getSyncCount() - syncs;
+        assertTrue(syncCount >= 1 && syncCount <= 2);
+    }
+
+    @Test
+    public void testFailureReportedToWholeGroup() throws Exception
+    {
+        List<RowMutation> mutations = new ArrayList<RowMutation>();
+        for (int i = 0; i < WRITERS; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace1", "key" + i);
+            if (i == WRITERS / 2)
+                // column family of another keyspace fails the log writer, which looks up its id in Keyspace1
+                rm.add(ColumnFamily.create("Keyspace2", "StandardSpeculative"));
+            else
+                rm.add(new QueryPath("Standard1", null, "Column1".getBytes()), "value".getBytes(), 0);
+            mutations.add(rm);
+        }
+
+        int failed = 0;
+        for (Future<Long> ack : addConcurrently(mutations))
+        {
+            try
+            {
+                ack.get();
+                fail("write of a failed group acked");
+            }
+            catch (ExecutionException e)
+            {
+                failed++;
+            }
+        }
+        assertEquals(WRITERS, failed);
+    }
+
+    /**
+     * adds the mutations to the commit log from a thread each, all at once
+     * @return sync count seen by every writer once its add returned
+     */
+    private static List<Future<Long>> addConcurrently(List<RowMutation> mutations) throws Exception
+    {
+        ExecutorService writers = Executors.newFixedThreadPool(mutations.size());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> acks = new ArrayList<Future<Long>>();
+        for (final RowMutation rm : mutations)
+        {
+            acks.add(writers.submit(new Callable<Long>()
+            {
+                public Long call() throws Exception
+                {
+                    start.await();
+                    CommitLog.instance().add(rm, rm.getSerializedBuffer());
+                    return getSyncCount();
+                }
+            }));
+        }
+        start.countDown();
+        writers.shutdown();
+        return acks;
+    }
+}
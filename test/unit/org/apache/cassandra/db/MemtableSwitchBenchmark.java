@@ -0,0 +1,149 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.EstimatedHistogram;
+
+/**
+ * Measures write throughput and latency of Keyspace1.Standard2 while memtables of Keyspace1.Standard3,
+ * which also takes writes, are switched every few milliseconds. Run it on trees before and after a change
+ * of memtable switch coordination to compare how much switches of one column family stall writes to others.
+ *
+ * Not a unit test; run with the test config, e.g.
+ * java -Dstorage-config=test/conf -cp ... org.apache.cassandra.db.MemtableSwitchBenchmark [seconds] [threads] [switchIntervalMillis]
+ */
+public class MemtableSwitchBenchmark
+{
+    private static final int KEYS = 100000;
+    private static final int VALUE_SIZE = 100;
+
+    public static void main(String[] args) throws Exception
+    {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        final long switchInterval = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        final Table table = Table.open("Keyspace1");
+        final ColumnFamilyStore switched = table.getColumnFamilyStore("Standard3");
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        EstimatedHistogram latencies = new EstimatedHistogram();
+        List<Writer> writers = new ArrayList<Writer>();
+        for (int i = 0; i < threadCount; i++)
+            writers.add(new Writer(i, stop, latencies));
+
+        Thread switcher = new Thread("Switcher")
+        {
+            public void run()
+            {
+                Random random = new Random();
+                try
+                {
+                    while (!stop.get())
+                    {
+                        writeRow(random, "Standard3");
+                        switched.forceFlush();
+                        Thread.sleep(switchInterval);
+                    }
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        for (Writer writer : writers)
+            writer.start();
+        switcher.start();
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        switcher.join();
+
+        long writes = 0, maxLatency = 0;
+        for (Writer writer : writers)
+        {
+            writer.join();
+            writes += writer.writes;
+            maxLatency = Math.max(maxLatency, writer.maxLatency);
+        }
+        long[] buckets = latencies.get(false);
+
+        System.out.println(String.format("%d threads, %d seconds, Standard3 switched every %d ms", threadCount, seconds, switchInterval));
+        System.out.println(String.format("Standard2 writes: %d/s", writes / seconds));
+        System.out.println(String.format("Standard2 write latency: 99th %d us, 99.9th %d us, max %d us",
+                                         EstimatedHistogram.percentile(buckets, 99),
+                                         EstimatedHistogram.percentile(buckets, 99.9),
+                                         maxLatency));
+        System.exit(0);
+    }
+
+    private static void writeRow(Random random, String columnFamily) throws IOException
+    {
+        RowMutation rm = new RowMutation("Keyspace1", "key" + random.nextInt(KEYS));
+        byte[] value = new byte[VALUE_SIZE];
+        random.nextBytes(value);
+        rm.add(new QueryPath(columnFamily, null, "c".getBytes()), value, System.currentTimeMillis());
+        rm.apply();
+    }
+
+    private static class Writer extends Thread
+    {
+        private final AtomicBoolean stop;
+        private final Random random;
+        private final EstimatedHistogram latencies;
+        long writes;
+        long maxLatency;
+
+        Writer(int i, AtomicBoolean stop, EstimatedHistogram latencies)
+        {
+            super("Writer-" + i);
+            this.stop = stop;
+            this.random = new Random(i);
+            this.latencies = latencies;
+        }
+
+        public void run()
+        {
+            try
+            {
+                while (!stop.get())
+                {
+                    long start = System.nanoTime();
+                    writeRow(random, "Standard2");
+                    long latency = (System.nanoTime() - start) / 1000;
+                    latencies.add(latency);
+                    maxLatency = Math.max(maxLatency, latency);
+                    writes++;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
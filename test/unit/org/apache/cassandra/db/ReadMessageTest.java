@@ -56,6 +56,21 @@ public class ReadMessageTest
         assertEquals(rm2.toString(), rm.toString());
     }
 
+    @Test
+    public void testMakeMultiReadMessage() throws IOException
+    {
+        ReadCommand digest = new SliceByNamesReadCommand("Keyspace1", "row1", new QueryPath("Standard1"), Arrays.asList("col1".getBytes()));
+        digest.setDigestQuery(true);
+        ReadCommand data = new SliceFromReadCommand("Keyspace1", "row2", new QueryPath("Standard1"), "a".getBytes(), "z".getBytes(), true, 5);
+
+        MultiReadCommand command = MultiReadCommand.read(new MultiReadCommand(Arrays.asList(digest, data)).getMessage());
+        assertEquals(2, command.commands.size());
+        assertEquals(digest.toString(), command.commands.get(0).toString());
+        assertTrue(command.commands.get(0).isDigestQuery());
+        assertEquals(data.toString(), command.commands.get(1).toString());
+        assertFalse(command.commands.get(1).isDigestQuery());
+    }
+
     private ReadCommand serializeAndDeserializeReadMessage(ReadCommand rm) throws IOException
     {
         ReadCommandSerializer rms = ReadCommand.serializer();
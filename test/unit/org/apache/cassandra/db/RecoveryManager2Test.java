@@ -22,6 +22,8 @@ package org.apache.cassandra.db;
 
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -32,6 +34,7 @@ import org.junit.Test;
 import org.apache.cassandra.CleanupHelper;
 import org.apache.cassandra.db.commitlog.CommitLog;
 
+import static junit.framework.Assert.assertEquals;
 import static org.apache.cassandra.Util.column;
 
 public class RecoveryManager2Test extends CleanupHelper
@@ -70,6 +73,62 @@ public class RecoveryManager2Test extends CleanupHelper
         assert Util.getRangeSlice(cfs).rows.isEmpty();
     }
 
+    @Test
+    /* test that a flush of one CF under concurrent writes to another replays exactly the unflushed writes */
+    public void testFlushWithConcurrentWrites() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        for (int i = 0; i < 100; i++)
+            insertRow("Standard1", "key" + i);
+
+        // keep writing to Standard2 while Standard1 is switched and flushed
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger written = new AtomicInteger();
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (!stop.get())
+                        insertRow("Standard2", "concurrent" + written.getAndIncrement());
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        Table table1 = Table.open("Keyspace1");
+        ColumnFamilyStore cfs1 = table1.getColumnFamilyStore("Standard1");
+        ColumnFamilyStore cfs2 = table1.getColumnFamilyStore("Standard2");
+        while (written.get() < 100)
+            Thread.sleep(1);
+        cfs1.forceBlockingFlush();
+        insertRow("Standard1", "after");
+        stop.set(true);
+        writer.join();
+
+        // remove both CFs' SSTables/MemTables
+        cfs1.clearUnsafe();
+        cfs2.clearUnsafe();
+
+        CommitLog.recover();
+
+        // Standard1 gets back only the write after its flush, Standard2 everything
+        assertEquals(1, Util.getRangeSlice(cfs1).rows.size());
+        int replayed = 0;
+        for (Row row : Util.getRangeSlice(cfs2).rows)
+        {
+            if (row.key.startsWith("concurrent"))
+                replayed++;
+        }
+        assertEquals(written.get(), replayed);
+    }
+
     private void insertRow(String cfname, String key) throws IOException
     {
         RowMutation rm = new RowMutation("Keyspace1", key);
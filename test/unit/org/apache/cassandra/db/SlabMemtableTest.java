@@ -0,0 +1,83 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.filter.IdentityQueryFilter;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.WrappedRunnable;
+import static org.apache.cassandra.Util.column;
+
+public class SlabMemtableTest extends CleanupHelper
+{
+    @Test
+    public void testSlabReadAndFlush() throws Exception
+    {
+        testReadAndFlush("StandardSlab");
+    }
+
+    @Test
+    public void testOffHeapReadAndFlush() throws Exception
+    {
+        testReadAndFlush("StandardOffHeap");
+    }
+
+    private void testReadAndFlush(final String cfName) throws Exception
+    {
+        Table table = Table.open("Keyspace2");
+        final ColumnFamilyStore cfs = table.getColumnFamilyStore(cfName);
+
+        // more updates of the same row than merge threshold, but less than memtable operations threshold
+        for (int i = 0; i < SlabMemtable.MERGE_THRESHOLD + 2; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace2", "key1");
+            ColumnFamily cf = ColumnFamily.create("Keyspace2", cfName);
+            cf.addColumn(column("col" + (i % 3), "val" + i, i));
+            rm.add(cf);
+            rm.apply();
+        }
+        RowMutation rm = new RowMutation("Keyspace2", "key1");
+        rm.delete(new QueryPath(cfName, null, "col2".getBytes()), 100);
+        rm.apply();
+
+        assertTrue(cfs.getMemtableSlabsAllocatedBytes() > 0);
+        assertTrue(cfs.getMemtableSlabsUsedBytes() > 0);
+
+        TableTest.reTest(cfs, new WrappedRunnable()
+        {
+            public void runMayThrow() throws Exception
+            {
+                ColumnFamily cf = cfs.getColumnFamily(new IdentityQueryFilter("key1", new QueryPath(cfName)));
+                assertNotNull(cf);
+                assertEquals(3, cf.getColumnCount());
+                // last values written for each column must win
+                assertTrue(Arrays.equals("val15".getBytes(), cf.getColumn("col0".getBytes()).value()));
+                assertTrue(Arrays.equals("val16".getBytes(), cf.getColumn("col1".getBytes()).value()));
+                assertTrue(cf.getColumn("col2".getBytes()).isMarkedForDelete());
+            }
+        });
+
+        assertEquals(0, cfs.getMemtableSlabsAllocatedBytes());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db.commitlog;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+/**
+ * Replays a synthetic commit log into Keyspace1.Standard1 with different numbers of replay threads.
+ *
+ * Not a unit test; run with the test config, e.g.
+ * java -Dstorage-config=test/conf -cp ... org.apache.cassandra.db.commitlog.CommitLogReplayBenchmark [sizeInMB] [threads...]
+ */
+public class CommitLogReplayBenchmark
+{
+    private static final int FILE_SIZE = 128 * 1024 * 1024;
+    private static final int KEYS = 1000000;
+    private static final int COLUMNS_PER_MUTATION = 4;
+    private static final int VALUE_SIZE = 100;
+
+    public static void main(String[] args) throws IOException
+    {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 2048) * 1024 * 1024;
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++)
+            threadCounts.add(Integer.parseInt(args[i]));
+        if (threadCounts.isEmpty())
+        {
+            threadCounts.add(1);
+            threadCounts.add(Runtime.getRuntime().availableProcessors());
+        }
+
+        File[] files = writeLog(size);
+        try
+        {
+            for (int threads : threadCounts)
+            {
+                long start = System.nanoTime();
+                CommitLogReplayer replayer = new CommitLogReplayer(true, Long.MAX_VALUE, threads);
+                replayer.replay(files);
+                long millis = (System.nanoTime() - start) / 1000000;
+
+                System.out.println(String.format("%d threads: %d mutations in %d ms, %.1f MB/s",
+                                                 threads, replayer.getMutationsApplied(), millis,
+                                                 size / 1024d / 1024d / (millis / 1000d)));
+            }
+        }
+        finally
+        {
+            for (File file : files)
+                file.delete();
+        }
+        System.exit(0);
+    }
+
+    private static File[] writeLog(long size) throws IOException
+    {
+        Random random = new Random(0);
+        byte[] value = new byte[VALUE_SIZE];
+        List<File> files = new ArrayList<File>();
+
+        long written = 0;
+        while (written < size)
+        {
+            File file = File.createTempFile("CommitLog-" + files.size() + "-", ".log");
+            files.add(file);
+
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024);
+            try
+            {
+                for (long fileWritten = 0; fileWritten < FILE_SIZE && written < size; )
+                {
+                    RowMutation rm = new RowMutation("Keyspace1", "key" + random.nextInt(KEYS));
+                    for (int i = 0; i < COLUMNS_PER_MUTATION; i++)
+                    {
+                        random.nextBytes(value);
+                        rm.add(new QueryPath("Standard1", null, ("c" + i).getBytes()), value, System.currentTimeMillis());
+                    }
+
+                    DataOutputBuffer buffer = new DataOutputBuffer();
+                    RowMutation.serializer().serialize(rm, buffer);
+                    byte[] record = CommitLogSegment.frame(buffer);
+                    out.write(record);
+
+                    fileWritten += record.length;
+                    written += record.length;
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+
+        System.out.println(String.format("Written %d MB of commit log in %d files", written / 1024 / 1024, files.size()));
+        return files.toArray(new File[files.size()]);
+    }
+}
@@ -26,6 +26,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.utils.FBUtilities;
 
 public abstract class PartitionerTestCase<T extends Token> {
     protected IPartitioner<T> partitioner;
@@ -116,4 +117,19 @@ public abstract class PartitionerTestCase<T extends Token> {
         Token.TokenFactory factory = partitioner.getTokenFactory();
         assert tok("a").compareTo(factory.fromString(factory.toString(tok("a")))) == 0;
     }
+
+    @Test
+    public void testComparableBytes()
+    {
+        Random rand = new Random();
+        T mintoken = partitioner.getMinimumToken();
+        for (int i = 0; i < 1000; i++)
+        {
+            T left = tok(Integer.toString(rand.nextInt()));
+            T right = rand.nextInt(10) == 0 ? mintoken : tok(Integer.toString(rand.nextInt()));
+            assertEquals(Integer.signum(left.compareTo(right)),
+                         Integer.signum(FBUtilities.compareByteArrays(left.toComparableBytes(), right.toComparableBytes())));
+        }
+        assertEquals(0, FBUtilities.compareByteArrays(mintoken.toComparableBytes(), mintoken.toComparableBytes()));
+    }
 }
@@ -23,8 +23,12 @@ package org.apache.cassandra.gms;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Test;
 
+import org.apache.cassandra.utils.BoundedStatsDeque;
+
 public class ArrivalWindowTest
 {
     
@@ -46,5 +50,63 @@ public class ArrivalWindowTest
         assertEquals(9.566, window.phi(3000), 0.01);
     }
 
+    @Test
+    public void testWraparound()
+    {
+        ArrivalWindow window = new ArrivalWindow(4);
+        long t = 1000;
+        window.add(t);
+        for (int i = 1; i <= 9; i++)
+        {
+            t += i * 10;
+            window.add(t);
+        }
+
+        // only the last four intervals are kept, oldest first
+        assertEquals(4, window.size());
+        assertEquals("60 70 80 90", window.toString());
+        assertEquals(75.0, window.mean(), 0.0);
+
+        window.clear();
+        assertEquals(0, window.size());
+        assertEquals(0.0, window.phi(t + 100), 0.0);
+    }
+
+    @Test
+    public void testMeanMatchesBoundedStatsDeque()
+    {
+        ArrivalWindow window = new ArrivalWindow(50);
+        BoundedStatsDeque deque = new BoundedStatsDeque(50);
+        Random random = new Random(0);
+
+        long t = 1000;
+        window.add(t);
+        deque.add(Gossiper.intervalInMillis_ / 2);
+        for (int i = 0; i < 1000; i++)
+        {
+            long interval = 500 + random.nextInt(1000);
+            t += interval;
+            window.add(t);
+            deque.add(interval);
+            assertEquals(deque.size(), window.size());
+            assertEquals(deque.mean(), window.mean(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testPhi()
+    {
+        ArrivalWindow window = new ArrivalWindow(3);
+        for (long t = 1000; t <= 1400; t += 100)
+            window.add(t);
+        assertEquals(100.0, window.mean(), 0.0);
+
+        // phi is -log10 of the chance of a heartbeat still to come after t, exponential with the mean interval
+        assertEquals(0.0, window.phi(1400), 1e-9);
+        assertEquals(-Math.log10(Math.exp(-1.0)), window.phi(1500), 1e-9);
+        assertEquals(-Math.log10(Math.exp(-2.0)), window.phi(1600), 1e-9);
+        assertEquals(-Math.log10(Math.exp(-25.0)), window.phi(3900), 1e-9);
+    }
+
 
 }
@@ -0,0 +1,163 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.gms;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.cassandra.utils.BoundedStatsDeque;
+
+/**
+ * Simulates gossip rounds of a cluster: every round a heartbeat of every endpoint is reported and phi of every
+ * endpoint is interpreted, comparing arrival windows of boxed samples in a synchronized map, which recompute
+ * the mean on every interpret, with ArrivalWindow.
+ *
+ * Not a unit test; run with
+ * java -cp ... org.apache.cassandra.gms.FailureDetectorBenchmark [endpoints] [rounds]
+ */
+public class FailureDetectorBenchmark
+{
+    private static final int SAMPLE_SIZE = 1000;
+    private static final int WARMUP_ROUNDS = 1000;
+
+    public static void main(String[] args) throws UnknownHostException
+    {
+        int endpointCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        InetAddress[] endpoints = new InetAddress[endpointCount];
+        for (int i = 0; i < endpointCount; i++)
+            endpoints[i] = InetAddress.getByAddress(new byte[]{ 10, (byte) (i >> 16), (byte) (i >> 8), (byte) i });
+
+        Map<InetAddress, OldArrivalWindow> oldWindows = new Hashtable<InetAddress, OldArrivalWindow>();
+        ConcurrentMap<InetAddress, ArrivalWindow> newWindows = new ConcurrentHashMap<InetAddress, ArrivalWindow>();
+
+        // heartbeats arrive about every gossip interval, with some jitter
+        long[] arrivals = new long[endpointCount];
+        Random random = new Random(0);
+        long time = 1000000L;
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++)
+        {
+            time += Gossiper.intervalInMillis_;
+            for (int i = 0; i < endpointCount; i++)
+                arrivals[i] = time + random.nextInt(200);
+            roundOld(endpoints, arrivals, time + 300, oldWindows);
+            roundNew(endpoints, arrivals, time + 300, newWindows);
+        }
+
+        long oldNanos = 0, newNanos = 0;
+        double oldPhi = 0, newPhi = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            time += Gossiper.intervalInMillis_;
+            for (int i = 0; i < endpointCount; i++)
+                arrivals[i] = time + random.nextInt(200);
+
+            long start = System.nanoTime();
+            oldPhi += roundOld(endpoints, arrivals, time + 300, oldWindows);
+            oldNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            newPhi += roundNew(endpoints, arrivals, time + 300, newWindows);
+            newNanos += System.nanoTime() - start;
+        }
+
+        assert Math.abs(oldPhi - newPhi) < 1e-6 * Math.abs(oldPhi) : oldPhi + " != " + newPhi;
+
+        System.out.println(String.format("%d endpoints, %d rounds, %d samples per window", endpointCount, rounds, SAMPLE_SIZE));
+        System.out.println(String.format("old window: %.3f ms/round", oldNanos / 1e6 / rounds));
+        System.out.println(String.format("new window: %.3f ms/round", newNanos / 1e6 / rounds));
+    }
+
+    private static double roundOld(InetAddress[] endpoints, long[] arrivals, long now, Map<InetAddress, OldArrivalWindow> windows)
+    {
+        for (int i = 0; i < endpoints.length; i++)
+        {
+            OldArrivalWindow window = windows.get(endpoints[i]);
+            if (window == null)
+            {
+                window = new OldArrivalWindow(SAMPLE_SIZE);
+                windows.put(endpoints[i], window);
+            }
+            window.add(arrivals[i]);
+        }
+
+        double phi = 0;
+        for (InetAddress endpoint : endpoints)
+            phi += windows.get(endpoint).phi(now);
+        return phi;
+    }
+
+    private static double roundNew(InetAddress[] endpoints, long[] arrivals, long now, ConcurrentMap<InetAddress, ArrivalWindow> windows)
+    {
+        for (int i = 0; i < endpoints.length; i++)
+        {
+            ArrivalWindow window = windows.get(endpoints[i]);
+            if (window == null)
+            {
+                ArrivalWindow newWindow = new ArrivalWindow(SAMPLE_SIZE);
+                window = windows.putIfAbsent(endpoints[i], newWindow);
+                if (window == null)
+                    window = newWindow;
+            }
+            window.add(arrivals[i]);
+        }
+
+        double phi = 0;
+        for (InetAddress endpoint : endpoints)
+            phi += windows.get(endpoint).phi(now);
+        return phi;
+    }
+
+    /**
+     * the arrival window as it was before: boxed samples, mean summed up on every phi
+     */
+    private static class OldArrivalWindow
+    {
+        private double tLast = 0L;
+        private final BoundedStatsDeque arrivalIntervals;
+
+        OldArrivalWindow(int size)
+        {
+            arrivalIntervals = new BoundedStatsDeque(size);
+        }
+
+        synchronized void add(double value)
+        {
+            double interArrivalTime = tLast > 0L ? value - tLast : Gossiper.intervalInMillis_ / 2;
+            tLast = value;
+            arrivalIntervals.add(interArrivalTime);
+        }
+
+        synchronized double phi(long tnow)
+        {
+            if (arrivalIntervals.size() == 0)
+                return 0d;
+            double t = tnow - tLast;
+            double probability = Math.pow(Math.E, -t / arrivalIntervals.mean());
+            return -Math.log10(probability);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.io;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class IndexHelperTest
+{
+    private static byte[] name(int i)
+    {
+        return String.format("c%03d", i).getBytes();
+    }
+
+    @Test
+    public void testColumnIndexMatchesIndexInfoList() throws IOException
+    {
+        // blocks of 3 columns: c010..c012, c013..c015, ... c037..c039
+        List<IndexHelper.IndexInfo> written = new ArrayList<IndexHelper.IndexInfo>();
+        int indexSize = 0;
+        for (int i = 10; i < 40; i += 3)
+        {
+            IndexHelper.IndexInfo info = new IndexHelper.IndexInfo(name(i), name(i + 2), i * 100, 300);
+            written.add(info);
+            indexSize += info.serializedSize();
+        }
+
+        File file = File.createTempFile("IndexHelperTest", ".db");
+        file.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(indexSize);
+        for (IndexHelper.IndexInfo info : written)
+            info.serialize(out);
+        out.writeInt(42);
+        out.close();
+
+        BufferedRandomAccessFile in = new BufferedRandomAccessFile(file, "r");
+        IndexHelper.ColumnIndex index = IndexHelper.ColumnIndex.deserialize(in);
+        assertEquals(42, in.readInt());
+        in.seek(0);
+        List<IndexHelper.IndexInfo> list = IndexHelper.deserializeIndex(in);
+        in.close();
+
+        assertEquals(list.size(), index.size());
+        for (int i = 0; i < list.size(); i++)
+        {
+            assertArrayEquals(list.get(i).firstName, index.firstName(i));
+            assertArrayEquals(list.get(i).lastName, index.lastName(i));
+            assertEquals(list.get(i).offset, index.offset(i));
+            assertEquals(list.get(i).width, index.width(i));
+        }
+
+        AbstractType comparator = new BytesType();
+        for (boolean reversed : new boolean[]{ false, true })
+        {
+            assertEquals(IndexHelper.indexFor(new byte[0], list, comparator, reversed), index.indexFor(new byte[0], comparator, reversed));
+            for (int i = 0; i < 50; i++)
+                assertEquals(IndexHelper.indexFor(name(i), list, comparator, reversed), index.indexFor(name(i), comparator, reversed));
+        }
+        assertEquals(0, index.indexFor(name(5), comparator, false));
+        assertEquals(-1, index.indexFor(name(5), comparator, true));
+        assertEquals(index.size(), index.indexFor(name(45), comparator, false));
+    }
+
+    @Test
+    public void testEmptyColumnIndex() throws IOException
+    {
+        File file = File.createTempFile("IndexHelperTest", ".db");
+        file.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(0);
+        out.close();
+
+        BufferedRandomAccessFile in = new BufferedRandomAccessFile(file, "r");
+        assertSame(IndexHelper.ColumnIndex.EMPTY, IndexHelper.ColumnIndex.deserialize(in));
+        in.close();
+        assertEquals(0, IndexHelper.ColumnIndex.EMPTY.indexFor(name(1), new BytesType(), false));
+    }
+}
@@ -22,18 +22,27 @@ package org.apache.cassandra.io;
 
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
 
 import org.junit.Test;
 
 import org.apache.cassandra.CleanupHelper;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.NamesQueryFilter;
 import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.BlockedBloomFilter;
 import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
@@ -81,13 +90,14 @@ public class SSTableReaderTest extends CleanupHelper
         }
 
         // check positionsize information
-        assert sstable.indexSummary.getSpannedIndexDataPositions().entrySet().size() > 0;
-        for (Map.Entry<IndexSummary.KeyPosition, SSTable.PositionSize> entry : sstable.indexSummary.getSpannedIndexDataPositions().entrySet())
+        assert sstable.indexSummary.getSpannedSize() > 0;
+        for (int spanned = 0; spanned < sstable.indexSummary.getSpannedSize(); spanned++)
         {
-            IndexSummary.KeyPosition kp = entry.getKey();
-            SSTable.PositionSize info = entry.getValue();
+            int entry = sstable.indexSummary.getSpannedSampledEntry(spanned);
+            SSTable.PositionSize info = sstable.indexSummary.getSpannedDataPosition(spanned);
 
-            long nextIndexPosition = kp.indexPosition + 2 + FBUtilities.encodedUTF8Length(StorageService.getPartitioner().convertToDiskFormat(kp.key)) + 8;
+            long nextIndexPosition = sstable.indexSummary.getIndexPosition(entry) + 2 + FBUtilities.encodedUTF8Length(StorageService.getPartitioner().convertToDiskFormat(sstable.indexSummary.getKey(entry))) + 8;
+            assertEquals(nextIndexPosition, sstable.indexSummary.getSpannedNextIndexPosition(spanned));
             BufferedRandomAccessFile indexFile = new BufferedRandomAccessFile(sstable.indexFilename(), "r");
             indexFile.seek(nextIndexPosition);
             String nextKey = indexFile.readUTF();
@@ -97,4 +107,164 @@ public class SSTableReaderTest extends CleanupHelper
             assertEquals(nextKey, file.readUTF());
         }
     }
+
+    @Test
+    public void testBlockedBloomFilter() throws IOException, ExecutionException, InterruptedException
+    {
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardBlocked");
+
+        for (int j = 0; j < 100; j += 2)
+        {
+            RowMutation rm = new RowMutation("Keyspace2", String.valueOf(j));
+            rm.add(new QueryPath("StandardBlocked", null, "0".getBytes()), new byte[0], j);
+            rm.apply();
+        }
+        store.forceBlockingFlush();
+
+        // reopen, so filter is read back from disk
+        SSTableReader sstable = SSTableReader.open(store.getSSTables().iterator().next().getFilename());
+        assert sstable.getBloomFilter() instanceof BlockedBloomFilter;
+        for (int j = 0; j < 100; j += 2)
+        {
+            DecoratedKey dk = StorageService.getPartitioner().decorateKey(String.valueOf(j));
+            assert sstable.getPosition(dk) != null : j;
+        }
+    }
+
+    @Test
+    public void testCompressed() throws IOException, ExecutionException, InterruptedException
+    {
+        SSTableReader.BUFFER_SIZE = 40; // spanned entries for compressed data must be sized from the uncompressed length
+
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardCompressed");
+        byte[] value = StringUtils.repeat("x", 200).getBytes();
+
+        // two flushes of half the columns each, compacted back into a single compressed sstable
+        CompactionManager.instance.disableAutoCompaction();
+        for (int half = 0; half < 2; half++)
+        {
+            for (int j = 0; j < 100; j += 2)
+            {
+                RowMutation rm = new RowMutation("Keyspace2", String.valueOf(j));
+                for (int c = half; c < 10; c += 2)
+                    rm.add(new QueryPath("StandardCompressed", null, ("c" + c).getBytes()), value, j);
+                rm.apply();
+            }
+            store.forceBlockingFlush();
+        }
+        CompactionManager.instance.submitMajor(store).get();
+
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        assert sstable.isCompressed();
+        assert sstable.uncompressedLength() > sstable.length();
+        assert store.getCompressionRatio() < 1 : store.getCompressionRatio();
+
+        // keys are found through the compressed reader, both by index lookup and by scanning from the start
+        BufferedRandomAccessFile scan = sstable.openDataReader(DatabaseDescriptor.getIndexedReadBufferSizeInKB() * 1024);
+        for (int j = 0; j < 100; j += 2)
+        {
+            DecoratedKey dk = StorageService.getPartitioner().decorateKey(String.valueOf(j));
+            FileDataInput file = sstable.getFileDataInput(dk, DatabaseDescriptor.getIndexedReadBufferSizeInKB() * 1024);
+            assertEquals(dk, sstable.getPartitioner().convertFromDiskFormat(file.readUTF()));
+
+            SSTable.PositionSize info = sstable.getPosition(dk);
+            scan.seek(info.position);
+            assertEquals(dk, sstable.getPartitioner().convertFromDiskFormat(scan.readUTF()));
+        }
+
+        // the last row ends at the end of the uncompressed data
+        DecoratedKey last = StorageService.getPartitioner().decorateKey("98");
+        SSTable.PositionSize lastInfo = sstable.getPosition(last);
+        assertEquals(sstable.uncompressedLength(), lastInfo.position + lastInfo.size);
+
+        assert sstable.indexSummary.getSpannedSize() > 0;
+        for (int spanned = 0; spanned < sstable.indexSummary.getSpannedSize(); spanned++)
+        {
+            SSTable.PositionSize info = sstable.indexSummary.getSpannedDataPosition(spanned);
+            BufferedRandomAccessFile indexFile = new BufferedRandomAccessFile(sstable.indexFilename(), "r");
+            indexFile.seek(sstable.indexSummary.getSpannedNextIndexPosition(spanned));
+            String nextKey = indexFile.readUTF();
+
+            scan.seek(info.position + info.size);
+            assertEquals(nextKey, scan.readUTF());
+        }
+
+        // by-key, slice and names reads all come back whole from the compressed sstable
+        for (int j = 0; j < 100; j += 2)
+        {
+            String key = String.valueOf(j);
+            QueryPath path = new QueryPath("StandardCompressed");
+            ColumnFamily cf = store.getColumnFamily(new SliceQueryFilter(key, path, ArrayUtils.EMPTY_BYTE_ARRAY, ArrayUtils.EMPTY_BYTE_ARRAY, false, 100));
+            assertEquals(10, cf.getSortedColumns().size());
+
+            cf = store.getColumnFamily(new SliceQueryFilter(key, path, "c2".getBytes(), "c4".getBytes(), false, 100));
+            assertEquals(3, cf.getSortedColumns().size());
+
+            cf = store.getColumnFamily(new NamesQueryFilter(key, path, "c7".getBytes()));
+            assert Arrays.equals(value, cf.getColumn("c7".getBytes()).value());
+        }
+    }
+
+    @Test
+    public void testColumnIndexCache() throws Exception
+    {
+        Table table = Table.open("Keyspace2");
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardWide");
+
+        // a row several ColumnIndexSizeInKB blocks wide
+        RowMutation rm = new RowMutation("Keyspace2", "wide");
+        for (int i = 0; i < 100; i++)
+            rm.add(new QueryPath("StandardWide", null, wideName(i)), wideValue(i), 0);
+        rm.apply();
+        store.forceBlockingFlush();
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName cacheName = new ObjectName("org.apache.cassandra.db:type=Caches,keyspace=Keyspace2,cache=StandardWideColumnIndexCache");
+        long hits = (Long) mbs.getAttribute(cacheName, "Hits");
+
+        QueryPath path = new QueryPath("StandardWide");
+        SliceQueryFilter slice = new SliceQueryFilter("wide", path, wideName(10), wideName(20), false, 100);
+        SortedSet<byte[]> names = new TreeSet<byte[]>(store.getComparator());
+        names.addAll(Arrays.asList(wideName(5), wideName(50), wideName(95)));
+        NamesQueryFilter byNames = new NamesQueryFilter("wide", path, names);
+
+        // first read of the row deserializes its index into the cache, later ones skip over it on disk
+        List<String> sliced = columns(store.getColumnFamily(slice));
+        assertEquals(hits, mbs.getAttribute(cacheName, "Hits"));
+        List<String> named = columns(store.getColumnFamily(byNames));
+        assertEquals(hits + 1, mbs.getAttribute(cacheName, "Hits"));
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 10; i <= 20; i++)
+            expected.add(new String(wideName(i)) + "=" + new String(wideValue(i)));
+        assertEquals(expected, sliced);
+        assertEquals(Arrays.asList(new String(wideName(5)) + "=" + new String(wideValue(5)),
+                                   new String(wideName(50)) + "=" + new String(wideValue(50)),
+                                   new String(wideName(95)) + "=" + new String(wideValue(95))),
+                     named);
+
+        assertEquals(sliced, columns(store.getColumnFamily(slice)));
+        assertEquals(named, columns(store.getColumnFamily(byNames)));
+        assertEquals(hits + 3, mbs.getAttribute(cacheName, "Hits"));
+    }
+
+    private static byte[] wideName(int i)
+    {
+        return String.format("c%03d", i).getBytes();
+    }
+
+    private static byte[] wideValue(int i)
+    {
+        return StringUtils.leftPad(String.valueOf(i), 200, 'x').getBytes();
+    }
+
+    private static List<String> columns(ColumnFamily cf)
+    {
+        List<String> columns = new ArrayList<String>();
+        for (IColumn column : cf.getSortedColumns())
+            columns.add(new String(column.name()) + "=" + new String(column.value()));
+        return columns;
+    }
 }
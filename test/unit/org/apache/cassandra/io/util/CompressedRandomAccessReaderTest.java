@@ -0,0 +1,85 @@
+package org.apache.cassandra.io.util;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressedRandomAccessReaderTest
+{
+    private static final int CHUNK_LENGTH = 4096;
+
+    @Test
+    public void testReadWritten() throws IOException
+    {
+        File data = File.createTempFile("compressedtest", "Data.db");
+        File info = File.createTempFile("compressedtest", "CompressionInfo.db");
+        data.deleteOnExit();
+        info.deleteOnExit();
+
+        // compressible data, not aligned to chunks
+        byte[] expected = new byte[CHUNK_LENGTH * 10 + 123];
+        Random random = new Random(1);
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = (byte) ('a' + random.nextInt(4));
+
+        CompressedSequentialWriter writer = new CompressedSequentialWriter(data.getPath(), info.getPath(), CHUNK_LENGTH);
+        writer.write(expected, 0, 100);
+        for (int i = 100; i < 200; i++)
+            writer.write(expected[i]);
+        writer.write(expected, 200, expected.length - 200);
+        assertEquals(expected.length, writer.getFilePointer());
+        writer.close();
+
+        CompressionMetadata metadata = CompressionMetadata.read(info.getPath());
+        assertEquals(CHUNK_LENGTH, metadata.chunkLength);
+        assertEquals(expected.length, metadata.dataLength);
+        assertEquals(11, metadata.chunkCount());
+        assertEquals(data.length(), metadata.compressedLength);
+        assertTrue(metadata.ratio() < 1);
+
+        CompressedRandomAccessReader reader = new CompressedRandomAccessReader(data.getPath(), metadata);
+        assertEquals(expected.length, reader.length());
+        byte[] actual = new byte[expected.length];
+        reader.readFully(actual);
+        assertArrayEquals(expected, actual);
+        assertTrue(reader.isEOF());
+
+        // seeks into, across and back to chunks
+        for (int position : new int[]{ CHUNK_LENGTH * 5 - 10, 3, CHUNK_LENGTH * 10 + 100, CHUNK_LENGTH })
+        {
+            reader.seek(position);
+            byte[] bytes = new byte[Math.min(50, expected.length - position)];
+            reader.readFully(bytes);
+            for (int i = 0; i < bytes.length; i++)
+                assertEquals(expected[position + i], bytes[i]);
+        }
+        reader.seek(expected.length);
+        assertEquals(-1, reader.read());
+        reader.close();
+    }
+}
@@ -91,6 +91,33 @@ public class RackUnawareStrategyTest
             testGetEndpoints(tmd, strategy, endPointTokens.toArray(new Token[0]), keyTokens.toArray(new Token[0]), table);
     }
 
+    @Test
+    public void testEndpointsFollowTokenChanges() throws UnknownHostException
+    {
+        TokenMetadata tmd = new TokenMetadata();
+        AbstractReplicationStrategy strategy = new RackUnawareStrategy(tmd, null);
+        String table = DatabaseDescriptor.getNonSystemTables().get(0);
+        Token keyToken = new BigIntegerToken("15");
+
+        tmd.updateNormalToken(new BigIntegerToken("10"), InetAddress.getByName("127.0.0.1"));
+        tmd.updateNormalToken(new BigIntegerToken("30"), InetAddress.getByName("127.0.0.2"));
+        List<InetAddress> endPoints = strategy.getNaturalEndpoints(keyToken, table);
+        assertEquals(InetAddress.getByName("127.0.0.2"), endPoints.get(0));
+        assertSame(endPoints, strategy.getNaturalEndpoints(keyToken, table));
+        try
+        {
+            endPoints.add(InetAddress.getByName("127.0.0.3"));
+            throw new AssertionError("natural endpoints must be read-only");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // expected
+        }
+
+        tmd.updateNormalToken(new BigIntegerToken("20"), InetAddress.getByName("127.0.0.3"));
+        assertEquals(InetAddress.getByName("127.0.0.3"), strategy.getNaturalEndpoints(keyToken, table).get(0));
+    }
+
     // given a list of endpoint tokens, and a set of key tokens falling between the endpoint tokens,
     // make sure that the Strategy picks the right endpoints for the keys.
     private void testGetEndpoints(TokenMetadata tmd, AbstractReplicationStrategy strategy, Token[] endPointTokens, Token[] keyTokens, String table) throws UnknownHostException
@@ -0,0 +1,129 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.net;
+
+import java.io.*;
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.service.StorageService;
+
+public class HeaderTest
+{
+    private static final long[] IDS = new long[] { 0, 1, 9, 10, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, Long.MAX_VALUE,
+                                                   -1, -10, Integer.MIN_VALUE, Long.MIN_VALUE };
+
+    private static Header roundTrip(Header header) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Header.serializer().serialize(header, new DataOutputStream(bytes));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Header deserialized = Header.serializer().deserialize(in);
+        assertEquals(0, in.available());
+        return deserialized;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        InetAddress from = InetAddress.getByName("127.0.0.2");
+        for (long id : IDS)
+        {
+            Header header = new Header(id, from, "type", StorageService.Verb.READ, null, 12345L);
+            header.setDetail("key", new byte[] { 1, 2, 3 });
+
+            Header deserialized = roundTrip(header);
+            assertEquals(id, deserialized.getMessageId());
+            assertEquals(from, deserialized.getFrom());
+            assertEquals("type", deserialized.getMessageType());
+            assertEquals(StorageService.Verb.READ, deserialized.getVerb());
+            assertEquals(12345L, deserialized.getTimestamp());
+            assertEquals(3, deserialized.getDetail("key").length);
+        }
+    }
+
+    @Test
+    public void testTimestampDetail() throws IOException
+    {
+        InetAddress from = InetAddress.getByName("127.0.0.2");
+        Header header = new Header(1, from, "type", StorageService.Verb.MUTATION, null, 12345L);
+        header.setDetail("key", new byte[] { 1 });
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Header.serializer().serialize(header, new DataOutputStream(bytes));
+
+        // an ordinary detail to older nodes, which skip details they do not know
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.readUTF();
+        CompactEndPointSerializationHelper.deserialize(in);
+        in.readUTF();
+        in.readInt();
+        assertEquals(2, in.readInt());
+        assertEquals("TS", in.readUTF());
+        assertEquals(8, in.readInt());
+        assertEquals(12345L, in.readLong());
+
+        // taken out of details by the round trip
+        Header deserialized = roundTrip(header);
+        assertEquals(12345L, deserialized.getTimestamp());
+        assertNull(deserialized.getDetail("TS"));
+        assertEquals(1, deserialized.getDetail("key").length);
+    }
+
+    @Test
+    public void testOldFormatIds() throws IOException
+    {
+        InetAddress from = InetAddress.getByName("127.0.0.2");
+        // older nodes wrote int ids, which wrap to negative, as strings and sent no timestamp
+        for (int id : new int[] { 0, 42, Integer.MAX_VALUE, -1, Integer.MIN_VALUE })
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(String.valueOf(id));
+            CompactEndPointSerializationHelper.serialize(from, out);
+            out.writeUTF("type");
+            out.writeInt(StorageService.Verb.MUTATION.ordinal());
+            out.writeInt(0);
+
+            long before = System.currentTimeMillis();
+            Header header = Header.serializer().deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(id, header.getMessageId());
+            // taken as sent when received
+            assertTrue(header.getTimestamp() >= before && header.getTimestamp() <= System.currentTimeMillis());
+            assertEquals(StorageService.Verb.MUTATION, header.getVerb());
+
+            // and read back the id echoed in our reply
+            bytes = new ByteArrayOutputStream();
+            Header.serializer().serialize(new Header(header.getMessageId(), from, "type", StorageService.Verb.READ_RESPONSE), new DataOutputStream(bytes));
+            assertEquals(String.valueOf(id), new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())).readUTF());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidId() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF("-");
+        HeaderSerializer.readId(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
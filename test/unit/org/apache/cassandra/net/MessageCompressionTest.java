@@ -0,0 +1,93 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+public class MessageCompressionTest
+{
+    private final DatabaseDescriptor.InternodeCompression compression = DatabaseDescriptor.getInternodeCompression();
+    private final int threshold = DatabaseDescriptor.getInternodeCompressionThreshold();
+
+    @After
+    public void tearDown()
+    {
+        DatabaseDescriptor.setInternodeCompression(compression);
+        DatabaseDescriptor.setInternodeCompressionThreshold(threshold);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        InetAddress peer = InetAddress.getByName("127.0.0.2");
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (i % 17);
+
+        // only the given length of the array is compressed, as of serialization buffers
+        byte[] padded = Arrays.copyOf(bytes, bytes.length + 100);
+        byte[] compressed = MessageCompression.compress(peer, padded, bytes.length);
+        assertTrue(compressed.length < bytes.length);
+
+        // decompressed from the middle of a read buffer
+        byte[] buffer = new byte[compressed.length + 20];
+        System.arraycopy(compressed, 0, buffer, 10, compressed.length);
+        assertTrue(Arrays.equals(bytes, MessageCompression.decompress(peer, buffer, 10, compressed.length)));
+
+        assertTrue(MessageCompression.getCompressionRatios().get(peer.getHostAddress()) < 1);
+        assertTrue(MessageCompression.getCompressionTimes().containsKey(peer.getHostAddress()));
+    }
+
+    @Test
+    public void testPolicy() throws IOException
+    {
+        // test snitch puts hosts with the same second octet into one datacenter
+        InetAddress sameDC = InetAddress.getByName("127.0.0.2");
+        InetAddress otherDC = InetAddress.getByName("127.1.0.2");
+        DatabaseDescriptor.setInternodeCompressionThreshold(1024);
+
+        DatabaseDescriptor.setInternodeCompression(DatabaseDescriptor.InternodeCompression.none);
+        assertFalse(MessageCompression.shouldCompress(sameDC, 10000));
+        assertFalse(MessageCompression.shouldCompress(otherDC, 10000));
+
+        DatabaseDescriptor.setInternodeCompression(DatabaseDescriptor.InternodeCompression.all);
+        assertTrue(MessageCompression.shouldCompress(sameDC, 10000));
+        assertTrue(MessageCompression.shouldCompress(otherDC, 10000));
+        assertTrue(MessageCompression.shouldCompress(otherDC, 1024));
+        assertFalse(MessageCompression.shouldCompress(otherDC, 1023));
+
+        DatabaseDescriptor.setInternodeCompression(DatabaseDescriptor.InternodeCompression.dc);
+        assertFalse(MessageCompression.shouldCompress(sameDC, 10000));
+        assertTrue(MessageCompression.shouldCompress(otherDC, 10000));
+        assertFalse(MessageCompression.shouldCompress(otherDC, 1023));
+
+        DatabaseDescriptor.setInternodeCompressionThreshold(0);
+        assertTrue(MessageCompression.shouldCompress(otherDC, 1));
+    }
+}
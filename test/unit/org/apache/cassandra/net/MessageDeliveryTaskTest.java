@@ -0,0 +1,77 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.net;
+
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.StorageService;
+
+public class MessageDeliveryTaskTest
+{
+    @After
+    public void tearDown()
+    {
+        DatabaseDescriptor.setCrossNodeTimeout(false);
+    }
+
+    private static MessageDeliveryTask task(StorageService.Verb verb, long timestamp) throws Exception
+    {
+        Header header = new Header(1, InetAddress.getByName("127.0.0.2"), "", verb, null, timestamp);
+        return new MessageDeliveryTask(new Message(header, new byte[0]));
+    }
+
+    @Test
+    public void testDeadlineFromReceiveTime() throws Exception
+    {
+        long rpcTimeout = DatabaseDescriptor.getRpcTimeout();
+        long before = System.currentTimeMillis();
+        // sender's clock is ignored, however far off
+        long deadline = task(StorageService.Verb.MUTATION, before - 10 * rpcTimeout).getDeadline();
+        assertTrue(deadline >= before + rpcTimeout && deadline <= System.currentTimeMillis() + rpcTimeout);
+        deadline = task(StorageService.Verb.READ, before + 10 * rpcTimeout).getDeadline();
+        assertTrue(deadline >= before + rpcTimeout && deadline <= System.currentTimeMillis() + rpcTimeout);
+
+        assertEquals(Long.MAX_VALUE, task(StorageService.Verb.GOSSIP_DIGEST_SYN, before - 10 * rpcTimeout).getDeadline());
+    }
+
+    @Test
+    public void testCrossNodeDeadline() throws Exception
+    {
+        DatabaseDescriptor.setCrossNodeTimeout(true);
+        long rpcTimeout = DatabaseDescriptor.getRpcTimeout();
+        long before = System.currentTimeMillis();
+
+        // time in transit counts
+        long sent = before - 10 * rpcTimeout;
+        assertEquals(sent + rpcTimeout, task(StorageService.Verb.MUTATION, sent).getDeadline());
+
+        // sender's clock ahead does not extend the deadline past the local one
+        long deadline = task(StorageService.Verb.READ, before + 10 * rpcTimeout).getDeadline();
+        assertTrue(deadline >= before + rpcTimeout && deadline <= System.currentTimeMillis() + rpcTimeout);
+
+        assertEquals(Long.MAX_VALUE, task(StorageService.Verb.GOSSIP_DIGEST_SYN, sent).getDeadline());
+    }
+}
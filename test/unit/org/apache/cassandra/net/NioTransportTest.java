@@ -0,0 +1,275 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.net;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.sink.IMessageSink;
+import org.apache.cassandra.net.sink.SinkManager;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.LatencyTracker;
+
+public class NioTransportTest
+{
+    private static final long TIMEOUT = 10000;
+
+    private final BlockingQueue<Message> received = new LinkedBlockingQueue<Message>();
+    private NioSelectorThread thread;
+    private ServerSocketChannel server;
+
+    @Before
+    public void setUp()
+    {
+        SinkManager.addMessageSink(new IMessageSink()
+        {
+            public Message handleMessage(Message message)
+            {
+                received.add(message);
+                return null;
+            }
+        });
+        thread = new NioSelectorThread("MESSAGING-IO-TEST");
+        thread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        SinkManager.clearSinks();
+        if (server != null)
+            server.close();
+    }
+
+    private ServerSocketChannel listen(InetAddress address, int port) throws IOException
+    {
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        server.socket().bind(new InetSocketAddress(address, port));
+        return server;
+    }
+
+    @Test
+    public void testIncomingPartialReads() throws Exception
+    {
+        InetAddress local = InetAddress.getByName("127.0.0.1");
+        listen(local, 0);
+        SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        client.socket().setTcpNoDelay(true);
+        SocketChannel accepted = server.accept();
+
+        // compression bit is read anew for every frame; large ones span many reads of the shared buffer
+        int large = 3 * NioSelectorThread.READ_BUFFER_SIZE;
+        Message[] messages = new Message[] { message(local, 1, 100), message(local, 2, 100), message(local, 3, large), message(local, 4, large) };
+        byte[][] frames = new byte[][] { frame(messages[0], true), frame(messages[1], false), frame(messages[2], false), frame(messages[3], true) };
+
+        // magic and protocol header of the first frame are read before the hand over, as IncomingTcpConnection does
+        client.write(ByteBuffer.wrap(frames[0], 0, 8));
+        DataInputStream in = new DataInputStream(accepted.socket().getInputStream());
+        MessagingService.validateMagic(in.readInt());
+        boolean compressed = MessagingService.getBits(in.readInt(), 2, 1) == 1;
+        assertTrue(compressed);
+        NioIncomingConnection.register(accepted, local, compressed, thread);
+
+        // a few bytes at a time, so frame prefixes and messages are split between reads
+        writeInChunks(client, frames[0], 8, 5);
+        writeInChunks(client, frames[1], 0, 5);
+        writeInChunks(client, frames[2], 0, 4096);
+        writeInChunks(client, frames[3], 0, 4096);
+
+        for (Message message : messages)
+        {
+            Message delivered = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull(delivered);
+            assertEquals(message.getFrom(), delivered.getFrom());
+            assertEquals(message.getVerb(), delivered.getVerb());
+            assertTrue(Arrays.equals(message.getMessageBody(), delivered.getMessageBody()));
+        }
+        client.close();
+    }
+
+    @Test
+    public void testIncomingInvalidFrameSize() throws Exception
+    {
+        InetAddress local = InetAddress.getByName("127.0.0.1");
+        listen(local, 0);
+        SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        SocketChannel accepted = server.accept();
+
+        byte[] frame = frame(message(local, 1, 100), false);
+        client.write(ByteBuffer.wrap(frame, 0, 8));
+        DataInputStream in = new DataInputStream(accepted.socket().getInputStream());
+        MessagingService.validateMagic(in.readInt());
+        in.readInt();
+        NioIncomingConnection.register(accepted, local, false, thread);
+
+        // a frame of negative size closes the connection
+        ByteBuffer size = ByteBuffer.allocate(4);
+        size.putInt(-1).flip();
+        client.write(size);
+        long start = System.currentTimeMillis();
+        while (accepted.isOpen())
+        {
+            assertTrue("connection not closed", System.currentTimeMillis() - start < TIMEOUT);
+            Thread.sleep(10);
+        }
+        assertTrue(received.isEmpty());
+        client.close();
+    }
+
+    @Test
+    public void testOutboundBackpressure() throws Exception
+    {
+        InetAddress endpoint = InetAddress.getByName("127.0.0.2");
+        listen(endpoint, DatabaseDescriptor.getStoragePort());
+        NioOutboundConnection connection = new NioOutboundConnection(endpoint, new OutboundQueue(1000, new LatencyTracker()), thread);
+
+        // more than socket buffers hold; every fourth message too large for the write buffer to gather
+        int[] sizes = new int[256];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++)
+        {
+            sizes[i] = i % 4 == 0 ? NioSelectorThread.WRITE_BUFFER_SIZE + 1000 : 10000;
+            total += 4 + 4 + 4 + sizes[i];
+            connection.write(MessagingService.packIt(body(i, sizes[i]), false), StorageService.Verb.GOSSIP_DIGEST_SYN);
+        }
+
+        // peer is not reading yet, so the socket accepts only part of it
+        long sent;
+        do
+        {
+            sent = connection.getSentBytes();
+            Thread.sleep(200);
+        }
+        while (sent != connection.getSentBytes());
+        assertTrue(sent < total);
+
+        SocketChannel accepted = server.accept();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(accepted.socket().getInputStream()));
+        for (int i = 0; i < sizes.length; i++)
+        {
+            byte[] body = readFrame(in);
+            assertEquals(sizes[i], body.length);
+            assertTrue(Arrays.equals(body(i, sizes[i]), body));
+        }
+        long start = System.currentTimeMillis();
+        while (connection.getSentBytes() < total)
+        {
+            assertTrue("sent bytes not counted", System.currentTimeMillis() - start < TIMEOUT);
+            Thread.sleep(10);
+        }
+        assertEquals(total, connection.getSentBytes());
+        assertEquals(0, connection.getPendingMessages());
+
+        connection.closeSocket();
+        accepted.close();
+    }
+
+    @Test
+    public void testOutboundReconnect() throws Exception
+    {
+        InetAddress endpoint = InetAddress.getByName("127.0.0.3");
+        listen(endpoint, DatabaseDescriptor.getStoragePort());
+        NioOutboundConnection connection = new NioOutboundConnection(endpoint, new OutboundQueue(1000, new LatencyTracker()), thread);
+
+        connection.write(MessagingService.packIt(body(1, 100), false), StorageService.Verb.GOSSIP_DIGEST_SYN);
+        SocketChannel accepted = server.accept();
+        assertTrue(Arrays.equals(body(1, 100), readFrame(new DataInputStream(accepted.socket().getInputStream()))));
+        accepted.close();
+
+        // the connection notices the close on a write, and connects again for the messages queued after it
+        server.configureBlocking(false);
+        long start = System.currentTimeMillis();
+        while ((accepted = server.accept()) == null)
+        {
+            assertTrue("no reconnect", System.currentTimeMillis() - start < TIMEOUT);
+            connection.write(MessagingService.packIt(body(2, 100), false), StorageService.Verb.GOSSIP_DIGEST_SYN);
+            Thread.sleep(50);
+        }
+        assertTrue(Arrays.equals(body(2, 100), readFrame(new DataInputStream(accepted.socket().getInputStream()))));
+
+        connection.closeSocket();
+        accepted.close();
+    }
+
+    private static byte[] body(int seed, int size)
+    {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++)
+            body[i] = (byte) (seed + i);
+        return body;
+    }
+
+    private static Message message(InetAddress from, int seed, int size)
+    {
+        return new Message(from, "", StorageService.Verb.GOSSIP_DIGEST_SYN, body(seed, size));
+    }
+
+    /** frame as MessagingService.sendOneWay() writes it */
+    private static byte[] frame(Message message, boolean compress) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        Message.serializer().serialize(message, out);
+        byte[] data = Arrays.copyOf(out.getData(), out.getLength());
+        if (compress)
+            data = MessageCompression.compress(message.getFrom(), data, data.length);
+        return MessagingService.packIt(data, compress).array();
+    }
+
+    private static void writeInChunks(SocketChannel channel, byte[] bytes, int offset, int chunk) throws Exception
+    {
+        for (int i = offset; i < bytes.length; i += chunk)
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i));
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] readFrame(DataInputStream in) throws IOException
+    {
+        MessagingService.validateMagic(in.readInt());
+        assertFalse(MessagingService.getBits(in.readInt(), 2, 1) == 1);
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return body;
+    }
+}
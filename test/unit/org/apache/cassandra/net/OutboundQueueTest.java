@@ -0,0 +1,75 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.net;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.LatencyTracker;
+
+public class OutboundQueueTest
+{
+    private static OutboundQueue.QueuedMessage message(StorageService.Verb verb)
+    {
+        return new OutboundQueue.QueuedMessage(ByteBuffer.allocate(0), verb);
+    }
+
+    @Test
+    public void testFullQueueDropsOnlyDroppable()
+    {
+        OutboundQueue queue = new OutboundQueue(2, new LatencyTracker());
+        OutboundQueue.QueuedMessage stream = message(StorageService.Verb.STREAM_INITIATE);
+        OutboundQueue.QueuedMessage mutation1 = message(StorageService.Verb.MUTATION);
+        OutboundQueue.QueuedMessage mutation2 = message(StorageService.Verb.MUTATION);
+        queue.add(stream);
+        queue.add(mutation1);
+        queue.add(mutation2);
+
+        // oldest droppable message made room, stream message behind it at the head kept its place
+        assertEquals(2, queue.size());
+        assertSame(stream, queue.poll());
+        assertSame(mutation2, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testFullQueueKeepsNonDroppable()
+    {
+        OutboundQueue queue = new OutboundQueue(2, new LatencyTracker());
+        OutboundQueue.QueuedMessage[] messages = new OutboundQueue.QueuedMessage[] {
+            message(StorageService.Verb.TREE_REQUEST),
+            message(StorageService.Verb.GOSSIP_DIGEST_SYN),
+            message(StorageService.Verb.STREAM_FINISHED),
+            message(null),
+        };
+        for (OutboundQueue.QueuedMessage message : messages)
+            queue.add(message);
+
+        assertEquals(messages.length, queue.size());
+        for (OutboundQueue.QueuedMessage message : messages)
+            assertSame(message, queue.poll());
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.IAsyncCallback;
+import org.apache.cassandra.net.Message;
+
+public class MultiReadCallbackTest
+{
+    private static class RecordingCallback implements IAsyncCallback
+    {
+        final List<Message> responses = new ArrayList<Message>();
+
+        public void response(Message message)
+        {
+            responses.add(message);
+        }
+    }
+
+    @Test
+    public void testSplitResponse() throws IOException
+    {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        InetAddress replica = InetAddress.getByName("127.0.0.2");
+
+        new MultiReadCallback(Arrays.<IAsyncCallback>asList(first, second)).response(batchedResponse(replica, "first".getBytes(), "second".getBytes()));
+
+        assertEquals(1, first.responses.size());
+        assertResponse(replica, "first", first.responses.get(0));
+        assertEquals(1, second.responses.size());
+        assertResponse(replica, "second", second.responses.get(0));
+    }
+
+    @Test
+    public void testMissingResponse() throws IOException
+    {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RecordingCallback third = new RecordingCallback();
+        InetAddress replica = InetAddress.getByName("127.0.0.2");
+
+        // the replica could not read the first key
+        new MultiReadCallback(Arrays.<IAsyncCallback>asList(first, second, third)).response(batchedResponse(replica, null, "second".getBytes(), "third".getBytes()));
+
+        assertTrue(first.responses.isEmpty());
+        assertEquals(1, second.responses.size());
+        assertResponse(replica, "second", second.responses.get(0));
+        assertEquals(1, third.responses.size());
+        assertResponse(replica, "third", third.responses.get(0));
+    }
+
+    /** the body MultiReadVerbHandler answers with; a null response is one the replica has none for */
+    private static Message batchedResponse(InetAddress from, byte[]... responses) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        out.writeInt(responses.length);
+        for (byte[] response : responses)
+        {
+            if (response == null)
+            {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(response.length);
+            out.write(response);
+        }
+        return new Message(from, "", StorageService.Verb.MULTI_READ, Arrays.copyOf(out.getData(), out.getLength()));
+    }
+
+    private static void assertResponse(InetAddress from, String body, Message message)
+    {
+        assertEquals(from, message.getFrom());
+        assertEquals(StorageService.Verb.READ_RESPONSE, message.getVerb());
+        assertEquals(body, new String(message.getMessageBody()));
+    }
+}
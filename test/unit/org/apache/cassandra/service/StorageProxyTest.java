@@ -18,19 +18,32 @@
 */
 package org.apache.cassandra.service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import static org.apache.cassandra.Util.range;
 import static org.apache.cassandra.Util.bounds;
 
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.SliceByNamesReadCommand;
+import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.net.Message;
 
 public class StorageProxyTest extends CleanupHelper
 {
@@ -110,4 +123,82 @@ public class StorageProxyTest extends CleanupHelper
         // completely empty bounds match everything
         testGRR(bounds("", ""), bounds("", "1"), range("1", "6"), range("6", ""));
     }
+
+    @Test
+    public void testRangeSliceConcurrency()
+    {
+        // nothing known or ranges so far empty: as many as allowed
+        assertEquals(8, StorageProxy.rangeSliceConcurrency(100, 0, 8));
+        // unknown density: one at a time
+        assertEquals(1, StorageProxy.rangeSliceConcurrency(100, Double.POSITIVE_INFINITY, 8));
+        // just enough ranges to fill the rest
+        assertEquals(4, StorageProxy.rangeSliceConcurrency(100, 25, 8));
+        assertEquals(5, StorageProxy.rangeSliceConcurrency(100, 24, 8));
+        assertEquals(8, StorageProxy.rangeSliceConcurrency(100, 1, 8));
+        assertEquals(1, StorageProxy.rangeSliceConcurrency(10, 1000, 8));
+    }
+
+    @Test
+    public void testSpeculativeRetry() throws Throwable
+    {
+        ReadCommand command = new SliceByNamesReadCommand("Keyspace1", "key1", new QueryPath("Standard1"), Arrays.asList("Column1".getBytes()));
+        List<InetAddress> endPoints = Arrays.asList(InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.3"));
+
+        // replica answering in time is not retried
+        StorageProxy.WeakRead read = new StorageProxy.WeakRead(command, endPoints);
+        read.handler.response(new Message(endPoints.get(0), "", StorageService.Verb.READ_RESPONSE, new byte[0]));
+        assertNull(StorageProxy.maybeSpeculate(read, 10));
+
+        // neither is a read with no other replica to retry on, nor one with retry threshold of rpc timeout
+        assertNull(StorageProxy.maybeSpeculate(new StorageProxy.WeakRead(command, endPoints.subList(0, 1)), 10));
+        assertNull(StorageProxy.maybeSpeculate(new StorageProxy.WeakRead(command, endPoints), DatabaseDescriptor.getRpcTimeout()));
+
+        // silent replica is retried on the next closest one, whose answer completes the read
+        read = new StorageProxy.WeakRead(command, endPoints);
+        long start = System.currentTimeMillis();
+        assertEquals(endPoints.get(1), StorageProxy.maybeSpeculate(read, 10));
+        assert System.currentTimeMillis() - start >= 10;
+        Message answer = new Message(endPoints.get(1), "", StorageService.Verb.READ_RESPONSE, new byte[0]);
+        long answeredAt = System.nanoTime();
+        read.handler.response(answer);
+        assertEquals(answer, read.handler.get());
+        assert read.handler.getCompletedAt() >= answeredAt;
+    }
+
+    @Test
+    public void testStrongSpeculativeRetry() throws Throwable
+    {
+        ReadCommand command = new SliceByNamesReadCommand("Keyspace3", "key1", new QueryPath("Standard1"), Arrays.asList("Column1".getBytes()));
+        List<InetAddress> endPoints = Arrays.asList(InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.3"), InetAddress.getByName("127.0.0.4"));
+        ColumnFamily cf = ColumnFamily.create("Keyspace3", "Standard1");
+
+        // data point answering in time is not retried, even while digests are still outstanding
+        ReadResponseResolver resolver = new ReadResponseResolver("Keyspace3", "key1", 2);
+        QuorumResponseHandler<Row> handler = new QuorumResponseHandler<Row>(2, resolver);
+        handler.response(readResponse(endPoints.get(0), new ReadResponse(new Row("key1", cf))));
+        assertNull(StorageProxy.maybeSpeculate(command, endPoints, handler, resolver, 10));
+
+        // slow data point: digests alone do not complete the read, so the next closest replica is asked for data
+        resolver = new ReadResponseResolver("Keyspace3", "key1", 2);
+        handler = new QuorumResponseHandler<Row>(2, resolver);
+        handler.response(readResponse(endPoints.get(1), new ReadResponse(ColumnFamily.digest(cf))));
+        handler.response(readResponse(endPoints.get(2), new ReadResponse(ColumnFamily.digest(cf))));
+        assertEquals(0, handler.getCompletedAt());
+        assertEquals(endPoints.get(1), StorageProxy.maybeSpeculate(command, endPoints, handler, resolver, 10));
+
+        // its data replaces its digest and completes the read with the other digest
+        long answeredAt = System.nanoTime();
+        handler.response(readResponse(endPoints.get(1), new ReadResponse(new Row("key1", cf))));
+        assert resolver.isDataFrom(endPoints.get(1));
+        assert !resolver.isDataFrom(endPoints.get(0));
+        assertEquals("key1", handler.get().key);
+        assert handler.getCompletedAt() >= answeredAt;
+    }
+
+    private static Message readResponse(InetAddress from, ReadResponse response) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ReadResponse.serializer().serialize(response, new DataOutputStream(bos));
+        return new Message(from, "", StorageService.Verb.READ_RESPONSE, bos.toByteArray());
+    }
 }
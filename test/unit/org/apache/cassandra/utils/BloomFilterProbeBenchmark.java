@@ -0,0 +1,126 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares cost of probing a key against filters of many sstables, the old way
+ * (key encoded, hashed and bucket array allocated for every filter) and with hashes
+ * computed once per key.
+ *
+ * Not a unit test; run with
+ * java -cp ... org.apache.cassandra.utils.BloomFilterProbeBenchmark [sstables] [keys] [iterations]
+ */
+public class BloomFilterProbeBenchmark
+{
+    private static final int WARMUP_ITERATIONS = 5;
+
+    public static void main(String[] args)
+    {
+        int sstables = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        BloomFilter[] filters = new BloomFilter[sstables];
+        for (int f = 0; f < sstables; f++)
+        {
+            filters[f] = BloomFilter.getFilter(keys, 15);
+            for (int i = f; i < keys; i += sstables)
+                filters[f].add(key(i));
+        }
+
+        String[] probes = new String[keys];
+        for (int i = 0; i < keys; i++)
+            probes[i] = key(i * 2); // half of them are absent
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            probeOld(filters, probes);
+            probeNew(filters, probes);
+        }
+
+        long oldNanos = 0, newNanos = 0;
+        long oldFound = 0, newFound = 0;
+        for (int i = 0; i < iterations; i++)
+        {
+            long start = System.nanoTime();
+            oldFound += probeOld(filters, probes);
+            oldNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            newFound += probeNew(filters, probes);
+            newNanos += System.nanoTime() - start;
+        }
+
+        assert oldFound == newFound;
+
+        long probeCount = (long) iterations * keys * sstables;
+        System.out.println(String.format("%d sstables, %d keys, %d iterations", sstables, keys, iterations));
+        System.out.println(String.format("old probe: %.1f ns/probe", (double) oldNanos / probeCount));
+        System.out.println(String.format("new probe: %.1f ns/probe", (double) newNanos / probeCount));
+    }
+
+    private static String key(int i)
+    {
+        return "key" + i;
+    }
+
+    /**
+     * the way probes were done before: key encoded into a fresh buffer and bucket array allocated for every filter
+     */
+    private static int probeOld(BloomFilter[] filters, String[] probes)
+    {
+        int found = 0;
+        for (String key : probes)
+        {
+            for (BloomFilter filter : filters)
+            {
+                ByteBuffer bb = BloomFilter.toByteBuffer(key, null);
+                boolean present = true;
+                for (long bucket : BloomFilter.getHashBuckets(bb, filter.getHashCount(), filter.buckets()))
+                {
+                    if (!filter.bitset.get(bucket))
+                    {
+                        present = false;
+                        break;
+                    }
+                }
+                if (present)
+                    found++;
+            }
+        }
+        return found;
+    }
+
+    private static int probeNew(BloomFilter[] filters, String[] probes)
+    {
+        int found = 0;
+        for (String key : probes)
+        {
+            BloomFilter.KeyHash hash = BloomFilter.hash(key);
+            for (BloomFilter filter : filters)
+            {
+                if (filter.isPresent(hash))
+                    found++;
+            }
+        }
+        return found;
+    }
+}
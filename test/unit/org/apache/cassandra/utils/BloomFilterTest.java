@@ -18,6 +18,7 @@
 */
 package org.apache.cassandra.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -27,6 +28,7 @@ import java.util.Random;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.dht.RandomPartitioner;
 import org.apache.cassandra.io.BloomFilterWriter;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -66,6 +68,68 @@ public class BloomFilterTest
         assert !bf.isPresent("b");
     }
 
+    @Test
+    public void testKeyHash()
+    {
+        for (int i = 0; i < 1000; i += 2)
+            bf.add(Integer.toString(i));
+
+        for (int i = 0; i < 1000; i++)
+        {
+            String key = Integer.toString(i);
+            assert bf.isPresent(key) == bf.isPresent(BloomFilter.hash(key)) : key;
+        }
+        assert bf.isPresent(BloomFilter.hash("0"));
+    }
+
+    @Test
+    public void testBlockedFalsePositives()
+    {
+        BloomFilter blocked = BlockedBloomFilter.getFilter(FilterTest.ELEMENTS, 15);
+        ResetableIterator<String> keys = FilterTest.randomKeys();
+        while (keys.hasNext())
+            blocked.add(keys.next());
+
+        keys.reset();
+        while (keys.hasNext())
+            assert blocked.isPresent(keys.next());
+
+        int fp = 0;
+        ResetableIterator<String> otherkeys = FilterTest.randomKeys2();
+        while (otherkeys.hasNext())
+        {
+            if (blocked.isPresent(otherkeys.next()))
+                fp++;
+        }
+        // blocking costs some false positive rate, but not an order of magnitude
+        assert fp < FilterTest.ELEMENTS * 0.01 : fp;
+    }
+
+    @Test
+    public void testBlockedSerialize() throws IOException
+    {
+        BloomFilter blocked = BlockedBloomFilter.getFilter(FilterTest.ELEMENTS, 15);
+        blocked.add("a");
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        BlockedBloomFilter.serializer().serialize(blocked, out);
+        assert out.getLength() == BlockedBloomFilter.serializer().serializeSize(blocked);
+
+        // sstable serializer reads both formats
+        BloomFilter read = BloomFilter.serializerForSSTable().deserialize(new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength())));
+        assert read instanceof BlockedBloomFilter;
+        assert read.getElementCount() == 1;
+        assert read.isPresent("a");
+        assert !read.isPresent("b");
+
+        bf.add("a");
+        out = new DataOutputBuffer();
+        BloomFilter.serializerForSSTable().serialize(bf, out);
+        read = BloomFilter.serializerForSSTable().deserialize(new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength())));
+        assert !(read instanceof BlockedBloomFilter);
+        assert read.isPresent("a");
+    }
+
     @Test
     public void testFalsePositivesInt()
     {
@@ -134,6 +198,13 @@ public class BloomFilterTest
         {
             DecoratedKey<?> key = p.decorateKey(Integer.toHexString(i));
             assert mayPresent(read,key, FBUtilities.toByteArray(i+2));
+            assert read.isPresent(key.key, FBUtilities.toByteArray(i+2));
+        }
+
+        for (int i=100000;i<101000;i++)
+        {
+            DecoratedKey<?> key = p.decorateKey(Integer.toHexString(i));
+            assert mayPresent(read,key, FBUtilities.toByteArray(i+2)) == read.isPresent(key.key, FBUtilities.toByteArray(i+2));
         }
 
     }
@@ -47,4 +47,21 @@ public class EstimatedHistogramTest
         histogram.add(25);
         assertEquals(3, histogram.get(true)[13]);
     }
+
+    @Test
+    public void testPercentile()
+    {
+        EstimatedHistogram histogram = new EstimatedHistogram();
+        assertEquals(0, EstimatedHistogram.percentile(histogram.get(false), 99));
+
+        for (int i = 0; i < 90; i++)
+            histogram.add(5);
+        for (int i = 0; i < 10; i++)
+            histogram.add(1000);
+
+        long[] counts = histogram.get(false);
+        assertEquals(6, EstimatedHistogram.percentile(counts, 50));
+        assertEquals(6, EstimatedHistogram.percentile(counts, 90));
+        assertEquals(1020, EstimatedHistogram.percentile(counts, 95));
+    }
 }
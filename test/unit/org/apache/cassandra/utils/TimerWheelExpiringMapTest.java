@@ -0,0 +1,100 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Function;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelExpiringMapTest
+{
+    private static class Recorder implements Function<Pair<Long, String>, Object>
+    {
+        final Set<Long> expired = Collections.synchronizedSet(new HashSet<Long>());
+
+        public Object apply(Pair<Long, String> pair)
+        {
+            assertEquals("v" + pair.left, pair.right);
+            expired.add(pair.left);
+            return null;
+        }
+    }
+
+    @Test
+    public void testRemovedEntriesDoNotExpire() throws InterruptedException
+    {
+        Recorder recorder = new Recorder();
+        TimerWheelExpiringMap<String> map = new TimerWheelExpiringMap<String>(100, 10, recorder);
+        try
+        {
+            for (long i = 0; i < 100; i++)
+                assertNull(map.put(i, "v" + i));
+            assertEquals(100, map.size());
+            assertEquals("v7", map.get(7));
+            assertTrue(map.getAge(7) > 0);
+
+            for (long i = 0; i < 100; i += 2)
+                assertEquals("v" + i, map.remove(i));
+            assertNull(map.remove(0));
+            assertEquals(0, map.getAge(0));
+
+            Thread.sleep(300);
+            assertTrue(map.isEmpty());
+            assertEquals(50, recorder.expired.size());
+            for (long i = 1; i < 100; i += 2)
+                assertTrue(recorder.expired.contains(i));
+        }
+        finally
+        {
+            map.shutdown();
+        }
+    }
+
+    @Test
+    public void testEntriesLiveForExpiration() throws InterruptedException
+    {
+        Recorder recorder = new Recorder();
+        TimerWheelExpiringMap<String> map = new TimerWheelExpiringMap<String>(200, 10, recorder);
+        try
+        {
+            map.put(1, "v1");
+            Thread.sleep(100);
+            assertEquals("v1", map.get(1));
+            assertTrue(recorder.expired.isEmpty());
+
+            // replacing an entry restarts its expiration
+            assertEquals("v1", map.put(1, "v1"));
+            Thread.sleep(150);
+            assertEquals("v1", map.get(1));
+
+            Thread.sleep(200);
+            assertNull(map.get(1));
+            assertEquals(Collections.singleton(1L), recorder.expired);
+        }
+        finally
+        {
+            map.shutdown();
+        }
+    }
+}